@@ -0,0 +1,63 @@
+package bilokhado;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Embedded databases with the synthetic tables for the JMH benchmarks. Tables are generated with
+ * the same seed and share of nulls, so every run measures the same data.
+ */
+final class BenchmarkDatabase {
+
+    private static final int NULL_PERCENT = 5;
+    private static final long SEED = 1;
+
+    private BenchmarkDatabase() {
+    }
+
+    static String getUrl(String databaseName) {
+        return "jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1";
+    }
+
+    static Connection open(String databaseName) throws SQLException {
+        return DriverManager.getConnection(getUrl(databaseName));
+    }
+
+    /**
+     * Opens the database, failing with unchecked exception, as the connection pools need.
+     */
+    static Connection openUnchecked(String databaseName) {
+        try {
+            return open(databaseName);
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Unable to open database " + databaseName, ex);
+        }
+    }
+
+    static void generateTable(Connection connection, String tableName, String columnTypes, long rows)
+            throws SQLException {
+        new SyntheticDataGenerator(connection, NULL_PERCENT, SEED)
+                .generate(tableName, SyntheticDataGenerator.parseColumns(columnTypes), rows);
+    }
+
+    /**
+     * Returns export properties reading the whole table of the database, written in the H2 dialect.
+     */
+    static Properties getExportProperties(String databaseName, String tableName) {
+        Properties properties = new Properties();
+        properties.setProperty(ExportSettings.OPTION_PREFIX + ConnectionSettings.URL_SUFFIX, getUrl(databaseName));
+        properties.setProperty(ExportSettings.DIALECT_OPTION, "h2");
+        properties.setProperty(tableName, "SELECT * FROM " + tableName);
+        return properties;
+    }
+
+    static void drop(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+    }
+
+}
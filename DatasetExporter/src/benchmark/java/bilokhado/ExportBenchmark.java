@@ -0,0 +1,277 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Measures whole export runs: rows and output bytes per second and the allocation rate. Every
+ * export is repeated and the fastest run is reported, as the slower ones are mostly disturbed by
+ * the JIT compilation and GC. Results are written as CSV, which serves as the baseline of the
+ * next run: a format whose throughput has dropped by more than the allowed percent is a regression.
+ * Runs with the properties file and optionally the baseline report as arguments, see the
+ * exportBenchmark task.
+ */
+class ExportBenchmark {
+
+    static final String TABLES_OPTION = ExportSettings.BENCHMARK_OPTION_PREFIX + "tables";
+    static final String ROWS_OPTION = ExportSettings.BENCHMARK_OPTION_PREFIX + "rows";
+    static final String COLUMNS_OPTION = ExportSettings.BENCHMARK_OPTION_PREFIX + "columns";
+    static final String NULL_PERCENT_OPTION = ExportSettings.BENCHMARK_OPTION_PREFIX + "nullPercent";
+    static final String SEED_OPTION = ExportSettings.BENCHMARK_OPTION_PREFIX + "seed";
+    static final String MAX_REGRESSION_OPTION = ExportSettings.BENCHMARK_OPTION_PREFIX + "maxRegression";
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportBenchmark.class);
+    private static final String TABLE_PREFIX = "BENCHMARK_";
+    private static final String OUTPUT_DIRECTORY = "dataset-benchmark";
+    private static final String CSV_HEADER = "format,rows,bytes,millis,rowsPerSecond,bytesPerSecond,allocatedBytesPerSecond";
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final Path outputDirectory;
+    private final int repeats;
+    private final Map<String, Result> results = new LinkedHashMap<>();
+
+    ExportBenchmark(Path outputDirectory, int repeats) {
+        this.outputDirectory = outputDirectory;
+        this.repeats = repeats;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1 && args.length != 2) {
+            logger.error("Got no properties file name");
+            System.exit(1);
+        }
+        if (!run(args[0], args.length == 2 ? args[1] : null)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Generates the synthetic tables in the benchmark database and measures their export to the SQL
+     * scripts and to the flat XML dataset. Results are written to the benchmark report and compared
+     * with the baseline report, if it is given. Returns false on failure or regression, so the build
+     * running the benchmark fails. Tables are never generated in the export database.
+     */
+    static boolean run(String propertiesFileName, String baselineFileName) {
+        Properties benchmarkProperties = DatasetExporter.loadPropertiesFromFile(propertiesFileName);
+        if (benchmarkProperties == null) {
+            logger.error("Properties is null");
+            return false;
+        }
+        ExportSettings settings = new ExportSettings(benchmarkProperties);
+        ConnectionSettings connectionSettings = settings.getBenchmarkConnectionSettings();
+        if (connectionSettings == null) {
+            logger.error("Benchmark database is not set with {}", ExportSettings.BENCHMARK_URL_OPTION);
+            return false;
+        }
+        try (Connection connection = connectionSettings.openConnection()) {
+            if (connection == null) {
+                logger.error("Connection is null");
+                return false;
+            }
+            Properties exportProperties = new Properties();
+            for (String key : benchmarkProperties.stringPropertyNames()) {
+                if (key.startsWith(ExportSettings.OPTION_PREFIX)) {
+                    exportProperties.setProperty(key, benchmarkProperties.getProperty(key));
+                }
+            }
+            SyntheticDataGenerator generator = new SyntheticDataGenerator(connection
+                    , settings.getInt(NULL_PERCENT_OPTION, 5), settings.getInt(SEED_OPTION, 1));
+            int tables = Math.max(1, settings.getInt(TABLES_OPTION, 1));
+            for (int i = 1; i <= tables; i++) {
+                String tableName = TABLE_PREFIX + i;
+                String columnTypes = settings.getTableString(COLUMNS_OPTION, tableName);
+                List<ColumnDescriptor> columns = SyntheticDataGenerator.parseColumns(
+                        columnTypes == null ? SyntheticDataGenerator.DEFAULT_COLUMNS : columnTypes);
+                if (columns == null) {
+                    return false;
+                }
+                generator.generate(tableName, columns, Math.max(0, settings.getTableInt(ROWS_OPTION, tableName, 100000)));
+                exportProperties.setProperty(tableName, "SELECT * FROM " + tableName);
+            }
+            ExportSettings exportSettings = new ExportSettings(exportProperties);
+            Path outputDirectory = Files.createDirectories(Paths.get(OUTPUT_DIRECTORY));
+            String baseFileName = outputDirectory.resolve(DatasetExporter.RESULT_FILENAME_BASE).toString();
+            ExportBenchmark benchmark = new ExportBenchmark(outputDirectory
+                    , Math.max(1, settings.getInt(ExportSettings.BENCHMARK_REPEATS_OPTION, 3)));
+            benchmark.measure(ExportSettings.FORMAT_SQL
+                    , metrics -> DatasetExporter.exportSqlSet(connection, exportSettings, baseFileName, metrics));
+            benchmark.measure(ExportSettings.FORMAT_XML
+                    , metrics -> DatasetExporter.retrieveAndSaveDataset(connection, exportSettings, baseFileName, metrics));
+            boolean passed = baselineFileName == null || benchmark.checkBaseline(Paths.get(baselineFileName)
+                    , settings.getInt(MAX_REGRESSION_OPTION, 10));
+            benchmark.writeReport(Paths.get(DatasetExporter.RESULT_FILENAME_BASE + "-benchmark.csv"));
+            return passed;
+        } catch (SQLException ex) {
+            logger.error("Failed to generate benchmark tables", ex);
+            return false;
+        } catch (IOException ex) {
+            logger.error("Unable to write benchmark output", ex);
+            return false;
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted while measuring the export", ex);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Runs the export writing into the output directory the configured number of times and keeps
+     * the fastest run. Output files are deleted before every run, so their size is of that run only.
+     */
+    void measure(String format, Consumer<ExportMetrics> export) throws IOException, InterruptedException {
+        Result best = null;
+        for (int i = 0; i < repeats; i++) {
+            deleteOutput();
+            ExportMetrics metrics = new ExportMetrics();
+            long nanos;
+            long allocatedBytes;
+            try (HeapAllocationCounter allocationCounter = new HeapAllocationCounter()) {
+                long startTime = System.nanoTime();
+                export.accept(metrics);
+                nanos = System.nanoTime() - startTime;
+                allocatedBytes = allocationCounter.getAllocatedBytes();
+            }
+            Result result = new Result(metrics.getRowsExported(), getOutputBytes(), nanos, allocatedBytes);
+            if (best == null || result.nanos < best.nanos) {
+                best = result;
+            }
+        }
+        deleteOutput();
+        if (best != null) {
+            results.put(format, best);
+            logger.info("Export benchmark {}: {} rows, {} bytes in {} ms ({} rows/sec, {} bytes/sec, {} allocated bytes/sec)"
+                    , format, best.rows, best.bytes, TimeUnit.NANOSECONDS.toMillis(best.nanos), best.rowsPerSecond()
+                    , best.bytesPerSecond(), best.allocatedBytesPerSecond());
+        }
+    }
+
+    void writeReport(Path reportFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.write(NEW_LINE);
+            for (Map.Entry<String, Result> entry : results.entrySet()) {
+                Result result = entry.getValue();
+                writer.write(entry.getKey() + ',' + result.rows + ',' + result.bytes + ','
+                        + TimeUnit.NANOSECONDS.toMillis(result.nanos) + ',' + result.rowsPerSecond() + ','
+                        + result.bytesPerSecond() + ',' + result.allocatedBytesPerSecond());
+                writer.write(NEW_LINE);
+            }
+        }
+    }
+
+    /**
+     * Compares rows per second with the baseline report. Returns false if any format measured in
+     * both of them has become slower by more than the allowed percent.
+     */
+    boolean checkBaseline(Path baselineFile, double maxRegressionPercent) throws IOException {
+        Map<String, Long> baselineRowsPerSecond = new HashMap<>();
+        for (String line : Files.readAllLines(baselineFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (fields.length < 5 || line.equals(CSV_HEADER)) {
+                continue;
+            }
+            try {
+                baselineRowsPerSecond.put(fields[0], Long.valueOf(fields[4]));
+            } catch (NumberFormatException ex) {
+                logger.error("Baseline {} has invalid line '{}'. Skipping it", baselineFile, line);
+            }
+        }
+        boolean passed = true;
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            Long baseline = baselineRowsPerSecond.get(entry.getKey());
+            if (baseline == null || baseline == 0) {
+                continue;
+            }
+            long current = entry.getValue().rowsPerSecond();
+            double changePercent = (current - baseline) * 100.0 / baseline;
+            if (changePercent < -maxRegressionPercent) {
+                logger.error("Export benchmark {} regressed by {}%: {} rows/sec against {} rows/sec of the baseline"
+                        , entry.getKey(), String.format("%.1f", -changePercent), current, baseline);
+                passed = false;
+            } else {
+                logger.info("Export benchmark {} changed by {}% against the baseline"
+                        , entry.getKey(), String.format("%+.1f", changePercent));
+            }
+        }
+        return passed;
+    }
+
+    private long getOutputBytes() throws IOException {
+        long bytes = 0;
+        for (Path file : listOutput()) {
+            bytes += Files.size(file);
+        }
+        return bytes;
+    }
+
+    private void deleteOutput() throws IOException {
+        for (Path file : listOutput()) {
+            Files.delete(file);
+        }
+    }
+
+    private List<Path> listOutput() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(outputDirectory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(outputDirectory)) {
+            for (Path file : directory) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static class Result {
+
+        final long rows;
+        final long bytes;
+        final long nanos;
+        final long allocatedBytes;
+
+        Result(long rows, long bytes, long nanos, long allocatedBytes) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.nanos = Math.max(1, nanos);
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        long rowsPerSecond() {
+            return perSecond(rows);
+        }
+
+        long bytesPerSecond() {
+            return perSecond(bytes);
+        }
+
+        long allocatedBytesPerSecond() {
+            return allocatedBytes < 0 ? -1 : perSecond(allocatedBytes);
+        }
+
+        private long perSecond(long amount) {
+            return (long) (amount * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+        }
+    }
+
+}
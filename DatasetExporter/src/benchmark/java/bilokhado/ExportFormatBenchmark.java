@@ -0,0 +1,84 @@
+package bilokhado;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of exporting the synthetic table with exportSqlSet and retrieveAndSaveDataset.
+ * It is the JMH counterpart of ExportBenchmark, which measures whole runs against the baseline;
+ * run it with -prof gc for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportFormatBenchmark {
+
+    private static final String DATABASE = "export-format";
+    private static final String TABLE_NAME = "EXPORT_FORMAT";
+    private static final int ROWS = 20_000;
+
+    @Param({SyntheticDataGenerator.DEFAULT_COLUMNS, "BIGINT,INTEGER,VARCHAR(10)"})
+    public String columns;
+
+    private Connection connection;
+    private ExportSettings settings;
+    private Path outputDirectory;
+    private String baseFileName;
+
+    @Setup(Level.Trial)
+    public void generateTable() throws SQLException, IOException {
+        connection = BenchmarkDatabase.open(DATABASE);
+        BenchmarkDatabase.generateTable(connection, TABLE_NAME, columns, ROWS);
+        settings = new ExportSettings(BenchmarkDatabase.getExportProperties(DATABASE, TABLE_NAME));
+        outputDirectory = Files.createTempDirectory("export-format");
+        baseFileName = outputDirectory.resolve("dataset").toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void sql() {
+        DatasetExporter.exportSqlSet(connection, settings, baseFileName, new ExportMetrics());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void xml() {
+        DatasetExporter.retrieveAndSaveDataset(connection, settings, baseFileName, new ExportMetrics());
+    }
+
+    @TearDown(Level.Trial)
+    public void dropTable() throws SQLException, IOException {
+        BenchmarkDatabase.drop(connection);
+        connection.close();
+        try (DirectoryStream<Path> outputFiles = Files.newDirectoryStream(outputDirectory)) {
+            for (Path outputFile : outputFiles) {
+                Files.delete(outputFile);
+            }
+        }
+        Files.delete(outputDirectory);
+    }
+
+}
@@ -0,0 +1,166 @@
+package bilokhado;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts bytes allocated in the heap by all threads of the JVM, including the pool threads which
+ * finish before the count is read. Heap only grows by allocation and only shrinks by collection,
+ * so the allocated bytes are the growth of the used heap plus the bytes freed by the collections
+ * done in between, as reported by the GC notifications. Collections are identified by their numbers,
+ * which are read together with the used heap, so every collection in between is counted once.
+ * Notifications come asynchronously, so the count waits for the ones not delivered yet. Concurrent
+ * collectors free memory while the threads allocate, so with them the count is approximate.
+ */
+class HeapAllocationCounter implements NotificationListener, AutoCloseable {
+
+    private static final long NOTIFICATION_WAIT_MILLIS = 1000;
+
+    private final Set<String> heapPools = new HashSet<>();
+    private final List<NotificationEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final List<FinishedCollection> collections = new CopyOnWriteArrayList<>();
+    private final Snapshot start;
+
+    HeapAllocationCounter() {
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                heapPools.add(memoryPool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+                emitters.add((NotificationEmitter) collector);
+            }
+        }
+        start = Snapshot.take();
+    }
+
+    private static class FinishedCollection {
+
+        final String collector;
+        final long number;
+        final long freedBytes;
+
+        FinishedCollection(String collector, long number, long freedBytes) {
+            this.collector = collector;
+            this.number = number;
+            this.freedBytes = freedBytes;
+        }
+
+    }
+
+    /**
+     * Used heap together with the number of collections done by every collector.
+     */
+    private static class Snapshot {
+
+        final Map<String, Long> collections = new HashMap<>();
+        long usedBytes;
+
+        static Snapshot take() {
+            Snapshot snapshot = new Snapshot();
+            Map<String, Long> collectionsAfter;
+            do {
+                snapshot.collections.clear();
+                snapshot.collections.putAll(countCollections());
+                snapshot.usedBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+                collectionsAfter = countCollections();
+            } while (!collectionsAfter.equals(snapshot.collections));
+            return snapshot;
+        }
+
+        private static Map<String, Long> countCollections() {
+            Map<String, Long> collections = new HashMap<>();
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                collections.put(collector.getName(), Math.max(0, collector.getCollectionCount()));
+            }
+            return collections;
+        }
+
+        long getCollections(String collector) {
+            return collections.getOrDefault(collector, 0L);
+        }
+
+    }
+
+    /**
+     * Returns bytes allocated since the counter has been created or -1 if the notifications of the
+     * collections haven't come in time.
+     */
+    long getAllocatedBytes() throws InterruptedException {
+        Snapshot end = Snapshot.take();
+        long expectedCollections = 0;
+        for (Map.Entry<String, Long> collector : end.collections.entrySet()) {
+            expectedCollections += collector.getValue() - start.getCollections(collector.getKey());
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(NOTIFICATION_WAIT_MILLIS);
+        while (true) {
+            long notifiedCollections = 0;
+            long freedBytes = 0;
+            for (FinishedCollection collection : collections) {
+                if (collection.number > start.getCollections(collection.collector)
+                        && collection.number <= end.getCollections(collection.collector)) {
+                    notifiedCollections++;
+                    freedBytes += collection.freedBytes;
+                }
+            }
+            if (notifiedCollections >= expectedCollections) {
+                return Math.max(0, end.usedBytes - start.usedBytes + freedBytes);
+            }
+            if (System.nanoTime() > deadline) {
+                return -1;
+            }
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info
+                = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        Map<String, MemoryUsage> usageAfterGc = gcInfo.getMemoryUsageAfterGc();
+        long freedBytes = 0;
+        for (Map.Entry<String, MemoryUsage> usageBeforeGc : gcInfo.getMemoryUsageBeforeGc().entrySet()) {
+            MemoryUsage usageAfter = usageAfterGc.get(usageBeforeGc.getKey());
+            if (heapPools.contains(usageBeforeGc.getKey()) && usageAfter != null) {
+                freedBytes += usageBeforeGc.getValue().getUsed() - usageAfter.getUsed();
+            }
+        }
+        collections.add(new FinishedCollection(info.getGcName(), gcInfo.getId(), freedBytes));
+    }
+
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException ex) {
+                // Never registered, nothing to remove
+            }
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package bilokhado;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the exported INSERT script into the embedded database with the rows grouped into
+ * statements of the batch size, so the load time of the single-row statements can be compared
+ * with the multi-row ones. The script is exported once and kept in memory, the target table is
+ * emptied before every replay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InsertReplayBenchmark {
+
+    private static final String SOURCE_DATABASE = "replay-source";
+    private static final String TARGET_DATABASE = "replay-target";
+    private static final String TABLE_NAME = "REPLAY";
+    private static final int ROWS = 20_000;
+
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    private byte[] insertScript;
+    private Connection target;
+    private ConnectionPool targetPool;
+    private DatasetLoader loader;
+
+    @Setup(Level.Trial)
+    public void exportScript() throws IOException, SQLException, InterruptedException {
+        Path outputDirectory = Files.createTempDirectory("insert-replay");
+        String baseFileName = outputDirectory.resolve("replay").toString();
+        try (Connection source = BenchmarkDatabase.open(SOURCE_DATABASE)) {
+            BenchmarkDatabase.generateTable(source, TABLE_NAME, SyntheticDataGenerator.DEFAULT_COLUMNS, ROWS);
+            Properties properties = BenchmarkDatabase.getExportProperties(SOURCE_DATABASE, TABLE_NAME);
+            properties.setProperty(ExportSettings.BATCH_SIZE_OPTION, Integer.toString(batchSize));
+            DatasetExporter.exportSqlSet(source, new ExportSettings(properties), baseFileName, new ExportMetrics());
+            BenchmarkDatabase.drop(source);
+        }
+        insertScript = Files.readAllBytes(Paths.get(baseFileName + "-insert.sql"));
+        byte[] createScript = Files.readAllBytes(Paths.get(baseFileName + "-create.sql"));
+        for (String fileName : new String[] {baseFileName + "-insert.sql", baseFileName + "-create.sql"}) {
+            Files.delete(Paths.get(fileName));
+        }
+        Files.delete(outputDirectory);
+
+        target = BenchmarkDatabase.open(TARGET_DATABASE);
+        targetPool = new ConnectionPool(1, () -> BenchmarkDatabase.openUnchecked(TARGET_DATABASE));
+        loader = new DatasetLoader(targetPool, 1, 1000, 10_000);
+        loader.executeScript(new ByteArrayInputStream(createScript));
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTable() throws SQLException {
+        try (Statement statement = target.createStatement()) {
+            statement.execute("TRUNCATE TABLE " + TABLE_NAME);
+        }
+    }
+
+    @Benchmark
+    public void replay() throws IOException, SQLException, InterruptedException {
+        loader.executeScript(new ByteArrayInputStream(insertScript));
+    }
+
+    @TearDown(Level.Trial)
+    public void dropTarget() throws SQLException {
+        loader.close();
+        targetPool.close();
+        BenchmarkDatabase.drop(target);
+        target.close();
+    }
+
+}
@@ -0,0 +1,92 @@
+package bilokhado;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of exporting the synthetic table read through ThrottledDriver into the SQL
+ * output, with and without the pipelined fetch, format and write stages. The driver sleeps the
+ * same time for the rows in both, so the difference is how much of the formatting the pipeline
+ * hides behind the waiting for the rows. Compressed output is compressed when the temporary file
+ * of the table is appended to it, after all the rows are read, so the pipeline doesn't hide that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final String DATABASE = "pipeline";
+    private static final String TABLE_NAME = "PIPELINE";
+    private static final int ROWS = 10_000;
+
+    @Param({"0", "1000"})
+    public int pipelineRows;
+
+    @Param({"NONE", "GZIP"})
+    public String compression;
+
+    private Connection connection;
+    private ExportSettings settings;
+    private Path outputDirectory;
+    private String baseFileName;
+
+    @Setup(Level.Trial)
+    public void generateTable() throws SQLException, IOException {
+        connection = BenchmarkDatabase.open(DATABASE);
+        BenchmarkDatabase.generateTable(connection, TABLE_NAME, SyntheticDataGenerator.DEFAULT_COLUMNS, ROWS);
+        Properties properties = BenchmarkDatabase.getExportProperties(DATABASE, TABLE_NAME);
+        properties.setProperty(ExportSettings.OPTION_PREFIX + ConnectionSettings.URL_SUFFIX
+                , ThrottledDriver.getUrl(DATABASE));
+        properties.setProperty(ExportSettings.OPTION_PREFIX + ConnectionSettings.DRIVER_SUFFIX
+                , ThrottledDriver.class.getName());
+        properties.setProperty(ExportSettings.COMPRESSION_OPTION, compression);
+        properties.setProperty(ExportSettings.COMPRESSION_LEVEL_OPTION, "9");
+        properties.setProperty(ExportSettings.PIPELINE_ROWS_OPTION, Integer.toString(pipelineRows));
+        settings = new ExportSettings(properties);
+        outputDirectory = Files.createTempDirectory("pipeline");
+        baseFileName = outputDirectory.resolve("dataset").toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void export() {
+        DatasetExporter.exportDataset(settings, baseFileName, new ExportMetrics());
+    }
+
+    @TearDown(Level.Trial)
+    public void dropTable() throws SQLException, IOException {
+        BenchmarkDatabase.drop(connection);
+        connection.close();
+        try (DirectoryStream<Path> outputFiles = Files.newDirectoryStream(outputDirectory)) {
+            for (Path outputFile : outputFiles) {
+                Files.delete(outputFile);
+            }
+        }
+        Files.delete(outputDirectory);
+    }
+
+}
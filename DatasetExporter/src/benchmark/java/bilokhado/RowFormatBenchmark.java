@@ -0,0 +1,119 @@
+package bilokhado;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of formatting the VALUES lists of the INSERT statements from the result set of
+ * the embedded database. The column writers are compared with the formatting they have replaced,
+ * which read every value with getObject twice, joined the values with String.format and looked
+ * the quoted columns up in a list. Both read the same result set, so the difference is the cost
+ * of formatting.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RowFormatBenchmark {
+
+    private static final String DATABASE = "row-format";
+    private static final String TABLE_NAME = "ROW_FORMAT";
+    private static final String QUERY = "SELECT * FROM " + TABLE_NAME;
+    private static final int ROWS = 20_000;
+    private static final String INSERT_TEMPLATE = "%s%s";
+
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void generateTable() throws SQLException {
+        connection = BenchmarkDatabase.open(DATABASE);
+        BenchmarkDatabase.generateTable(connection, TABLE_NAME, SyntheticDataGenerator.DEFAULT_COLUMNS, ROWS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void columnWriters(Blackhole blackhole) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(QUERY)) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            ColumnWriter[] writers = new ColumnWriter[metaData.getColumnCount()];
+            for (int i = 1; i <= writers.length; i++) {
+                writers[i - 1] = ColumnWriter.forColumn(metaData, i, StandardDialect.H2);
+            }
+            StringBuilder valuesBuilder = new StringBuilder();
+            while (resultSet.next()) {
+                valuesBuilder.setLength(0);
+                valuesBuilder.append('(');
+                for (int i = 1; i <= writers.length; i++) {
+                    if (i > 1) {
+                        valuesBuilder.append(", ");
+                    }
+                    writers[i - 1].write(resultSet, i, valuesBuilder);
+                }
+                valuesBuilder.append(')');
+                blackhole.consume(valuesBuilder.length());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void stringFormat(Blackhole blackhole) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(QUERY)) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            List<Integer> escapeColumnValue = new ArrayList<>();
+            for (int i = 1; i <= columnCount; i++) {
+                if (metaData.getColumnType(i) == Types.VARCHAR) {
+                    escapeColumnValue.add(i);
+                }
+            }
+            StringBuilder valuesBuilder = new StringBuilder();
+            while (resultSet.next()) {
+                valuesBuilder.setLength(0);
+                valuesBuilder.append('(');
+                for (int i = 1; i <= columnCount; i++) {
+                    String value = resultSet.getObject(i) == null ? "NULL" : resultSet.getObject(i).toString();
+                    if (escapeColumnValue.contains(i) && !"NULL".equals(value)) {
+                        value = "'" + value + "'";
+                    }
+                    valuesBuilder.append(String.format(INSERT_TEMPLATE, i > 1 ? ", " : "", value));
+                }
+                valuesBuilder.append(')');
+                blackhole.consume(valuesBuilder.length());
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void dropTable() throws SQLException {
+        BenchmarkDatabase.drop(connection);
+        connection.close();
+    }
+
+}
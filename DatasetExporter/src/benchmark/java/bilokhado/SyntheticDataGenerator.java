@@ -0,0 +1,246 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fills the benchmark database with tables of random rows. Columns are described by the list of
+ * SQL types, e.g. BIGINT,VARCHAR(200),DECIMAL(18,2), so the type mix and the column widths of the
+ * real tables can be reproduced. Rows are generated from the seed, so every run exports the same data.
+ */
+class SyntheticDataGenerator {
+
+    static final String DEFAULT_COLUMNS
+            = "BIGINT,INTEGER,DECIMAL(18,2),DOUBLE,VARCHAR(40),VARCHAR(200),BOOLEAN,DATE,TIMESTAMP,VARBINARY(16)";
+
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticDataGenerator.class);
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("([A-Z]+)(?:\\((\\d+)(?:,\\s*(\\d+))?\\))?");
+    private static final Pattern COLUMN_SEPARATOR = Pattern.compile(",(?![^(]*\\))");
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final char[] TEXT_CHARACTERS
+            = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 '".toCharArray();
+    private static final long TIME_RANGE_MILLIS = TimeUnit.DAYS.toMillis(3650);
+    private static final long TIME_BASE_MILLIS = Timestamp.valueOf("2010-01-01 00:00:00").getTime();
+
+    private final Connection connection;
+    private final int nullPercent;
+    private final Random random;
+
+    SyntheticDataGenerator(Connection connection, int nullPercent, long seed) {
+        this.connection = connection;
+        this.nullPercent = nullPercent;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Parses the column types. Returns null if any of them is not supported.
+     */
+    static List<ColumnDescriptor> parseColumns(String columnTypes) {
+        List<ColumnDescriptor> columns = new ArrayList<>();
+        for (String columnType : COLUMN_SEPARATOR.split(columnTypes.trim())) {
+            Matcher matcher = COLUMN_PATTERN.matcher(columnType.trim().toUpperCase(Locale.ROOT));
+            if (!matcher.matches()) {
+                logger.error("Column type '{}' should be TYPE, TYPE(LENGTH) or TYPE(PRECISION,SCALE)", columnType);
+                return null;
+            }
+            int sqlType = getSqlType(matcher.group(1));
+            if (sqlType == Types.OTHER) {
+                logger.error("Column type '{}' is not supported by the generator", columnType);
+                return null;
+            }
+            int precision = matcher.group(2) == null ? 0 : Integer.parseInt(matcher.group(2));
+            int scale = matcher.group(3) == null ? 0 : Integer.parseInt(matcher.group(3));
+            if (precision == 0 && (sqlType == Types.VARCHAR || sqlType == Types.VARBINARY)) {
+                logger.error("Column type '{}' should have the length", columnType);
+                return null;
+            }
+            String name = "C" + (columns.size() + 1);
+            columns.add(new ColumnDescriptor(name, name, sqlType, matcher.group(1), precision, scale, true));
+        }
+        return columns;
+    }
+
+    /**
+     * Drops the table if it exists, creates it anew and inserts the rows in batches.
+     */
+    void generate(String tableName, List<ColumnDescriptor> columns, long rows) throws SQLException {
+        StringBuilder ddlBuilder = new StringBuilder("CREATE TABLE ").append(tableName).append(" (");
+        StringBuilder insertBuilder = new StringBuilder("INSERT INTO ").append(tableName).append(" VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnDescriptor column = columns.get(i);
+            ddlBuilder.append(i > 0 ? ", " : "").append(column.name).append(' ').append(column.typeName);
+            if (column.precision > 0) {
+                ddlBuilder.append('(').append(column.precision);
+                if (column.sqlType == Types.DECIMAL) {
+                    ddlBuilder.append(", ").append(column.scale);
+                }
+                ddlBuilder.append(')');
+            }
+            insertBuilder.append(i > 0 ? ", ?" : "?");
+        }
+        ddlBuilder.append(')');
+        insertBuilder.append(')');
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + tableName);
+            statement.execute(ddlBuilder.toString());
+        }
+        long startTime = System.nanoTime();
+        try (PreparedStatement insertStatement = connection.prepareStatement(insertBuilder.toString())) {
+            for (long row = 1; row <= rows; row++) {
+                for (int i = 0; i < columns.size(); i++) {
+                    setValue(insertStatement, i + 1, columns.get(i), row);
+                }
+                insertStatement.addBatch();
+                if (row % INSERT_BATCH_SIZE == 0 || row == rows) {
+                    insertStatement.executeBatch();
+                }
+            }
+        }
+        logger.info("Generated table {}: {} rows in {} ms"
+                , tableName, rows, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Sets random value of the column. The first BIGINT column is the row number, so it can serve as the key.
+     */
+    private void setValue(PreparedStatement statement, int index, ColumnDescriptor column, long row)
+            throws SQLException {
+        if (index == 1 && column.sqlType == Types.BIGINT) {
+            statement.setLong(index, row);
+            return;
+        }
+        if (random.nextInt(100) < nullPercent) {
+            statement.setNull(index, column.sqlType);
+            return;
+        }
+        switch (column.sqlType) {
+            case Types.SMALLINT:
+                statement.setShort(index, (short) random.nextInt());
+                break;
+
+            case Types.INTEGER:
+                statement.setInt(index, random.nextInt());
+                break;
+
+            case Types.BIGINT:
+                statement.setLong(index, random.nextLong());
+                break;
+
+            case Types.REAL:
+                statement.setFloat(index, random.nextFloat() * 1000);
+                break;
+
+            case Types.DOUBLE:
+                statement.setDouble(index, random.nextGaussian() * 1000000);
+                break;
+
+            case Types.DECIMAL:
+                statement.setBigDecimal(index, getDecimal(column.precision, column.scale));
+                break;
+
+            case Types.BOOLEAN:
+                statement.setBoolean(index, random.nextBoolean());
+                break;
+
+            case Types.DATE:
+                statement.setDate(index, new Date(TIME_BASE_MILLIS + TimeUnit.DAYS.toMillis(random.nextInt(3650))));
+                break;
+
+            case Types.TIMESTAMP:
+                statement.setTimestamp(index, new Timestamp(TIME_BASE_MILLIS + (long) (random.nextDouble() * TIME_RANGE_MILLIS)));
+                break;
+
+            case Types.VARCHAR:
+                statement.setString(index, getText(column.precision));
+                break;
+
+            case Types.VARBINARY:
+                byte[] value = new byte[1 + random.nextInt(column.precision)];
+                random.nextBytes(value);
+                statement.setBytes(index, value);
+                break;
+
+            default:
+                throw new IllegalStateException("Unexpected column type " + column.typeName);
+        }
+    }
+
+    private BigDecimal getDecimal(int precision, int scale) {
+        int digits = Math.max(1, Math.min(precision == 0 ? 10 : precision, 18));
+        long bound = 1;
+        for (int i = 0; i < digits; i++) {
+            bound *= 10;
+        }
+        return BigDecimal.valueOf((long) (random.nextDouble() * bound), Math.min(scale, digits));
+    }
+
+    /**
+     * Returns text from half to the full length of the column, so the average width is 3/4 of it.
+     */
+    private String getText(int maxLength) {
+        char[] text = new char[maxLength - random.nextInt(maxLength / 2 + 1)];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = TEXT_CHARACTERS[random.nextInt(TEXT_CHARACTERS.length)];
+        }
+        return new String(text);
+    }
+
+    private static int getSqlType(String typeName) {
+        switch (typeName) {
+            case "SMALLINT":
+                return Types.SMALLINT;
+
+            case "INT":
+            case "INTEGER":
+                return Types.INTEGER;
+
+            case "BIGINT":
+                return Types.BIGINT;
+
+            case "REAL":
+                return Types.REAL;
+
+            case "DOUBLE":
+                return Types.DOUBLE;
+
+            case "DECIMAL":
+            case "NUMERIC":
+                return Types.DECIMAL;
+
+            case "BOOLEAN":
+                return Types.BOOLEAN;
+
+            case "DATE":
+                return Types.DATE;
+
+            case "TIMESTAMP":
+                return Types.TIMESTAMP;
+
+            case "VARCHAR":
+                return Types.VARCHAR;
+
+            case "VARBINARY":
+                return Types.VARBINARY;
+
+            default:
+                return Types.OTHER;
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package bilokhado;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Driver delaying the rows of the embedded database the way the network delays the rows of the
+ * remote one: every result set sleeps after each block of rows it returns. Url is the url of the
+ * wrapped database with the throttled prefix, e.g. jdbc:throttled:h2:mem:name, so the export
+ * spends the same time waiting for the rows however fast the embedded database is.
+ */
+public final class ThrottledDriver implements Driver {
+
+    static final String URL_PREFIX = "jdbc:throttled:";
+    static final int ROWS_PER_DELAY = 100;
+    static final long DELAY_MILLIS = 4;
+
+    static {
+        try {
+            DriverManager.registerDriver(new ThrottledDriver());
+        } catch (SQLException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    static String getUrl(String databaseName) {
+        return URL_PREFIX + BenchmarkDatabase.getUrl(databaseName).substring("jdbc:".length());
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        Connection connection = DriverManager.getConnection("jdbc:" + url.substring(URL_PREFIX.length()), info);
+        return wrap(Connection.class, connection);
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    /**
+     * Returns proxy of the connection, statement or result set wrapping the statements and result
+     * sets it returns in turn, so the rows of every query are throttled.
+     */
+    private static <T> T wrap(Class<T> type, T target) {
+        int[] rows = new int[1];
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(method, target, args);
+            if (result instanceof ResultSet && !(result instanceof Proxy)) {
+                return wrap(ResultSet.class, (ResultSet) result);
+            }
+            if (result instanceof Statement && !(result instanceof Proxy) && method.getName().endsWith("Statement")) {
+                return wrap(method.getReturnType().asSubclass(Statement.class), (Statement) result);
+            }
+            if (target instanceof ResultSet && "next".equals(method.getName()) && Boolean.TRUE.equals(result)
+                    && ++rows[0] % ROWS_PER_DELAY == 0) {
+                TimeUnit.MILLISECONDS.sleep(DELAY_MILLIS);
+            }
+            return result;
+        };
+        return type.cast(Proxy.newProxyInstance(ThrottledDriver.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package bilokhado;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.Random;
+
+import static bilokhado.IntegrationTestSupport.MIXED_TABLE;
+import static bilokhado.IntegrationTestSupport.MIXED_TABLE_DDL;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Writes literals of the random values with the column writers of the dialect and executes them
+ * in the database, which should store the same values as the ones the literals are written from.
+ */
+public class ColumnWriterIT {
+
+    private static final String ROWS_QUERY = "SELECT * FROM " + MIXED_TABLE + " ORDER BY ID";
+    private static final String SPECIAL_VALUES_TABLE = "SPECIAL";
+
+    private Connection source;
+    private Connection target;
+
+    @Before
+    public void openDatabases() throws Exception {
+        source = IntegrationTestSupport.openDatabase("literal-source");
+        target = IntegrationTestSupport.openDatabase("literal-target");
+    }
+
+    @After
+    public void closeDatabases() throws Exception {
+        IntegrationTestSupport.execute(source, "DROP ALL OBJECTS");
+        IntegrationTestSupport.execute(target, "DROP ALL OBJECTS");
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void randomValuesRoundTrip() throws Exception {
+        IntegrationTestSupport.execute(source, MIXED_TABLE_DDL);
+        IntegrationTestSupport.fillMixedTable(source, 1, 2000, 5);
+        for (StandardDialect dialect : new StandardDialect[] {StandardDialect.H2, StandardDialect.PRESTO}) {
+            IntegrationTestSupport.execute(target, "DROP TABLE IF EXISTS " + MIXED_TABLE, MIXED_TABLE_DDL);
+            copyWithLiterals(MIXED_TABLE, dialect);
+            assertEquals(dialect.name(), IntegrationTestSupport.readRows(source, ROWS_QUERY)
+                    , IntegrationTestSupport.readRows(target, ROWS_QUERY));
+        }
+    }
+
+    @Test
+    public void boundaryValuesRoundTrip() throws Exception {
+        String ddl = "CREATE TABLE " + SPECIAL_VALUES_TABLE + " (ID INTEGER, TI TINYINT, BI BIGINT, D DECIMAL(38, 18)"
+                + ", F DOUBLE, R REAL, V VARCHAR, DT DATE, T TIME(9), TS TIMESTAMP(9), BIN VARBINARY)";
+        IntegrationTestSupport.execute(source, ddl
+                , "INSERT INTO " + SPECIAL_VALUES_TABLE + " VALUES (1, -128, -9223372036854775808"
+                        + ", -99999999999999999999.999999999999999999, 4.9E-324, 1.4E-45, '', DATE '0001-01-01'"
+                        + ", TIME '00:00:00', TIMESTAMP '0001-01-01 00:00:00', X'')"
+                , "INSERT INTO " + SPECIAL_VALUES_TABLE + " VALUES (2, 127, 9223372036854775807"
+                        + ", 0.000000000000000001, 1.7976931348623157E308, 3.4028235E38, '''''', DATE '9999-12-31'"
+                        + ", TIME '23:59:59.999999999', TIMESTAMP '9999-12-31 23:59:59.999999999', X'00FF')"
+                , "INSERT INTO " + SPECIAL_VALUES_TABLE + " VALUES (3, 0, 0, 0, -0.0, 0.1, 'line1' || CHAR(13) || CHAR(10)"
+                        + " || 'line2\\' || CHAR(0) || '\ud83d\ude00', DATE '2000-02-29', TIME '12:00:00.5'"
+                        + ", TIMESTAMP '1582-10-10 01:02:03.000000001', X'0102')"
+                , "INSERT INTO " + SPECIAL_VALUES_TABLE + " VALUES (4, NULL, NULL, NULL, NULL, NULL, NULL, NULL"
+                        + ", NULL, NULL, NULL)");
+        IntegrationTestSupport.execute(target, ddl);
+        copyWithLiterals(SPECIAL_VALUES_TABLE, StandardDialect.H2);
+        String query = "SELECT * FROM " + SPECIAL_VALUES_TABLE + " ORDER BY ID";
+        assertEquals(IntegrationTestSupport.readRows(source, query), IntegrationTestSupport.readRows(target, query));
+    }
+
+    @Test
+    public void randomStringsRoundTrip() throws Exception {
+        Random random = new Random(7);
+        StringBuilder literalBuilder = new StringBuilder();
+        try (Statement statement = target.createStatement()) {
+            for (int i = 0; i < 5000; i++) {
+                String value = IntegrationTestSupport.randomString(random, 1 + random.nextInt(50));
+                literalBuilder.setLength(0);
+                ColumnWriter.appendQuoted(value, literalBuilder);
+                try (ResultSet resultSet = statement.executeQuery("SELECT " + literalBuilder)) {
+                    resultSet.next();
+                    assertEquals(literalBuilder.toString(), value, resultSet.getString(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the rows of the source table to the same table of the target with INSERT statements
+     * built from the literals of the column writers.
+     */
+    private void copyWithLiterals(String tableName, SqlDialect dialect) throws Exception {
+        try (Statement sourceStatement = source.createStatement();
+             ResultSet resultSet = sourceStatement.executeQuery("SELECT * FROM " + tableName);
+             Statement targetStatement = target.createStatement()) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            ColumnWriter[] writers = new ColumnWriter[metaData.getColumnCount()];
+            for (int i = 1; i <= writers.length; i++) {
+                writers[i - 1] = ColumnWriter.forColumn(metaData, i, dialect);
+            }
+            StringBuilder insertBuilder = new StringBuilder();
+            while (resultSet.next()) {
+                insertBuilder.setLength(0);
+                insertBuilder.append("INSERT INTO ").append(tableName).append(" VALUES (");
+                for (int i = 1; i <= writers.length; i++) {
+                    insertBuilder.append(i > 1 ? ", " : "");
+                    writers[i - 1].write(resultSet, i, insertBuilder);
+                }
+                targetStatement.execute(insertBuilder.append(')').toString());
+            }
+        }
+    }
+
+}
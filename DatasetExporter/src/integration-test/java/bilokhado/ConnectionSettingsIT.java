@@ -0,0 +1,34 @@
+package bilokhado;
+
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class ConnectionSettingsIT {
+
+    private static final String H2_URL = "jdbc:h2:mem:connection-settings";
+
+    @Test
+    public void connectsWithUrlOnly() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(ExportSettings.OPTION_PREFIX + ConnectionSettings.URL_SUFFIX, H2_URL);
+        try (Connection connection = new ExportSettings(properties).getConnectionSettings().openConnection()) {
+            assertNotNull(connection);
+            assertEquals(H2_URL, connection.getMetaData().getURL());
+        }
+    }
+
+    @Test
+    public void connectsWithDefaults() throws Exception {
+        ConnectionSettings settings = ConnectionSettings.fromProperties(new Properties(), ExportSettings.OPTION_PREFIX
+                , H2_URL, "org.h2.Driver");
+        try (Connection connection = settings.openConnection()) {
+            assertNotNull(connection);
+        }
+    }
+
+}
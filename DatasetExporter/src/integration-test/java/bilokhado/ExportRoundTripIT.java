@@ -0,0 +1,350 @@
+package bilokhado;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+import static bilokhado.IntegrationTestSupport.MIXED_TABLE;
+import static bilokhado.IntegrationTestSupport.MIXED_TABLE_DDL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exports the table of random rows from one embedded database, loads the output into another one
+ * and compares the rows of both.
+ */
+public class ExportRoundTripIT {
+
+    private static final String SOURCE_DATABASE = "export-source";
+    private static final String TARGET_DATABASE = "export-target";
+    private static final String ROWS_QUERY = "SELECT * FROM " + MIXED_TABLE + " ORDER BY ID";
+    private static final int ROWS = 1000;
+
+    /**
+     * Rows with the greater id fail the CHECK_ROW function used by the resume test.
+     */
+    private static volatile long failAfterId = Long.MAX_VALUE;
+
+    @Rule
+    public TemporaryFolder outputFolder = new TemporaryFolder();
+
+    private Connection source;
+    private Connection target;
+    private String baseFileName;
+
+    @Before
+    public void openDatabases() throws Exception {
+        source = IntegrationTestSupport.openDatabase(SOURCE_DATABASE);
+        target = IntegrationTestSupport.openDatabase(TARGET_DATABASE);
+        IntegrationTestSupport.execute(source, MIXED_TABLE_DDL);
+        IntegrationTestSupport.fillMixedTable(source, 1, ROWS, 11);
+        baseFileName = outputFolder.getRoot().toPath().resolve("dataset").toString();
+    }
+
+    @After
+    public void closeDatabases() throws Exception {
+        failAfterId = Long.MAX_VALUE;
+        IntegrationTestSupport.execute(source, "DROP ALL OBJECTS");
+        IntegrationTestSupport.execute(target, "DROP ALL OBJECTS");
+        source.close();
+        target.close();
+    }
+
+    /**
+     * Called by H2 for every row of the resume test query.
+     */
+    public static boolean checkRow(long id) throws SQLException {
+        if (id > failAfterId) {
+            throw new SQLException("Connection lost at row " + id);
+        }
+        return true;
+    }
+
+    @Test
+    public void sqlRoundTrip() throws Exception {
+        IntegrationTestSupport.export(IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE)
+                , baseFileName);
+        loadSqlOutput();
+        assertSameRows();
+    }
+
+    @Test
+    public void gzipRoundTrip() throws Exception {
+        compressedRoundTrip(OutputCodec.GZIP, ".gz");
+    }
+
+    @Test
+    public void deflateRoundTrip() throws Exception {
+        compressedRoundTrip(OutputCodec.DEFLATE, ".deflate");
+    }
+
+    @Test
+    public void xmlRoundTrip() throws Exception {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE);
+        properties.setProperty(ExportSettings.FORMAT_OPTION, ExportSettings.FORMAT_XML);
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.execute(target, MIXED_TABLE_DDL);
+        assertEquals(ROWS, IntegrationTestSupport.load(TARGET_DATABASE, baseFileName + ".xml", true));
+        assertSameRows();
+    }
+
+    @Test
+    public void columnarRoundTrip() throws Exception {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE);
+        properties.setProperty(ExportSettings.FORMAT_OPTION, ExportSettings.FORMAT_COLUMNAR);
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.execute(target, MIXED_TABLE_DDL);
+        assertEquals(ROWS, new ColumnarDatasetLoader(target).load(Paths.get(baseFileName + ".cds")));
+        assertSameRows();
+    }
+
+    @Test
+    public void splitRoundTrip() throws Exception {
+        Properties properties = getSplitProperties();
+        IntegrationTestSupport.export(properties, baseFileName);
+        loadSqlOutput();
+        assertSameRows();
+    }
+
+    @Test
+    public void splitSlicedRoundTrip() throws Exception {
+        Properties properties = getSplitProperties();
+        properties.setProperty(ExportSettings.RANGE_KEY_OPTION + "." + MIXED_TABLE, "ID");
+        properties.setProperty(ExportSettings.RANGE_FROM_OPTION + "." + MIXED_TABLE, "101");
+        properties.setProperty(ExportSettings.RANGE_TO_OPTION + "." + MIXED_TABLE, "601");
+        IntegrationTestSupport.export(properties, baseFileName);
+        assertEquals(500, loadSqlOutputRows());
+        assertSameRows("SELECT * FROM " + MIXED_TABLE + " WHERE ID >= 101 AND ID < 601 ORDER BY ID");
+    }
+
+    @Test
+    public void splitSampledRoundTrip() throws Exception {
+        Properties properties = getSplitProperties();
+        properties.setProperty(ExportSettings.RANGE_KEY_OPTION + "." + MIXED_TABLE, "ID");
+        properties.setProperty(ExportSettings.RANGE_FROM_OPTION + "." + MIXED_TABLE, "101");
+        properties.setProperty(ExportSettings.RANGE_TO_OPTION + "." + MIXED_TABLE, "601");
+        properties.setProperty(ExportSettings.SAMPLE_PERCENT_OPTION + "." + MIXED_TABLE, "50");
+        properties.setProperty(ExportSettings.SAMPLE_METHOD_OPTION + "." + MIXED_TABLE, TableSample.METHOD_CLIENT);
+        properties.setProperty(ExportSettings.SAMPLE_SEED_OPTION + "." + MIXED_TABLE, "7");
+        IntegrationTestSupport.export(properties, baseFileName);
+        long rows = loadSqlOutputRows();
+        assertTrue("Sampled rows " + rows, rows > 150 && rows < 350);
+        assertEquals(rows, countRows(target, "ID >= 101 AND ID < 601"));
+        assertSameRows("SELECT * FROM " + MIXED_TABLE + " WHERE ID IN ("
+                + joinIds(target, "SELECT ID FROM " + MIXED_TABLE) + ") ORDER BY ID");
+    }
+
+    @Test
+    public void splitLimitedNotSplit() throws Exception {
+        Properties properties = getSplitProperties();
+        properties.setProperty(ExportSettings.LIMIT_OPTION + "." + MIXED_TABLE, "100");
+        IntegrationTestSupport.export(properties, baseFileName);
+        assertEquals(100, loadSqlOutputRows());
+
+        IntegrationTestSupport.execute(target, "DROP ALL OBJECTS");
+        properties = getSplitProperties();
+        properties.setProperty(ExportSettings.MAX_ROWS_OPTION + "." + MIXED_TABLE, "100");
+        IntegrationTestSupport.export(properties, baseFileName);
+        assertEquals(100, loadSqlOutputRows());
+    }
+
+    @Test
+    public void resumedRoundTrip() throws Exception {
+        IntegrationTestSupport.execute(source, "CREATE ALIAS CHECK_ROW FOR \""
+                + ExportRoundTripIT.class.getName() + ".checkRow\"");
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE);
+        properties.setProperty(MIXED_TABLE, "SELECT * FROM " + MIXED_TABLE + " WHERE CHECK_ROW(ID)");
+        properties.setProperty(ExportSettings.RESUME_OPTION, "true");
+        properties.setProperty(ExportSettings.ORDER_KEY_OPTION + "." + MIXED_TABLE, "ID");
+        properties.setProperty(ExportSettings.CHECKPOINT_ROWS_OPTION + "." + MIXED_TABLE, "50");
+        failAfterId = ROWS / 2;
+        IntegrationTestSupport.export(properties, baseFileName);
+        assertTrue(Files.isDirectory(Paths.get(baseFileName + "-chunks")));
+        assertFalse(Files.exists(Paths.get(baseFileName + "-insert.sql")));
+
+        failAfterId = Long.MAX_VALUE;
+        IntegrationTestSupport.export(properties, baseFileName);
+        assertFalse(Files.exists(Paths.get(baseFileName + "-chunks")));
+        loadSqlOutput();
+        assertSameRows();
+    }
+
+    @Test
+    public void failedTableSkipped() throws Exception {
+        exportWithFailedTable(IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE));
+        loadSqlOutput();
+        assertSameRows();
+    }
+
+    @Test
+    public void pipelinedRoundTrip() throws Exception {
+        IntegrationTestSupport.export(getPipelineProperties(), baseFileName);
+        loadSqlOutput();
+        assertSameRows();
+    }
+
+    @Test
+    public void pipelinedFailedTableSkipped() throws Exception {
+        exportWithFailedTable(getPipelineProperties());
+        loadSqlOutput();
+        assertSameRows();
+    }
+
+    @Test
+    public void deltaRoundTrip() throws Exception {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE);
+        properties.setProperty(ExportSettings.DELTA_OPTION, "true");
+        properties.setProperty(ExportSettings.DELTA_KEY_OPTION + "." + MIXED_TABLE, "ID");
+        IntegrationTestSupport.execute(target, MIXED_TABLE_DDL);
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.executeScript(TARGET_DATABASE, baseFileName + "-delta.sql");
+        assertSameRows();
+
+        IntegrationTestSupport.execute(source, "DELETE FROM " + MIXED_TABLE + " WHERE MOD(ID, 7) = 0"
+                , "UPDATE " + MIXED_TABLE + " SET V = 'x''y', I = NULL WHERE MOD(ID, 5) = 0"
+                , "UPDATE " + MIXED_TABLE + " SET TS = NULL, BIN = X'00' WHERE MOD(ID, 11) = 0");
+        IntegrationTestSupport.fillMixedTable(source, ROWS + 1, ROWS / 10, 13);
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.executeScript(TARGET_DATABASE, baseFileName + "-delta.sql");
+        assertSameRows();
+    }
+
+    @Test
+    public void deltaKeyTypesRoundTrip() throws Exception {
+        String[] tables = {"NAMED", "DATED", "PRICED"};
+        String[] keyColumns = {"NAME", "DT", "PRICE"};
+        String[] keyTypes = {"VARCHAR(20)", "DATE", "DECIMAL(10, 2)"};
+        String[] keyValues = {"'key ''' || X", "DATEADD('DAY', X, DATE '1500-01-01')", "X / 4.0"};
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, tables);
+        properties.setProperty(ExportSettings.DELTA_OPTION, "true");
+        for (int i = 0; i < tables.length; i++) {
+            String ddl = "CREATE TABLE " + tables[i] + " (" + keyColumns[i] + " " + keyTypes[i]
+                    + " PRIMARY KEY, \"VALUE\" INTEGER)";
+            IntegrationTestSupport.execute(source, ddl, "INSERT INTO " + tables[i] + " SELECT " + keyValues[i]
+                    + ", X FROM SYSTEM_RANGE(1, 200)");
+            IntegrationTestSupport.execute(target, ddl);
+            properties.setProperty(ExportSettings.DELTA_KEY_OPTION + "." + tables[i], keyColumns[i]);
+        }
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.executeScript(TARGET_DATABASE, baseFileName + "-delta.sql");
+        assertSameRows(tables, keyColumns);
+
+        for (int i = 0; i < tables.length; i++) {
+            IntegrationTestSupport.execute(source, "DELETE FROM " + tables[i] + " WHERE MOD(\"VALUE\", 7) = 0"
+                    , "UPDATE " + tables[i] + " SET \"VALUE\" = -\"VALUE\" WHERE MOD(\"VALUE\", 5) = 0"
+                    , "INSERT INTO " + tables[i] + " SELECT " + keyValues[i] + ", X FROM SYSTEM_RANGE(201, 220)");
+        }
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.executeScript(TARGET_DATABASE, baseFileName + "-delta.sql");
+        assertSameRows(tables, keyColumns);
+    }
+
+    /**
+     * Returns properties of the export through the pipeline with several blocks and batches per block.
+     */
+    private Properties getPipelineProperties() {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE);
+        properties.setProperty(ExportSettings.PIPELINE_ROWS_OPTION, "64");
+        properties.setProperty(ExportSettings.BATCH_SIZE_OPTION, "10");
+        return properties;
+    }
+
+    /**
+     * Exports the tables of the properties together with the table whose query fails in the middle
+     * of the rows, after some of them have been written.
+     */
+    private void exportWithFailedTable(Properties properties) throws SQLException {
+        IntegrationTestSupport.execute(source, "CREATE ALIAS CHECK_ROW FOR \""
+                + ExportRoundTripIT.class.getName() + ".checkRow\"");
+        properties.setProperty(ExportSettings.OPTION_PREFIX + ConnectionSettings.URL_SUFFIX
+                , IntegrationTestSupport.getUrl(SOURCE_DATABASE) + ";LAZY_QUERY_EXECUTION=1");
+        properties.setProperty("BROKEN", "SELECT * FROM " + MIXED_TABLE + " WHERE CHECK_ROW(ID)");
+        failAfterId = ROWS / 2;
+        IntegrationTestSupport.export(properties, baseFileName);
+    }
+
+    private Properties getSplitProperties() {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE);
+        properties.setProperty(ExportSettings.THREADS_OPTION, "3");
+        properties.setProperty(ExportSettings.SPLIT_COLUMN_OPTION + "." + MIXED_TABLE, "ID");
+        properties.setProperty(ExportSettings.SPLITS_OPTION + "." + MIXED_TABLE, "4");
+        return properties;
+    }
+
+    /**
+     * Exports the compressed SQL output and loads it with the load command, which decodes the
+     * files by their extension.
+     */
+    private void compressedRoundTrip(OutputCodec codec, String extension) throws Exception {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE);
+        properties.setProperty(ExportSettings.COMPRESSION_OPTION, codec.name());
+        IntegrationTestSupport.export(properties, baseFileName);
+        String createFileName = baseFileName + "-create.sql" + extension;
+        String insertFileName = baseFileName + "-insert.sql" + extension;
+        assertTrue(Files.exists(Paths.get(createFileName)));
+        assertTrue(Files.exists(Paths.get(insertFileName)));
+        assertFalse(Files.exists(Paths.get(baseFileName + "-insert.sql")));
+        Properties loadProperties = new Properties();
+        loadProperties.setProperty(LoadSettings.OPTION_PREFIX + ConnectionSettings.URL_SUFFIX
+                , IntegrationTestSupport.getUrl(TARGET_DATABASE));
+        loadProperties.setProperty(LoadSettings.FILE_OPTION, insertFileName);
+        loadProperties.setProperty(LoadSettings.CREATE_FILE_OPTION, createFileName);
+        File loadPropertiesFile = outputFolder.newFile("load.properties");
+        try (OutputStream output = new FileOutputStream(loadPropertiesFile)) {
+            loadProperties.store(output, null);
+        }
+        DatasetExporter.main(new String[] {"load", loadPropertiesFile.getPath()});
+        assertSameRows();
+    }
+
+    private void loadSqlOutput() throws Exception {
+        assertEquals(ROWS, loadSqlOutputRows());
+    }
+
+    private long loadSqlOutputRows() throws Exception {
+        IntegrationTestSupport.executeScript(TARGET_DATABASE, baseFileName + "-create.sql");
+        return IntegrationTestSupport.load(TARGET_DATABASE, baseFileName + "-insert.sql", false);
+    }
+
+    private static long countRows(Connection connection, String condition) throws SQLException {
+        return Long.parseLong(IntegrationTestSupport.readRows(connection, "SELECT COUNT(*) FROM " + MIXED_TABLE
+                + " WHERE " + condition).get(0));
+    }
+
+    private static String joinIds(Connection connection, String idsQuery) throws SQLException {
+        return String.join(", ", IntegrationTestSupport.readRows(connection, idsQuery));
+    }
+
+    private void assertSameRows() throws SQLException {
+        assertSameRows(ROWS_QUERY);
+    }
+
+    private void assertSameRows(String[] tables, String[] keyColumns) throws SQLException {
+        for (int i = 0; i < tables.length; i++) {
+            assertSameRows("SELECT * FROM " + tables[i] + " ORDER BY " + keyColumns[i]);
+        }
+    }
+
+    private void assertSameRows(String query) throws SQLException {
+        List<String> sourceRows = IntegrationTestSupport.readRows(source, query);
+        List<String> targetRows = IntegrationTestSupport.readRows(target, query);
+        for (int i = 0; i < Math.min(sourceRows.size(), targetRows.size()); i++) {
+            assertEquals("Row " + (i + 1), sourceRows.get(i), targetRows.get(i));
+        }
+        assertEquals("Rows", sourceRows.size(), targetRows.size());
+    }
+
+}
@@ -0,0 +1,207 @@
+package bilokhado;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Embedded H2 databases and random rows of all the common column types for the integration tests.
+ * Rows are generated from the seed, so a failure can be reproduced.
+ */
+final class IntegrationTestSupport {
+
+    static final String MIXED_TABLE = "MIXED";
+    static final String MIXED_TABLE_DDL = "CREATE TABLE " + MIXED_TABLE + " (ID BIGINT PRIMARY KEY, I INTEGER"
+            + ", S SMALLINT, D DECIMAL(20, 4), F DOUBLE, R REAL, B BOOLEAN, V VARCHAR(200), C CHAR(5), DT DATE"
+            + ", T TIME, TS TIMESTAMP, BIN VARBINARY(32))";
+
+    private static final long FIRST_TIMESTAMP_MILLIS = Timestamp.valueOf("0001-01-01 00:00:00").getTime();
+    private static final long TIMESTAMP_RANGE_MILLIS
+            = Timestamp.valueOf("9999-12-31 23:59:59").getTime() - FIRST_TIMESTAMP_MILLIS;
+    private static final String SPECIAL_CHARACTERS = "'\"\\\n\r\t;,()%_-- /* */ \u00e9\u0416\u4e2d\u00a0";
+
+    private IntegrationTestSupport() {
+    }
+
+    static String getUrl(String databaseName) {
+        return "jdbc:h2:mem:" + databaseName + ";DB_CLOSE_DELAY=-1";
+    }
+
+    static Connection openDatabase(String databaseName) throws SQLException {
+        return DriverManager.getConnection(getUrl(databaseName));
+    }
+
+    static void execute(Connection connection, String... statements) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    /**
+     * Returns export properties reading the tables of the database with their own queries,
+     * written in the H2 dialect.
+     */
+    static Properties getExportProperties(String databaseName, String... tableNames) {
+        Properties properties = new Properties();
+        properties.setProperty(ExportSettings.OPTION_PREFIX + ConnectionSettings.URL_SUFFIX, getUrl(databaseName));
+        properties.setProperty(ExportSettings.OPTION_PREFIX + "dialect", "h2");
+        for (String tableName : tableNames) {
+            properties.setProperty(tableName, "SELECT * FROM " + tableName);
+        }
+        return properties;
+    }
+
+    static void export(Properties properties, String baseFileName) {
+        DatasetExporter.exportDataset(new ExportSettings(properties), baseFileName, new ExportMetrics());
+    }
+
+    /**
+     * Executes the script of the exporter, DDL or delta, with the loader.
+     */
+    static void executeScript(String databaseName, String scriptFileName) throws Exception {
+        try (ConnectionPool connectionPool = new ConnectionPool(1, () -> openConnection(databaseName));
+             DatasetLoader loader = new DatasetLoader(connectionPool, 1, 100, 1000);
+             InputStream script = Files.newInputStream(Paths.get(scriptFileName))) {
+            loader.executeScript(script);
+        }
+    }
+
+    /**
+     * Loads the SQL inserts or the flat XML dataset with the loader and returns number of rows.
+     */
+    static long load(String databaseName, String datasetFileName, boolean xml) throws Exception {
+        return load(databaseName, datasetFileName, xml, 2);
+    }
+
+    /**
+     * Loads the dataset with the given number of table workers, one to load the tables in order.
+     */
+    static long load(String databaseName, String datasetFileName, boolean xml, int threads) throws Exception {
+        try (ConnectionPool connectionPool = new ConnectionPool(threads, () -> openConnection(databaseName));
+             DatasetLoader loader = new DatasetLoader(connectionPool, threads, 100, 1000);
+             InputStream dataset = Files.newInputStream(Paths.get(datasetFileName))) {
+            return xml ? loader.loadFlatXml(dataset) : loader.loadSqlInserts(dataset);
+        }
+    }
+
+    /**
+     * Inserts rows with random values, nulls and the characters which need escaping included.
+     */
+    static void fillMixedTable(Connection connection, int firstId, int rows, long seed) throws SQLException {
+        Random random = new Random(seed);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + MIXED_TABLE + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int row = 0; row < rows; row++) {
+                insert.setLong(1, firstId + row);
+                setOrNull(insert, 2, random, Types.INTEGER, random.nextInt());
+                setOrNull(insert, 3, random, Types.SMALLINT, (short) random.nextInt());
+                setOrNull(insert, 4, random, Types.DECIMAL
+                        , BigDecimal.valueOf(random.nextLong() % 10_000_000_000_000_000L, 4));
+                setOrNull(insert, 5, random, Types.DOUBLE, randomDouble(random));
+                setOrNull(insert, 6, random, Types.REAL, (float) randomDouble(random));
+                setOrNull(insert, 7, random, Types.BOOLEAN, random.nextBoolean());
+                setOrNull(insert, 8, random, Types.VARCHAR, randomString(random, 200));
+                setOrNull(insert, 9, random, Types.CHAR, randomString(random, 5).trim());
+                setOrNull(insert, 10, random, Types.DATE
+                        , Date.valueOf(String.format("%04d-%02d-%02d", 1 + random.nextInt(9999), 1 + random.nextInt(12)
+                                , 1 + random.nextInt(28))));
+                setOrNull(insert, 11, random, Types.TIME, Time.valueOf(String.format("%02d:%02d:%02d"
+                        , random.nextInt(24), random.nextInt(60), random.nextInt(60))));
+                Timestamp timestamp = new Timestamp(FIRST_TIMESTAMP_MILLIS
+                        + Math.floorMod(random.nextLong(), TIMESTAMP_RANGE_MILLIS));
+                timestamp.setNanos(random.nextInt(1_000_000) * 1000);
+                setOrNull(insert, 12, random, Types.TIMESTAMP, timestamp);
+                byte[] binary = new byte[random.nextInt(33)];
+                random.nextBytes(binary);
+                setOrNull(insert, 13, random, Types.VARBINARY, binary);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Returns every row of the query as the text of its column values.
+     */
+    static List<String> readRows(Connection connection, String query) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(query)) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder rowBuilder = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    rowBuilder.append(i > 1 ? " | " : "").append(resultSet.getString(i));
+                }
+                rows.add(rowBuilder.toString());
+            }
+        }
+        return rows;
+    }
+
+    static String randomString(Random random, int maxLength) {
+        int length = random.nextInt(maxLength + 1);
+        StringBuilder valueBuilder = new StringBuilder(length);
+        while (valueBuilder.length() < length) {
+            int kind = random.nextInt(10);
+            if (kind < 5) {
+                valueBuilder.append((char) ('a' + random.nextInt(26)));
+            } else if (kind < 8) {
+                valueBuilder.append(SPECIAL_CHARACTERS.charAt(random.nextInt(SPECIAL_CHARACTERS.length())));
+            } else if (kind < 9 && valueBuilder.length() + 2 <= length) {
+                valueBuilder.appendCodePoint(0x1F600 + random.nextInt(80));
+            } else {
+                valueBuilder.append((char) (0x20 + random.nextInt(0xD7FF - 0x20)));
+            }
+        }
+        return valueBuilder.toString();
+    }
+
+    private static double randomDouble(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextInt(1000);
+            case 1:
+                return random.nextDouble();
+            case 2:
+                return Double.longBitsToDouble(random.nextLong() & 0x7FEFFFFFFFFFFFFFL) * (random.nextBoolean() ? 1 : -1);
+            default:
+                return random.nextGaussian() * 1e6;
+        }
+    }
+
+    private static void setOrNull(PreparedStatement statement, int index, Random random, int sqlType, Object value)
+            throws SQLException {
+        if (random.nextInt(10) == 0) {
+            statement.setNull(index, sqlType);
+        } else {
+            statement.setObject(index, value, sqlType);
+        }
+    }
+
+    private static Connection openConnection(String databaseName) {
+        try {
+            return openDatabase(databaseName);
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Unable to open database " + databaseName, ex);
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+package bilokhado;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exports the text, binary and complex values longer than the max value length and loads the
+ * truncated, spilled and base64 encoded values into another embedded database.
+ */
+public class LargeValueIT {
+
+    private static final String SOURCE_DATABASE = "large-source";
+    private static final String TARGET_DATABASE = "large-target";
+    private static final String TABLE_NAME = "LARGE";
+    private static final String TABLE_DDL = "CREATE TABLE " + TABLE_NAME + " (ID INTEGER PRIMARY KEY, TXT CLOB"
+            + ", BIN BLOB)";
+    private static final String ROWS_QUERY = "SELECT TXT, BIN FROM " + TABLE_NAME + " ORDER BY ID";
+    private static final int ROWS = 50;
+    private static final int MAX_LENGTH = 100;
+
+    @Rule
+    public TemporaryFolder outputFolder = new TemporaryFolder();
+
+    private Connection source;
+    private Connection target;
+    private String baseFileName;
+
+    /**
+     * Target dialect decoding base64 with the FROM_BASE64 function of the test.
+     */
+    public static class Base64Dialect implements SqlDialect {
+
+        @Override
+        public String getColumnType(ColumnDescriptor column) {
+            return StandardDialect.H2.getColumnType(column);
+        }
+
+        @Override
+        public String getBase64Template() {
+            return "FROM_BASE64({})";
+        }
+
+    }
+
+    @Before
+    public void openDatabases() throws Exception {
+        source = IntegrationTestSupport.openDatabase(SOURCE_DATABASE);
+        target = IntegrationTestSupport.openDatabase(TARGET_DATABASE);
+        IntegrationTestSupport.execute(source, TABLE_DDL);
+        Random random = new Random(17);
+        try (PreparedStatement insert = source.prepareStatement("INSERT INTO " + TABLE_NAME + " VALUES (?, ?, ?)")) {
+            for (int row = 1; row <= ROWS; row++) {
+                byte[] binary = new byte[random.nextInt(3 * MAX_LENGTH)];
+                random.nextBytes(binary);
+                insert.setInt(1, row);
+                insert.setString(2, IntegrationTestSupport.randomString(random, 3 * MAX_LENGTH));
+                insert.setBytes(3, binary);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        baseFileName = outputFolder.getRoot().toPath().resolve("dataset").toString();
+    }
+
+    @After
+    public void closeDatabases() throws Exception {
+        IntegrationTestSupport.execute(source, "DROP ALL OBJECTS");
+        IntegrationTestSupport.execute(target, "DROP ALL OBJECTS");
+        source.close();
+        target.close();
+    }
+
+    /**
+     * Called by H2 for the base64 literals of the binary values.
+     */
+    public static byte[] fromBase64(String value) {
+        return Base64.getDecoder().decode(value);
+    }
+
+    @Test
+    public void truncatedValues() throws Exception {
+        Properties properties = getLargeValueProperties();
+        properties.setProperty(ExportSettings.LARGE_VALUE_POLICY_OPTION, "truncate");
+        exportAndLoad(properties);
+        List<Object[]> sourceRows = readRows(source);
+        List<Object[]> targetRows = readRows(target);
+        assertEquals(ROWS, targetRows.size());
+        for (int i = 0; i < ROWS; i++) {
+            String text = (String) sourceRows.get(i)[0];
+            int textLength = Math.min(text.length(), MAX_LENGTH);
+            if (text.length() > MAX_LENGTH && Character.isHighSurrogate(text.charAt(MAX_LENGTH - 1))) {
+                textLength--;
+            }
+            byte[] binary = (byte[]) sourceRows.get(i)[1];
+            assertEquals("Text of row " + (i + 1), text.substring(0, textLength), targetRows.get(i)[0]);
+            assertArrayEquals("Binary of row " + (i + 1), Arrays.copyOf(binary, Math.min(binary.length, MAX_LENGTH))
+                    , (byte[]) targetRows.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void spilledValues() throws Exception {
+        Properties properties = getLargeValueProperties();
+        properties.setProperty(ExportSettings.LARGE_VALUE_POLICY_OPTION, "spill");
+        properties.setProperty(ExportSettings.SPILL_DIRECTORY_OPTION, outputFolder.newFolder("spill").toString());
+        exportAndLoad(properties);
+        assertSameRows();
+        assertTrue(new String(Files.readAllBytes(Paths.get(baseFileName + "-insert.sql")), StandardCharsets.UTF_8)
+                .contains("FILE_READ("));
+    }
+
+    @Test
+    public void base64Values() throws Exception {
+        Properties properties = getLargeValueProperties();
+        properties.setProperty(ExportSettings.MAX_VALUE_LENGTH_OPTION, Integer.toString(10 * MAX_LENGTH));
+        properties.setProperty(ExportSettings.BINARY_ENCODING_OPTION, "base64");
+        properties.setProperty(ExportSettings.TARGET_DIALECT_OPTION, Base64Dialect.class.getName());
+        IntegrationTestSupport.execute(target, "CREATE ALIAS FROM_BASE64 FOR \""
+                + LargeValueIT.class.getName() + ".fromBase64\"");
+        exportAndLoad(properties);
+        assertSameRows();
+        assertTrue(new String(Files.readAllBytes(Paths.get(baseFileName + "-insert.sql")), StandardCharsets.UTF_8)
+                .contains("FROM_BASE64('"));
+    }
+
+    @Test
+    public void complexValues() throws Exception {
+        Map<String, Integer> map = new LinkedHashMap<>();
+        map.put("a", 1);
+        map.put("b", null);
+        Map<String, Integer> largeMap = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            largeMap.put("k" + i, i);
+        }
+        List<String> list = new ArrayList<>(Arrays.asList("x", "y'z"));
+        IntegrationTestSupport.execute(source, "CREATE TABLE COMPLEX (ID INTEGER PRIMARY KEY, VAL OTHER)");
+        try (PreparedStatement insert = source.prepareStatement("INSERT INTO COMPLEX VALUES (?, ?)")) {
+            Object[] values = {map, list, new Integer[] {1, 2, 3}, largeMap};
+            for (int i = 0; i < values.length; i++) {
+                insert.setInt(1, i + 1);
+                insert.setObject(2, values[i], Types.JAVA_OBJECT);
+                insert.executeUpdate();
+            }
+        }
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, "COMPLEX");
+        properties.setProperty(ExportSettings.MAX_VALUE_LENGTH_OPTION, Integer.toString(MAX_LENGTH));
+        IntegrationTestSupport.export(properties, baseFileName);
+        String script = new String(Files.readAllBytes(Paths.get(baseFileName + "-insert.sql")), StandardCharsets.UTF_8);
+        assertTrue(script, script.contains("(1, MAP(ARRAY['a', 'b'], ARRAY[1, NULL]))"));
+        assertTrue(script, script.contains("(2, ARRAY['x', 'y''z'])"));
+        assertTrue(script, script.contains("(3, ARRAY[1, 2, 3])"));
+        int largeMapStart = script.indexOf("(4, ") + 4;
+        String largeMapLiteral = script.substring(largeMapStart, script.indexOf("])", largeMapStart) + 2);
+        assertTrue(largeMapLiteral, largeMapLiteral.length() <= MAX_LENGTH);
+        String[] parts = largeMapLiteral.substring("MAP(ARRAY[".length(), largeMapLiteral.length() - "])".length())
+                .split("\\], ARRAY\\[");
+        String[] keys = parts[0].split(", ");
+        String[] values = parts[1].split(", ");
+        assertEquals(keys.length, values.length);
+        assertTrue(largeMapLiteral, keys.length > 1 && keys.length < largeMap.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals("'k" + i + "'", keys[i]);
+            assertEquals(Integer.toString(i), values[i]);
+        }
+    }
+
+    private Properties getLargeValueProperties() {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, TABLE_NAME);
+        properties.setProperty(ExportSettings.MAX_VALUE_LENGTH_OPTION, Integer.toString(MAX_LENGTH));
+        return properties;
+    }
+
+    /**
+     * Exports the table and loads it with the loader, which inserts the file reads and the base64
+     * functions as the expressions.
+     */
+    private void exportAndLoad(Properties properties) throws Exception {
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.executeScript(TARGET_DATABASE, baseFileName + "-create.sql");
+        assertEquals(ROWS, IntegrationTestSupport.load(TARGET_DATABASE, baseFileName + "-insert.sql", false));
+    }
+
+    private void assertSameRows() throws SQLException {
+        List<Object[]> sourceRows = readRows(source);
+        List<Object[]> targetRows = readRows(target);
+        assertEquals(ROWS, targetRows.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals("Text of row " + (i + 1), sourceRows.get(i)[0], targetRows.get(i)[0]);
+            assertArrayEquals("Binary of row " + (i + 1), (byte[]) sourceRows.get(i)[1], (byte[]) targetRows.get(i)[1]);
+        }
+    }
+
+    private static List<Object[]> readRows(Connection connection) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(ROWS_QUERY)) {
+            while (resultSet.next()) {
+                rows.add(new Object[] {resultSet.getString(1), resultSet.getBytes(2)});
+            }
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,70 @@
+package bilokhado;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Loads the INSERT script with the literals of the other dialects and the values written as
+ * the expressions, which the target database evaluates.
+ */
+public class ScriptLiteralIT {
+
+    private static final String DATABASE = "literal-load";
+    private static final String TABLE_NAME = "LITERALS";
+    private static final String ROWS_QUERY = "SELECT * FROM " + TABLE_NAME + " ORDER BY ID";
+
+    @Rule
+    public TemporaryFolder outputFolder = new TemporaryFolder();
+
+    private Connection connection;
+
+    @Before
+    public void openDatabase() throws Exception {
+        connection = IntegrationTestSupport.openDatabase(DATABASE);
+        IntegrationTestSupport.execute(connection, "CREATE TABLE " + TABLE_NAME + " (ID INTEGER PRIMARY KEY"
+                + ", BIN VARBINARY, ARR ARRAY, TXT VARCHAR)"
+                , "CREATE ALIAS FROM_BASE64 FOR \"" + ScriptLiteralIT.class.getName() + ".fromBase64\"");
+    }
+
+    @After
+    public void closeDatabase() throws Exception {
+        IntegrationTestSupport.execute(connection, "DROP ALL OBJECTS");
+        connection.close();
+    }
+
+    /**
+     * Called by H2 for the base64 literals of the script.
+     */
+    public static byte[] fromBase64(String value) {
+        return Base64.getDecoder().decode(value);
+    }
+
+    @Test
+    public void expressionsLoaded() throws Exception {
+        Path script = outputFolder.getRoot().toPath().resolve("literals-insert.sql");
+        Files.write(script, Arrays.asList(
+                "INSERT INTO " + TABLE_NAME + " (ID, BIN, ARR, TXT)"
+                , "VALUES (1, '\\x0102'::bytea, ARRAY[1, 2], 'plain'),"
+                , "(2, from_base64('AQI='), ARRAY['a, b', 'c''d'], 'after base64'),"
+                , "(3, X'0102', NULL, CONCAT('x', ')'));"
+                , "INSERT INTO " + TABLE_NAME + " (ID, TXT)"
+                , "VALUES (4, 'ARRAY[1]');"), StandardCharsets.UTF_8);
+        assertEquals(4, IntegrationTestSupport.load(DATABASE, script.toString(), false));
+        assertEquals(Arrays.asList("1 | 0102 | [1, 2] | plain", "2 | 0102 | [a, b, c'd] | after base64"
+                , "3 | 0102 | null | x)", "4 | null | null | ARRAY[1]")
+                , IntegrationTestSupport.readRows(connection, ROWS_QUERY));
+    }
+
+}
@@ -0,0 +1,127 @@
+package bilokhado;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exports the subset of the CHILD, PARENT and GRAND tables seeded with some of the child rows
+ * and loads it into the database with the foreign key constraints, which accepts the rows only
+ * if every referenced parent row has been exported and loaded before its children. Parents are
+ * referenced by the integral key, grand parents by the text one. The tables are loaded by the
+ * single thread, as the parallel table workers don't wait for the parent tables to be committed.
+ */
+public class SubsetExportIT {
+
+    private static final String SOURCE_DATABASE = "subset-source";
+    private static final String TARGET_DATABASE = "subset-target";
+    private static final String GRAND_DDL = "CREATE TABLE GRAND (CODE VARCHAR(10) PRIMARY KEY, NAME VARCHAR(50))";
+    private static final String PARENT_DDL = "CREATE TABLE PARENT (ID INTEGER PRIMARY KEY"
+            + ", GRAND_CODE VARCHAR(10) REFERENCES GRAND (CODE), NAME VARCHAR(50))";
+    private static final String CHILD_DDL = "CREATE TABLE CHILD (ID INTEGER PRIMARY KEY"
+            + ", PARENT_ID INTEGER REFERENCES PARENT (ID), NAME VARCHAR(50))";
+    private static final int GRANDS = 10;
+    private static final int PARENTS = 50;
+    private static final int CHILDREN = 200;
+    private static final String SEED_CONDITION = "ID <= 20";
+    private static final String SEED_PARENTS = "SELECT PARENT_ID FROM CHILD WHERE " + SEED_CONDITION;
+    private static final String SEED_GRANDS = "SELECT GRAND_CODE FROM PARENT WHERE ID IN (" + SEED_PARENTS + ")";
+
+    @Rule
+    public TemporaryFolder outputFolder = new TemporaryFolder();
+
+    private Connection source;
+    private Connection target;
+    private String baseFileName;
+
+    @Before
+    public void openDatabases() throws Exception {
+        source = IntegrationTestSupport.openDatabase(SOURCE_DATABASE);
+        target = IntegrationTestSupport.openDatabase(TARGET_DATABASE);
+        IntegrationTestSupport.execute(source, GRAND_DDL, PARENT_DDL, CHILD_DDL);
+        insertRows("INSERT INTO GRAND VALUES (?, ?)", GRANDS, (insert, id) -> {
+            insert.setString(1, getGrandCode(id));
+            insert.setString(2, "grand " + id);
+        });
+        insertRows("INSERT INTO PARENT VALUES (?, ?, ?)", PARENTS, (insert, id) -> {
+            insert.setInt(1, id);
+            insert.setString(2, id % 9 == 0 ? null : getGrandCode(id % 7 + 1));
+            insert.setString(3, "parent " + id);
+        });
+        insertRows("INSERT INTO CHILD VALUES (?, ?, ?)", CHILDREN, (insert, id) -> {
+            insert.setInt(1, id);
+            insert.setInt(2, id % PARENTS + 1);
+            insert.setString(3, "child " + id);
+        });
+        IntegrationTestSupport.execute(target, GRAND_DDL, PARENT_DDL, CHILD_DDL);
+        baseFileName = outputFolder.getRoot().toPath().resolve("subset").toString();
+    }
+
+    @After
+    public void closeDatabases() throws Exception {
+        IntegrationTestSupport.execute(source, "DROP ALL OBJECTS");
+        IntegrationTestSupport.execute(target, "DROP ALL OBJECTS");
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void referencedRowsLoaded() throws Exception {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, "CHILD", "PARENT", "GRAND");
+        properties.setProperty(ExportSettings.SUBSET_OPTION, "true");
+        properties.setProperty(ExportSettings.SUBSET_BATCH_SIZE_OPTION, "4");
+        properties.setProperty(ExportSettings.SEED_OPTION + ".CHILD", SEED_CONDITION);
+        properties.setProperty(ExportSettings.FOREIGN_KEYS_OPTION + ".CHILD", "PARENT_ID:PARENT.ID");
+        properties.setProperty(ExportSettings.FOREIGN_KEYS_OPTION + ".PARENT", "GRAND_CODE:GRAND.CODE");
+        IntegrationTestSupport.export(properties, baseFileName);
+
+        long rows = IntegrationTestSupport.load(TARGET_DATABASE, baseFileName + "-insert.sql", false, 1);
+        assertSameRows("SELECT * FROM CHILD WHERE " + SEED_CONDITION + " ORDER BY ID", "SELECT * FROM CHILD ORDER BY ID");
+        assertSameRows("SELECT * FROM PARENT WHERE ID IN (" + SEED_PARENTS + ") ORDER BY ID"
+                , "SELECT * FROM PARENT ORDER BY ID");
+        assertSameRows("SELECT * FROM GRAND WHERE CODE IN (" + SEED_GRANDS + ") ORDER BY CODE"
+                , "SELECT * FROM GRAND ORDER BY CODE");
+        int grands = IntegrationTestSupport.readRows(target, "SELECT * FROM GRAND").size();
+        assertTrue("Grand parents " + grands, grands > 1 && grands < GRANDS);
+        assertEquals(20 + 20 + grands, rows);
+    }
+
+    /**
+     * Grand parent codes include the quote, so the text key literals are escaped in the lookups.
+     */
+    private static String getGrandCode(int id) {
+        return id == 3 ? "g'3" : "g" + id;
+    }
+
+    private interface RowSetter {
+
+        void set(PreparedStatement insert, int id) throws SQLException;
+
+    }
+
+    private void insertRows(String sql, int rows, RowSetter setter) throws SQLException {
+        try (PreparedStatement insert = source.prepareStatement(sql)) {
+            for (int id = 1; id <= rows; id++) {
+                setter.set(insert, id);
+                insert.executeUpdate();
+            }
+        }
+    }
+
+    private void assertSameRows(String sourceQuery, String targetQuery) throws SQLException {
+        List<String> sourceRows = IntegrationTestSupport.readRows(source, sourceQuery);
+        assertEquals(sourceQuery, sourceRows, IntegrationTestSupport.readRows(target, targetQuery));
+    }
+
+}
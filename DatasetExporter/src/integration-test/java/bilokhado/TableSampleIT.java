@@ -0,0 +1,149 @@
+package bilokhado;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+import static bilokhado.IntegrationTestSupport.MIXED_TABLE;
+import static bilokhado.IntegrationTestSupport.MIXED_TABLE_DDL;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exports slices of the table of random rows: the key range, the limit, the sampling in the
+ * database and the Bernoulli and reservoir sampling on the client. Loaded rows should be the
+ * source rows of the key range, in the number the slice allows.
+ */
+public class TableSampleIT {
+
+    private static final String SOURCE_DATABASE = "sample-source";
+    private static final String TARGET_DATABASE = "sample-target";
+    private static final int ROWS = 1000;
+    private static final String RANGE_FROM = "101";
+    private static final String RANGE_TO = "601";
+    private static final String RANGE_CONDITION = "ID >= " + RANGE_FROM + " AND ID < " + RANGE_TO;
+    private static final int RANGE_ROWS = 500;
+
+    @Rule
+    public TemporaryFolder outputFolder = new TemporaryFolder();
+
+    private Connection source;
+    private Connection target;
+    private String baseFileName;
+
+    @Before
+    public void openDatabases() throws Exception {
+        source = IntegrationTestSupport.openDatabase(SOURCE_DATABASE);
+        target = IntegrationTestSupport.openDatabase(TARGET_DATABASE);
+        IntegrationTestSupport.execute(source, MIXED_TABLE_DDL);
+        IntegrationTestSupport.fillMixedTable(source, 1, ROWS, 19);
+        baseFileName = outputFolder.getRoot().toPath().resolve("sample").toString();
+    }
+
+    @After
+    public void closeDatabases() throws Exception {
+        IntegrationTestSupport.execute(source, "DROP ALL OBJECTS");
+        IntegrationTestSupport.execute(target, "DROP ALL OBJECTS");
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void keyRange() throws Exception {
+        assertEquals(RANGE_ROWS, exportAndLoad(getRangeProperties()));
+        assertSampledRows(RANGE_CONDITION);
+    }
+
+    @Test
+    public void limit() throws Exception {
+        Properties properties = getRangeProperties();
+        properties.setProperty(ExportSettings.LIMIT_OPTION, "100");
+        assertEquals(100, exportAndLoad(properties));
+        assertSampledRows(RANGE_CONDITION);
+    }
+
+    @Test
+    public void serverSampling() throws Exception {
+        Properties properties = getRangeProperties();
+        properties.setProperty(ExportSettings.SAMPLE_PERCENT_OPTION, "20");
+        long rows = exportAndLoad(properties);
+        assertTrue("Sampled rows " + rows, rows > RANGE_ROWS / 10 && rows < RANGE_ROWS * 3 / 10);
+        assertSampledRows(RANGE_CONDITION);
+    }
+
+    @Test
+    public void clientBernoulliSampling() throws Exception {
+        Properties properties = getRangeProperties();
+        properties.setProperty(ExportSettings.SAMPLE_METHOD_OPTION, TableSample.METHOD_CLIENT);
+        properties.setProperty(ExportSettings.SAMPLE_PERCENT_OPTION, "20");
+        properties.setProperty(ExportSettings.SAMPLE_SEED_OPTION, "5");
+        long rows = exportAndLoad(properties);
+        assertTrue("Sampled rows " + rows, rows > RANGE_ROWS / 10 && rows < RANGE_ROWS * 3 / 10);
+        assertSampledRows(RANGE_CONDITION);
+        assertSameOutputAgain(properties);
+    }
+
+    @Test
+    public void clientReservoirSampling() throws Exception {
+        Properties properties = getRangeProperties();
+        properties.setProperty(ExportSettings.SAMPLE_METHOD_OPTION, TableSample.METHOD_CLIENT);
+        properties.setProperty(ExportSettings.LIMIT_OPTION, "50");
+        properties.setProperty(ExportSettings.SAMPLE_SEED_OPTION, "5");
+        assertEquals(50, exportAndLoad(properties));
+        assertSampledRows(RANGE_CONDITION);
+        List<String> ids = IntegrationTestSupport.readRows(target, "SELECT ID FROM " + MIXED_TABLE + " ORDER BY ID");
+        assertTrue("Reservoir is the first rows of the range " + ids
+                , Long.parseLong(ids.get(ids.size() - 1)) >= Long.parseLong(RANGE_FROM) + 50);
+        assertSameOutputAgain(properties);
+    }
+
+    /**
+     * Returns properties of the export of the table key range.
+     */
+    private static Properties getRangeProperties() {
+        Properties properties = IntegrationTestSupport.getExportProperties(SOURCE_DATABASE, MIXED_TABLE);
+        properties.setProperty(ExportSettings.RANGE_KEY_OPTION, "ID");
+        properties.setProperty(ExportSettings.RANGE_FROM_OPTION, RANGE_FROM);
+        properties.setProperty(ExportSettings.RANGE_TO_OPTION, RANGE_TO);
+        return properties;
+    }
+
+    private long exportAndLoad(Properties properties) throws Exception {
+        IntegrationTestSupport.export(properties, baseFileName);
+        IntegrationTestSupport.executeScript(TARGET_DATABASE, baseFileName + "-create.sql");
+        return IntegrationTestSupport.load(TARGET_DATABASE, baseFileName + "-insert.sql", false);
+    }
+
+    /**
+     * Checks that all the loaded rows are in the range and equal to their source rows.
+     */
+    private void assertSampledRows(String condition) throws SQLException {
+        String rowsQuery = "SELECT * FROM " + MIXED_TABLE + " WHERE ID IN (SELECT ID FROM " + MIXED_TABLE
+                + " WHERE " + condition + ") ORDER BY ID";
+        List<String> targetRows = IntegrationTestSupport.readRows(target, "SELECT * FROM " + MIXED_TABLE + " ORDER BY ID");
+        assertEquals("Rows out of the range", targetRows, IntegrationTestSupport.readRows(target, rowsQuery));
+        List<String> ids = IntegrationTestSupport.readRows(target, "SELECT ID FROM " + MIXED_TABLE);
+        assertEquals(targetRows, IntegrationTestSupport.readRows(source, "SELECT * FROM " + MIXED_TABLE
+                + " WHERE ID IN (" + String.join(", ", ids) + ") ORDER BY ID"));
+    }
+
+    /**
+     * Checks that the export with the same sample seed writes the same rows.
+     */
+    private void assertSameOutputAgain(Properties properties) throws Exception {
+        byte[] output = Files.readAllBytes(Paths.get(baseFileName + "-insert.sql"));
+        IntegrationTestSupport.export(properties, baseFileName);
+        assertArrayEquals(output, Files.readAllBytes(Paths.get(baseFileName + "-insert.sql")));
+    }
+
+}
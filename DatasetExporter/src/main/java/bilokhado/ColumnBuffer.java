@@ -0,0 +1,302 @@
+package bilokhado;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Values of a column for a number of rows, filled in two steps: the read step copies the value of
+ * the current row from the result set into the row slot and the format step appends SQL literal of
+ * the slot value to the builder. Numbers and booleans are kept in primitive arrays, so they are not
+ * boxed. Steps may run in different threads, as long as every slot is handed over between them
+ * safely. This is the only place where the literals are chosen by the column type, ColumnWriter
+ * runs both steps on the single row buffer.
+ */
+abstract class ColumnBuffer {
+
+    /**
+     * Copies the value of the current row into the slot.
+     */
+    abstract void read(ResultSet resultSet, int column, int row) throws SQLException;
+
+    /**
+     * Appends literal of the slot value and releases the value.
+     */
+    abstract void format(int row, StringBuilder output);
+
+    /**
+     * Returns buffer of the type formatting the literals which differ between databases with the dialect.
+     */
+    static ColumnBuffer forType(int sqlType, SqlDialect dialect, int rows) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new IntBuffer(rows);
+
+            case Types.BIGINT:
+                return new LongBuffer(rows);
+
+            case Types.REAL:
+                return new FloatBuffer(rows);
+
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleBuffer(rows);
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new ObjectBuffer<BigDecimal>(rows, ResultSet::getBigDecimal
+                        , (value, output) -> output.append(value.toPlainString()));
+
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return new BooleanBuffer(rows);
+
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.SQLXML:
+            case Types.ROWID:
+                return new ObjectBuffer<String>(rows, ResultSet::getString, ColumnWriter::appendQuoted);
+
+            case Types.DATE:
+                return new ObjectBuffer<>(rows, TemporalReader.forDate()::read, dialect::appendDateLiteral);
+
+            case Types.TIME:
+                return new ObjectBuffer<>(rows, TemporalReader.forTime()::read, dialect::appendTimeLiteral);
+
+            case Types.TIMESTAMP:
+                return new ObjectBuffer<>(rows, TemporalReader.forTimestamp()::read
+                        , dialect::appendTimestampLiteral);
+
+            case Types.TIME_WITH_TIMEZONE:
+                return new ObjectBuffer<String>(rows, ResultSet::getString, (value, output) -> {
+                    output.append("TIME WITH TIME ZONE ");
+                    ColumnWriter.appendQuoted(value, output);
+                });
+
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return new ObjectBuffer<String>(rows, ResultSet::getString, (value, output) -> {
+                    output.append("TIMESTAMP WITH TIME ZONE ");
+                    ColumnWriter.appendQuoted(value, output);
+                });
+
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return new ObjectBuffer<byte[]>(rows, ResultSet::getBytes, dialect::appendBinaryLiteral);
+
+            case Types.NULL:
+                return new ObjectBuffer<>(rows, (resultSet, column) -> null, (value, output) -> { });
+
+            case Types.ARRAY:
+            case Types.STRUCT:
+            case Types.REF:
+            case Types.REF_CURSOR:
+            case Types.DATALINK:
+            case Types.DISTINCT:
+            case Types.JAVA_OBJECT:
+            case Types.OTHER:
+            default:
+                return ofLiterals((resultSet, column, output)
+                        -> ColumnWriter.appendValue(resultSet.getObject(column), dialect, output), rows);
+        }
+    }
+
+    /**
+     * Returns buffer formatting the value with the writer on the read step. It is used for the values
+     * which can be read only while the row is current, as arrays, structs and streams, so the
+     * literal is kept instead. Null value is kept as the NULL literal too.
+     */
+    static ColumnBuffer ofLiterals(ColumnWriter writer, int rows) {
+        return new ObjectBuffer<String>(rows, (resultSet, column) -> {
+            StringBuilder literal = new StringBuilder();
+            writer.write(resultSet, column, literal);
+            return literal.toString();
+        }, (value, output) -> output.append(value));
+    }
+
+    @FunctionalInterface
+    interface ValueReader<T> {
+        T read(ResultSet resultSet, int column) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface ValueFormatter<T> {
+        void format(T value, StringBuilder output);
+    }
+
+    private static class ObjectBuffer<T> extends ColumnBuffer {
+
+        private final Object[] values;
+        private final ValueReader<T> reader;
+        private final ValueFormatter<T> formatter;
+
+        ObjectBuffer(int rows, ValueReader<T> reader, ValueFormatter<T> formatter) {
+            this.values = new Object[rows];
+            this.reader = reader;
+            this.formatter = formatter;
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = reader.read(resultSet, column);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void format(int row, StringBuilder output) {
+            T value = (T) values[row];
+            values[row] = null;
+            if (value == null) {
+                output.append(ColumnWriter.NULL_LITERAL);
+            } else {
+                formatter.format(value, output);
+            }
+        }
+
+    }
+
+    /**
+     * Buffer of the primitive values, which marks the null ones separately.
+     */
+    private abstract static class PrimitiveBuffer extends ColumnBuffer {
+
+        final boolean[] nulls;
+
+        PrimitiveBuffer(int rows) {
+            this.nulls = new boolean[rows];
+        }
+
+        @Override
+        void format(int row, StringBuilder output) {
+            if (nulls[row]) {
+                output.append(ColumnWriter.NULL_LITERAL);
+            } else {
+                formatValue(row, output);
+            }
+        }
+
+        abstract void formatValue(int row, StringBuilder output);
+
+    }
+
+    private static class IntBuffer extends PrimitiveBuffer {
+
+        private final int[] values;
+
+        IntBuffer(int rows) {
+            super(rows);
+            this.values = new int[rows];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getInt(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void formatValue(int row, StringBuilder output) {
+            output.append(values[row]);
+        }
+
+    }
+
+    private static class LongBuffer extends PrimitiveBuffer {
+
+        private final long[] values;
+
+        LongBuffer(int rows) {
+            super(rows);
+            this.values = new long[rows];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getLong(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void formatValue(int row, StringBuilder output) {
+            output.append(values[row]);
+        }
+
+    }
+
+    private static class FloatBuffer extends PrimitiveBuffer {
+
+        private final float[] values;
+
+        FloatBuffer(int rows) {
+            super(rows);
+            this.values = new float[rows];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getFloat(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void formatValue(int row, StringBuilder output) {
+            ColumnWriter.appendFloat(values[row], output);
+        }
+
+    }
+
+    private static class DoubleBuffer extends PrimitiveBuffer {
+
+        private final double[] values;
+
+        DoubleBuffer(int rows) {
+            super(rows);
+            this.values = new double[rows];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getDouble(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void formatValue(int row, StringBuilder output) {
+            ColumnWriter.appendDouble(values[row], output);
+        }
+
+    }
+
+    private static class BooleanBuffer extends PrimitiveBuffer {
+
+        private final boolean[] values;
+
+        BooleanBuffer(int rows) {
+            super(rows);
+            this.values = new boolean[rows];
+        }
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getBoolean(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void formatValue(int row, StringBuilder output) {
+            output.append(values[row]);
+        }
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package bilokhado;
+
+/**
+ * Column of the query result, read from the result set metadata once, so the DDL and mapping
+ * generators don't call the driver for every attribute again.
+ */
+public final class ColumnDescriptor {
+
+    public final String name;
+    public final String label;
+    public final int sqlType;
+    public final String typeName;
+    public final int precision;
+    public final int scale;
+    public final boolean nullable;
+
+    public ColumnDescriptor(String name, String label, int sqlType, String typeName, int precision, int scale
+            , boolean nullable) {
+        this.name = name;
+        this.label = label;
+        this.sqlType = sqlType;
+        this.typeName = typeName;
+        this.precision = precision;
+        this.scale = scale;
+        this.nullable = nullable;
+    }
+
+}
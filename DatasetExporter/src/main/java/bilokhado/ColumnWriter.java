@@ -0,0 +1,258 @@
+package bilokhado;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Struct;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Appends SQL literal of the current row's column value to the builder. Writer is chosen once
+ * per column from the result set metadata, so the row loop doesn't check column types. Literals
+ * of the types are chosen by ColumnBuffer, static methods here format the values.
+ */
+@FunctionalInterface
+interface ColumnWriter {
+
+    String NULL_LITERAL = "NULL";
+    char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    void write(ResultSet resultSet, int column, StringBuilder output) throws SQLException;
+
+    static ColumnWriter forColumn(ResultSetMetaData metaData, int column, SqlDialect dialect) throws SQLException {
+        return forType(metaData.getColumnType(column), dialect);
+    }
+
+    /**
+     * Returns writer of the type formatting the literals which differ between databases with the dialect.
+     * It reads the value into the single row buffer of the type and formats it at once.
+     */
+    static ColumnWriter forType(int sqlType, SqlDialect dialect) {
+        ColumnBuffer buffer = ColumnBuffer.forType(sqlType, dialect, 1);
+        return (resultSet, column, output) -> {
+            buffer.read(resultSet, column, 0);
+            buffer.format(0, output);
+        };
+    }
+
+    static void appendFloat(float value, StringBuilder output) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            appendQuoted(Float.toString(value), output);
+        } else {
+            output.append(value);
+        }
+    }
+
+    static void appendDouble(double value, StringBuilder output) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            appendQuoted(Double.toString(value), output);
+        } else {
+            output.append(value);
+        }
+    }
+
+    static void appendBinary(byte[] value, StringBuilder output) {
+        output.ensureCapacity(output.length() + 2 * value.length + 3);
+        output.append("X'");
+        for (byte octet : value) {
+            output.append(HEX_DIGITS[(octet >> 4) & 0x0F]);
+            output.append(HEX_DIGITS[octet & 0x0F]);
+        }
+        output.append('\'');
+    }
+
+    /**
+     * Appends DATE literal of the value.
+     */
+    static void appendDate(LocalDate value, StringBuilder output) {
+        output.append("DATE '");
+        appendDigits(value.getYear(), 4, output).append('-');
+        appendDigits(value.getMonthValue(), 2, output).append('-');
+        appendDigits(value.getDayOfMonth(), 2, output).append('\'');
+    }
+
+    /**
+     * Appends TIME literal of the value, with the fraction of second only if it isn't zero.
+     */
+    static void appendTime(LocalTime value, StringBuilder output) {
+        output.append("TIME '");
+        appendTimeOfDay(value, value.getNano() != 0, output).append('\'');
+    }
+
+    /**
+     * Appends TIMESTAMP literal of the value. Fraction of second is written without the trailing
+     * zeros, but with one digit at least, the same as Timestamp.toString does.
+     */
+    static void appendTimestamp(LocalDateTime value, StringBuilder output) {
+        output.append("TIMESTAMP '");
+        appendDigits(value.getYear(), 4, output).append('-');
+        appendDigits(value.getMonthValue(), 2, output).append('-');
+        appendDigits(value.getDayOfMonth(), 2, output).append(' ');
+        appendTimeOfDay(value.toLocalTime(), true, output).append('\'');
+    }
+
+    static StringBuilder appendTimeOfDay(LocalTime value, boolean withFraction, StringBuilder output) {
+        appendDigits(value.getHour(), 2, output).append(':');
+        appendDigits(value.getMinute(), 2, output).append(':');
+        appendDigits(value.getSecond(), 2, output);
+        if (withFraction) {
+            output.append('.');
+            int nanos = value.getNano();
+            int digits = 9;
+            while (digits > 1 && nanos % 10 == 0) {
+                nanos /= 10;
+                digits--;
+            }
+            appendDigits(nanos, digits, output);
+        }
+        return output;
+    }
+
+    static StringBuilder appendDigits(int value, int width, StringBuilder output) {
+        String digits = Integer.toString(value);
+        for (int i = digits.length(); i < width; i++) {
+            output.append('0');
+        }
+        return output.append(digits);
+    }
+
+    /**
+     * Appends literal of the value got as object: ARRAY[...] of the arrays and lists, ROW(...) of
+     * the structs and MAP(ARRAY[...], ARRAY[...]) of the maps, built from the literals of their
+     * elements, which are written the same way. Values of the other classes are written as string literals.
+     */
+    static void appendValue(Object value, SqlDialect dialect, StringBuilder output) throws SQLException {
+        if (value == null) {
+            output.append(NULL_LITERAL);
+        } else if (value instanceof Array) {
+            Array array = (Array) value;
+            try {
+                appendArray(array.getArray(), dialect, output);
+            } finally {
+                freeArray(array);
+            }
+        } else if (value instanceof Struct) {
+            output.append("ROW(");
+            appendElements(Arrays.asList(((Struct) value).getAttributes()), dialect, output);
+            output.append(')');
+        } else if (value instanceof Collection) {
+            output.append("ARRAY[");
+            appendElements((Collection<?>) value, dialect, output);
+            output.append(']');
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            output.append("MAP(ARRAY[");
+            appendElements(map.keySet(), dialect, output);
+            output.append("], ARRAY[");
+            appendElements(map.values(), dialect, output);
+            output.append("])");
+        } else if (value.getClass().isArray()) {
+            appendArray(value, dialect, output);
+        } else if (value instanceof BigDecimal) {
+            output.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Float) {
+            appendFloat((Float) value, output);
+        } else if (value instanceof Double) {
+            appendDouble((Double) value, output);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            output.append(value);
+        } else if (value instanceof LocalDate) {
+            dialect.appendDateLiteral((LocalDate) value, output);
+        } else if (value instanceof LocalTime) {
+            dialect.appendTimeLiteral((LocalTime) value, output);
+        } else if (value instanceof LocalDateTime) {
+            dialect.appendTimestampLiteral((LocalDateTime) value, output);
+        } else if (value instanceof java.sql.Date) {
+            dialect.appendDateLiteral(((java.sql.Date) value).toLocalDate(), output);
+        } else if (value instanceof Time) {
+            dialect.appendTimeLiteral(((Time) value).toLocalTime(), output);
+        } else if (value instanceof Timestamp) {
+            dialect.appendTimestampLiteral(((Timestamp) value).toLocalDateTime(), output);
+        } else {
+            appendQuoted(value.toString(), output);
+        }
+    }
+
+    /**
+     * Appends ARRAY[...] literal of the Java array, binary literal if it is array of bytes.
+     */
+    static void appendArray(Object array, SqlDialect dialect, StringBuilder output) throws SQLException {
+        if (array instanceof byte[]) {
+            dialect.appendBinaryLiteral((byte[]) array, output);
+            return;
+        }
+        output.append("ARRAY[");
+        int length = java.lang.reflect.Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                output.append(", ");
+            }
+            appendValue(java.lang.reflect.Array.get(array, i), dialect, output);
+        }
+        output.append(']');
+    }
+
+    static void appendElements(Collection<?> elements, SqlDialect dialect, StringBuilder output) throws SQLException {
+        boolean first = true;
+        for (Object element : elements) {
+            if (!first) {
+                output.append(", ");
+            }
+            first = false;
+            appendValue(element, dialect, output);
+        }
+    }
+
+    static void freeArray(Array array) {
+        try {
+            array.free();
+        } catch (SQLException | AbstractMethodError ex) {
+            // Array is released with the result set anyway
+        }
+    }
+
+    /**
+     * Appends value as SQL string literal doubling the quote characters. Runs of characters
+     * between quotes are copied in bulk, so values without quotes are copied in a single call.
+     */
+    static void appendQuoted(String value, StringBuilder output) {
+        output.append('\'');
+        int runStart = 0;
+        int quoteIndex;
+        while ((quoteIndex = value.indexOf('\'', runStart)) >= 0) {
+            output.append(value, runStart, quoteIndex + 1);
+            output.append('\'');
+            runStart = quoteIndex + 1;
+        }
+        output.append(value, runStart, value.length());
+        output.append('\'');
+    }
+
+    /**
+     * Appends the first length characters of the buffer as SQL string literal doubling the quote characters.
+     */
+    static void appendQuoted(char[] value, int length, StringBuilder output) {
+        output.ensureCapacity(output.length() + length + 2);
+        output.append('\'');
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (value[i] == '\'') {
+                output.append(value, runStart, i + 1 - runStart);
+                output.append('\'');
+                runStart = i + 1;
+            }
+        }
+        output.append(value, runStart, length - runStart);
+        output.append('\'');
+    }
+
+}
@@ -0,0 +1,254 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the columnar binary dataset file, see {@link ColumnarFormat}, into the existing tables
+ * of the target database. The file is read through memory-mapped windows of the file channel
+ * and every row group is inserted as a single JDBC batch.
+ */
+class ColumnarDatasetLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarDatasetLoader.class);
+
+    private final Connection connection;
+
+    ColumnarDatasetLoader(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Inserts rows of all the tables from the file committing after every table. Returns total
+     * number of rows loaded.
+     */
+    long load(Path datasetFile) throws IOException, SQLException {
+        long totalRows = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (FileChannel channel = FileChannel.open(datasetFile, StandardOpenOption.READ)) {
+            MappedFileInput input = new MappedFileInput(channel);
+            if (input.readInt() != ColumnarFormat.MAGIC) {
+                throw new IOException("File " + datasetFile + " is not a columnar dataset");
+            }
+            int version = input.readInt();
+            if (version != ColumnarFormat.VERSION) {
+                throw new IOException("Unsupported columnar dataset version " + version);
+            }
+            byte marker;
+            while ((marker = input.readByte()) == ColumnarFormat.TABLE_START) {
+                totalRows += loadTable(input);
+                connection.commit();
+            }
+            if (marker != ColumnarFormat.FILE_END) {
+                throw new IOException("Corrupted columnar dataset, unexpected marker " + marker);
+            }
+        } catch (IOException | SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return totalRows;
+    }
+
+    private long loadTable(MappedFileInput input) throws IOException, SQLException {
+        long startTime = System.nanoTime();
+        String tableName = input.readString();
+        int columnCount = input.readInt();
+        ColumnVector[] columns = new ColumnVector[columnCount];
+        StringBuilder insertBuilder = new StringBuilder("INSERT INTO ");
+        insertBuilder.append(tableName);
+        insertBuilder.append(" (");
+        for (int i = 0; i < columnCount; i++) {
+            String columnName = input.readString();
+            int sqlType = input.readInt();
+            columns[i] = new ColumnVector(sqlType, input.readByte());
+            if (i > 0) {
+                insertBuilder.append(", ");
+            }
+            insertBuilder.append(columnName);
+        }
+        insertBuilder.append(") VALUES (");
+        for (int i = 0; i < columnCount; i++) {
+            insertBuilder.append(i > 0 ? ", ?" : "?");
+        }
+        insertBuilder.append(')');
+        long rows = 0;
+        try (PreparedStatement statement = connection.prepareStatement(insertBuilder.toString())) {
+            byte marker;
+            while ((marker = input.readByte()) == ColumnarFormat.ROW_GROUP_START) {
+                int groupRows = input.readInt();
+                for (ColumnVector column : columns) {
+                    column.read(input, groupRows);
+                }
+                for (int row = 0; row < groupRows; row++) {
+                    for (int i = 0; i < columnCount; i++) {
+                        columns[i].bind(statement, i + 1, row);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                rows += groupRows;
+            }
+            if (marker != ColumnarFormat.TABLE_END) {
+                throw new IOException("Corrupted columnar dataset, unexpected marker " + marker
+                        + " in table " + tableName);
+            }
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        logger.info("Loaded table {}: {} rows in {} ms ({} rows/sec)"
+                , tableName, rows, elapsedMillis, elapsedMillis == 0 ? rows : rows * 1000 / elapsedMillis);
+        return rows;
+    }
+
+    /**
+     * Decoded values of a single column of the current row group.
+     */
+    private static class ColumnVector {
+
+        private final int sqlType;
+        private final byte kind;
+        private boolean[] nulls = new boolean[0];
+        private long[] longs = new long[0];
+        private double[] doubles = new double[0];
+        private Object[] objects = new Object[0];
+
+        ColumnVector(int sqlType, byte kind) {
+            this.sqlType = sqlType;
+            this.kind = kind;
+        }
+
+        void read(MappedFileInput input, int rows) throws IOException {
+            if (nulls.length < rows) {
+                nulls = new boolean[rows];
+                longs = new long[rows];
+                doubles = new double[rows];
+                objects = new Object[rows];
+            }
+            for (int bitmapIndex = 0; bitmapIndex < (rows + 7) / 8; bitmapIndex++) {
+                int bitmap = input.readByte();
+                for (int row = bitmapIndex * 8; row < Math.min(rows, bitmapIndex * 8 + 8); row++) {
+                    nulls[row] = (bitmap & (1 << (row & 7))) != 0;
+                }
+            }
+            if (kind == ColumnarFormat.KIND_STRING) {
+                readStrings(input, rows);
+                return;
+            }
+            for (int row = 0; row < rows; row++) {
+                if (nulls[row]) {
+                    continue;
+                }
+                switch (kind) {
+                    case ColumnarFormat.KIND_LONG:
+                    case ColumnarFormat.KIND_DATE:
+                    case ColumnarFormat.KIND_TIME:
+                        longs[row] = input.readLong();
+                        break;
+
+                    case ColumnarFormat.KIND_DOUBLE:
+                        doubles[row] = input.readDouble();
+                        break;
+
+                    case ColumnarFormat.KIND_BOOLEAN:
+                        longs[row] = input.readByte();
+                        break;
+
+                    case ColumnarFormat.KIND_DECIMAL:
+                        objects[row] = new BigDecimal(input.readString());
+                        break;
+
+                    case ColumnarFormat.KIND_BYTES:
+                        objects[row] = input.readBytes(input.readInt());
+                        break;
+
+                    case ColumnarFormat.KIND_TIMESTAMP:
+                        Timestamp timestamp = new Timestamp(input.readLong());
+                        timestamp.setNanos(input.readInt());
+                        objects[row] = timestamp;
+                        break;
+
+                    default:
+                        throw new IOException("Unknown column kind " + kind);
+                }
+            }
+        }
+
+        private void readStrings(MappedFileInput input, int rows) throws IOException {
+            byte encoding = input.readByte();
+            String[] dictionary = null;
+            if (encoding == ColumnarFormat.STRING_DICTIONARY) {
+                dictionary = new String[input.readInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = input.readString();
+                }
+            } else if (encoding != ColumnarFormat.STRING_PLAIN) {
+                throw new IOException("Unknown string encoding " + encoding);
+            }
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    objects[row] = dictionary == null ? input.readString() : dictionary[input.readByte() & 0xFF];
+                }
+            }
+        }
+
+        void bind(PreparedStatement statement, int parameter, int row) throws SQLException {
+            if (nulls[row]) {
+                statement.setNull(parameter, sqlType);
+                return;
+            }
+            switch (kind) {
+                case ColumnarFormat.KIND_LONG:
+                    statement.setLong(parameter, longs[row]);
+                    break;
+
+                case ColumnarFormat.KIND_DOUBLE:
+                    statement.setDouble(parameter, doubles[row]);
+                    break;
+
+                case ColumnarFormat.KIND_BOOLEAN:
+                    statement.setBoolean(parameter, longs[row] != 0);
+                    break;
+
+                case ColumnarFormat.KIND_DECIMAL:
+                    statement.setBigDecimal(parameter, (BigDecimal) objects[row]);
+                    break;
+
+                case ColumnarFormat.KIND_BYTES:
+                    statement.setBytes(parameter, (byte[]) objects[row]);
+                    break;
+
+                case ColumnarFormat.KIND_DATE:
+                    statement.setDate(parameter, new Date(longs[row]));
+                    break;
+
+                case ColumnarFormat.KIND_TIME:
+                    statement.setTime(parameter, new Time(longs[row]));
+                    break;
+
+                case ColumnarFormat.KIND_TIMESTAMP:
+                    statement.setTimestamp(parameter, (Timestamp) objects[row]);
+                    break;
+
+                default:
+                    statement.setString(parameter, (String) objects[row]);
+            }
+        }
+
+    }
+
+}
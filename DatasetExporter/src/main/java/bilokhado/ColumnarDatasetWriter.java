@@ -0,0 +1,362 @@
+package bilokhado;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes result sets to the columnar binary dataset file, see {@link ColumnarFormat}. Rows are
+ * buffered in groups of {@link ColumnarFormat#ROW_GROUP_SIZE}, so memory use doesn't depend on
+ * the table size.
+ */
+class ColumnarDatasetWriter implements AutoCloseable {
+
+    private final CountingOutputStream countingOutput;
+    private final DataOutputStream output;
+
+    ColumnarDatasetWriter(OutputStream output) throws IOException {
+        this.countingOutput = new CountingOutputStream(output);
+        this.output = new DataOutputStream(countingOutput);
+        this.output.writeInt(ColumnarFormat.MAGIC);
+        this.output.writeInt(ColumnarFormat.VERSION);
+    }
+
+    long getBytesWritten() {
+        return countingOutput.getBytes();
+    }
+
+    /**
+     * Writes all the rows of the result set as the table section and returns number of rows.
+     */
+    long writeTable(String tableName, ResultSet resultSet) throws SQLException, IOException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        ColumnBlock[] columns = new ColumnBlock[columnCount];
+        output.writeByte(ColumnarFormat.TABLE_START);
+        writeString(tableName);
+        output.writeInt(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            byte kind = ColumnarFormat.kindForType(metaData.getColumnType(i));
+            writeString(metaData.getColumnName(i));
+            output.writeInt(metaData.getColumnType(i));
+            output.writeByte(kind);
+            columns[i - 1] = createBlock(kind);
+        }
+        long rows = 0;
+        int groupRows = 0;
+        while (resultSet.next()) {
+            for (int i = 0; i < columnCount; i++) {
+                columns[i].read(resultSet, i + 1, groupRows);
+            }
+            groupRows++;
+            rows++;
+            if (groupRows == ColumnarFormat.ROW_GROUP_SIZE) {
+                writeRowGroup(columns, groupRows);
+                groupRows = 0;
+            }
+        }
+        if (groupRows > 0) {
+            writeRowGroup(columns, groupRows);
+        }
+        output.writeByte(ColumnarFormat.TABLE_END);
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.writeByte(ColumnarFormat.FILE_END);
+        output.close();
+    }
+
+    private void writeRowGroup(ColumnBlock[] columns, int rows) throws IOException {
+        output.writeByte(ColumnarFormat.ROW_GROUP_START);
+        output.writeInt(rows);
+        byte[] nullBitmap = new byte[(rows + 7) / 8];
+        for (ColumnBlock column : columns) {
+            Arrays.fill(nullBitmap, (byte) 0);
+            for (int row = 0; row < rows; row++) {
+                if (column.nulls[row]) {
+                    nullBitmap[row >> 3] |= 1 << (row & 7);
+                }
+            }
+            output.write(nullBitmap);
+            column.writeValues(rows);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] value) throws IOException {
+        output.writeInt(value.length);
+        output.write(value);
+    }
+
+    private ColumnBlock createBlock(byte kind) {
+        switch (kind) {
+            case ColumnarFormat.KIND_LONG:
+                return new LongBlock();
+
+            case ColumnarFormat.KIND_DOUBLE:
+                return new DoubleBlock();
+
+            case ColumnarFormat.KIND_BOOLEAN:
+                return new BooleanBlock();
+
+            case ColumnarFormat.KIND_DECIMAL:
+                return new DecimalBlock();
+
+            case ColumnarFormat.KIND_BYTES:
+                return new BytesBlock();
+
+            case ColumnarFormat.KIND_DATE:
+                return new DateBlock();
+
+            case ColumnarFormat.KIND_TIME:
+                return new TimeBlock();
+
+            case ColumnarFormat.KIND_TIMESTAMP:
+                return new TimestampBlock();
+
+            default:
+                return new StringBlock();
+        }
+    }
+
+    /**
+     * Values of a single column of the current row group.
+     */
+    private abstract class ColumnBlock {
+
+        final boolean[] nulls = new boolean[ColumnarFormat.ROW_GROUP_SIZE];
+
+        abstract void read(ResultSet resultSet, int column, int row) throws SQLException;
+
+        abstract void writeValues(int rows) throws IOException;
+
+    }
+
+    private class LongBlock extends ColumnBlock {
+
+        final long[] values = new long[ColumnarFormat.ROW_GROUP_SIZE];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getLong(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void writeValues(int rows) throws IOException {
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    output.writeLong(values[row]);
+                }
+            }
+        }
+
+    }
+
+    private class DoubleBlock extends ColumnBlock {
+
+        private final double[] values = new double[ColumnarFormat.ROW_GROUP_SIZE];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getDouble(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void writeValues(int rows) throws IOException {
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    output.writeDouble(values[row]);
+                }
+            }
+        }
+
+    }
+
+    private class BooleanBlock extends ColumnBlock {
+
+        private final boolean[] values = new boolean[ColumnarFormat.ROW_GROUP_SIZE];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getBoolean(column);
+            nulls[row] = resultSet.wasNull();
+        }
+
+        @Override
+        void writeValues(int rows) throws IOException {
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    output.writeBoolean(values[row]);
+                }
+            }
+        }
+
+    }
+
+    private class DateBlock extends LongBlock {
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            Date value = resultSet.getDate(column);
+            nulls[row] = value == null;
+            values[row] = value == null ? 0 : value.getTime();
+        }
+
+    }
+
+    private class TimeBlock extends LongBlock {
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            Time value = resultSet.getTime(column);
+            nulls[row] = value == null;
+            values[row] = value == null ? 0 : value.getTime();
+        }
+
+    }
+
+    private class TimestampBlock extends ColumnBlock {
+
+        private final long[] millis = new long[ColumnarFormat.ROW_GROUP_SIZE];
+        private final int[] nanos = new int[ColumnarFormat.ROW_GROUP_SIZE];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            Timestamp value = resultSet.getTimestamp(column);
+            nulls[row] = value == null;
+            if (value != null) {
+                millis[row] = value.getTime();
+                nanos[row] = value.getNanos();
+            }
+        }
+
+        @Override
+        void writeValues(int rows) throws IOException {
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    output.writeLong(millis[row]);
+                    output.writeInt(nanos[row]);
+                }
+            }
+        }
+
+    }
+
+    private class BytesBlock extends ColumnBlock {
+
+        private final byte[][] values = new byte[ColumnarFormat.ROW_GROUP_SIZE][];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getBytes(column);
+            nulls[row] = values[row] == null;
+        }
+
+        @Override
+        void writeValues(int rows) throws IOException {
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    writeBytes(values[row]);
+                }
+                values[row] = null;
+            }
+        }
+
+    }
+
+    private class DecimalBlock extends ColumnBlock {
+
+        private final String[] values = new String[ColumnarFormat.ROW_GROUP_SIZE];
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            BigDecimal value = resultSet.getBigDecimal(column);
+            nulls[row] = value == null;
+            values[row] = value == null ? null : value.toString();
+        }
+
+        @Override
+        void writeValues(int rows) throws IOException {
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    writeString(values[row]);
+                }
+                values[row] = null;
+            }
+        }
+
+    }
+
+    /**
+     * Strings of the row group are dictionary encoded if there are few distinct values.
+     */
+    private class StringBlock extends ColumnBlock {
+
+        private final String[] values = new String[ColumnarFormat.ROW_GROUP_SIZE];
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        @Override
+        void read(ResultSet resultSet, int column, int row) throws SQLException {
+            values[row] = resultSet.getString(column);
+            nulls[row] = values[row] == null;
+        }
+
+        @Override
+        void writeValues(int rows) throws IOException {
+            dictionary.clear();
+            for (int row = 0; row < rows && dictionary.size() <= ColumnarFormat.MAX_DICTIONARY_SIZE; row++) {
+                if (!nulls[row] && !dictionary.containsKey(values[row])) {
+                    dictionary.put(values[row], dictionary.size());
+                }
+            }
+            if (dictionary.size() <= ColumnarFormat.MAX_DICTIONARY_SIZE && dictionary.size() < rows / 2) {
+                writeDictionaryValues(rows);
+            } else {
+                output.writeByte(ColumnarFormat.STRING_PLAIN);
+                for (int row = 0; row < rows; row++) {
+                    if (!nulls[row]) {
+                        writeString(values[row]);
+                    }
+                }
+            }
+            Arrays.fill(values, 0, rows, null);
+        }
+
+        private void writeDictionaryValues(int rows) throws IOException {
+            String[] entries = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                entries[entry.getValue()] = entry.getKey();
+            }
+            output.writeByte(ColumnarFormat.STRING_DICTIONARY);
+            output.writeInt(entries.length);
+            for (String entry : entries) {
+                writeString(entry);
+            }
+            for (int row = 0; row < rows; row++) {
+                if (!nulls[row]) {
+                    output.writeByte(dictionary.get(values[row]));
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,88 @@
+package bilokhado;
+
+import java.sql.Types;
+
+/**
+ * Layout of the columnar binary dataset file. All numbers are big-endian.
+ * <pre>
+ * file      := MAGIC VERSION:int table* FILE_END
+ * table     := TABLE_START name:string columnCount:int column* rowGroup* TABLE_END
+ * column    := name:string sqlType:int kind:byte
+ * rowGroup  := ROW_GROUP_START rowCount:int columnBlock*
+ * block     := nullBitmap:byte[(rowCount + 7) / 8] values of the non-null rows
+ * string    := length:int UTF-8 bytes
+ * </pre>
+ * Values are encoded according to the column kind. String block starts with the encoding byte:
+ * plain strings follow or the dictionary with up to 256 entries and one index byte per value.
+ */
+final class ColumnarFormat {
+
+    static final int MAGIC = 0x44534358;
+    static final int VERSION = 1;
+
+    static final byte FILE_END = 0;
+    static final byte TABLE_START = 1;
+    static final byte ROW_GROUP_START = 2;
+    static final byte TABLE_END = 3;
+
+    static final byte KIND_LONG = 1;
+    static final byte KIND_DOUBLE = 2;
+    static final byte KIND_BOOLEAN = 3;
+    static final byte KIND_DECIMAL = 4;
+    static final byte KIND_STRING = 5;
+    static final byte KIND_BYTES = 6;
+    static final byte KIND_DATE = 7;
+    static final byte KIND_TIME = 8;
+    static final byte KIND_TIMESTAMP = 9;
+
+    static final byte STRING_PLAIN = 0;
+    static final byte STRING_DICTIONARY = 1;
+    static final int MAX_DICTIONARY_SIZE = 256;
+
+    static final int ROW_GROUP_SIZE = 4096;
+
+    private ColumnarFormat() {
+    }
+
+    static byte kindForType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return KIND_LONG;
+
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return KIND_DOUBLE;
+
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return KIND_BOOLEAN;
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return KIND_DECIMAL;
+
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return KIND_BYTES;
+
+            case Types.DATE:
+                return KIND_DATE;
+
+            case Types.TIME:
+                return KIND_TIME;
+
+            case Types.TIMESTAMP:
+                return KIND_TIMESTAMP;
+
+            default:
+                return KIND_STRING;
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of database connections shared by export workers. Connections are opened lazily
+ * up to the pool size and reused after they are released. Every borrowed connection holds a
+ * permit, so new connections are opened without any lock held and slow connects of the workers
+ * run at the same time. Idle connections are validated before they are handed out again.
+ */
+class ConnectionPool implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private final Supplier<Connection> connectionFactory;
+    private final Semaphore permits;
+    private final BlockingQueue<Connection> idleConnections;
+    private final List<Connection> openedConnections;
+
+    ConnectionPool(int size, Supplier<Connection> connectionFactory) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size should be positive, but got " + size);
+        }
+        this.connectionFactory = connectionFactory;
+        this.permits = new Semaphore(size, true);
+        this.idleConnections = new LinkedBlockingQueue<>(size);
+        this.openedConnections = new ArrayList<>(size);
+    }
+
+    /**
+     * Returns valid idle connection or opens a new one, waiting for connection to be released if
+     * the pool is full. Broken idle connections are closed and replaced. Returns null if the new
+     * connection can't be opened.
+     */
+    Connection borrow() throws InterruptedException {
+        permits.acquire();
+        Connection connection;
+        while ((connection = idleConnections.poll()) != null) {
+            if (isValid(connection)) {
+                return connection;
+            }
+            logger.warn("Pooled database connection is no longer valid. Replacing it");
+            discard(connection);
+        }
+        try {
+            connection = connectionFactory.get();
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+        if (connection == null) {
+            permits.release();
+            return null;
+        }
+        synchronized (openedConnections) {
+            openedConnections.add(connection);
+        }
+        return connection;
+    }
+
+    /**
+     * Returns the borrowed connection to the pool. The connection is put to the idle ones before
+     * the permit is released, so the next borrower finds it instead of opening a new one.
+     */
+    void release(Connection connection) {
+        if (connection != null) {
+            idleConnections.offer(connection);
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (openedConnections) {
+            for (Connection connection : openedConnections) {
+                closeQuietly(connection);
+            }
+            openedConnections.clear();
+            idleConnections.clear();
+        }
+    }
+
+    /**
+     * Returns true if the connection is still usable. Drivers which can't check it are trusted
+     * unless the connection is closed.
+     */
+    private static boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException | AbstractMethodError ex) {
+            try {
+                return !connection.isClosed();
+            } catch (SQLException closedEx) {
+                return false;
+            }
+        }
+    }
+
+    private void discard(Connection connection) {
+        synchronized (openedConnections) {
+            openedConnections.remove(connection);
+        }
+        closeQuietly(connection);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            logger.error("Unable to close database connection", ex);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * JDBC connection parameters read from the properties with the common prefix: url, driver, user
+ * and password, e.g. export.url and export.user. Driver class is loaded only if it is set, as
+ * JDBC 4 drivers found on the class path register themselves.
+ */
+public final class ConnectionSettings {
+
+    public static final String URL_SUFFIX = "url";
+    public static final String DRIVER_SUFFIX = "driver";
+    public static final String USER_SUFFIX = "user";
+    public static final String PASSWORD_SUFFIX = "password";
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionSettings.class);
+
+    private final String url;
+    private final String driverClass;
+    private final String user;
+    private final String password;
+
+    public ConnectionSettings(String url, String driverClass, String user, String password) {
+        this.url = url;
+        this.driverClass = driverClass;
+        this.user = user;
+        this.password = password;
+    }
+
+    /**
+     * Returns settings read from the prefixed properties. Default url is used if the url is not set,
+     * so the existing configurations keep connecting to the same database. Default driver belongs
+     * to the default url and is used only with it, driver of the other url is loaded only if it is set.
+     */
+    public static ConnectionSettings fromProperties(Properties properties, String prefix, String defaultUrl
+            , String defaultDriverClass) {
+        String url = getString(properties, prefix + URL_SUFFIX);
+        String driverClass = getString(properties, prefix + DRIVER_SUFFIX);
+        if (url == null) {
+            url = defaultUrl;
+            if (driverClass == null) {
+                driverClass = defaultDriverClass;
+            }
+        }
+        return new ConnectionSettings(url, driverClass, getString(properties, prefix + USER_SUFFIX)
+                , getString(properties, prefix + PASSWORD_SUFFIX));
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Opens new connection. Returns null if the driver can't be loaded or the connection can't be opened.
+     */
+    public Connection openConnection() {
+        if (url == null) {
+            logger.error("Connection url is not set");
+            return null;
+        }
+        try {
+            if (driverClass != null) {
+                Class.forName(driverClass);
+            }
+            Properties info = new Properties();
+            if (user != null) {
+                info.setProperty(USER_SUFFIX, user);
+            }
+            if (password != null) {
+                info.setProperty(PASSWORD_SUFFIX, password);
+            }
+            return DriverManager.getConnection(url, info);
+        } catch (ClassNotFoundException ex) {
+            logger.error("Failed to load driver class {}!", driverClass, ex);
+        } catch (SQLException ex) {
+            logger.error("Failed to get connection to the database!", ex);
+        }
+        return null;
+    }
+
+    private static String getString(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+}
@@ -0,0 +1,34 @@
+package bilokhado;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes the bytes to the underlying stream counting them.
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+    private long bytes;
+
+    CountingOutputStream(OutputStream output) {
+        super(output);
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        bytes++;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        bytes += length;
+    }
+
+}
@@ -0,0 +1,64 @@
+package bilokhado;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Passes the characters to the underlying writer counting the bytes of their UTF-8 encoding, which
+ * is the encoding of every text output, so the count is the number of bytes the characters take in
+ * the file before compression. Closing it doesn't close the underlying writer, which may be shared.
+ */
+class CountingWriter extends FilterWriter {
+
+    private long bytes;
+
+    CountingWriter(Writer output) {
+        super(output);
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        out.write(c);
+        bytes += encodedLength((char) c);
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        out.write(buffer, offset, length);
+        for (int i = offset; i < offset + length; i++) {
+            bytes += encodedLength(buffer[i]);
+        }
+    }
+
+    @Override
+    public void write(String text, int offset, int length) throws IOException {
+        out.write(text, offset, length);
+        for (int i = offset; i < offset + length; i++) {
+            bytes += encodedLength(text.charAt(i));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Returns UTF-8 length of the character. Both characters of a surrogate pair count two bytes,
+     * four bytes together.
+     */
+    private static int encodedLength(char c) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800 || Character.isSurrogate(c)) {
+            return 2;
+        }
+        return 3;
+    }
+
+}
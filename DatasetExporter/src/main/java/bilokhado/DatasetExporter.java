@@ -1,46 +1,63 @@
 package bilokhado;
 
-import com.teradata.presto.jdbc4.DataSource;
-
 import org.dbunit.DatabaseUnitException;
-import org.dbunit.database.DatabaseConnection;
-import org.dbunit.database.IDatabaseConnection;
-import org.dbunit.database.QueryDataSet;
-import org.dbunit.dataset.xml.FlatDtdDataSet;
-import org.dbunit.dataset.xml.FlatXmlWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+
+import java.io.BufferedOutputStream;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Types;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 
 public class DatasetExporter {
 
     private static final Logger logger = LoggerFactory.getLogger(DatasetExporter.class);
-    private static final String DRIVER_CLASS = "com.teradata.presto.jdbc4.Driver";
-    private static final String PRESTO_PROPERTY_STRING = ";User=dmytro;LogLevel=6;LogPath=C:\\\\\\\\Dev";
-    private static final String CONNECTION_URL = "jdbc:presto://bigdata.host:9000/hive" + PRESTO_PROPERTY_STRING;
-    private static final String CREATE_TEMPLATE = "%s%s %s(%d)";
-    private static final String INSERT_TEMPLATE = "%s%s";
     private static final String NEW_LINE = System.lineSeparator();
-    private static final String RESULT_FILENAME_BASE = "dataset-output";
+    static final String RESULT_FILENAME_BASE = "dataset-output";
+    private static final Charset OUTPUT_CHARSET = Charset.forName("UTF-8");
+    private static final int COPY_BUFFER_SIZE = 8192;
+    private static final String LOAD_COMMAND = "load";
+    private static final String FETCH_BENCHMARK_COMMAND = "fetchbench";
 
     public static void main(String[] cmdLineParams) {
+        if (cmdLineParams.length == 2 && LOAD_COMMAND.equals(cmdLineParams[0])) {
+            loadDataset(cmdLineParams[1]);
+            return;
+        }
+        if (cmdLineParams.length == 2 && FETCH_BENCHMARK_COMMAND.equals(cmdLineParams[0])) {
+            benchmarkFetchSizes(cmdLineParams[1]);
+            return;
+        }
         if (cmdLineParams.length != 1) {
             logger.error("Got no properties file name");
             return;
@@ -50,158 +67,1275 @@ public class DatasetExporter {
             logger.error("Properties is null");
             return;
         }
-        Connection connection = getConnection(CONNECTION_URL);
+        ExportSettings settings = new ExportSettings(datasetQueries);
+        ExportMetrics metrics = new ExportMetrics();
+        if (settings.getBoolean(ExportSettings.JMX_OPTION)) {
+            metrics.registerMBean();
+        }
+        exportDataset(settings, RESULT_FILENAME_BASE, metrics);
+        String metricsFormat = settings.getMetricsFormat();
+        metrics.finish(metricsFormat, Paths.get(RESULT_FILENAME_BASE + "-metrics." + metricsFormat));
+    }
+
+    /**
+     * Exports the dataset in the configured format to the files named after the base file name.
+     */
+    static void exportDataset(ExportSettings settings, String baseFileName, ExportMetrics metrics) {
+        String format = settings.getFormat();
+        int threads = Math.max(settings.getInt(ExportSettings.THREADS_OPTION, 1), settings.getMaxSplits());
+        boolean subset = settings.getBoolean(ExportSettings.SUBSET_OPTION);
+        boolean delta = settings.getBoolean(ExportSettings.DELTA_OPTION);
+        boolean resume = settings.getBoolean(ExportSettings.RESUME_OPTION);
+        if (resume && (!ExportSettings.FORMAT_SQL.equals(format) || subset || delta)) {
+            logger.error("Option {} is supported by the plain SQL export only. Exporting without checkpoints"
+                    , ExportSettings.RESUME_OPTION);
+            resume = false;
+        }
+        try (PooledDataSource dataSource = new PooledDataSource(settings.getConnectionSettings(), threads)) {
+            if (resume) {
+                exportSqlSetResumable(settings, baseFileName, threads, metrics, dataSource.getPool());
+                return;
+            }
+            if (ExportSettings.FORMAT_SQL.equals(format) && threads > 1 && !subset && !delta) {
+                exportSqlSetParallel(settings, baseFileName, threads, metrics, dataSource.getPool());
+                return;
+            }
+            for (String tableName : settings.getTableNames()) {
+                if (settings.isTableSplit(tableName)) {
+                    logger.error("Option {} is supported by the plain SQL export only. Exporting the table {} without split"
+                            , ExportSettings.SPLIT_COLUMN_OPTION, tableName);
+                }
+            }
+            try (Connection connection = dataSource.getConnection()) {
+                exportDataset(connection, settings, baseFileName, format, subset, delta, metrics);
+            } catch (SQLException ex) {
+                logger.error("Unable to connect to the database", ex);
+            }
+        }
+    }
+
+    private static void exportDataset(Connection connection, ExportSettings settings, String baseFileName
+            , String format, boolean subset, boolean delta, ExportMetrics metrics) {
+        if (ExportSettings.FORMAT_XML.equals(format)) {
+            retrieveAndSaveDataset(connection, settings, baseFileName, metrics);
+        } else if (ExportSettings.FORMAT_COLUMNAR.equals(format)) {
+            exportColumnarSet(connection, settings, baseFileName, metrics);
+        } else if (delta) {
+            exportDeltaSet(connection, settings, baseFileName, metrics);
+        } else if (subset) {
+            exportSqlSubset(connection, settings, baseFileName, metrics);
+        } else {
+            exportSqlSet(connection, settings, baseFileName, metrics);
+        }
+    }
+
+    /**
+     * Loads the exported dataset into the target database described by the load properties.
+     * The DDL script, if set, is executed first.
+     */
+    private static void loadDataset(String propertiesFileName) {
+        Properties loadProperties = loadPropertiesFromFile(propertiesFileName);
+        if (loadProperties == null) {
+            logger.error("Properties is null");
+            return;
+        }
+        LoadSettings settings = new LoadSettings(loadProperties);
+        String datasetFileName = settings.getString(LoadSettings.FILE_OPTION);
+        if (datasetFileName == null) {
+            logger.error("Dataset file to load is not set with {}", LoadSettings.FILE_OPTION);
+            return;
+        }
+        Path datasetFile = Paths.get(datasetFileName);
+        int threads = Math.max(1, settings.getInt(LoadSettings.THREADS_OPTION, 1));
+        long startTime = System.nanoTime();
+        long rows;
+        try (ConnectionPool connectionPool = new ConnectionPool(threads, settings.getConnectionSettings()::openConnection);
+             DatasetLoader loader = new DatasetLoader(connectionPool, threads
+                     , Math.max(1, settings.getInt(LoadSettings.BATCH_SIZE_OPTION, 1000))
+                     , Math.max(1, settings.getInt(LoadSettings.COMMIT_SIZE_OPTION, 10000)))) {
+            String createFileName = settings.getString(LoadSettings.CREATE_FILE_OPTION);
+            if (createFileName != null) {
+                Path createFile = Paths.get(createFileName);
+                try (InputStream createInput = OutputCodec.forFile(createFile).openInput(createFile)) {
+                    loader.executeScript(createInput);
+                }
+            }
+            String format = settings.getFormat(datasetFile);
+            if (ExportSettings.FORMAT_COLUMNAR.equals(format)) {
+                Connection connection = connectionPool.borrow();
+                if (connection == null) {
+                    logger.error("Connection is null");
+                    return;
+                }
+                try {
+                    rows = new ColumnarDatasetLoader(connection).load(datasetFile);
+                } finally {
+                    connectionPool.release(connection);
+                }
+            } else {
+                try (InputStream datasetInput = OutputCodec.forFile(datasetFile).openInput(datasetFile)) {
+                    rows = ExportSettings.FORMAT_XML.equals(format)
+                            ? loader.loadFlatXml(datasetInput) : loader.loadSqlInserts(datasetInput);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.error("Failed to load dataset into the database", ex);
+            return;
+        } catch (IOException ex) {
+            logger.error("Unable to load dataset file: {}", datasetFile, ex);
+            return;
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted while loading dataset", ex);
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        logger.info("Loaded {} rows from {} in {} ms ({} rows/sec)"
+                , rows, datasetFile, elapsedMillis, elapsedMillis == 0 ? rows : rows * 1000 / elapsedMillis);
+    }
+
+    static Properties loadPropertiesFromFile(String fileName) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new FileInputStream(fileName));
+        } catch (IOException ex) {
+            logger.error("Unable to read properties file: {}", fileName, ex);
+            properties = null;
+        }
+        return properties;
+    }
+
+    /**
+     * Reads every table with each of the benchmark fetch sizes and logs the throughput, so the fetch
+     * size can be chosen for the real database. The benchmark runs against the database set with the
+     * benchmark url option, e.g. a local copy of the data, or against the export database otherwise.
+     */
+    private static void benchmarkFetchSizes(String propertiesFileName) {
+        Properties benchmarkProperties = loadPropertiesFromFile(propertiesFileName);
+        if (benchmarkProperties == null) {
+            logger.error("Properties is null");
+            return;
+        }
+        ExportSettings settings = new ExportSettings(benchmarkProperties);
+        ConnectionSettings connectionSettings = settings.getBenchmarkConnectionSettings();
+        Connection connection = (connectionSettings == null ? settings.getConnectionSettings() : connectionSettings)
+                .openConnection();
         if (connection == null) {
             logger.error("Connection is null");
             return;
         }
-        //retrieveAndSaveDataset(connection, datasetQueries, RESULT_FILENAME_BASE);
-        exportSqlSet(connection, datasetQueries, RESULT_FILENAME_BASE);
+        List<Integer> fetchSizes = settings.getBenchmarkFetchSizes();
+        int repeats = Math.max(1, settings.getInt(ExportSettings.BENCHMARK_REPEATS_OPTION, 3));
+        for (String tableName : settings.getTableNames()) {
+            TableSettings table = settings.getTableSettings(tableName);
+            StringBuilder curveBuilder = new StringBuilder();
+            for (int fetchSize : fetchSizes) {
+                TableSettings benchmarkTable = table.withFetchSize(fetchSize);
+                long bestNanos = Long.MAX_VALUE;
+                long rows = 0;
+                for (int i = 0; i < repeats; i++) {
+                    long startTime = System.nanoTime();
+                    rows = readAllRows(connection, benchmarkTable);
+                    if (rows < 0) {
+                        break;
+                    }
+                    bestNanos = Math.min(bestNanos, System.nanoTime() - startTime);
+                }
+                if (rows < 0) {
+                    logger.error("Benchmark of the table {} failed with fetch size {}", table.name, fetchSize);
+                    continue;
+                }
+                long bestMillis = TimeUnit.NANOSECONDS.toMillis(bestNanos);
+                long rowsPerSecond = bestNanos == 0 ? rows : rows * TimeUnit.SECONDS.toNanos(1) / bestNanos;
+                logger.info("Table {} fetch size {}: {} rows in {} ms ({} rows/sec)"
+                        , table.name, fetchSize, rows, bestMillis, rowsPerSecond);
+                curveBuilder.append(NEW_LINE).append(table.name).append(',').append(fetchSize).append(',')
+                        .append(rows).append(',').append(bestMillis).append(',').append(rowsPerSecond);
+            }
+            logger.info("Fetch size curve of the table {} (table,fetchSize,rows,millis,rowsPerSecond):{}"
+                    , table.name, curveBuilder);
+        }
+        closeAll(connection);
+    }
+
+    /**
+     * Reads every column of every row of the table query and returns number of rows or -1 on failure.
+     */
+    private static long readAllRows(Connection connection, TableSettings table) {
+        Statement statement = getStatement(connection, table);
+        if (statement == null) {
+            return -1;
+        }
+        ResultSet resultSet = executeQuery(statement, table.query);
+        if (resultSet == null) {
+            closeAll(statement);
+            return -1;
+        }
+        try {
+            int columns = resultSet.getMetaData().getColumnCount();
+            long rows = 0;
+            while (resultSet.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    resultSet.getObject(i);
+                }
+                rows++;
+            }
+            return rows;
+        } catch (SQLException ex) {
+            logger.error("Got exception during reading result set of query {}", table.query, ex);
+            return -1;
+        } finally {
+            closeAll(resultSet, statement);
+        }
+    }
+
+    static void exportSqlSet(Connection connection, ExportSettings settings, String baseFileName
+            , ExportMetrics metrics) {
+        try (Writer createWriter = openOutputWriter(settings, baseFileName + "-create.sql");
+             Writer insertWriter = openOutputWriter(settings, baseFileName + "-insert.sql")) {
+            for (String tableName : settings.getTableNames()) {
+                TableOutput tableOutput = exportTableToTempFiles(connection, settings.getTableSettings(tableName)
+                        , true, true, metrics);
+                if (tableOutput == null) {
+                    continue;
+                }
+                try {
+                    appendFile(tableOutput.createFile, createWriter);
+                    appendFile(tableOutput.insertFile, insertWriter);
+                } finally {
+                    tableOutput.delete();
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Unable to write output sql file", ex);
+        }
+    }
+
+    /**
+     * Exports tables concurrently, each worker using its own connection from the pool. Every table
+     * is written to temporary files first, which are then appended to the output in table order.
+     * Table with the split column is exported by several workers, each one reading its own slice,
+     * and the slices are appended in order. Table is skipped if any of its slices fails.
+     */
+    private static void exportSqlSetParallel(ExportSettings settings, String baseFileName, int threads
+            , ExportMetrics metrics, ConnectionPool connectionPool) {
+        List<String> tableNames = settings.getTableNames();
+        List<List<Future<TableOutput>>> tableOutputs = new ArrayList<>(tableNames.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (Writer createWriter = openOutputWriter(settings, baseFileName + "-create.sql");
+             Writer insertWriter = openOutputWriter(settings, baseFileName + "-insert.sql")) {
+            for (String tableName : tableNames) {
+                List<TableSettings> slices = getTableSlices(connectionPool, settings, settings.getTableSettings(tableName));
+                List<Future<TableOutput>> sliceOutputs = new ArrayList<>(slices.size());
+                for (int i = 0; i < slices.size(); i++) {
+                    TableSettings slice = slices.get(i);
+                    boolean firstSlice = i == 0;
+                    boolean lastSlice = i == slices.size() - 1;
+                    sliceOutputs.add(executor.submit(
+                            () -> exportTableToTempFiles(connectionPool, slice, firstSlice, lastSlice, metrics)));
+                }
+                tableOutputs.add(sliceOutputs);
+            }
+            for (int i = 0; i < tableNames.size(); i++) {
+                List<TableOutput> sliceOutputs = new ArrayList<>();
+                boolean complete = true;
+                for (Future<TableOutput> sliceOutput : tableOutputs.get(i)) {
+                    try {
+                        TableOutput tableOutput = sliceOutput.get();
+                        if (tableOutput == null) {
+                            complete = false;
+                        } else {
+                            sliceOutputs.add(tableOutput);
+                        }
+                    } catch (ExecutionException ex) {
+                        logger.error("Failed to export table {}", tableNames.get(i), ex.getCause());
+                        complete = false;
+                    }
+                }
+                try {
+                    if (!complete) {
+                        logger.error("Table {} has not been exported completely. Skipping it", tableNames.get(i));
+                        metrics.discardTable(tableNames.get(i));
+                        continue;
+                    }
+                    for (TableOutput tableOutput : sliceOutputs) {
+                        appendFile(tableOutput.createFile, createWriter);
+                        appendFile(tableOutput.insertFile, insertWriter);
+                    }
+                } finally {
+                    for (TableOutput tableOutput : sliceOutputs) {
+                        tableOutput.delete();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Unable to write output sql file", ex);
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted while waiting for table export", ex);
+            Thread.currentThread().interrupt();
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.error("Export workers haven't finished in time");
+            }
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted while waiting for export workers to finish", ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Exports the table or its slice to temporary files, returns null if it has been skipped. DDL is
+     * written with the first slice, the separator line after the table with the last one.
+     */
+    private static TableOutput exportTableToTempFiles(ConnectionPool connectionPool, TableSettings table
+            , boolean firstSlice, boolean lastSlice, ExportMetrics metrics) throws IOException, InterruptedException {
+        Connection connection = connectionPool.borrow();
+        if (connection == null) {
+            logger.error("Connection is null. Skipping the table {}", table.name);
+            return null;
+        }
         try {
-            connection.close();
+            return exportTableToTempFiles(connection, table, firstSlice, lastSlice, metrics);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Exports the table or its slice to temporary files with the connection, returns null if it has
+     * been skipped. Rows of the table failed in the middle never reach the output this way.
+     */
+    private static TableOutput exportTableToTempFiles(Connection connection, TableSettings table
+            , boolean firstSlice, boolean lastSlice, ExportMetrics metrics) throws IOException {
+        TableOutput tableOutput = new TableOutput(Files.createTempFile(RESULT_FILENAME_BASE, "-create.sql")
+                , Files.createTempFile(RESULT_FILENAME_BASE, "-insert.sql"));
+        boolean exported;
+        try (Writer createWriter = firstSlice ? Files.newBufferedWriter(tableOutput.createFile, OUTPUT_CHARSET) : null;
+             Writer insertWriter = Files.newBufferedWriter(tableOutput.insertFile, OUTPUT_CHARSET)) {
+            exported = exportTable(connection, table, metrics, createWriter, insertWriter, null, lastSlice);
+        } catch (IOException ex) {
+            tableOutput.delete();
+            throw ex;
+        }
+        if (!exported) {
+            tableOutput.delete();
+            return null;
+        }
+        return tableOutput;
+    }
+
+    /**
+     * Splits the table query into slices by the split column. Range split reads minimum and maximum
+     * of the numeric column and divides the interval evenly, hash split takes the hash bucket of the
+     * column value with the dialect hash function. If the dialect has none, integral values are taken
+     * modulo number of slices and other columns are not split. Rows with null in the split column go
+     * to the first slice. The split condition is applied to the table query before the key range and
+     * the sampling, so the slices are disjoint and every one is sampled with the table percent. The
+     * row limit and maxRows cap the whole table, so the table with either of them is not split.
+     * Returns the table itself if it is not split.
+     */
+    private static List<TableSettings> getTableSlices(ConnectionPool connectionPool, ExportSettings settings
+            , TableSettings table) throws InterruptedException {
+        String splitColumn = settings.getTableString(ExportSettings.SPLIT_COLUMN_OPTION, table.name);
+        int splits = settings.getTableInt(ExportSettings.SPLITS_OPTION, table.name, 1);
+        List<TableSettings> slices = new ArrayList<>();
+        if (splitColumn == null || splitColumn.isEmpty() || splits < 2) {
+            slices.add(table);
+            return slices;
+        }
+        if (table.sample.limit > 0 || table.maxRows > 0) {
+            logger.error("Row limit of the table {} can't be divided between the slices. Exporting it without split"
+                    , table.name);
+            slices.add(table);
+            return slices;
+        }
+        String tableQuery = settings.getTableQuery(table.name);
+        TableSettings unsampledTable = table.withQuery(tableQuery);
+        List<String> conditions = new ArrayList<>(splits);
+        if (ExportSettings.SPLIT_HASH.equals(settings.getSplitMethod(table.name))) {
+            String bucket = settings.getSourceDialect().getHashBucketExpression(splitColumn, splits);
+            if (bucket == null) {
+                if (!isIntegralSplitColumn(connectionPool, unsampledTable, splitColumn)) {
+                    logger.error("Dialect has no hash function and the split column {} is not integral."
+                            + " Exporting the table {} without split", splitColumn, table.name);
+                    slices.add(table);
+                    return slices;
+                }
+                bucket = "MOD(ABS(" + splitColumn + "), " + splits + ")";
+            }
+            for (int i = 0; i < splits; i++) {
+                conditions.add(bucket + " = " + i);
+            }
+        } else {
+            BigDecimal[] bounds = getSplitColumnBounds(connectionPool, unsampledTable, splitColumn);
+            if (bounds == null) {
+                slices.add(table);
+                return slices;
+            }
+            BigDecimal step = bounds[1].subtract(bounds[0]).divide(BigDecimal.valueOf(splits), MathContext.DECIMAL64);
+            String lowerBound = null;
+            for (int i = 1; i <= splits; i++) {
+                String upperBound = i == splits ? null : bounds[0].add(step.multiply(BigDecimal.valueOf(i))).toPlainString();
+                conditions.add(lowerBound == null ? splitColumn + " < " + upperBound
+                        : upperBound == null ? splitColumn + " >= " + lowerBound
+                        : splitColumn + " >= " + lowerBound + " AND " + splitColumn + " < " + upperBound);
+                lowerBound = upperBound;
+            }
+        }
+        for (int i = 0; i < splits; i++) {
+            String condition = i == 0 ? "(" + conditions.get(i) + ") OR " + splitColumn + " IS NULL" : conditions.get(i);
+            String sliceQuery = "SELECT * FROM (" + tableQuery + ") split_source WHERE " + condition;
+            slices.add(table.withQuery(table.sample.apply(sliceQuery, table.sourceDialect)));
+        }
+        logger.info("Table {} is split into {} slices by {}", table.name, splits, splitColumn);
+        return slices;
+    }
+
+    /**
+     * Returns true if the split column is of an integral type, false if it isn't or the query fails.
+     */
+    private static boolean isIntegralSplitColumn(ConnectionPool connectionPool, TableSettings table
+            , String splitColumn) throws InterruptedException {
+        Connection connection = connectionPool.borrow();
+        if (connection == null) {
+            logger.error("Connection is null. Exporting the table {} without split", table.name);
+            return false;
+        }
+        try {
+            Integer splitColumnType = getColumnType(connection, table, splitColumn);
+            if (splitColumnType == null) {
+                logger.error("Unable to get type of {}. Exporting the table {} without split", splitColumn, table.name);
+                return false;
+            }
+            return SubsetExtractor.isIntegral(splitColumnType);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Returns JDBC type of the column of the table query, or null if the query fails.
+     */
+    private static Integer getColumnType(Connection connection, TableSettings table, String column) {
+        TableSettings typeQuery = table.withQuery("SELECT " + column + " FROM (" + table.query
+                + ") type_source WHERE 1 = 0");
+        Statement statement = getStatement(connection, typeQuery);
+        ResultSet resultSet = statement == null ? null : executeQuery(statement, typeQuery.query);
+        try {
+            return resultSet == null ? null : resultSet.getMetaData().getColumnType(1);
         } catch (SQLException ex) {
-            logger.error("Unable to close database connection", ex);
+            logger.error("Unable to get type of the column {} of the query {}", column, table.query, ex);
+            return null;
+        } finally {
+            closeAll(resultSet, statement);
         }
     }
 
-    private static Connection getConnection(String connectionUrl) {
-        Connection connection = null;
+    /**
+     * Returns minimum and maximum of the split column or null if the table is empty or the query fails.
+     */
+    private static BigDecimal[] getSplitColumnBounds(ConnectionPool connectionPool, TableSettings table
+            , String splitColumn) throws InterruptedException {
+        Connection connection = connectionPool.borrow();
+        if (connection == null) {
+            logger.error("Connection is null. Exporting the table {} without split", table.name);
+            return null;
+        }
+        TableSettings boundsQuery = table.withQuery("SELECT MIN(" + splitColumn + "), MAX(" + splitColumn
+                + ") FROM (" + table.query + ") split_source");
+        Statement statement = getStatement(connection, boundsQuery);
+        ResultSet resultSet = statement == null ? null : executeQuery(statement, boundsQuery.query);
         try {
-            Class.forName(DRIVER_CLASS);
-            DataSource ds = new com.teradata.presto.jdbc4.DataSource();
-            ds.setURL(connectionUrl);
-            connection = ds.getConnection();
-        } catch (ClassNotFoundException ex) {
-            logger.error("Failed to load driver class!", ex);
+            if (resultSet == null || !resultSet.next() || resultSet.getBigDecimal(1) == null) {
+                logger.error("Unable to get bounds of {}. Exporting the table {} without split", splitColumn, table.name);
+                return null;
+            }
+            return new BigDecimal[] {resultSet.getBigDecimal(1), resultSet.getBigDecimal(2)};
         } catch (SQLException ex) {
-            logger.error("Failed to get connection from the datasource!", ex);
+            logger.error("Unable to get bounds of {}. Exporting the table {} without split", splitColumn, table.name, ex);
+            return null;
+        } finally {
+            closeAll(resultSet, statement);
+            connectionPool.release(connection);
         }
-        return connection;
     }
 
-    private static Properties loadPropertiesFromFile(String fileName) {
-        Properties properties = new Properties();
+    /**
+     * Exports every table to its own chunk files, recording completed tables in the checkpoint
+     * manifest. Tables with an ordering key are also checkpointed every few rows. Rerun after
+     * failure skips the completed tables and continues partially exported ones after the last
+     * checkpointed row. Tables are exported concurrently if there are several threads, each worker
+     * using its own connection from the pool, but split tables are exported as a whole, as the
+     * slices can't be resumed. When all the tables are exported, chunks are merged into the output files.
+     */
+    private static void exportSqlSetResumable(ExportSettings settings, String baseFileName, int threads
+            , ExportMetrics metrics, ConnectionPool connectionPool) {
+        Path chunkDirectory = Paths.get(baseFileName + "-chunks");
+        List<String> tableNames = settings.getTableNames();
+        boolean allTablesDone = true;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
         try {
-            properties.load(new FileInputStream(fileName));
+            Files.createDirectories(chunkDirectory);
+            ExportCheckpoint checkpoint = ExportCheckpoint.load(chunkDirectory);
+            List<Future<Boolean>> tableResults = new ArrayList<>(tableNames.size());
+            for (String tableName : tableNames) {
+                if (checkpoint.isTableDone(tableName)) {
+                    logger.info("Table {} has been already exported. Skipping it", tableName);
+                    tableResults.add(null);
+                    continue;
+                }
+                if (settings.isTableSplit(tableName)) {
+                    logger.error("Split slices of the table {} can't be resumed. Exporting it without split", tableName);
+                }
+                TableSettings table = settings.getTableSettings(tableName);
+                String tableQuery = settings.getTableQuery(tableName);
+                tableResults.add(executor.submit(() -> exportTableChunk(connectionPool, table, tableQuery
+                        , getChunk(chunkDirectory, tableName), checkpoint, metrics)));
+            }
+            for (int i = 0; i < tableNames.size(); i++) {
+                Future<Boolean> tableResult = tableResults.get(i);
+                if (tableResult == null) {
+                    continue;
+                }
+                try {
+                    if (tableResult.get()) {
+                        checkpoint.markTableDone(tableNames.get(i));
+                    } else {
+                        allTablesDone = false;
+                    }
+                } catch (ExecutionException ex) {
+                    logger.error("Failed to export table {}", tableNames.get(i), ex.getCause());
+                    allTablesDone = false;
+                }
+            }
+            if (!allTablesDone) {
+                logger.error("Not all tables have been exported. Rerun to resume from {}", chunkDirectory);
+                return;
+            }
+            try (Writer createWriter = openOutputWriter(settings, baseFileName + "-create.sql");
+                 Writer insertWriter = openOutputWriter(settings, baseFileName + "-insert.sql")) {
+                for (String tableName : tableNames) {
+                    TableOutput chunk = getChunk(chunkDirectory, tableName);
+                    appendFile(chunk.createFile, createWriter);
+                    appendFile(chunk.insertFile, insertWriter);
+                }
+            }
+            for (String tableName : tableNames) {
+                getChunk(chunkDirectory, tableName).delete();
+            }
+            checkpoint.delete();
+            Files.deleteIfExists(chunkDirectory);
         } catch (IOException ex) {
-            logger.error("Unable to read properties file: {}", fileName, ex);
-            properties = null;
+            logger.error("Unable to write export chunk in {}", chunkDirectory, ex);
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted while waiting for table export", ex);
+            Thread.currentThread().interrupt();
+        } finally {
+            shutdown(executor);
         }
-        return properties;
     }
 
-    private static void exportSqlSet(Connection connection, Properties queries, String baseFileName) {
-        List<String> createTablesDdl = new ArrayList<>(queries.size());
-        List<String> insertDataDml = new ArrayList<>(queries.size());
-        for (String tableName : queries.stringPropertyNames()) {
-            Statement statement = getStatement(connection);
-            if (statement == null) {
-                logger.error("Statement is null for {}. Skipping the table {}"
-                        , queries.getProperty(tableName), tableName);
-                continue;
+    /**
+     * Exports statements turning the previous export into the current one. Every table needs the
+     * key column set with the delta key option. Row fingerprint indexes are kept in the index
+     * directory and replaced only when the whole delta has been written. If the watermark column
+     * is set, the query is restricted to the rows with the watermark greater than the previous
+     * maximal one.
+     */
+    private static void exportDeltaSet(Connection connection, ExportSettings settings, String baseFileName
+            , ExportMetrics metrics) {
+        Path indexDirectory = Paths.get(baseFileName + "-delta-index");
+        List<DeltaIndex.Writer> indexes = new ArrayList<>();
+        try {
+            Files.createDirectories(indexDirectory);
+            try (Writer deltaWriter = openOutputWriter(settings, baseFileName + "-delta.sql")) {
+                for (String tableName : settings.getTableNames()) {
+                    Path tableDelta = Files.createTempFile(RESULT_FILENAME_BASE, "-delta.sql");
+                    try {
+                        DeltaIndex.Writer index;
+                        try (Writer tableDeltaWriter = Files.newBufferedWriter(tableDelta, OUTPUT_CHARSET)) {
+                            index = exportTableDelta(connection, settings, tableName, indexDirectory, tableDeltaWriter
+                                    , metrics);
+                        }
+                        if (index != null) {
+                            indexes.add(index);
+                            appendFile(tableDelta, deltaWriter);
+                        }
+                    } finally {
+                        Files.deleteIfExists(tableDelta);
+                    }
+                }
+            }
+            for (DeltaIndex.Writer index : indexes) {
+                index.commit();
             }
-            ResultSet resultSet = executeQuery(statement, queries.getProperty(tableName));
+        } catch (IOException ex) {
+            logger.error("Unable to write delta output. Previous delta indexes are kept", ex);
+        } finally {
+            closeAll(indexes.toArray(new AutoCloseable[0]));
+        }
+    }
+
+    /**
+     * Writes delta of the table and returns its finished index, or null if the table has been skipped.
+     * Rows of the table with the non-integral key are ordered by the key hash of the source dialect.
+     * If the dialect has no hash function, all the keys get the same hash, so the previous entries of
+     * the table are held in memory.
+     */
+    private static DeltaIndex.Writer exportTableDelta(Connection connection, ExportSettings settings
+            , String tableName, Path indexDirectory, Writer output, ExportMetrics metrics) {
+        String keyColumn = settings.getTableString(ExportSettings.DELTA_KEY_OPTION, tableName);
+        if (keyColumn == null || keyColumn.isEmpty()) {
+            logger.error("Key column of the table {} is not set with {}. Skipping the table"
+                    , tableName, ExportSettings.DELTA_KEY_OPTION);
+            return null;
+        }
+        String watermarkColumn = settings.getTableString(ExportSettings.WATERMARK_OPTION, tableName);
+        Path indexFile = indexDirectory.resolve(tableName + ".idx");
+        DeltaIndex.Reader previous = null;
+        try {
+            previous = DeltaIndex.Reader.open(indexFile);
+        } catch (IOException ex) {
+            logger.error("Unable to read delta index {}. Exporting the table {} in full", indexFile, tableName, ex);
+        }
+        boolean incremental = watermarkColumn != null && previous != null && previous.watermark != null;
+        TableSettings table = settings.getTableSettings(tableName);
+        Integer keyType = getColumnType(connection, table, keyColumn);
+        if (keyType == null) {
+            logger.error("Unable to get type of the key column {}. Skipping the table {}", keyColumn, tableName);
+            closeAll(previous);
+            return null;
+        }
+        boolean integralKey = SubsetExtractor.isIntegral(keyType);
+        String keyHash = table.sourceDialect.getHashBucketExpression(keyColumn, Integer.MAX_VALUE);
+        table = table.withQuery("SELECT " + (integralKey ? "*" : "delta_source.*, " + (keyHash == null ? "0" : keyHash)
+                + " AS " + DeltaWriter.KEY_HASH_COLUMN) + " FROM (" + table.query + ") delta_source"
+                + (incremental ? " WHERE " + watermarkColumn + " > " + previous.watermark : "")
+                + " ORDER BY " + (integralKey ? keyColumn : DeltaWriter.KEY_HASH_COLUMN + ", " + keyColumn));
+        ExportMetrics.TableMetrics tableMetrics = metrics.startTable(table.name);
+        Statement statement = getStatement(connection, table);
+        ResultSet resultSet = statement == null ? null : executeQuery(statement, table.query);
+        DeltaIndex.Writer index = null;
+        boolean written = false;
+        try {
             if (resultSet == null) {
-                logger.error("ResutlSet is null for {}. Skipping the table {}"
-                        , queries.getProperty(tableName), tableName);
-                continue;
+                logger.error("ResutlSet is null for {}. Skipping the table {}", table.query, table.name);
+                return null;
             }
-            try {
-                ResultSetMetaData metaData = resultSet.getMetaData();
-                int columns = metaData.getColumnCount();
-                StringBuilder ddlBuilder = new StringBuilder();
-                List<Integer> escapeColumnValue = new ArrayList<>();
-                StringBuilder insertStatementBuilder = new StringBuilder();
-                ddlBuilder.append("CREATE TABLE ");
-                ddlBuilder.append(tableName);
-                ddlBuilder.append(" (");
-                ddlBuilder.append(NEW_LINE);
-                insertStatementBuilder.append("INSERT INTO ");
-                insertStatementBuilder.append(tableName);
-                insertStatementBuilder.append(" (");
-                insertStatementBuilder.append(NEW_LINE);
-                for (int i = 1; i <= columns; i++) {
-                    int precision = metaData.getPrecision(i);
-                    precision = precision > 2048 ? 2048 : precision;
-                    ddlBuilder.append(String.format(CREATE_TEMPLATE
-                            , i > 1 ? "    , " : "    "
-                            , metaData.getColumnName(i)
-                            , metaData.getColumnTypeName(i)
-                            , precision));
-                    ddlBuilder.append(NEW_LINE);
-                    insertStatementBuilder.append(String.format(INSERT_TEMPLATE
-                            , i > 1 ? ", " : ""
-                            , metaData.getColumnName(i)));
-                    if (metaData.getColumnType(i) == Types.VARCHAR) {
-                        escapeColumnValue.add(i);
+            tableMetrics.queryExecuted();
+            index = new DeltaIndex.Writer(indexFile, integralKey);
+            CountingWriter countingOutput = new CountingWriter(output);
+            DeltaWriter deltaWriter = new DeltaWriter(countingOutput, table.dialect, table.sourceDialect);
+            if (!deltaWriter.writeTable(table.name, keyColumn, watermarkColumn, incremental, resultSet, previous, index)) {
+                return null;
+            }
+            tableMetrics.rows = deltaWriter.insertedRows + deltaWriter.updatedRows + deltaWriter.deletedRows;
+            tableMetrics.bytes = countingOutput.getBytes();
+            metrics.finishTable(tableMetrics);
+            written = true;
+            logger.info("Exported delta of table {}: {} inserted, {} updated, {} deleted, {} unchanged rows in {} ms"
+                    , table.name, deltaWriter.insertedRows, deltaWriter.updatedRows, deltaWriter.deletedRows
+                    , deltaWriter.unchangedRows, tableMetrics.elapsedMillis());
+            return index;
+        } catch (SQLException ex) {
+            logger.error("Got exception during working with result set of query {}. Skipping the table {}"
+                    , table.query, table.name, ex);
+            return null;
+        } catch (IOException ex) {
+            logger.error("Unable to write delta index {}. Skipping the table {}", indexFile, table.name, ex);
+            return null;
+        } finally {
+            if (!written) {
+                metrics.discardTable(tableMetrics);
+                closeAll(index);
+            }
+            closeAll(resultSet, statement, previous);
+        }
+    }
+
+    /**
+     * Exports the referentially consistent subset. Seed rows of the tables with the seed condition
+     * are exported first, then the rows referenced by the exported ones are looked up in batches
+     * until no new keys are found. Tables are written parents first, so the dataset can be loaded
+     * with the foreign key constraints enabled, as long as the tables are loaded in order, by the
+     * single loader thread.
+     */
+    private static void exportSqlSubset(Connection connection, ExportSettings settings, String baseFileName
+            , ExportMetrics metrics) {
+        SubsetExtractor extractor = new SubsetExtractor(settings.getForeignKeys(), settings.getSourceDialect());
+        int lookupBatchSize = Math.max(1, settings.getInt(ExportSettings.SUBSET_BATCH_SIZE_OPTION, 500));
+        List<String> tableNames = extractor.getLoadOrder(settings.getTableNames());
+        Map<String, TableOutput> tableOutputs = new HashMap<>();
+        Map<String, Writer> insertWriters = new HashMap<>();
+        Set<String> tablesWithDdl = new HashSet<>();
+        boolean complete = true;
+        try {
+            for (String tableName : tableNames) {
+                TableOutput tableOutput = new TableOutput(Files.createTempFile(RESULT_FILENAME_BASE, "-create.sql")
+                        , Files.createTempFile(RESULT_FILENAME_BASE, "-insert.sql"));
+                tableOutputs.put(tableName, tableOutput);
+                insertWriters.put(tableName, Files.newBufferedWriter(tableOutput.insertFile, OUTPUT_CHARSET));
+            }
+            for (String tableName : tableNames) {
+                String seedCondition = settings.getSeedCondition(tableName);
+                if (seedCondition != null) {
+                    complete &= exportSubsetRows(connection, settings.getSubsetTableSettings(tableName, seedCondition, true)
+                            , extractor, tableOutputs.get(tableName), insertWriters.get(tableName), tablesWithDdl, metrics);
+                }
+            }
+            boolean keysFound = true;
+            while (keysFound) {
+                keysFound = false;
+                for (String tableName : tableNames) {
+                    String lookupCondition;
+                    while ((lookupCondition = extractor.nextLookupCondition(tableName, lookupBatchSize)) != null) {
+                        keysFound = true;
+                        complete &= exportSubsetRows(connection
+                                , settings.getSubsetTableSettings(tableName, lookupCondition, false), extractor
+                                , tableOutputs.get(tableName), insertWriters.get(tableName), tablesWithDdl, metrics);
                     }
                 }
-                ddlBuilder.append(");");
-                insertStatementBuilder.append(")");
-                insertStatementBuilder.append(NEW_LINE);
-                insertStatementBuilder.append("VALUES (");
-                insertDataDml.add(retrieveData(resultSet, columns, insertStatementBuilder.toString(), escapeColumnValue));
-                createTablesDdl.add(ddlBuilder.toString());
-            } catch (SQLException ex) {
-                logger.error("Got exception during working with result set of query {}. Skipping the table {}"
-                        , queries.getProperty(tableName), tableName);
-                continue;
-            } finally {
-                closeAll(resultSet, statement);
+            }
+            for (String tableName : tableNames) {
+                if (!tablesWithDdl.contains(tableName)) {
+                    exportSubsetRows(connection, settings.getSubsetTableSettings(tableName, "1 = 0", false), extractor
+                            , tableOutputs.get(tableName), insertWriters.get(tableName), tablesWithDdl, metrics);
+                }
+            }
+            closeAll(insertWriters.values().toArray(new AutoCloseable[0]));
+            try (Writer createWriter = openOutputWriter(settings, baseFileName + "-create.sql");
+                 Writer insertWriter = openOutputWriter(settings, baseFileName + "-insert.sql")) {
+                for (String tableName : tableNames) {
+                    appendFile(tableOutputs.get(tableName).createFile, createWriter);
+                    appendFile(tableOutputs.get(tableName).insertFile, insertWriter);
+                }
+            }
+        } catch (IOException ex) {
+            logger.error("Unable to write output sql file", ex);
+        } finally {
+            closeAll(insertWriters.values().toArray(new AutoCloseable[0]));
+            for (TableOutput tableOutput : tableOutputs.values()) {
+                tableOutput.delete();
             }
         }
-        Path fileCreate = Paths.get(baseFileName + "-create.sql");
-        Path fileInsert = Paths.get(baseFileName + "-insert.sql");
+        if (!complete) {
+            logger.error("Some rows of the subset have not been exported. The dataset may miss referenced rows");
+        }
+    }
+
+    /**
+     * Exports rows of the subset table, collecting their keys. DDL is written with the first rows
+     * exported. Returns false if the rows have not been exported.
+     */
+    private static boolean exportSubsetRows(Connection connection, TableSettings table, SubsetExtractor extractor
+            , TableOutput tableOutput, Writer insertWriter, Set<String> tablesWithDdl, ExportMetrics metrics)
+            throws IOException {
+        StatementListener keyListener = new StatementListener() {
+
+            private SubsetExtractor.RowKeyCollector keyCollector;
+
+            @Override
+            public void statementWritten(ResultSet resultSet, long rowsWritten) {
+            }
+
+            @Override
+            public void rowWritten(ResultSet resultSet) throws SQLException {
+                if (keyCollector == null) {
+                    keyCollector = extractor.newRowKeyCollector(table.name, resultSet.getMetaData());
+                }
+                keyCollector.collect(resultSet);
+            }
+
+        };
+        boolean writeDdl = !tablesWithDdl.contains(table.name);
+        try (Writer createWriter = writeDdl ? Files.newBufferedWriter(tableOutput.createFile, OUTPUT_CHARSET) : null) {
+            if (!exportTable(connection, table, metrics, createWriter, insertWriter, keyListener, true)) {
+                return false;
+            }
+        }
+        tablesWithDdl.add(table.name);
+        return true;
+    }
+
+    private static TableOutput getChunk(Path chunkDirectory, String tableName) {
+        return new TableOutput(chunkDirectory.resolve(tableName + "-create.sql")
+                , chunkDirectory.resolve(tableName + "-insert.sql"));
+    }
+
+    private static boolean exportTableChunk(ConnectionPool connectionPool, TableSettings table, String tableQuery
+            , TableOutput chunk, ExportCheckpoint checkpoint, ExportMetrics metrics)
+            throws IOException, InterruptedException {
+        Connection connection = connectionPool.borrow();
+        if (connection == null) {
+            logger.error("Connection is null. Skipping the table {}", table.name);
+            return false;
+        }
         try {
-            Files.write(fileCreate, createTablesDdl, Charset.forName("UTF-8"));
-            Files.write(fileInsert, insertDataDml, Charset.forName("UTF-8"));
+            return exportTableChunk(connection, table, tableQuery, chunk, checkpoint, metrics);
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Exports the table to its chunk files. Table with an ordering key is read in the key order and
+     * checkpointed on the first statement boundary after every checkpointRows rows, rerun continues
+     * after the key of the last checkpointed row. The key should be a single unique column,
+     * optionally followed by ASC or DESC.
+     */
+    private static boolean exportTableChunk(Connection connection, TableSettings table, String tableQuery
+            , TableOutput chunk, ExportCheckpoint checkpoint, ExportMetrics metrics) throws IOException {
+        String orderColumn = table.isRowCheckpointEnabled() ? table.getOrderColumn() : null;
+        if (table.isRowCheckpointEnabled() && orderColumn == null) {
+            logger.error("Ordering key '{}' of the table {} is not a single column. Exporting it without row checkpoints"
+                    , table.orderKey, table.name);
+        } else if (orderColumn != null && table.sample.isClientSampling() && table.sample.limit > 0) {
+            logger.error("Rows of the table {} sampled with the reservoir can't be checkpointed."
+                    + " Exporting it without row checkpoints", table.name);
+            orderColumn = null;
+        }
+        if (orderColumn == null) {
+            try (Writer createWriter = Files.newBufferedWriter(chunk.createFile, OUTPUT_CHARSET);
+                 Writer insertWriter = Files.newBufferedWriter(chunk.insertFile, OUTPUT_CHARSET)) {
+                return exportTable(connection, table, metrics, createWriter, insertWriter, null, true);
+            }
+        }
+        ExportCheckpoint.TableProgress progress = checkpoint.getProgress(table.name);
+        String resumeCondition = null;
+        if (progress == null) {
+            Files.deleteIfExists(chunk.insertFile);
+        } else {
+            logger.info("Resuming table {} after {} rows", table.name, progress.rows);
+            try (FileChannel insertChannel = FileChannel.open(chunk.insertFile, StandardOpenOption.WRITE)) {
+                insertChannel.truncate(progress.insertFileSize);
+            }
+            resumeCondition = orderColumn + (table.isOrderDescending() ? " < " : " > ") + progress.lastKeyLiteral;
+        }
+        long resumedRows = progress == null ? 0 : progress.rows;
+        TableSettings resumedTable = table.withQuery(table.sample.applyOrdered(tableQuery, table.sourceDialect
+                , table.orderKey, resumeCondition, resumedRows));
+        String keyColumnLabel = orderColumn.startsWith("\"")
+                ? orderColumn.substring(1, orderColumn.length() - 1).replace("\"\"", "\"") : orderColumn;
+        try (Writer createWriter = Files.newBufferedWriter(chunk.createFile, OUTPUT_CHARSET);
+             Writer insertWriter = Files.newBufferedWriter(chunk.insertFile, OUTPUT_CHARSET
+                     , StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            StatementListener checkpointListener = new StatementListener() {
+
+                private final StringBuilder keyLiteralBuilder = new StringBuilder();
+                private ColumnWriter keyWriter;
+                private int keyColumn;
+                private long checkpointedRows = 0;
+
+                @Override
+                public void statementWritten(ResultSet resultSet, long rowsWritten) throws SQLException, IOException {
+                    if (rowsWritten - checkpointedRows < table.checkpointRows) {
+                        return;
+                    }
+                    if (keyWriter == null) {
+                        keyColumn = resultSet.findColumn(keyColumnLabel);
+                        keyWriter = ColumnWriter.forColumn(resultSet.getMetaData(), keyColumn, table.sourceDialect);
+                    }
+                    keyLiteralBuilder.setLength(0);
+                    keyWriter.write(resultSet, keyColumn, keyLiteralBuilder);
+                    insertWriter.flush();
+                    checkpoint.saveProgress(table.name, new ExportCheckpoint.TableProgress(resumedRows + rowsWritten
+                            , keyLiteralBuilder.toString(), Files.size(chunk.insertFile)));
+                    checkpointedRows = rowsWritten;
+                }
+
+            };
+            return exportTable(connection, resumedTable, metrics, createWriter, insertWriter, checkpointListener
+                    , true);
+        }
+    }
+
+    /**
+     * Exports tables to the columnar binary dataset file. The file is never compressed, so the
+     * loader can map it into memory.
+     */
+    private static void exportColumnarSet(Connection connection, ExportSettings settings, String baseFileName
+            , ExportMetrics metrics) {
+        Path datasetFile = Paths.get(baseFileName + ".cds");
+        boolean aborted = false;
+        try (ColumnarDatasetWriter datasetWriter = new ColumnarDatasetWriter(
+                new BufferedOutputStream(Files.newOutputStream(datasetFile), COPY_BUFFER_SIZE))) {
+            for (String tableName : settings.getTableNames()) {
+                TableSettings table = settings.getTableSettings(tableName);
+                if (table.sample.isClientSampling()) {
+                    logger.error("Client side sampling is supported by SQL format only. Exporting all rows of {}"
+                            , table.name);
+                }
+                ExportMetrics.TableMetrics tableMetrics = metrics.startTable(table.name);
+                Statement statement = getStatement(connection, table);
+                if (statement == null) {
+                    logger.error("Statement is null for {}. Skipping the table {}", table.query, table.name);
+                    metrics.discardTable(tableMetrics);
+                    continue;
+                }
+                ResultSet resultSet = executeQuery(statement, table.query);
+                if (resultSet == null) {
+                    logger.error("ResutlSet is null for {}. Skipping the table {}", table.query, table.name);
+                    metrics.discardTable(tableMetrics);
+                    closeAll(statement);
+                    continue;
+                }
+                tableMetrics.queryExecuted();
+                try {
+                    long bytesBefore = datasetWriter.getBytesWritten();
+                    tableMetrics.rows = datasetWriter.writeTable(table.name, resultSet);
+                    tableMetrics.bytes = datasetWriter.getBytesWritten() - bytesBefore;
+                    metrics.finishTable(tableMetrics);
+                    logger.info("Exported table {}: {} rows in {} ms"
+                            , table.name, tableMetrics.rows, tableMetrics.elapsedMillis());
+                } catch (SQLException ex) {
+                    logger.error("Got exception during working with result set of query {}. Aborting export"
+                            , table.query, ex);
+                    metrics.discardTable(tableMetrics);
+                    aborted = true;
+                    break;
+                } finally {
+                    closeAll(resultSet, statement);
+                }
+            }
         } catch (IOException ex) {
-            logger.error("Unable to create output sql file", ex);
+            logger.error("Unable to write output dataset file", ex);
+            aborted = true;
+        }
+        if (aborted) {
+            try {
+                Files.deleteIfExists(datasetFile);
+            } catch (IOException ex) {
+                logger.error("Unable to delete incomplete dataset file {}", datasetFile, ex);
+            }
+        }
+    }
+
+    /**
+     * Opens writer to the output file, compressed with the codec chosen in the settings.
+     */
+    private static Writer openOutputWriter(ExportSettings settings, String fileName) throws IOException {
+        return new OutputStreamWriter(openOutputStream(settings, fileName), OUTPUT_CHARSET);
+    }
+
+    private static OutputStream openOutputStream(ExportSettings settings, String fileName) throws IOException {
+        return settings.getOutputCodec().open(Paths.get(fileName), settings.getCompressionLevel());
+    }
+
+    private static void appendFile(Path source, Writer output) throws IOException {
+        char[] buffer = new char[COPY_BUFFER_SIZE];
+        try (Reader reader = Files.newBufferedReader(source, OUTPUT_CHARSET)) {
+            int charsRead;
+            while ((charsRead = reader.read(buffer)) != -1) {
+                output.write(buffer, 0, charsRead);
+            }
+        }
+    }
+
+    /**
+     * Exports the table DDL and data to the writers. DDL is not written if the create output is null,
+     * the separator line after the rows is not written for the slices followed by other ones.
+     * Returns false if the table has been skipped because of the query failure.
+     */
+    private static boolean exportTable(Connection connection, TableSettings table, ExportMetrics metrics
+            , Writer createOutput, Writer insertOutput, StatementListener statementListener, boolean writeSeparator)
+            throws IOException {
+        CountingWriter createWriter = createOutput == null ? null : new CountingWriter(createOutput);
+        CountingWriter insertWriter = new CountingWriter(insertOutput);
+        ExportMetrics.TableMetrics tableMetrics = metrics.startTable(table.name);
+        Statement statement = getStatement(connection, table);
+        if (statement == null) {
+            logger.error("Statement is null for {}. Skipping the table {}", table.query, table.name);
+            metrics.discardTable(tableMetrics);
+            return false;
+        }
+        ResultSet resultSet = executeQuery(statement, table.query);
+        if (resultSet == null) {
+            logger.error("ResutlSet is null for {}. Skipping the table {}", table.query, table.name);
+            metrics.discardTable(tableMetrics);
+            closeAll(statement);
+            return false;
+        }
+        tableMetrics.queryExecuted();
+        boolean exported = false;
+        try {
+            List<ColumnDescriptor> descriptors = SchemaIntrospector.describe(resultSet.getMetaData());
+            int columns = descriptors.size();
+            StringBuilder ddlBuilder = new StringBuilder();
+            ColumnWriter[] columnWriters = new ColumnWriter[columns];
+            StringBuilder insertStatementBuilder = new StringBuilder();
+            ddlBuilder.append("CREATE TABLE ");
+            ddlBuilder.append(table.dialect.quoteIdentifier(table.name));
+            ddlBuilder.append(" (");
+            ddlBuilder.append(NEW_LINE);
+            insertStatementBuilder.append("INSERT INTO ");
+            insertStatementBuilder.append(table.dialect.quoteIdentifier(table.name));
+            insertStatementBuilder.append(" (");
+            insertStatementBuilder.append(NEW_LINE);
+            for (int i = 1; i <= columns; i++) {
+                ColumnDescriptor descriptor = descriptors.get(i - 1);
+                String columnName = table.dialect.quoteIdentifier(descriptor.name);
+                ddlBuilder.append(i > 1 ? "    , " : "    ");
+                ddlBuilder.append(columnName);
+                ddlBuilder.append(' ');
+                ddlBuilder.append(table.dialect.getColumnType(descriptor));
+                ddlBuilder.append(NEW_LINE);
+                if (i > 1) {
+                    insertStatementBuilder.append(", ");
+                }
+                insertStatementBuilder.append(columnName);
+                columnWriters[i - 1] = LargeValueWriter.forColumn(table, descriptor);
+            }
+            ddlBuilder.append(");");
+            insertStatementBuilder.append(")");
+            insertStatementBuilder.append(NEW_LINE);
+            insertStatementBuilder.append("VALUES (");
+            RowSampler rowSampler = table.sample.isClientSampling() ? new RowSampler(table.sample) : null;
+            if (table.pipelineRows > 0 && statementListener == null
+                    && (rowSampler == null || !rowSampler.hasReservoir())) {
+                new RowPipeline(descriptors, table, insertStatementBuilder.toString())
+                        .writeData(resultSet, insertWriter, rowSampler, tableMetrics);
+            } else {
+                writeData(resultSet, columnWriters, insertStatementBuilder.toString(), table.batchSize
+                        , insertWriter, statementListener, rowSampler, tableMetrics);
+            }
+            if (writeSeparator) {
+                insertWriter.write(NEW_LINE);
+            }
+            if (createWriter != null) {
+                createWriter.write(ddlBuilder.toString());
+                createWriter.write(NEW_LINE);
+            }
+            tableMetrics.bytes = insertWriter.getBytes() + (createWriter == null ? 0 : createWriter.getBytes());
+            exported = true;
+            metrics.finishTable(tableMetrics);
+            logger.info("Exported table {}: {} rows in {} ms"
+                    , table.name, tableMetrics.rows, tableMetrics.elapsedMillis());
+            return true;
+        } catch (SQLException ex) {
+            logger.error("Got exception during working with result set of query {}. Skipping the table {}"
+                    , table.query, table.name, ex);
+            return false;
+        } finally {
+            if (!exported) {
+                metrics.discardTable(tableMetrics);
+            }
+            closeAll(resultSet, statement);
         }
     }
 
-    private static String retrieveData(ResultSet resultSet, int columnCount, String insertTemplate, List<Integer> shouldEscape) throws SQLException {
+    /**
+     * Writes INSERT statements for the rows of the result set straight to the output, so only
+     * the current row is kept in memory whatever the size of the table. Every statement holds
+     * up to batchSize rows in its VALUES list. Listener, if any, is notified after every complete
+     * statement while the result set is still positioned on its last row. Time spent on fetching,
+     * formatting and writing the rows is added to the table metrics. Rows sampled on the client
+     * side with the reservoir are kept in memory and written when the result set is read.
+     */
+    private static void writeData(ResultSet resultSet, ColumnWriter[] columnWriters, String insertTemplate
+            , int batchSize, Writer output, StatementListener statementListener, RowSampler rowSampler
+            , ExportMetrics.TableMetrics tableMetrics) throws SQLException, IOException {
+        boolean reservoirSampling = rowSampler != null && rowSampler.hasReservoir();
         StringBuilder insertValuesBuilder = new StringBuilder();
+        long rows = 0;
+        long time = System.nanoTime();
         while (resultSet.next()){
-            insertValuesBuilder.append(insertTemplate);
-            for (int i = 1; i <= columnCount; i++) {
-                String value = resultSet.getObject(i) == null ? "NULL" : resultSet.getObject(i).toString();
-                if (shouldEscape.contains(i) && !"NULL".equals(value)) {
-                    value = "'" + value + "'";
+            long fetchedTime = System.nanoTime();
+            tableMetrics.fetchNanos += fetchedTime - time;
+            tableMetrics.rowFetched(fetchedTime);
+            if (rowSampler != null && !rowSampler.accept()) {
+                time = fetchedTime;
+                continue;
+            }
+            insertValuesBuilder.setLength(0);
+            if (!reservoirSampling) {
+                appendRowStart(insertValuesBuilder, insertTemplate, rows, batchSize);
+            }
+            for (int i = 0; i < columnWriters.length; i++) {
+                if (i > 0) {
+                    insertValuesBuilder.append(", ");
                 }
-                insertValuesBuilder.append(String.format(INSERT_TEMPLATE
-                        , i > 1 ? ", " : ""
-                        , value));
+                columnWriters[i].write(resultSet, i + 1, insertValuesBuilder);
             }
-            insertValuesBuilder.append(");");
+            if (reservoirSampling) {
+                rowSampler.offer(insertValuesBuilder.toString());
+                time = System.nanoTime();
+                tableMetrics.formatNanos += time - fetchedTime;
+                continue;
+            }
+            rows++;
+            appendRowEnd(insertValuesBuilder, rows, batchSize);
+            long formattedTime = System.nanoTime();
+            tableMetrics.formatNanos += formattedTime - fetchedTime;
+            output.append(insertValuesBuilder);
+            if (statementListener != null) {
+                statementListener.rowWritten(resultSet);
+                if (rows % batchSize == 0) {
+                    statementListener.statementWritten(resultSet, rows);
+                }
+            }
+            time = System.nanoTime();
+            tableMetrics.writeNanos += time - formattedTime;
+        }
+        tableMetrics.fetchNanos += System.nanoTime() - time;
+        if (reservoirSampling) {
+            time = System.nanoTime();
+            for (String row : rowSampler.getReservoir()) {
+                insertValuesBuilder.setLength(0);
+                appendRowStart(insertValuesBuilder, insertTemplate, rows, batchSize);
+                insertValuesBuilder.append(row);
+                rows++;
+                appendRowEnd(insertValuesBuilder, rows, batchSize);
+                output.append(insertValuesBuilder);
+            }
+            tableMetrics.writeNanos += System.nanoTime() - time;
+        }
+        tableMetrics.rows = rows;
+        if (rows % batchSize != 0) {
+            output.write(";");
+            output.write(NEW_LINE);
+        }
+    }
+
+    static void appendRowStart(StringBuilder insertValuesBuilder, String insertTemplate, long rows
+            , int batchSize) {
+        if (rows % batchSize == 0) {
+            insertValuesBuilder.append(insertTemplate);
+        } else {
             insertValuesBuilder.append(NEW_LINE);
+            insertValuesBuilder.append(", (");
         }
-        return insertValuesBuilder.toString();
     }
 
-    private static void retrieveAndSaveDataset (Connection connection, Properties queries, String baseFileName) {
-        try {
-            IDatabaseConnection iconnection = new DatabaseConnection(connection);
-            QueryDataSet partialDataSet = new QueryDataSet(iconnection);
-            for (String tableName : queries.stringPropertyNames()) {
-                partialDataSet.addTable(tableName, queries.getProperty(tableName));
+    static void appendRowEnd(StringBuilder insertValuesBuilder, long rows, int batchSize) {
+        insertValuesBuilder.append(")");
+        if (rows % batchSize == 0) {
+            insertValuesBuilder.append(";");
+            insertValuesBuilder.append(NEW_LINE);
+        }
+    }
+
+    /**
+     * Exports tables to the DbUnit flat XML dataset and its DTD. Every query runs once and its rows
+     * are written to the XML file as they are read, while the DTD is built from the metadata.
+     */
+    static void retrieveAndSaveDataset (Connection connection, ExportSettings settings, String baseFileName
+            , ExportMetrics metrics) {
+        try (OutputStream xmlOutput = openOutputStream(settings, baseFileName + ".xml")) {
+            FlatXmlDatasetWriter datasetWriter = new FlatXmlDatasetWriter(xmlOutput);
+            for (String tableName : settings.getTableNames()) {
+                TableSettings table = settings.getTableSettings(tableName);
+                if (table.sample.isClientSampling()) {
+                    logger.error("Client side sampling is supported by SQL format only. Exporting all rows of {}"
+                            , table.name);
+                }
+                ExportMetrics.TableMetrics tableMetrics = metrics.startTable(table.name);
+                Statement statement = getStatement(connection, table);
+                if (statement == null) {
+                    logger.error("Statement is null for {}. Skipping the table {}", table.query, table.name);
+                    metrics.discardTable(tableMetrics);
+                    continue;
+                }
+                ResultSet resultSet = executeQuery(statement, table.query);
+                if (resultSet == null) {
+                    logger.error("ResutlSet is null for {}. Skipping the table {}", table.query, table.name);
+                    metrics.discardTable(tableMetrics);
+                    closeAll(statement);
+                    continue;
+                }
+                tableMetrics.queryExecuted();
+                try {
+                    datasetWriter.writeTable(table.name, resultSet, tableMetrics);
+                    metrics.finishTable(tableMetrics);
+                    logger.info("Exported table {}: {} rows in {} ms"
+                            , table.name, tableMetrics.rows, tableMetrics.elapsedMillis());
+                } finally {
+                    closeAll(resultSet, statement);
+                }
+            }
+            datasetWriter.close();
+            try (OutputStream dtdOutput = openOutputStream(settings, baseFileName + ".dtd")) {
+                datasetWriter.writeDtd(dtdOutput);
             }
-            FlatXmlWriter datasetWriter = new FlatXmlWriter(new FileOutputStream(baseFileName + ".xml"));
-            datasetWriter.write(partialDataSet);
-            FlatDtdDataSet.write(partialDataSet, new FileOutputStream(baseFileName + ".dtd"));
-        } catch (DatabaseUnitException ex) {
+        } catch (SQLException | DatabaseUnitException ex) {
             logger.error("Exception during dataset export", ex);
         } catch (IOException ex) {
-            logger.error("Unable to create output xml file", ex);
+            logger.error("Unable to write dataset xml", ex);
         }
     }
 
-    private static Statement getStatement(Connection connection) {
+    /**
+     * Gets notified when the INSERT statement is completely written to the output.
+     */
+    @FunctionalInterface
+    private interface StatementListener {
+
+        void statementWritten(ResultSet resultSet, long rowsWritten) throws SQLException, IOException;
+
+        /**
+         * Called after every row written while the result set is positioned on it. Not called
+         * for the rows sampled with the reservoir, which are written after the result set is read.
+         */
+        default void rowWritten(ResultSet resultSet) throws SQLException {
+        }
+
+    }
+
+    /**
+     * Pair of files holding the output of a single table exported by a parallel worker or a chunk
+     * of the resumable export.
+     */
+    private static class TableOutput {
+
+        private final Path createFile;
+        private final Path insertFile;
+
+        TableOutput(Path createFile, Path insertFile) {
+            this.createFile = createFile;
+            this.insertFile = insertFile;
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(createFile);
+                Files.deleteIfExists(insertFile);
+            } catch (IOException ex) {
+                logger.error("Unable to delete temporary files {}, {}", createFile, insertFile, ex);
+            }
+        }
+
+    }
+
+    /**
+     * Creates forward-only read-only statement tuned with the table fetch size, query timeout and
+     * max rows. Settings which are zero or not supported by the driver are left to the driver.
+     */
+    private static Statement getStatement(Connection connection, TableSettings table) {
         Statement statement = null;
         try {
-            statement = connection.createStatement();
+            statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
         } catch (SQLException ex) {
             logger.error("Failed to createStatement", ex);
+            return null;
+        }
+        try {
+            if (table.fetchSize > 0) {
+                statement.setFetchSize(table.fetchSize);
+            }
+            if (table.queryTimeout > 0) {
+                statement.setQueryTimeout(table.queryTimeout);
+            }
+            if (table.maxRows > 0) {
+                statement.setMaxRows(table.maxRows);
+            }
+        } catch (SQLException ex) {
+            logger.error("Unable to apply statement settings for the table {}. Using driver defaults", table.name, ex);
         }
         return statement;
     }
@@ -0,0 +1,518 @@
+package bilokhado;
+
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.datatype.DataTypeException;
+import org.dbunit.dataset.datatype.TypeCastException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads SQL scripts and DbUnit flat XML datasets into the target database. Input is parsed
+ * as a stream on the calling thread, while rows are inserted by the table workers with
+ * PreparedStatement batches. Up to the configured number of tables is loaded in parallel,
+ * each worker using its own connection from the pool. Rows with the values written as SQL
+ * expressions, e.g. the base64 decoding or ARRAY[...], are inserted one by one with the
+ * expressions in the statement, so they load as long as the target database can evaluate them.
+ */
+class DatasetLoader implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatasetLoader.class);
+    private static final int QUEUED_BATCHES = 4;
+    private static final List<Row> END_OF_TABLE = new ArrayList<>();
+
+    private final ConnectionPool connectionPool;
+    private final ExecutorService executor;
+    private final int batchSize;
+    private final int commitSize;
+    private final List<Future<Long>> tableLoads = new ArrayList<>();
+    private TableSink currentTable;
+
+    DatasetLoader(ConnectionPool connectionPool, int threads, int batchSize, int commitSize) {
+        this.connectionPool = connectionPool;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.batchSize = batchSize;
+        this.commitSize = commitSize;
+    }
+
+    /**
+     * Executes every statement of the DDL script.
+     */
+    void executeScript(InputStream script) throws IOException, SQLException, InterruptedException {
+        Connection connection = borrowConnection();
+        try (SqlScriptReader scriptReader = new SqlScriptReader(new InputStreamReader(script, StandardCharsets.UTF_8));
+             Statement statement = connection.createStatement()) {
+            String sql;
+            while ((sql = scriptReader.nextStatement()) != null) {
+                statement.execute(sql);
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } finally {
+            connectionPool.release(connection);
+        }
+    }
+
+    /**
+     * Loads rows of the INSERT statements script. Returns the number of rows loaded.
+     */
+    long loadSqlInserts(InputStream script) throws IOException, InterruptedException {
+        try (SqlScriptReader scriptReader = new SqlScriptReader(new InputStreamReader(script, StandardCharsets.UTF_8))) {
+            while (scriptReader.nextInsert(this::addRow)) {
+                // rows are passed to the table workers by the handler
+            }
+        } catch (UncheckedInterruptedException ex) {
+            throw ex.getCause();
+        }
+        return finish();
+    }
+
+    /**
+     * Loads rows of the flat XML dataset, where every element is a row of the table named
+     * after the element and the attributes are column values.
+     */
+    long loadFlatXml(InputStream xml) throws IOException, InterruptedException {
+        try {
+            XMLStreamReader xmlReader = XMLInputFactory.newInstance().createXMLStreamReader(xml);
+            try {
+                int depth = 0;
+                while (xmlReader.hasNext()) {
+                    int event = xmlReader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 2) {
+                            int attributes = xmlReader.getAttributeCount();
+                            String[] columns = new String[attributes];
+                            Object[] values = new Object[attributes];
+                            for (int i = 0; i < attributes; i++) {
+                                columns[i] = xmlReader.getAttributeLocalName(i);
+                                values[i] = xmlReader.getAttributeValue(i);
+                            }
+                            addRow(xmlReader.getLocalName(), columns, values);
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                xmlReader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Unable to parse flat XML dataset", ex);
+        } catch (UncheckedInterruptedException ex) {
+            throw ex.getCause();
+        }
+        return finish();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.error("Table loaders haven't finished in time");
+            }
+        } catch (InterruptedException ex) {
+            logger.error("Interrupted while waiting for table loaders to finish", ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void addRow(String tableName, String[] columns, Object[] values) {
+        try {
+            if (currentTable == null || !currentTable.tableName.equals(tableName)) {
+                if (currentTable != null) {
+                    currentTable.finish();
+                }
+                currentTable = new TableSink(tableName);
+                tableLoads.add(executor.submit(currentTable::load));
+            }
+            currentTable.add(columns, values);
+        } catch (InterruptedException ex) {
+            throw new UncheckedInterruptedException(ex);
+        }
+    }
+
+    /**
+     * Waits for all the table workers to finish and returns the total number of rows loaded.
+     */
+    private long finish() throws InterruptedException, IOException {
+        if (currentTable != null) {
+            currentTable.finish();
+            currentTable = null;
+        }
+        long rows = 0;
+        boolean failed = false;
+        for (Future<Long> tableLoad : tableLoads) {
+            try {
+                rows += tableLoad.get();
+            } catch (ExecutionException ex) {
+                logger.error("Table load failed", ex.getCause());
+                failed = true;
+            }
+        }
+        tableLoads.clear();
+        if (failed) {
+            throw new IOException("Not all tables have been loaded");
+        }
+        return rows;
+    }
+
+    private Connection borrowConnection() throws SQLException, InterruptedException {
+        Connection connection = connectionPool.borrow();
+        if (connection == null) {
+            throw new SQLException("Unable to get connection to the target database");
+        }
+        return connection;
+    }
+
+    /**
+     * Row values with the names of the columns they belong to.
+     */
+    private static class Row {
+
+        private final String[] columns;
+        private final Object[] values;
+        private final boolean expressions;
+
+        Row(String[] columns, Object[] values) {
+            this.columns = columns;
+            this.values = values;
+            this.expressions = containsExpression(values);
+        }
+
+        private static boolean containsExpression(Object[] values) {
+            for (Object value : values) {
+                if (value instanceof SqlScriptReader.Expression) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    /**
+     * Rows of a single table handed over from the parsing thread to the table worker in batches.
+     */
+    private class TableSink {
+
+        private final String tableName;
+        private final BlockingQueue<List<Row>> batches = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        private List<Row> batch;
+        private String[] targetColumns;
+        private int[] targetTypes;
+        private DataType[] targetDataTypes;
+        private Map<String, Integer> targetPositions;
+        private String[] rowColumns;
+        private int[] rowPositions;
+        private int[] unboundPositions;
+        private int[] allParameters;
+
+        TableSink(String tableName) {
+            this.tableName = tableName;
+        }
+
+        /**
+         * Called by the parsing thread. Blocks while the worker is behind by more than a few batches.
+         */
+        void add(String[] columns, Object[] values) throws InterruptedException {
+            if (batch == null) {
+                batch = new ArrayList<>(batchSize);
+            }
+            batch.add(new Row(columns, values));
+            if (batch.size() == batchSize) {
+                batches.put(batch);
+                batch = null;
+            }
+        }
+
+        void finish() throws InterruptedException {
+            if (batch != null) {
+                batches.put(batch);
+                batch = null;
+            }
+            batches.put(END_OF_TABLE);
+        }
+
+        /**
+         * Worker part: inserts the queued batches. Keeps draining the queue on failure, so the
+         * parsing thread is never blocked by the failed table.
+         */
+        long load() throws SQLException, InterruptedException {
+            try {
+                return insertBatches();
+            } catch (SQLException | RuntimeException ex) {
+                drain();
+                throw ex;
+            }
+        }
+
+        private long insertBatches() throws SQLException, InterruptedException {
+            long startTime = System.nanoTime();
+            long rows = 0;
+            Connection connection = borrowConnection();
+            boolean autoCommit = connection.getAutoCommit();
+            try {
+                connection.setAutoCommit(false);
+                readTargetColumns(connection);
+                try (PreparedStatement statement = connection.prepareStatement(buildInsert(null))) {
+                    long uncommittedRows = 0;
+                    List<Row> rowBatch;
+                    while ((rowBatch = batches.take()) != END_OF_TABLE) {
+                        for (Row row : rowBatch) {
+                            if (row.expressions) {
+                                statement.executeBatch();
+                                insertWithExpressions(connection, row);
+                                continue;
+                            }
+                            bindRow(statement, row, allParameters);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                        rows += rowBatch.size();
+                        uncommittedRows += rowBatch.size();
+                        if (uncommittedRows >= commitSize) {
+                            connection.commit();
+                            uncommittedRows = 0;
+                        }
+                    }
+                    connection.commit();
+                }
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw new SQLException("Failed to load table " + tableName + " after " + rows + " rows", ex);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+                connectionPool.release(connection);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            logger.info("Loaded table {}: {} rows in {} ms ({} rows/sec)"
+                    , tableName, rows, elapsedMillis, elapsedMillis == 0 ? rows : rows * 1000 / elapsedMillis);
+            return rows;
+        }
+
+        private void drain() throws InterruptedException {
+            while (batches.take() != END_OF_TABLE) {
+                // skipping the rows of the failed table
+            }
+        }
+
+        private void readTargetColumns(Connection connection) throws SQLException {
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("SELECT * FROM " + tableName + " WHERE 1 = 0")) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                targetColumns = new String[columnCount];
+                targetTypes = new int[columnCount];
+                targetDataTypes = new DataType[columnCount];
+                targetPositions = new HashMap<>();
+                allParameters = new int[columnCount + 1];
+                for (int i = 1; i <= columnCount; i++) {
+                    allParameters[i] = i;
+                    targetColumns[i - 1] = metaData.getColumnName(i);
+                    targetTypes[i - 1] = metaData.getColumnType(i);
+                    targetDataTypes[i - 1] = forSqlType(targetTypes[i - 1]);
+                    targetPositions.put(targetColumns[i - 1].toUpperCase(Locale.ROOT), i);
+                }
+            }
+        }
+
+        /**
+         * Returns the INSERT statement of all the target columns, with the parameters in place of
+         * the values, except for the expressions, if any, indexed by the target column position.
+         */
+        private String buildInsert(String[] expressions) {
+            StringBuilder insertBuilder = new StringBuilder("INSERT INTO ");
+            insertBuilder.append(tableName);
+            insertBuilder.append(" (");
+            for (int i = 0; i < targetColumns.length; i++) {
+                if (i > 0) {
+                    insertBuilder.append(", ");
+                }
+                insertBuilder.append(targetColumns[i]);
+            }
+            insertBuilder.append(") VALUES (");
+            for (int i = 0; i < targetColumns.length; i++) {
+                if (i > 0) {
+                    insertBuilder.append(", ");
+                }
+                String expression = expressions == null ? null : expressions[i + 1];
+                insertBuilder.append(expression == null ? "?" : expression);
+            }
+            insertBuilder.append(')');
+            return insertBuilder.toString();
+        }
+
+        /**
+         * Inserts the row with its own statement, which has the expressions of the row written
+         * in place of their parameters.
+         */
+        private void insertWithExpressions(Connection connection, Row row) throws SQLException {
+            resolveRowColumns(row);
+            String[] expressions = new String[targetColumns.length + 1];
+            for (int i = 0; i < row.values.length; i++) {
+                if (row.values[i] instanceof SqlScriptReader.Expression) {
+                    expressions[rowPositions[i]] = ((SqlScriptReader.Expression) row.values[i]).sql;
+                }
+            }
+            int[] parameters = new int[targetColumns.length + 1];
+            int parameter = 0;
+            for (int position = 1; position <= targetColumns.length; position++) {
+                parameters[position] = expressions[position] == null ? ++parameter : 0;
+            }
+            try (PreparedStatement statement = connection.prepareStatement(buildInsert(expressions))) {
+                bindRow(statement, row, parameters);
+                statement.executeUpdate();
+            }
+        }
+
+        /**
+         * Binds row values to the target columns by name, setting NULL for the target columns
+         * the row has no value for. Parameter indexes are given by the target column position,
+         * zero for the expressions written in the statement. Date and time values and non-finite
+         * floating point numbers are bound directly, as DbUnit can't convert them.
+         */
+        private void bindRow(PreparedStatement statement, Row row, int[] parameters) throws SQLException {
+            resolveRowColumns(row);
+            for (int i = 0; i < row.values.length; i++) {
+                int position = rowPositions[i];
+                int parameter = parameters[position];
+                if (parameter == 0) {
+                    continue;
+                }
+                if (row.values[i] == null) {
+                    statement.setNull(parameter, targetTypes[position - 1]);
+                    continue;
+                }
+                if (row.values[i] instanceof Temporal) {
+                    statement.setObject(parameter, row.values[i]);
+                    continue;
+                }
+                if (isNonFiniteNumber(row.values[i], targetTypes[position - 1])) {
+                    statement.setDouble(parameter, Double.parseDouble((String) row.values[i]));
+                    continue;
+                }
+                try {
+                    targetDataTypes[position - 1].setSqlValue(row.values[i], parameter, statement);
+                } catch (TypeCastException ex) {
+                    throw new SQLException("Unable to convert value of the column " + targetColumns[position - 1], ex);
+                }
+            }
+            for (int position : unboundPositions) {
+                statement.setNull(parameters[position], targetTypes[position - 1]);
+            }
+        }
+
+        /**
+         * Resolves positions of the row columns again only when the column list changes.
+         */
+        private void resolveRowColumns(Row row) throws SQLException {
+            if (row.columns != rowColumns) {
+                if (!Arrays.equals(row.columns, rowColumns)) {
+                    resolvePositions(row.columns);
+                }
+                rowColumns = row.columns;
+            }
+        }
+
+        private void resolvePositions(String[] columns) throws SQLException {
+            boolean[] bound = new boolean[targetColumns.length + 1];
+            int[] positions = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                Integer position = targetPositions.get(unquote(columns[i]).toUpperCase(Locale.ROOT));
+                if (position == null) {
+                    throw new SQLException("Column " + columns[i] + " not found in table " + tableName);
+                }
+                positions[i] = position;
+                bound[position] = true;
+            }
+            List<Integer> unbound = new ArrayList<>();
+            for (int position = 1; position <= targetColumns.length; position++) {
+                if (!bound[position]) {
+                    unbound.add(position);
+                }
+            }
+            rowPositions = positions;
+            unboundPositions = new int[unbound.size()];
+            for (int i = 0; i < unboundPositions.length; i++) {
+                unboundPositions[i] = unbound.get(i);
+            }
+        }
+
+    }
+
+    /**
+     * Returns true for NaN and the infinities of the floating point column, which the exporter writes
+     * as quoted text and DbUnit can't convert to a number.
+     */
+    private static boolean isNonFiniteNumber(Object value, int sqlType) {
+        if (!(value instanceof String)
+                || sqlType != Types.REAL && sqlType != Types.FLOAT && sqlType != Types.DOUBLE) {
+            return false;
+        }
+        return "NaN".equals(value) || "Infinity".equals(value) || "-Infinity".equals(value);
+    }
+
+    private static String unquote(String identifier) {
+        return identifier.length() > 1 && identifier.startsWith("\"") && identifier.endsWith("\"")
+                ? identifier.substring(1, identifier.length() - 1) : identifier;
+    }
+
+    private static DataType forSqlType(int sqlType) {
+        try {
+            return DataType.forSqlType(sqlType);
+        } catch (DataTypeException ex) {
+            return DataType.UNKNOWN;
+        }
+    }
+
+    /**
+     * Carries the interruption of the parsing thread through the row handler.
+     */
+    private static class UncheckedInterruptedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        UncheckedInterruptedException(InterruptedException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized InterruptedException getCause() {
+            return (InterruptedException) super.getCause();
+        }
+
+    }
+
+}
@@ -0,0 +1,207 @@
+package bilokhado;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Row fingerprint index of the table written by the delta export: hash of every row by its key,
+ * in the key order of the delta query. All numbers are big-endian.
+ * <pre>
+ * index     := MAGIC VERSION:int keyKind:byte entryCount:long trailerOffset:long entry* trailer
+ * entry     := key rowHash:long
+ * key       := long for KEY_LONG | keyHash:long string for KEY_STRING
+ * trailer   := hasWatermark:byte watermark:string?
+ * string    := length:int UTF-8 bytes
+ * </pre>
+ * Other keys than integral ones are stored as SQL literals of the target dialect, the watermark as
+ * the literal of the source one. String order of the database depends on its collation, so these
+ * entries are ordered by the key hash computed by the database instead, and the keys of the same
+ * hash in any order. Index is read sequentially through the memory mapping while it is merged with
+ * the rows of the next run ordered the same way, so its size is not limited by the heap.
+ */
+class DeltaIndex {
+
+    static final int MAGIC = 0x44494458;
+    static final int VERSION = 2;
+    static final byte KEY_LONG = 0;
+    static final byte KEY_STRING = 1;
+
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 8 + 8;
+    private static final int ENTRY_COUNT_POSITION = 9;
+
+    /**
+     * Sequential reader of the previous index, positioned before the first entry when opened.
+     */
+    static class Reader implements AutoCloseable {
+
+        final boolean longKeys;
+        final long entryCount;
+        final String watermark;
+        long longKey;
+        long keyHash;
+        String stringKey;
+        long rowHash;
+        private final FileChannel channel;
+        private final MappedFileInput input;
+        private long entriesRead;
+
+        private Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            input = new MappedFileInput(channel);
+            if (channel.size() < HEADER_SIZE || input.readInt() != MAGIC || input.readInt() != VERSION) {
+                throw new IOException("Not a delta index file");
+            }
+            longKeys = input.readByte() == KEY_LONG;
+            entryCount = input.readLong();
+            long trailerOffset = input.readLong();
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, trailerOffset, channel.size() - trailerOffset);
+            if (trailer.get() == 0) {
+                watermark = null;
+            } else {
+                byte[] watermarkBytes = new byte[trailer.getInt()];
+                trailer.get(watermarkBytes);
+                watermark = new String(watermarkBytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Opens the index file, returns null if there is no index yet.
+         */
+        static Reader open(Path indexFile) throws IOException {
+            if (!Files.exists(indexFile)) {
+                return null;
+            }
+            FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+            try {
+                return new Reader(channel);
+            } catch (IOException ex) {
+                channel.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Moves to the next entry, returns false if there are no more entries.
+         */
+        boolean next() throws IOException {
+            if (entriesRead == entryCount) {
+                return false;
+            }
+            if (longKeys) {
+                longKey = input.readLong();
+            } else {
+                keyHash = input.readLong();
+                stringKey = input.readString();
+            }
+            rowHash = input.readLong();
+            entriesRead++;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+    }
+
+    /**
+     * Writes the new index to the temporary file, which replaces the previous index on commit.
+     */
+    static class Writer implements AutoCloseable {
+
+        private final Path indexFile;
+        private final Path tempFile;
+        private final boolean longKeys;
+        private final DataOutputStream output;
+        private long entryCount;
+        private long size = HEADER_SIZE;
+        private boolean committed;
+
+        Writer(Path indexFile, boolean longKeys) throws IOException {
+            this.indexFile = indexFile;
+            this.tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            this.longKeys = longKeys;
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeByte(longKeys ? KEY_LONG : KEY_STRING);
+            output.writeLong(0);
+            output.writeLong(0);
+        }
+
+        void addLongKey(long key, long rowHash) throws IOException {
+            output.writeLong(key);
+            output.writeLong(rowHash);
+            size += 16;
+            entryCount++;
+        }
+
+        void addStringKey(long keyHash, String key, long rowHash) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            output.writeLong(keyHash);
+            output.writeInt(keyBytes.length);
+            output.write(keyBytes);
+            output.writeLong(rowHash);
+            size += 8 + 4 + keyBytes.length + 8;
+            entryCount++;
+        }
+
+        boolean hasLongKeys() {
+            return longKeys;
+        }
+
+        /**
+         * Completes the index with the watermark, which may be null. The previous index is kept
+         * until commit.
+         */
+        void finish(String watermark) throws IOException {
+            if (watermark == null) {
+                output.writeByte(0);
+            } else {
+                byte[] watermarkBytes = watermark.getBytes(StandardCharsets.UTF_8);
+                output.writeByte(1);
+                output.writeInt(watermarkBytes.length);
+                output.write(watermarkBytes);
+            }
+            output.close();
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(16);
+                header.putLong(entryCount).putLong(size).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, ENTRY_COUNT_POSITION + header.position());
+                }
+                channel.force(true);
+            }
+        }
+
+        /**
+         * Atomically replaces the previous index with the finished one.
+         */
+        void commit() throws IOException {
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Deletes the temporary file if the index has not been committed, keeping the previous index.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                output.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+    }
+
+}
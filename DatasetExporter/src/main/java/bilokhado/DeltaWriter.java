@@ -0,0 +1,283 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes INSERT, UPDATE and DELETE statements for the rows changed since the previous run. Rows
+ * with the integral key must be ordered by the key. Other keys are ordered by the collation of the
+ * database, which may differ from the string order, so their rows must be ordered by the key hash
+ * computed by the database, selected as the last column. Either way the rows and the previous index
+ * are merged in a single pass, only the previous entries of the current key hash are kept in the map.
+ * The new index is written along. If the query is restricted by the watermark, rows missing from it
+ * are unchanged, so deletes are not detected and their index entries are copied. Statements are
+ * written in the target dialect, while the watermark literal goes into the next query, so it is
+ * written in the source one.
+ */
+class DeltaWriter {
+
+    /**
+     * Name of the key hash column the query of the table with the non-integral key ends with.
+     */
+    static final String KEY_HASH_COLUMN = "DELTA_KEY_HASH";
+
+    private static final Logger logger = LoggerFactory.getLogger(DeltaWriter.class);
+    private static final String NEW_LINE = System.lineSeparator();
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Writer output;
+    private final SqlDialect dialect;
+    private final SqlDialect sourceDialect;
+    private final StringBuilder statementBuilder = new StringBuilder();
+    private final Map<String, Long> previousKeyGroup = new HashMap<>();
+    long insertedRows;
+    long updatedRows;
+    long deletedRows;
+    long unchangedRows;
+
+    DeltaWriter(Writer output, SqlDialect dialect, SqlDialect sourceDialect) {
+        this.output = output;
+        this.dialect = dialect;
+        this.sourceDialect = sourceDialect;
+    }
+
+    /**
+     * Writes delta of the table and finishes the new index. Returns false if the rows are not ordered
+     * by the key or the key type has changed.
+     */
+    boolean writeTable(String tableName, String keyColumn, String watermarkColumn, boolean incremental
+            , ResultSet resultSet, DeltaIndex.Reader previous, DeltaIndex.Writer index) throws SQLException, IOException {
+        boolean longKeys = index.hasLongKeys();
+        if (previous != null && previous.longKeys != longKeys) {
+            logger.error("Type of the key {} of the table {} has changed. Delete its index to export it in full"
+                    , keyColumn, tableName);
+            return false;
+        }
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columns = longKeys ? metaData.getColumnCount() : metaData.getColumnCount() - 1;
+        int keyIndex = resultSet.findColumn(keyColumn);
+        int keyHashIndex = longKeys ? 0 : resultSet.findColumn(KEY_HASH_COLUMN);
+        int watermarkIndex = watermarkColumn == null ? 0 : resultSet.findColumn(watermarkColumn);
+        ColumnWriter watermarkWriter = watermarkIndex == 0 ? null
+                : ColumnWriter.forColumn(metaData, watermarkIndex, sourceDialect);
+        String quotedTableName = dialect.quoteIdentifier(tableName);
+        String[] columnNames = new String[columns];
+        ColumnWriter[] columnWriters = new ColumnWriter[columns];
+        StringBuilder insertTemplateBuilder = new StringBuilder("INSERT INTO ").append(quotedTableName).append(" (")
+                .append(NEW_LINE);
+        for (int i = 1; i <= columns; i++) {
+            columnNames[i - 1] = dialect.quoteIdentifier(metaData.getColumnName(i));
+            columnWriters[i - 1] = ColumnWriter.forColumn(metaData, i, dialect);
+            insertTemplateBuilder.append(i > 1 ? ", " : "").append(columnNames[i - 1]);
+        }
+        String insertTemplate = insertTemplateBuilder.append(")").append(NEW_LINE).append("VALUES (").toString();
+        String keyName = columnNames[keyIndex - 1];
+        int[] valueEnds = new int[columns];
+        StringBuilder rowBuilder = new StringBuilder();
+        String watermark = previous == null ? null : previous.watermark;
+        Object maxWatermark = null;
+        StringBuilder watermarkBuilder = new StringBuilder();
+        boolean hasPrevious = previous != null && previous.next();
+        boolean hasKeyGroup = false;
+        long keyGroupHash = 0;
+        previousKeyGroup.clear();
+        boolean firstRow = true;
+        long lastLongKey = 0;
+        long lastKeyHash = 0;
+        String lastStringKey = null;
+        long nullKeys = 0;
+        while (resultSet.next()) {
+            long longKey = 0;
+            long keyHash = 0;
+            if (longKeys) {
+                longKey = resultSet.getLong(keyIndex);
+                if (resultSet.wasNull()) {
+                    nullKeys++;
+                    continue;
+                }
+            } else {
+                if (resultSet.getObject(keyIndex) == null) {
+                    nullKeys++;
+                    continue;
+                }
+                keyHash = resultSet.getLong(keyHashIndex);
+            }
+            rowBuilder.setLength(0);
+            for (int i = 0; i < columns; i++) {
+                if (i > 0) {
+                    rowBuilder.append(", ");
+                }
+                columnWriters[i].write(resultSet, i + 1, rowBuilder);
+                valueEnds[i] = rowBuilder.length();
+            }
+            String stringKey = longKeys ? null
+                    : rowBuilder.substring(valueStart(valueEnds, keyIndex - 1), valueEnds[keyIndex - 1]);
+            if (!firstRow && (longKeys ? longKey <= lastLongKey
+                    : keyHash < lastKeyHash || keyHash == lastKeyHash && stringKey.equals(lastStringKey))) {
+                logger.error("Rows of the table {} are not ordered by the key {} or the key is not unique"
+                        , tableName, keyColumn);
+                return false;
+            }
+            firstRow = false;
+            lastLongKey = longKey;
+            lastKeyHash = keyHash;
+            lastStringKey = stringKey;
+            long rowHash = hash(rowBuilder);
+            if (watermarkIndex > 0) {
+                Object watermarkValue = resultSet.getObject(watermarkIndex);
+                if (watermarkValue instanceof Comparable && (maxWatermark == null || compare(watermarkValue, maxWatermark) > 0)) {
+                    maxWatermark = watermarkValue;
+                    watermarkBuilder.setLength(0);
+                    watermarkWriter.write(resultSet, watermarkIndex, watermarkBuilder);
+                }
+            }
+            Long previousRowHash = null;
+            if (longKeys) {
+                int order = 1;
+                while (hasPrevious && (order = Long.compare(previous.longKey, longKey)) < 0) {
+                    passPrevious(quotedTableName, keyName, incremental, previous.longKey, 0, null, previous.rowHash
+                            , index);
+                    hasPrevious = previous.next();
+                }
+                if (hasPrevious && order == 0) {
+                    previousRowHash = previous.rowHash;
+                    hasPrevious = previous.next();
+                }
+            } else {
+                if (!hasKeyGroup || keyGroupHash != keyHash) {
+                    passKeyGroup(quotedTableName, keyName, incremental, keyGroupHash, index);
+                    while (hasPrevious && previous.keyHash < keyHash) {
+                        passPrevious(quotedTableName, keyName, incremental, 0, previous.keyHash, previous.stringKey
+                                , previous.rowHash, index);
+                        hasPrevious = previous.next();
+                    }
+                    while (hasPrevious && previous.keyHash == keyHash) {
+                        previousKeyGroup.put(previous.stringKey, previous.rowHash);
+                        hasPrevious = previous.next();
+                    }
+                    hasKeyGroup = true;
+                    keyGroupHash = keyHash;
+                }
+                previousRowHash = previousKeyGroup.remove(stringKey);
+            }
+            if (previousRowHash != null) {
+                if (previousRowHash == rowHash) {
+                    unchangedRows++;
+                } else {
+                    writeUpdate(quotedTableName, columnNames, keyIndex, valueEnds, rowBuilder);
+                }
+            } else {
+                statementBuilder.setLength(0);
+                statementBuilder.append(insertTemplate).append(rowBuilder).append(");").append(NEW_LINE);
+                output.append(statementBuilder);
+                insertedRows++;
+            }
+            if (longKeys) {
+                index.addLongKey(longKey, rowHash);
+            } else {
+                index.addStringKey(keyHash, stringKey, rowHash);
+            }
+        }
+        passKeyGroup(quotedTableName, keyName, incremental, keyGroupHash, index);
+        while (hasPrevious) {
+            passPrevious(quotedTableName, keyName, incremental, previous.longKey, previous.keyHash
+                    , longKeys ? null : previous.stringKey, previous.rowHash, index);
+            hasPrevious = previous.next();
+        }
+        if (nullKeys > 0) {
+            logger.error("Skipped {} rows of the table {} with null key {}", nullKeys, tableName, keyColumn);
+        }
+        index.finish(maxWatermark == null ? watermark : watermarkBuilder.toString());
+        return true;
+    }
+
+    /**
+     * Handles the previous entries of the key hash left unmatched by the rows of the hash.
+     */
+    private void passKeyGroup(String tableName, String keyName, boolean incremental, long keyHash
+            , DeltaIndex.Writer index) throws IOException {
+        for (Map.Entry<String, Long> entry : previousKeyGroup.entrySet()) {
+            passPrevious(tableName, keyName, incremental, 0, keyHash, entry.getKey(), entry.getValue(), index);
+        }
+        previousKeyGroup.clear();
+    }
+
+    /**
+     * Handles the previous index entry absent from the rows: copies it to the new index if the query
+     * is restricted by the watermark, otherwise the row has been deleted. String key is the literal of
+     * the key, null if the keys are integral.
+     */
+    private void passPrevious(String tableName, String keyName, boolean incremental, long longKey, long keyHash
+            , String stringKey, long rowHash, DeltaIndex.Writer index) throws IOException {
+        if (incremental) {
+            if (stringKey == null) {
+                index.addLongKey(longKey, rowHash);
+            } else {
+                index.addStringKey(keyHash, stringKey, rowHash);
+            }
+            unchangedRows++;
+            return;
+        }
+        statementBuilder.setLength(0);
+        statementBuilder.append("DELETE FROM ").append(tableName).append(" WHERE ").append(keyName).append(" = ");
+        if (stringKey == null) {
+            statementBuilder.append(longKey);
+        } else {
+            statementBuilder.append(stringKey);
+        }
+        statementBuilder.append(';').append(NEW_LINE);
+        output.append(statementBuilder);
+        deletedRows++;
+    }
+
+    private void writeUpdate(String tableName, String[] columnNames, int keyIndex, int[] valueEnds
+            , StringBuilder rowBuilder) throws IOException {
+        statementBuilder.setLength(0);
+        statementBuilder.append("UPDATE ").append(tableName).append(" SET ");
+        boolean firstColumn = true;
+        for (int i = 0; i < columnNames.length; i++) {
+            if (i == keyIndex - 1) {
+                continue;
+            }
+            statementBuilder.append(firstColumn ? "" : ", ").append(columnNames[i]).append(" = ")
+                    .append(rowBuilder, valueStart(valueEnds, i), valueEnds[i]);
+            firstColumn = false;
+        }
+        statementBuilder.append(" WHERE ").append(columnNames[keyIndex - 1]).append(" = ")
+                .append(rowBuilder, valueStart(valueEnds, keyIndex - 1), valueEnds[keyIndex - 1])
+                .append(';').append(NEW_LINE);
+        output.append(statementBuilder);
+        updatedRows++;
+    }
+
+    private static int valueStart(int[] valueEnds, int column) {
+        return column == 0 ? 0 : valueEnds[column - 1] + 2;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value, Object otherValue) {
+        return ((Comparable<Object>) value).compareTo(otherValue);
+    }
+
+    /**
+     * Returns 64-bit FNV-1a hash of the formatted row.
+     */
+    private static long hash(CharSequence row) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < row.length(); i++) {
+            hash ^= row.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,114 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Manifest of the resumable export. Keeps track of the tables already exported to the chunk files
+ * and, for the tables with an ordering key, of the last row written. The manifest is rewritten
+ * atomically on every update, so it always describes the complete part of the chunk files.
+ */
+class ExportCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportCheckpoint.class);
+    private static final String MANIFEST_FILENAME = "checkpoint.properties";
+    private static final String DONE_SUFFIX = ".done";
+    private static final String ROWS_SUFFIX = ".rows";
+    private static final String LAST_KEY_SUFFIX = ".lastKey";
+    private static final String INSERT_SIZE_SUFFIX = ".insertSize";
+
+    private final Path manifestFile;
+    private final Properties manifest;
+
+    private ExportCheckpoint(Path manifestFile, Properties manifest) {
+        this.manifestFile = manifestFile;
+        this.manifest = manifest;
+    }
+
+    static ExportCheckpoint load(Path directory) throws IOException {
+        Path manifestFile = directory.resolve(MANIFEST_FILENAME);
+        Properties manifest = new Properties();
+        if (Files.exists(manifestFile)) {
+            try (InputStream input = Files.newInputStream(manifestFile)) {
+                manifest.load(input);
+            }
+            logger.info("Resuming export from checkpoint {}", manifestFile);
+        }
+        return new ExportCheckpoint(manifestFile, manifest);
+    }
+
+    synchronized boolean isTableDone(String tableName) {
+        return Boolean.parseBoolean(manifest.getProperty(tableName + DONE_SUFFIX));
+    }
+
+    synchronized void markTableDone(String tableName) throws IOException {
+        clearProgress(tableName);
+        manifest.setProperty(tableName + DONE_SUFFIX, "true");
+        save();
+    }
+
+    /**
+     * Returns progress of the partially exported table or null if the table export hasn't been
+     * checkpointed yet.
+     */
+    synchronized TableProgress getProgress(String tableName) {
+        String lastKey = manifest.getProperty(tableName + LAST_KEY_SUFFIX);
+        if (lastKey == null) {
+            return null;
+        }
+        return new TableProgress(Long.parseLong(manifest.getProperty(tableName + ROWS_SUFFIX))
+                , lastKey, Long.parseLong(manifest.getProperty(tableName + INSERT_SIZE_SUFFIX)));
+    }
+
+    synchronized void saveProgress(String tableName, TableProgress progress) throws IOException {
+        manifest.setProperty(tableName + ROWS_SUFFIX, Long.toString(progress.rows));
+        manifest.setProperty(tableName + LAST_KEY_SUFFIX, progress.lastKeyLiteral);
+        manifest.setProperty(tableName + INSERT_SIZE_SUFFIX, Long.toString(progress.insertFileSize));
+        save();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(manifestFile);
+    }
+
+    private void clearProgress(String tableName) {
+        manifest.remove(tableName + ROWS_SUFFIX);
+        manifest.remove(tableName + LAST_KEY_SUFFIX);
+        manifest.remove(tableName + INSERT_SIZE_SUFFIX);
+    }
+
+    private void save() throws IOException {
+        Path tempFile = manifestFile.resolveSibling(MANIFEST_FILENAME + ".tmp");
+        try (OutputStream output = Files.newOutputStream(tempFile)) {
+            manifest.store(output, "Dataset export checkpoint");
+        }
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Position the table export can be resumed from: number of rows written, SQL literal of the
+     * ordering key of the last row and size of the insert chunk file holding these rows.
+     */
+    static class TableProgress {
+
+        final long rows;
+        final String lastKeyLiteral;
+        final long insertFileSize;
+
+        TableProgress(long rows, String lastKeyLiteral, long insertFileSize) {
+            this.rows = rows;
+            this.lastKeyLiteral = lastKeyLiteral;
+            this.insertFileSize = insertFileSize;
+        }
+
+    }
+
+}
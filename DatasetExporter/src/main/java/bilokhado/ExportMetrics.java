@@ -0,0 +1,322 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings and counters of the export run. Every table is measured by its own TableMetrics, which
+ * is added to the run when the table is done, so tables can be exported concurrently. Slices of
+ * the split table are measured separately and merged into the single entry of the table. Heap is
+ * reported as the sum of the peak usages of the heap memory pools since the run start. The pools
+ * reach their peaks at different moments, so the sum is the upper bound of the heap high water
+ * mark rather than the mark itself.
+ */
+class ExportMetrics implements ExportMetricsMBean {
+
+    static final String FORMAT_JSON = "json";
+    static final String FORMAT_CSV = "csv";
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportMetrics.class);
+    private static final String OBJECT_NAME = "bilokhado:type=ExportMetrics";
+    private static final String NEW_LINE = System.lineSeparator();
+
+    private final long startTime = System.nanoTime();
+    private final List<TableMetrics> finishedTables = new ArrayList<>();
+    private final ConcurrentMap<String, Integer> currentTables = new ConcurrentHashMap<>();
+    private ObjectName registeredName;
+
+    ExportMetrics() {
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+                memoryPool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Measured stages of a single table export. Fetch is the time spent moving to the next row,
+     * format is the time spent reading and formatting column values, write is the time spent
+     * passing formatted text to the output. Bytes are the encoded size of the table output, DDL
+     * included, before compression. Stage times of the merged slices add up, while the total time
+     * is the wall time from the start of the first slice to the finish of the last one.
+     */
+    static class TableMetrics {
+
+        final String name;
+        private long startTime = System.nanoTime();
+        private long finishTime;
+        long queryNanos;
+        long firstRowNanos = -1;
+        long fetchNanos;
+        long formatNanos;
+        long writeNanos;
+        long totalNanos;
+        long rows;
+        long bytes;
+
+        private TableMetrics(String name) {
+            this.name = name;
+        }
+
+        void queryExecuted() {
+            queryNanos = System.nanoTime() - startTime;
+        }
+
+        /**
+         * Records time to the first row from the table start, if it is not recorded yet.
+         */
+        void rowFetched(long time) {
+            if (firstRowNanos < 0) {
+                firstRowNanos = time - startTime;
+            }
+        }
+
+        long elapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        }
+
+        private void merge(TableMetrics slice) {
+            long firstRowTime = firstRowNanos < 0 ? Long.MAX_VALUE : startTime + firstRowNanos;
+            long sliceFirstRowTime = slice.firstRowNanos < 0 ? Long.MAX_VALUE : slice.startTime + slice.firstRowNanos;
+            long queryTime = Math.max(startTime + queryNanos, slice.startTime + slice.queryNanos);
+            startTime = Math.min(startTime, slice.startTime);
+            finishTime = Math.max(finishTime, slice.finishTime);
+            queryNanos = queryTime - startTime;
+            firstRowNanos = Math.min(firstRowTime, sliceFirstRowTime) == Long.MAX_VALUE ? -1
+                    : Math.min(firstRowTime, sliceFirstRowTime) - startTime;
+            fetchNanos += slice.fetchNanos;
+            formatNanos += slice.formatNanos;
+            writeNanos += slice.writeNanos;
+            totalNanos = finishTime - startTime;
+            rows += slice.rows;
+            bytes += slice.bytes;
+        }
+
+    }
+
+    TableMetrics startTable(String tableName) {
+        currentTables.merge(tableName, 1, Integer::sum);
+        return new TableMetrics(tableName);
+    }
+
+    /**
+     * Adds the finished table to the run, merging it with the finished slices of the same table.
+     */
+    void finishTable(TableMetrics table) {
+        table.finishTime = System.nanoTime();
+        table.totalNanos = table.finishTime - table.startTime;
+        leaveTable(table.name);
+        synchronized (finishedTables) {
+            for (TableMetrics finishedTable : finishedTables) {
+                if (finishedTable.name.equals(table.name)) {
+                    finishedTable.merge(table);
+                    return;
+                }
+            }
+            finishedTables.add(table);
+        }
+    }
+
+    /**
+     * Forgets the table which has been skipped or failed.
+     */
+    void discardTable(TableMetrics table) {
+        leaveTable(table.name);
+    }
+
+    /**
+     * Forgets the finished slices of the table which has been skipped as a whole.
+     */
+    void discardTable(String tableName) {
+        synchronized (finishedTables) {
+            finishedTables.removeIf(table -> table.name.equals(tableName));
+        }
+    }
+
+    private void leaveTable(String tableName) {
+        currentTables.computeIfPresent(tableName, (name, slices) -> slices > 1 ? slices - 1 : null);
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, so the run can be watched with JConsole.
+     */
+    void registerMBean() {
+        try {
+            ObjectName objectName = new ObjectName(OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException ex) {
+            logger.error("Unable to register export metrics MBean", ex);
+        }
+    }
+
+    /**
+     * Logs the summary of the run, writes it to the file in the given format, if any,
+     * and unregisters the MBean.
+     */
+    void finish(String summaryFormat, Path summaryFile) {
+        logger.info("Export finished: {} tables, {} rows, {} bytes in {} ms, heap pool peaks sum {} bytes"
+                , getTablesExported(), getRowsExported(), getBytesExported(), getElapsedMillis(), getHeapPoolPeaksBytes());
+        if (FORMAT_JSON.equals(summaryFormat) || FORMAT_CSV.equals(summaryFormat)) {
+            try (Writer writer = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8)) {
+                writer.write(FORMAT_JSON.equals(summaryFormat) ? toJson() : toCsv());
+            } catch (IOException ex) {
+                logger.error("Unable to write metrics file {}", summaryFile, ex);
+            }
+        }
+        if (registeredName != null) {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            try {
+                mBeanServer.unregisterMBean(registeredName);
+            } catch (JMException ex) {
+                logger.error("Unable to unregister export metrics MBean", ex);
+            }
+            registeredName = null;
+        }
+    }
+
+    @Override
+    public String getCurrentTables() {
+        return String.join(",", currentTables.keySet());
+    }
+
+    @Override
+    public int getTablesExported() {
+        synchronized (finishedTables) {
+            return finishedTables.size();
+        }
+    }
+
+    @Override
+    public long getRowsExported() {
+        long rows = 0;
+        synchronized (finishedTables) {
+            for (TableMetrics table : finishedTables) {
+                rows += table.rows;
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public long getBytesExported() {
+        long bytes = 0;
+        synchronized (finishedTables) {
+            for (TableMetrics table : finishedTables) {
+                bytes += table.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    @Override
+    public long getHeapPoolPeaksBytes() {
+        long peakBytes = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP && memoryPool.isValid()) {
+                peakBytes += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+        return peakBytes;
+    }
+
+    private List<TableMetrics> getFinishedTables() {
+        synchronized (finishedTables) {
+            return new ArrayList<>(finishedTables);
+        }
+    }
+
+    private String toJson() {
+        StringBuilder jsonBuilder = new StringBuilder();
+        jsonBuilder.append("{").append(NEW_LINE);
+        jsonBuilder.append("  \"elapsedMillis\": ").append(getElapsedMillis()).append(',').append(NEW_LINE);
+        jsonBuilder.append("  \"rows\": ").append(getRowsExported()).append(',').append(NEW_LINE);
+        jsonBuilder.append("  \"bytes\": ").append(getBytesExported()).append(',').append(NEW_LINE);
+        jsonBuilder.append("  \"heapPoolPeaksBytes\": ").append(getHeapPoolPeaksBytes()).append(',')
+                .append(NEW_LINE);
+        jsonBuilder.append("  \"tables\": [");
+        List<TableMetrics> tables = getFinishedTables();
+        for (int i = 0; i < tables.size(); i++) {
+            TableMetrics table = tables.get(i);
+            jsonBuilder.append(i > 0 ? "," : "").append(NEW_LINE);
+            jsonBuilder.append("    {\"name\": \"");
+            appendJsonEscaped(table.name, jsonBuilder);
+            jsonBuilder.append("\", \"rows\": ").append(table.rows)
+                    .append(", \"bytes\": ").append(table.bytes)
+                    .append(", \"queryMillis\": ").append(toMillis(table.queryNanos))
+                    .append(", \"firstRowMillis\": ").append(toMillis(table.firstRowNanos))
+                    .append(", \"fetchMillis\": ").append(toMillis(table.fetchNanos))
+                    .append(", \"formatMillis\": ").append(toMillis(table.formatNanos))
+                    .append(", \"writeMillis\": ").append(toMillis(table.writeNanos))
+                    .append(", \"totalMillis\": ").append(toMillis(table.totalNanos))
+                    .append(", \"rowsPerSecond\": ").append(rowsPerSecond(table))
+                    .append('}');
+        }
+        jsonBuilder.append(NEW_LINE).append("  ]").append(NEW_LINE).append("}").append(NEW_LINE);
+        return jsonBuilder.toString();
+    }
+
+    private String toCsv() {
+        StringBuilder csvBuilder = new StringBuilder();
+        csvBuilder.append("table,rows,bytes,queryMillis,firstRowMillis,fetchMillis,formatMillis,writeMillis"
+                + ",totalMillis,rowsPerSecond").append(NEW_LINE);
+        for (TableMetrics table : getFinishedTables()) {
+            csvBuilder.append('"').append(table.name.replace("\"", "\"\"")).append('"')
+                    .append(',').append(table.rows)
+                    .append(',').append(table.bytes)
+                    .append(',').append(toMillis(table.queryNanos))
+                    .append(',').append(toMillis(table.firstRowNanos))
+                    .append(',').append(toMillis(table.fetchNanos))
+                    .append(',').append(toMillis(table.formatNanos))
+                    .append(',').append(toMillis(table.writeNanos))
+                    .append(',').append(toMillis(table.totalNanos))
+                    .append(',').append(rowsPerSecond(table))
+                    .append(NEW_LINE);
+        }
+        return csvBuilder.toString();
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long rowsPerSecond(TableMetrics table) {
+        return table.totalNanos == 0 ? table.rows : table.rows * TimeUnit.SECONDS.toNanos(1) / table.totalNanos;
+    }
+
+    private static void appendJsonEscaped(String value, StringBuilder jsonBuilder) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                jsonBuilder.append('\\').append(c);
+            } else if (c < 0x20) {
+                jsonBuilder.append(String.format("\\u%04x", (int) c));
+            } else {
+                jsonBuilder.append(c);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package bilokhado;
+
+/**
+ * Progress of the running export exposed through JMX.
+ */
+public interface ExportMetricsMBean {
+
+    String getCurrentTables();
+
+    int getTablesExported();
+
+    long getRowsExported();
+
+    long getBytesExported();
+
+    long getElapsedMillis();
+
+    /**
+     * Returns sum of the peak usages of the heap memory pools, the upper bound of the heap high water mark.
+     */
+    long getHeapPoolPeaksBytes();
+
+}
@@ -0,0 +1,466 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+/**
+ * Export configuration loaded from the queries properties file. Every key is a table name with
+ * the query as the value, except the keys starting with the option prefix, which are settings.
+ * Table specific setting is the global one suffixed with the table name, e.g. export.batchSize
+ * and export.batchSize.MY_TABLE.
+ */
+class ExportSettings {
+
+    static final String OPTION_PREFIX = "export.";
+    static final String DIALECT_OPTION = OPTION_PREFIX + "dialect";
+    static final String TARGET_DIALECT_OPTION = OPTION_PREFIX + "targetDialect";
+    static final String THREADS_OPTION = OPTION_PREFIX + "threads";
+    static final String BATCH_SIZE_OPTION = OPTION_PREFIX + "batchSize";
+    static final String RESUME_OPTION = OPTION_PREFIX + "resume";
+    static final String ORDER_KEY_OPTION = OPTION_PREFIX + "orderKey";
+    static final String CHECKPOINT_ROWS_OPTION = OPTION_PREFIX + "checkpointRows";
+    static final String COMPRESSION_OPTION = OPTION_PREFIX + "compression";
+    static final String COMPRESSION_LEVEL_OPTION = OPTION_PREFIX + "compressionLevel";
+    static final String FORMAT_OPTION = OPTION_PREFIX + "format";
+    static final String FETCH_SIZE_OPTION = OPTION_PREFIX + "fetchSize";
+    static final String QUERY_TIMEOUT_OPTION = OPTION_PREFIX + "queryTimeout";
+    static final String MAX_ROWS_OPTION = OPTION_PREFIX + "maxRows";
+    static final String PIPELINE_ROWS_OPTION = OPTION_PREFIX + "pipelineRows";
+    static final String MAX_VALUE_LENGTH_OPTION = OPTION_PREFIX + "maxValueLength";
+    static final String LARGE_VALUE_POLICY_OPTION = OPTION_PREFIX + "largeValuePolicy";
+    static final String BINARY_ENCODING_OPTION = OPTION_PREFIX + "binaryEncoding";
+    static final String CHUNK_SIZE_OPTION = OPTION_PREFIX + "chunkSize";
+    static final String SPILL_DIRECTORY_OPTION = OPTION_PREFIX + "spillDirectory";
+    static final String BENCHMARK_OPTION_PREFIX = OPTION_PREFIX + "benchmark.";
+    static final String BENCHMARK_URL_OPTION = BENCHMARK_OPTION_PREFIX + ConnectionSettings.URL_SUFFIX;
+    static final String BENCHMARK_FETCH_SIZES_OPTION = BENCHMARK_OPTION_PREFIX + "fetchSizes";
+    static final String BENCHMARK_REPEATS_OPTION = BENCHMARK_OPTION_PREFIX + "repeats";
+    static final String LIMIT_OPTION = OPTION_PREFIX + "limit";
+    static final String SAMPLE_PERCENT_OPTION = OPTION_PREFIX + "samplePercent";
+    static final String SAMPLE_METHOD_OPTION = OPTION_PREFIX + "sampleMethod";
+    static final String SAMPLE_SEED_OPTION = OPTION_PREFIX + "sampleSeed";
+    static final String RANGE_KEY_OPTION = OPTION_PREFIX + "rangeKey";
+    static final String RANGE_FROM_OPTION = OPTION_PREFIX + "rangeFrom";
+    static final String RANGE_TO_OPTION = OPTION_PREFIX + "rangeTo";
+    static final String SUBSET_OPTION = OPTION_PREFIX + "subset";
+    static final String SUBSET_BATCH_SIZE_OPTION = OPTION_PREFIX + "subsetBatchSize";
+    static final String SEED_OPTION = OPTION_PREFIX + "seed";
+    static final String FOREIGN_KEYS_OPTION = OPTION_PREFIX + "fk";
+    static final String DELTA_OPTION = OPTION_PREFIX + "delta";
+    static final String DELTA_KEY_OPTION = OPTION_PREFIX + "deltaKey";
+    static final String WATERMARK_OPTION = OPTION_PREFIX + "watermark";
+    static final String SPLIT_COLUMN_OPTION = OPTION_PREFIX + "splitColumn";
+    static final String SPLITS_OPTION = OPTION_PREFIX + "splits";
+    static final String SPLIT_METHOD_OPTION = OPTION_PREFIX + "splitMethod";
+    static final String SPLIT_RANGE = "range";
+    static final String SPLIT_HASH = "hash";
+    static final String METRICS_OPTION = OPTION_PREFIX + "metrics";
+    static final String JMX_OPTION = OPTION_PREFIX + "jmx";
+    static final String FORMAT_SQL = "sql";
+    static final String FORMAT_XML = "xml";
+    static final String FORMAT_COLUMNAR = "columnar";
+    static final String DEFAULT_SPILL_DIRECTORY = "dataset-output-lobs";
+    static final String DEFAULT_DRIVER_CLASS = "com.teradata.presto.jdbc4.Driver";
+    static final String DEFAULT_CONNECTION_URL = "jdbc:presto://bigdata.host:9000/hive"
+            + ";User=dmytro;LogLevel=6;LogPath=C:\\\\\\\\Dev";
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportSettings.class);
+
+    private final Properties properties;
+    private final SqlDialect sourceDialect;
+    private final SqlDialect targetDialect;
+
+    ExportSettings(Properties properties) {
+        this.properties = properties;
+        this.sourceDialect = getDialect(DIALECT_OPTION, StandardDialect.PRESTO);
+        this.targetDialect = getDialect(TARGET_DIALECT_OPTION, sourceDialect);
+    }
+
+    /**
+     * Returns settings of the connection to the exported database, the Presto one unless export.url is set.
+     */
+    ConnectionSettings getConnectionSettings() {
+        return ConnectionSettings.fromProperties(properties, OPTION_PREFIX, DEFAULT_CONNECTION_URL, DEFAULT_DRIVER_CLASS);
+    }
+
+    /**
+     * Returns settings of the connection to the benchmark database or null if the benchmark url is not set.
+     */
+    ConnectionSettings getBenchmarkConnectionSettings() {
+        String url = getString(BENCHMARK_URL_OPTION);
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        return ConnectionSettings.fromProperties(properties, BENCHMARK_OPTION_PREFIX, null, null);
+    }
+
+    /**
+     * Returns dialect of the exported database, used for the export queries.
+     */
+    SqlDialect getSourceDialect() {
+        return sourceDialect;
+    }
+
+    /**
+     * Returns dialect of the output SQL scripts, the source dialect unless set explicitly.
+     */
+    SqlDialect getTargetDialect() {
+        return targetDialect;
+    }
+
+    /**
+     * Returns names of the tables to export in sorted order.
+     */
+    List<String> getTableNames() {
+        List<String> tableNames = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(OPTION_PREFIX)) {
+                tableNames.add(key);
+            }
+        }
+        Collections.sort(tableNames);
+        return tableNames;
+    }
+
+    TableSettings getTableSettings(String tableName) {
+        return getTableSettings(tableName, properties.getProperty(tableName), getTableSample(tableName));
+    }
+
+    /**
+     * Returns settings of the subset export query selecting the table rows matching the condition.
+     * Seed query is sampled according to the table settings, while key lookups are never sampled.
+     */
+    TableSettings getSubsetTableSettings(String tableName, String condition, boolean seed) {
+        String query = "SELECT * FROM (" + properties.getProperty(tableName) + ") subset_source WHERE " + condition;
+        if (!seed) {
+            return getTableSettings(tableName, query, TableSample.NONE);
+        }
+        TableSample sample = getTableSample(tableName);
+        if (sample.isClientSampling() && sample.limit > 0) {
+            logger.error("Reservoir sampling is not supported for the subset seed. Ignoring the limit of {}", tableName);
+            sample = new TableSample(0, sample.samplePercent, sample.sampleMethod, sample.rangeKey, sample.rangeFrom
+                    , sample.rangeTo, sample.seed);
+        }
+        return getTableSettings(tableName, query, sample);
+    }
+
+    private TableSettings getTableSettings(String tableName, String query, TableSample sample) {
+        int batchSize = getTableInt(BATCH_SIZE_OPTION, tableName, 1);
+        if (batchSize < 1) {
+            logger.error("Batch size for the table {} should be positive, but got {}. Using 1", tableName, batchSize);
+            batchSize = 1;
+        }
+        batchSize = Math.max(1, Math.min(batchSize, targetDialect.getMaxInsertRows()));
+        return new TableSettings(tableName, sample.apply(query, sourceDialect), batchSize
+                , getTableString(ORDER_KEY_OPTION, tableName), getTableInt(CHECKPOINT_ROWS_OPTION, tableName, 0)
+                , getTableNonNegativeInt(FETCH_SIZE_OPTION, tableName), getTableNonNegativeInt(QUERY_TIMEOUT_OPTION, tableName)
+                , getTableNonNegativeInt(MAX_ROWS_OPTION, tableName)
+                , getTableNonNegativeInt(PIPELINE_ROWS_OPTION, tableName), sample, sourceDialect, targetDialect
+                , getLargeValueSettings(tableName));
+    }
+
+    /**
+     * Returns handling of the large values of the table, turned off unless the max value length is set.
+     * Spilling falls back to truncation if the target dialect can't read the spilled files.
+     */
+    private LargeValueSettings getLargeValueSettings(String tableName) {
+        int maxLength = getTableNonNegativeInt(MAX_VALUE_LENGTH_OPTION, tableName);
+        if (maxLength == 0) {
+            return LargeValueSettings.NONE;
+        }
+        LargeValueSettings.Policy policy = getTableEnum(LARGE_VALUE_POLICY_OPTION, tableName
+                , LargeValueSettings.Policy.class, LargeValueSettings.Policy.TRUNCATE);
+        if (policy == LargeValueSettings.Policy.SPILL
+                && (targetDialect.getFileReadTemplate(false) == null || targetDialect.getFileReadTemplate(true) == null)) {
+            logger.error("Target dialect can't read values from files, so they can't be spilled. Values of the table {}"
+                    + " longer than {} are truncated", tableName, maxLength);
+            policy = LargeValueSettings.Policy.TRUNCATE;
+        }
+        LargeValueSettings.BinaryEncoding binaryEncoding = getTableEnum(BINARY_ENCODING_OPTION, tableName
+                , LargeValueSettings.BinaryEncoding.class, LargeValueSettings.BinaryEncoding.HEX);
+        int chunkSize = getInt(CHUNK_SIZE_OPTION, LargeValueSettings.NONE.chunkSize);
+        if (chunkSize < 1) {
+            logger.error("Option {} should be positive, but got {}. Using default", CHUNK_SIZE_OPTION, chunkSize);
+            chunkSize = LargeValueSettings.NONE.chunkSize;
+        }
+        String spillDirectory = getString(SPILL_DIRECTORY_OPTION);
+        return new LargeValueSettings(maxLength, policy, binaryEncoding, chunkSize
+                , Paths.get(spillDirectory == null || spillDirectory.isEmpty() ? DEFAULT_SPILL_DIRECTORY : spillDirectory));
+    }
+
+    private <E extends Enum<E>> E getTableEnum(String optionName, String tableName, Class<E> enumType, E defaultValue) {
+        String value = getTableString(optionName, tableName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(enumType, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            logger.error("Option {} for the table {} has invalid value '{}'. Using {}"
+                    , optionName, tableName, value, defaultValue.name().toLowerCase(Locale.ROOT));
+            return defaultValue;
+        }
+    }
+
+    private TableSample getTableSample(String tableName) {
+        long limit = 0;
+        String limitValue = getTableString(LIMIT_OPTION, tableName);
+        if (limitValue != null) {
+            try {
+                limit = Math.max(0, Long.parseLong(limitValue));
+            } catch (NumberFormatException ex) {
+                logger.error("Option {} for the table {} has invalid value '{}'. Exporting all rows"
+                        , LIMIT_OPTION, tableName, limitValue);
+            }
+        }
+        double samplePercent = 0;
+        String percentValue = getTableString(SAMPLE_PERCENT_OPTION, tableName);
+        if (percentValue != null) {
+            try {
+                samplePercent = Double.parseDouble(percentValue);
+            } catch (NumberFormatException ex) {
+                logger.error("Option {} for the table {} has invalid value '{}'. Exporting without sampling"
+                        , SAMPLE_PERCENT_OPTION, tableName, percentValue);
+            }
+        }
+        String sampleMethod = getTableString(SAMPLE_METHOD_OPTION, tableName);
+        sampleMethod = sampleMethod == null ? TableSample.METHOD_BERNOULLI : sampleMethod.toLowerCase(Locale.ROOT);
+        switch (sampleMethod) {
+            case TableSample.METHOD_BERNOULLI:
+            case TableSample.METHOD_SYSTEM:
+            case TableSample.METHOD_CLIENT:
+                break;
+
+            default:
+                logger.error("Option {} for the table {} has invalid value '{}'. Using {}"
+                        , SAMPLE_METHOD_OPTION, tableName, sampleMethod, TableSample.METHOD_BERNOULLI);
+                sampleMethod = TableSample.METHOD_BERNOULLI;
+        }
+        Long seed = null;
+        String seedValue = getTableString(SAMPLE_SEED_OPTION, tableName);
+        if (seedValue != null) {
+            try {
+                seed = Long.valueOf(seedValue);
+            } catch (NumberFormatException ex) {
+                logger.error("Option {} for the table {} has invalid value '{}'. Using random seed"
+                        , SAMPLE_SEED_OPTION, tableName, seedValue);
+            }
+        }
+        return new TableSample(limit, samplePercent, sampleMethod, getTableString(RANGE_KEY_OPTION, tableName)
+                , getTableString(RANGE_FROM_OPTION, tableName), getTableString(RANGE_TO_OPTION, tableName), seed);
+    }
+
+    /**
+     * Returns fetch sizes to compare in the fetch size benchmark.
+     */
+    List<Integer> getBenchmarkFetchSizes() {
+        List<Integer> fetchSizes = new ArrayList<>();
+        String value = properties.getProperty(BENCHMARK_FETCH_SIZES_OPTION, "10,100,1000,10000");
+        for (String fetchSize : value.split(",")) {
+            try {
+                fetchSizes.add(Integer.valueOf(fetchSize.trim()));
+            } catch (NumberFormatException ex) {
+                logger.error("Option {} has invalid fetch size '{}'. Skipping it", BENCHMARK_FETCH_SIZES_OPTION, fetchSize);
+            }
+        }
+        return fetchSizes;
+    }
+
+    /**
+     * Returns output format: SQL scripts, DbUnit flat XML or columnar binary dataset.
+     */
+    String getFormat() {
+        String value = properties.getProperty(FORMAT_OPTION, FORMAT_SQL).trim().toLowerCase(Locale.ROOT);
+        switch (value) {
+            case FORMAT_SQL:
+            case FORMAT_XML:
+            case FORMAT_COLUMNAR:
+                return value;
+
+            default:
+                logger.error("Option {} has invalid value '{}'. Using {}", FORMAT_OPTION, value, FORMAT_SQL);
+                return FORMAT_SQL;
+        }
+    }
+
+    /**
+     * Returns foreign keys declared for the subset export as comma separated list of
+     * CHILD_COLUMN:PARENT_TABLE.PARENT_COLUMN in the export.fk.CHILD_TABLE options.
+     */
+    List<SubsetExtractor.ForeignKey> getForeignKeys() {
+        List<SubsetExtractor.ForeignKey> foreignKeys = new ArrayList<>();
+        for (String tableName : getTableNames()) {
+            String value = getString(FOREIGN_KEYS_OPTION + "." + tableName);
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            for (String declaration : value.split(",")) {
+                SubsetExtractor.ForeignKey foreignKey = SubsetExtractor.ForeignKey.parse(tableName, declaration.trim());
+                if (foreignKey == null) {
+                    logger.error("Foreign key '{}' of the table {} should be COLUMN:PARENT_TABLE.PARENT_COLUMN. Ignoring it"
+                            , declaration, tableName);
+                } else {
+                    foreignKeys.add(foreignKey);
+                }
+            }
+        }
+        return foreignKeys;
+    }
+
+    /**
+     * Returns condition selecting the seed rows of the subset export or null if the table is not seeded.
+     */
+    String getSeedCondition(String tableName) {
+        return getString(SEED_OPTION + "." + tableName);
+    }
+
+    /**
+     * Returns the greatest number of slices of the split tables, or 1 if no table is split.
+     */
+    int getMaxSplits() {
+        int maxSplits = 1;
+        for (String tableName : getTableNames()) {
+            if (getTableString(SPLIT_COLUMN_OPTION, tableName) != null) {
+                maxSplits = Math.max(maxSplits, getTableInt(SPLITS_OPTION, tableName, 1));
+            }
+        }
+        return maxSplits;
+    }
+
+    boolean isTableSplit(String tableName) {
+        String splitColumn = getTableString(SPLIT_COLUMN_OPTION, tableName);
+        return splitColumn != null && !splitColumn.isEmpty() && getTableInt(SPLITS_OPTION, tableName, 1) > 1;
+    }
+
+    /**
+     * Returns the table query as it is set, without the slice of the table applied.
+     */
+    String getTableQuery(String tableName) {
+        return properties.getProperty(tableName);
+    }
+
+    /**
+     * Returns how the table is split into slices: by ranges of the column values or by their hash.
+     */
+    String getSplitMethod(String tableName) {
+        String value = getTableString(SPLIT_METHOD_OPTION, tableName);
+        if (value == null || SPLIT_RANGE.equalsIgnoreCase(value)) {
+            return SPLIT_RANGE;
+        }
+        if (SPLIT_HASH.equalsIgnoreCase(value)) {
+            return SPLIT_HASH;
+        }
+        logger.error("Option {} for the table {} has invalid value '{}'. Using {}"
+                , SPLIT_METHOD_OPTION, tableName, value, SPLIT_RANGE);
+        return SPLIT_RANGE;
+    }
+
+    /**
+     * Returns format of the metrics summary file: json, csv or none.
+     */
+    String getMetricsFormat() {
+        String value = properties.getProperty(METRICS_OPTION, "none").trim().toLowerCase(Locale.ROOT);
+        switch (value) {
+            case ExportMetrics.FORMAT_JSON:
+            case ExportMetrics.FORMAT_CSV:
+            case "none":
+                return value;
+
+            default:
+                logger.error("Option {} has invalid value '{}'. Metrics file is not written", METRICS_OPTION, value);
+                return "none";
+        }
+    }
+
+    /**
+     * Returns built-in dialect by its name or instance of the dialect class, the default one if the option is not set.
+     */
+    private SqlDialect getDialect(String optionName, SqlDialect defaultDialect) {
+        String value = getString(optionName);
+        if (value == null || value.isEmpty()) {
+            return defaultDialect;
+        }
+        SqlDialect dialect = StandardDialect.forName(value);
+        if (dialect != null) {
+            return dialect;
+        }
+        try {
+            return Class.forName(value).asSubclass(SqlDialect.class).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            logger.error("Option {} has invalid value '{}'. Using default dialect", optionName, value, ex);
+            return defaultDialect;
+        }
+    }
+
+    OutputCodec getOutputCodec() {
+        String value = properties.getProperty(COMPRESSION_OPTION, OutputCodec.NONE.name()).trim();
+        try {
+            return OutputCodec.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            logger.error("Option {} has invalid value '{}'. Writing uncompressed output", COMPRESSION_OPTION, value);
+            return OutputCodec.NONE;
+        }
+    }
+
+    int getCompressionLevel() {
+        int level = getInt(COMPRESSION_LEVEL_OPTION, Deflater.DEFAULT_COMPRESSION);
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            logger.error("Compression level should be from 0 to 9, but got {}. Using default", level);
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        return level;
+    }
+
+    String getString(String optionName) {
+        String value = properties.getProperty(optionName);
+        return value == null ? null : value.trim();
+    }
+
+    boolean getBoolean(String optionName) {
+        return Boolean.parseBoolean(properties.getProperty(optionName, "false").trim());
+    }
+
+    int getInt(String optionName, int defaultValue) {
+        String value = properties.getProperty(optionName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            logger.error("Option {} has invalid value '{}'. Using default {}", optionName, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    int getTableInt(String optionName, String tableName, int defaultValue) {
+        return getInt(optionName + "." + tableName, getInt(optionName, defaultValue));
+    }
+
+    /**
+     * Returns table setting where zero means the default: driver default or the feature turned off.
+     */
+    private int getTableNonNegativeInt(String optionName, String tableName) {
+        int value = getTableInt(optionName, tableName, 0);
+        if (value < 0) {
+            logger.error("Option {} for the table {} should not be negative, but got {}. Using default"
+                    , optionName, tableName, value);
+            return 0;
+        }
+        return value;
+    }
+
+    String getTableString(String optionName, String tableName) {
+        String value = properties.getProperty(optionName + "." + tableName, properties.getProperty(optionName));
+        return value == null ? null : value.trim();
+    }
+
+}
@@ -0,0 +1,181 @@
+package bilokhado;
+
+import org.dbunit.dataset.datatype.DataType;
+import org.dbunit.dataset.datatype.DataTypeException;
+import org.dbunit.dataset.datatype.DefaultDataTypeFactory;
+import org.dbunit.dataset.datatype.IDataTypeFactory;
+import org.dbunit.dataset.datatype.TypeCastException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes result sets as the DbUnit flat XML dataset row by row. Values are formatted with the DbUnit
+ * data types and escaped as FlatXmlWriter does, so the output is the same as the one of FlatXmlWriter.
+ * Tabs and line breaks are written as character references, as XML parsers replace them with spaces
+ * in attribute values.
+ * DTD declarations are built from the result set metadata while the tables are written and
+ * can be saved afterwards without running the queries again.
+ */
+class FlatXmlDatasetWriter implements AutoCloseable {
+
+    private static final String NEW_LINE = "\n";
+    private static final String ROW_INDENT = NEW_LINE + "  ";
+
+    private final CountingOutputStream output;
+    private final Writer xmlWriter;
+    private final IDataTypeFactory dataTypeFactory = new DefaultDataTypeFactory();
+    private final List<String> tableNames = new ArrayList<>();
+    private final StringBuilder attributeListsBuilder = new StringBuilder();
+
+    FlatXmlDatasetWriter(OutputStream output) throws IOException {
+        this.output = new CountingOutputStream(output);
+        xmlWriter = new BufferedWriter(new OutputStreamWriter(this.output, StandardCharsets.UTF_8));
+        xmlWriter.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        xmlWriter.write(NEW_LINE);
+        xmlWriter.write("<dataset>");
+    }
+
+    /**
+     * Writes every row of the result set as the table element. Rows count, bytes written and time
+     * spent on fetching, formatting and writing the rows are added to the table metrics.
+     */
+    void writeTable(String tableName, ResultSet resultSet, ExportMetrics.TableMetrics tableMetrics)
+            throws SQLException, IOException, DataTypeException, TypeCastException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] columnNames = new String[columnCount];
+        DataType[] dataTypes = new DataType[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            columnNames[i - 1] = metaData.getColumnName(i);
+            dataTypes[i - 1] = dataTypeFactory.createDataType(metaData.getColumnType(i), metaData.getColumnTypeName(i));
+        }
+        addDtdDeclaration(tableName, metaData);
+        xmlWriter.flush();
+        long bytesBefore = output.getBytes();
+        String[] values = new String[columnCount];
+        long rows = 0;
+        long time = System.nanoTime();
+        while (resultSet.next()) {
+            long fetchedTime = System.nanoTime();
+            tableMetrics.fetchNanos += fetchedTime - time;
+            tableMetrics.rowFetched(fetchedTime);
+            for (int i = 0; i < columnCount; i++) {
+                Object value = dataTypes[i].getSqlValue(i + 1, resultSet);
+                values[i] = value == null ? null : DataType.asString(value);
+            }
+            long formattedTime = System.nanoTime();
+            tableMetrics.formatNanos += formattedTime - fetchedTime;
+            xmlWriter.write(ROW_INDENT);
+            xmlWriter.write('<');
+            xmlWriter.write(tableName);
+            for (int i = 0; i < columnCount; i++) {
+                if (values[i] != null) {
+                    xmlWriter.write(' ');
+                    xmlWriter.write(columnNames[i]);
+                    xmlWriter.write("=\"");
+                    writeEscaped(values[i]);
+                    xmlWriter.write('"');
+                }
+            }
+            xmlWriter.write("/>");
+            rows++;
+            time = System.nanoTime();
+            tableMetrics.writeNanos += time - formattedTime;
+        }
+        tableMetrics.fetchNanos += System.nanoTime() - time;
+        tableMetrics.rows = rows;
+        xmlWriter.flush();
+        tableMetrics.bytes = output.getBytes() - bytesBefore;
+    }
+
+    /**
+     * Writes DTD of all the tables written so far in the FlatDtdDataSet format.
+     */
+    void writeDtd(OutputStream output) throws IOException {
+        Writer dtdWriter = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        dtdWriter.write("<!ELEMENT dataset (");
+        for (int i = 0; i < tableNames.size(); i++) {
+            dtdWriter.write(NEW_LINE);
+            dtdWriter.write("    ");
+            dtdWriter.write(tableNames.get(i));
+            dtdWriter.write(i < tableNames.size() - 1 ? "*," : "*");
+        }
+        dtdWriter.write(")>");
+        dtdWriter.write(NEW_LINE);
+        dtdWriter.append(attributeListsBuilder);
+        dtdWriter.write(NEW_LINE);
+        dtdWriter.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        xmlWriter.write(NEW_LINE);
+        xmlWriter.write("</dataset>");
+        xmlWriter.write(NEW_LINE);
+        xmlWriter.close();
+    }
+
+    private void writeEscaped(String value) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String reference;
+            switch (value.charAt(i)) {
+                case '\t':
+                    reference = "&#09;";
+                    break;
+                case '\n':
+                    reference = "&#xA;";
+                    break;
+                case '\r':
+                    reference = "&#xD;";
+                    break;
+                case '&':
+                    reference = "&amp;";
+                    break;
+                case '<':
+                    reference = "&lt;";
+                    break;
+                case '>':
+                    reference = "&gt;";
+                    break;
+                case '"':
+                    reference = "&quot;";
+                    break;
+                case '\'':
+                    reference = "&apos;";
+                    break;
+                default:
+                    continue;
+            }
+            xmlWriter.write(value, start, i - start);
+            xmlWriter.write(reference);
+            start = i + 1;
+        }
+        xmlWriter.write(value, start, value.length() - start);
+    }
+
+    private void addDtdDeclaration(String tableName, ResultSetMetaData metaData) throws SQLException {
+        tableNames.add(tableName);
+        attributeListsBuilder.append(NEW_LINE);
+        attributeListsBuilder.append("<!ELEMENT ").append(tableName).append(" EMPTY>").append(NEW_LINE);
+        attributeListsBuilder.append("<!ATTLIST ").append(tableName).append(NEW_LINE);
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            attributeListsBuilder.append("    ").append(metaData.getColumnName(i)).append(" CDATA ");
+            attributeListsBuilder.append(metaData.isNullable(i) == ResultSetMetaData.columnNoNulls
+                    ? "#REQUIRED" : "#IMPLIED");
+            attributeListsBuilder.append(NEW_LINE);
+        }
+        attributeListsBuilder.append(">").append(NEW_LINE);
+    }
+
+}
@@ -0,0 +1,68 @@
+package bilokhado;
+
+import java.nio.file.Path;
+import java.sql.Types;
+
+/**
+ * Handling of the values which may be too large to keep in memory: LOBs, text and binary columns
+ * wider than the limit and the Hive complex types. Such values are read as streams and only up to
+ * the max length is kept in memory, the rest is cut off or spilled to a side file. Turned off
+ * when max length is zero, then every value is read in full.
+ */
+class LargeValueSettings {
+
+    enum Policy { TRUNCATE, SPILL }
+
+    enum BinaryEncoding { HEX, BASE64 }
+
+    static final LargeValueSettings NONE = new LargeValueSettings(0, Policy.TRUNCATE, BinaryEncoding.HEX, 8192, null);
+
+    final int maxLength;
+    final Policy policy;
+    final BinaryEncoding binaryEncoding;
+    final int chunkSize;
+    final Path spillDirectory;
+
+    LargeValueSettings(int maxLength, Policy policy, BinaryEncoding binaryEncoding, int chunkSize, Path spillDirectory) {
+        this.maxLength = maxLength;
+        this.policy = policy;
+        this.binaryEncoding = binaryEncoding;
+        this.chunkSize = chunkSize;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns true if the column values should be streamed. Text and binary columns are streamed
+     * if their declared length exceeds the max length or is unknown.
+     */
+    boolean isLargeColumn(ColumnDescriptor column) {
+        if (maxLength <= 0) {
+            return false;
+        }
+        switch (column.sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.BINARY:
+            case Types.VARBINARY:
+                return column.precision <= 0 || column.precision > maxLength;
+
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+            case Types.ARRAY:
+            case Types.STRUCT:
+            case Types.JAVA_OBJECT:
+            case Types.OTHER:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+}
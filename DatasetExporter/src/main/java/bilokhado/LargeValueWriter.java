@@ -0,0 +1,427 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Struct;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the values of the large column read as streams in chunks. Only up to the max length of
+ * the value is kept in the buffer, which is allocated once per column, so memory per row doesn't
+ * depend on the value size. Longer values are truncated or copied in chunks to the side file,
+ * which the literal reads back with the file function of the dialect. The file path in the literal
+ * is relative to the output directory, so the scripts are loaded from there. Arrays, structs,
+ * collections and maps are written element by element, array elements are read through the array
+ * result set, and once the literal is longer than the max length the rest of the elements or map
+ * entries is dropped, as an array can't be read back from the file. Other complex values are
+ * written as text.
+ */
+class LargeValueWriter implements ColumnWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LargeValueWriter.class);
+    private static final String VALUE_PLACEHOLDER = "{}";
+    private static final String MAP_VALUES_START = "], ARRAY[";
+    private static final String MAP_END = "])";
+    private static final char[] BASE64_DIGITS
+            = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private final LargeValueSettings settings;
+    private final SqlDialect dialect;
+    private final String columnName;
+    private final boolean binary;
+    private final int complexType;
+    private final Path spillDirectory;
+    private final String[] fileReadTemplate;
+    private final String[] base64Template;
+    private char[] chars;
+    private byte[] bytes;
+    private boolean elementsDropped;
+
+    private LargeValueWriter(TableSettings table, ColumnDescriptor column) {
+        this.settings = table.largeValues;
+        this.dialect = table.dialect;
+        this.columnName = column.name;
+        this.binary = isBinary(column.sqlType);
+        this.complexType = isComplex(column.sqlType) ? column.sqlType : Types.NULL;
+        String[] fileRead = null;
+        if (settings.policy == LargeValueSettings.Policy.SPILL) {
+            fileRead = splitTemplate(dialect.getFileReadTemplate(binary));
+            if (fileRead == null) {
+                logger.error("Dialect can't read values from files. Values of the column {} of the table {}"
+                        + " longer than {} are truncated", column.name, table.name, settings.maxLength);
+            }
+        }
+        this.fileReadTemplate = fileRead;
+        this.spillDirectory = fileRead == null ? null : settings.spillDirectory.resolve(table.name);
+        String[] base64 = null;
+        if (binary && settings.binaryEncoding == LargeValueSettings.BinaryEncoding.BASE64) {
+            base64 = splitTemplate(dialect.getBase64Template());
+            if (base64 == null) {
+                logger.error("Dialect can't decode base64. Values of the column {} of the table {} are written as hex"
+                        , column.name, table.name);
+            }
+        }
+        this.base64Template = base64;
+    }
+
+    /**
+     * Returns the large value writer if the column is large according to the table settings,
+     * otherwise the usual writer of the column type.
+     */
+    static ColumnWriter forColumn(TableSettings table, ColumnDescriptor column) {
+        if (table.largeValues.isLargeColumn(column)) {
+            return new LargeValueWriter(table, column);
+        }
+        return ColumnWriter.forType(column.sqlType, table.dialect);
+    }
+
+    @Override
+    public void write(ResultSet resultSet, int column, StringBuilder output) throws SQLException {
+        try {
+            if (binary) {
+                writeBinary(resultSet, column, output);
+            } else if (complexType != Types.NULL) {
+                writeComplex(resultSet, column, output);
+            } else {
+                writeText(resultSet.getCharacterStream(column), output);
+            }
+        } catch (IOException ex) {
+            throw new SQLException("Unable to read large value of the column " + columnName, ex);
+        }
+    }
+
+    private void writeComplex(ResultSet resultSet, int column, StringBuilder output) throws SQLException, IOException {
+        Object value = complexType == Types.ARRAY ? resultSet.getArray(column) : resultSet.getObject(column);
+        if (value instanceof Array || value instanceof Struct || value instanceof Collection || value instanceof Map
+                || value != null && value.getClass().isArray()) {
+            appendComplex(value, output, output.length() + settings.maxLength);
+        } else {
+            writeText(value == null ? null : new StringReader(value.toString()), output);
+        }
+    }
+
+    /**
+     * Appends ARRAY[...] literal of the array, collection or Java array, ROW(...) of the struct and
+     * MAP(ARRAY[...], ARRAY[...]) of the map, the same literals as ColumnWriter.appendValue writes,
+     * other values are appended as they are. Returns false if elements of the array or map entries
+     * have been dropped as the literal has become longer than the limit. Struct attributes are never
+     * dropped, as the row has fixed number of them.
+     */
+    private boolean appendComplex(Object value, StringBuilder output, int limit) throws SQLException {
+        if (value instanceof Array) {
+            Array array = (Array) value;
+            try {
+                output.append("ARRAY[");
+                boolean complete = appendElements(array, output, limit);
+                output.append(']');
+                return complete;
+            } finally {
+                ColumnWriter.freeArray(array);
+            }
+        }
+        if (value instanceof Struct) {
+            output.append("ROW(");
+            boolean complete = true;
+            Object[] attributes = ((Struct) value).getAttributes();
+            for (int i = 0; i < attributes.length; i++) {
+                if (i > 0) {
+                    output.append(", ");
+                }
+                complete &= appendComplex(attributes[i], output, limit);
+            }
+            output.append(')');
+            return complete;
+        }
+        if (value instanceof Collection) {
+            output.append("ARRAY[");
+            boolean complete = true;
+            boolean first = true;
+            for (Object element : (Collection<?>) value) {
+                if (!appendElement(element, !first, output, limit)) {
+                    complete = false;
+                    break;
+                }
+                first = false;
+            }
+            output.append(']');
+            return complete;
+        }
+        if (value instanceof Map) {
+            return appendMap((Map<?, ?>) value, output, limit);
+        }
+        if (value != null && value.getClass().isArray() && !(value instanceof byte[])) {
+            output.append("ARRAY[");
+            boolean complete = appendArrayElements(value, output, limit);
+            output.append(']');
+            return complete;
+        }
+        ColumnWriter.appendValue(value, dialect, output);
+        return true;
+    }
+
+    /**
+     * Appends MAP(ARRAY[keys], ARRAY[values]) literal of the map. Values are collected aside while
+     * the keys are appended, entry which makes the whole literal longer than the limit is dropped
+     * with the rest of them.
+     */
+    private boolean appendMap(Map<?, ?> map, StringBuilder output, int limit) throws SQLException {
+        output.append("MAP(ARRAY[");
+        StringBuilder valuesBuilder = new StringBuilder();
+        int entriesLimit = limit - MAP_VALUES_START.length() - MAP_END.length();
+        boolean complete = true;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            int keyStart = output.length();
+            int valueStart = valuesBuilder.length();
+            if (valueStart > 0) {
+                output.append(", ");
+                valuesBuilder.append(", ");
+            }
+            boolean entryComplete = appendComplex(entry.getKey(), output, entriesLimit - valueStart)
+                    && appendComplex(entry.getValue(), valuesBuilder, entriesLimit - output.length());
+            if (!entryComplete || output.length() + valuesBuilder.length() > entriesLimit) {
+                output.setLength(keyStart);
+                valuesBuilder.setLength(valueStart);
+                complete = false;
+                break;
+            }
+        }
+        output.append(MAP_VALUES_START).append(valuesBuilder).append(MAP_END);
+        if (!complete) {
+            warnElementsDropped();
+        }
+        return complete;
+    }
+
+    private boolean appendArrayElements(Object values, StringBuilder output, int limit) throws SQLException {
+        int length = java.lang.reflect.Array.getLength(values);
+        for (int i = 0; i < length; i++) {
+            if (!appendElement(java.lang.reflect.Array.get(values, i), i > 0, output, limit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the array elements, read one by one from the array result set, or from the Java array
+     * if the driver has no result set of the array. Element which exceeds the limit is dropped with
+     * the rest of them.
+     */
+    private boolean appendElements(Array array, StringBuilder output, int limit) throws SQLException {
+        ResultSet elements;
+        try {
+            elements = array.getResultSet();
+        } catch (SQLFeatureNotSupportedException ex) {
+            return appendArrayElements(array.getArray(), output, limit);
+        }
+        try (ResultSet elementResultSet = elements) {
+            boolean first = true;
+            while (elementResultSet.next()) {
+                if (!appendElement(elementResultSet.getObject(2), !first, output, limit)) {
+                    return false;
+                }
+                first = false;
+            }
+        }
+        return true;
+    }
+
+    private boolean appendElement(Object element, boolean separated, StringBuilder output, int limit)
+            throws SQLException {
+        int elementStart = output.length();
+        if (separated) {
+            output.append(", ");
+        }
+        boolean complete = appendComplex(element, output, limit);
+        if (complete && output.length() > limit) {
+            output.setLength(elementStart);
+            complete = false;
+        }
+        if (!complete) {
+            warnElementsDropped();
+        }
+        return complete;
+    }
+
+    private void warnElementsDropped() {
+        if (!elementsDropped) {
+            logger.warn("Arrays and maps of the column {} longer than {} are cut to the elements which fit"
+                    , columnName, settings.maxLength);
+            elementsDropped = true;
+        }
+    }
+
+    private void writeText(Reader input, StringBuilder output) throws IOException {
+        if (input == null) {
+            output.append(NULL_LITERAL);
+            return;
+        }
+        if (chars == null) {
+            chars = new char[settings.maxLength + 1];
+        }
+        try (Reader reader = input) {
+            int length = readChunks(reader, chars);
+            if (length <= settings.maxLength) {
+                ColumnWriter.appendQuoted(chars, length, output);
+                return;
+            }
+            if (spillDirectory == null) {
+                int truncatedLength = settings.maxLength;
+                if (Character.isHighSurrogate(chars[truncatedLength - 1])) {
+                    truncatedLength--;
+                }
+                ColumnWriter.appendQuoted(chars, truncatedLength, output);
+                return;
+            }
+            Path spillFile = createSpillFile(".txt");
+            try (Writer writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8)) {
+                writer.write(chars, 0, length);
+                int read;
+                while ((read = reader.read(chars, 0, Math.min(chars.length, settings.chunkSize))) >= 0) {
+                    writer.write(chars, 0, read);
+                }
+            }
+            appendFileRead(spillFile, output);
+        }
+    }
+
+    private void writeBinary(ResultSet resultSet, int column, StringBuilder output) throws SQLException, IOException {
+        InputStream input = resultSet.getBinaryStream(column);
+        if (input == null) {
+            output.append(NULL_LITERAL);
+            return;
+        }
+        if (bytes == null) {
+            bytes = new byte[settings.maxLength + 1];
+        }
+        try (InputStream stream = input) {
+            int length = readChunks(stream, bytes);
+            if (length <= settings.maxLength || spillDirectory == null) {
+                appendBinary(Math.min(length, settings.maxLength), output);
+                return;
+            }
+            Path spillFile = createSpillFile(".bin");
+            try (OutputStream spillOutput = Files.newOutputStream(spillFile)) {
+                spillOutput.write(bytes, 0, length);
+                int read;
+                while ((read = stream.read(bytes, 0, Math.min(bytes.length, settings.chunkSize))) >= 0) {
+                    spillOutput.write(bytes, 0, read);
+                }
+            }
+            appendFileRead(spillFile, output);
+        }
+    }
+
+    /**
+     * Appends the buffered bytes as base64 text decoded by the dialect function or as the dialect
+     * binary literal. Base64 digits are appended straight to the output, three bytes at a time.
+     */
+    private void appendBinary(int length, StringBuilder output) {
+        if (base64Template == null) {
+            dialect.appendBinaryLiteral(Arrays.copyOf(bytes, length), output);
+            return;
+        }
+        output.ensureCapacity(output.length() + (length + 2) / 3 * 4 + base64Template[0].length()
+                + base64Template[1].length() + 2);
+        output.append(base64Template[0]).append('\'');
+        for (int i = 0; i < length; i += 3) {
+            int remaining = length - i;
+            int triple = (bytes[i] & 0xFF) << 16 | (remaining > 1 ? (bytes[i + 1] & 0xFF) << 8 : 0)
+                    | (remaining > 2 ? bytes[i + 2] & 0xFF : 0);
+            output.append(BASE64_DIGITS[(triple >> 18) & 0x3F]);
+            output.append(BASE64_DIGITS[(triple >> 12) & 0x3F]);
+            output.append(remaining > 1 ? BASE64_DIGITS[(triple >> 6) & 0x3F] : '=');
+            output.append(remaining > 2 ? BASE64_DIGITS[triple & 0x3F] : '=');
+        }
+        output.append('\'').append(base64Template[1]);
+    }
+
+    /**
+     * Appends the file read with the path relative to the output directory, which is the working
+     * directory of the export, with forward slashes, which the databases take on every platform.
+     */
+    private void appendFileRead(Path spillFile, StringBuilder output) {
+        Path outputDirectory = Paths.get("").toAbsolutePath();
+        Path path = spillFile.toAbsolutePath().normalize();
+        if (path.getRoot() != null && path.getRoot().equals(outputDirectory.getRoot())) {
+            path = outputDirectory.relativize(path);
+        }
+        output.append(fileReadTemplate[0]);
+        ColumnWriter.appendQuoted(path.toString().replace(path.getFileSystem().getSeparator(), "/"), output);
+        output.append(fileReadTemplate[1]);
+    }
+
+    private Path createSpillFile(String suffix) throws IOException {
+        Files.createDirectories(spillDirectory);
+        return Files.createTempFile(spillDirectory, columnName.replaceAll("[^A-Za-z0-9_]", "_") + "-", suffix);
+    }
+
+    /**
+     * Fills the buffer reading at most chunk size at a time. Returns number of characters read,
+     * which is less than the buffer length only at the end of the value.
+     */
+    private int readChunks(Reader reader, char[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length
+                && (read = reader.read(buffer, length, Math.min(buffer.length - length, settings.chunkSize))) >= 0) {
+            length += read;
+        }
+        return length;
+    }
+
+    private int readChunks(InputStream stream, byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length
+                && (read = stream.read(buffer, length, Math.min(buffer.length - length, settings.chunkSize))) >= 0) {
+            length += read;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the template split around the value placeholder or null if there is no template.
+     */
+    private static String[] splitTemplate(String template) {
+        if (template == null) {
+            return null;
+        }
+        int placeholderIndex = template.indexOf(VALUE_PLACEHOLDER);
+        if (placeholderIndex < 0) {
+            logger.error("Dialect template '{}' has no {} placeholder. Ignoring it", template, VALUE_PLACEHOLDER);
+            return null;
+        }
+        return new String[] {template.substring(0, placeholderIndex)
+                , template.substring(placeholderIndex + VALUE_PLACEHOLDER.length())};
+    }
+
+    private static boolean isBinary(int sqlType) {
+        return sqlType == Types.BINARY || sqlType == Types.VARBINARY || sqlType == Types.LONGVARBINARY
+                || sqlType == Types.BLOB;
+    }
+
+    private static boolean isComplex(int sqlType) {
+        return sqlType == Types.ARRAY || sqlType == Types.STRUCT || sqlType == Types.JAVA_OBJECT
+                || sqlType == Types.OTHER;
+    }
+
+}
@@ -0,0 +1,75 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Settings of loading the exported dataset into the target database, read from the properties
+ * file passed to the load command.
+ */
+class LoadSettings {
+
+    static final String OPTION_PREFIX = "load.";
+    static final String FILE_OPTION = OPTION_PREFIX + "file";
+    static final String CREATE_FILE_OPTION = OPTION_PREFIX + "createFile";
+    static final String FORMAT_OPTION = OPTION_PREFIX + "format";
+    static final String BATCH_SIZE_OPTION = OPTION_PREFIX + "batchSize";
+    static final String COMMIT_SIZE_OPTION = OPTION_PREFIX + "commitSize";
+    static final String THREADS_OPTION = OPTION_PREFIX + "threads";
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadSettings.class);
+
+    private final Properties properties;
+
+    LoadSettings(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns settings of the connection to the target database: load.url, load.driver, load.user and load.password.
+     */
+    ConnectionSettings getConnectionSettings() {
+        return ConnectionSettings.fromProperties(properties, OPTION_PREFIX, null, null);
+    }
+
+    /**
+     * Returns format of the dataset file: explicitly set one or judged by the file extension.
+     */
+    String getFormat(Path datasetFile) {
+        String format = getString(FORMAT_OPTION);
+        if (format != null) {
+            return format.toLowerCase(Locale.ROOT);
+        }
+        String fileName = OutputCodec.forFile(datasetFile).stripExtension(datasetFile.getFileName().toString());
+        if (fileName.endsWith(".cds")) {
+            return ExportSettings.FORMAT_COLUMNAR;
+        }
+        if (fileName.endsWith(".xml")) {
+            return ExportSettings.FORMAT_XML;
+        }
+        return ExportSettings.FORMAT_SQL;
+    }
+
+    String getString(String optionName) {
+        String value = properties.getProperty(optionName);
+        return value == null ? null : value.trim();
+    }
+
+    int getInt(String optionName, int defaultValue) {
+        String value = properties.getProperty(optionName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            logger.error("Option {} has invalid value '{}'. Using default {}", optionName, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package bilokhado;
+
+/**
+ * Set of primitive longs with open addressing and linear probing. Keeps about 16 bytes per key
+ * instead of about 50 bytes of the boxed HashSet entry. Zero marks the empty slot, so the zero
+ * key is tracked with the separate flag.
+ */
+class LongHashSet {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private long[] slots = new long[INITIAL_CAPACITY];
+    private int mask = INITIAL_CAPACITY - 1;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * Adds the key and returns true if it has not been in the set.
+     */
+    boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int index = indexOf(key);
+        while (slots[index] != 0) {
+            if (slots[index] == key) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = key;
+        size++;
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int index = indexOf(key);
+        while (slots[index] != 0) {
+            if (slots[index] == key) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int indexOf(long key) {
+        return (int) ((key * GOLDEN_RATIO) >>> 32) & mask;
+    }
+
+    private void grow() {
+        long[] oldSlots = slots;
+        slots = new long[oldSlots.length * 2];
+        mask = slots.length - 1;
+        for (long key : oldSlots) {
+            if (key != 0) {
+                int index = indexOf(key);
+                while (slots[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = key;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package bilokhado;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential reader over the file channel, mapping the file into memory window by window, so
+ * files bigger than the single mapping limit can be read too.
+ */
+class MappedFileInput {
+
+    private static final long MAPPING_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    MappedFileInput(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, MAPPING_WINDOW_SIZE));
+        this.windowStart = 0;
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (window.remaining() >= bytes) {
+            return;
+        }
+        long position = windowStart + window.position();
+        if (position + bytes > fileSize) {
+            throw new IOException("Unexpected end of the file");
+        }
+        long size = Math.min(fileSize - position, Math.max(bytes, MAPPING_WINDOW_SIZE));
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        windowStart = position;
+    }
+
+    boolean hasRemaining() {
+        return windowStart + window.position() < fileSize;
+    }
+
+    byte readByte() throws IOException {
+        ensure(1);
+        return window.get();
+    }
+
+    int readInt() throws IOException {
+        ensure(4);
+        return window.getInt();
+    }
+
+    long readLong() throws IOException {
+        ensure(8);
+        return window.getLong();
+    }
+
+    double readDouble() throws IOException {
+        ensure(8);
+        return window.getDouble();
+    }
+
+    byte[] readBytes(int length) throws IOException {
+        ensure(length);
+        byte[] value = new byte[length];
+        window.get(value);
+        return value;
+    }
+
+    String readString() throws IOException {
+        return new String(readBytes(readInt()), StandardCharsets.UTF_8);
+    }
+
+}
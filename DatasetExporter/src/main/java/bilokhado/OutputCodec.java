@@ -0,0 +1,142 @@
+package bilokhado;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression applied to the export output files while they are written, and removed while
+ * they are read back by the loader.
+ */
+enum OutputCodec {
+
+    NONE("") {
+        @Override
+        OutputStream wrap(OutputStream output, int level) {
+            return new BufferedOutputStream(output, BUFFER_SIZE);
+        }
+
+        @Override
+        InputStream unwrap(InputStream input) {
+            return new BufferedInputStream(input, BUFFER_SIZE);
+        }
+    },
+
+    GZIP(".gz") {
+        @Override
+        OutputStream wrap(OutputStream output, int level) throws IOException {
+            return new GZIPOutputStream(output, BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+
+        @Override
+        InputStream unwrap(InputStream input) throws IOException {
+            return new GZIPInputStream(input, BUFFER_SIZE);
+        }
+    },
+
+    DEFLATE(".deflate") {
+        @Override
+        OutputStream wrap(OutputStream output, int level) {
+            Deflater deflater = new Deflater(level);
+            return new DeflaterOutputStream(output, deflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        deflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        InputStream unwrap(InputStream input) {
+            return new InflaterInputStream(input, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String fileExtension;
+
+    OutputCodec(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    abstract OutputStream wrap(OutputStream output, int level) throws IOException;
+
+    abstract InputStream unwrap(InputStream input) throws IOException;
+
+    /**
+     * Returns codec the file has been written with, judging by the file name extension.
+     */
+    static OutputCodec forFile(Path file) {
+        String fileName = file.getFileName().toString();
+        for (OutputCodec codec : values()) {
+            if (codec != NONE && fileName.endsWith(codec.fileExtension)) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns file name without the codec extension.
+     */
+    String stripExtension(String fileName) {
+        return fileName.substring(0, fileName.length() - fileExtension.length());
+    }
+
+    /**
+     * Opens the file written by this codec, decompressing it while reading.
+     */
+    InputStream openInput(Path file) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        try {
+            return unwrap(input);
+        } catch (IOException ex) {
+            input.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Creates the file, appending the codec extension to its name, and returns stream compressing
+     * everything written to it with the given level, from 0 to 9 or -1 for the codec default.
+     */
+    OutputStream open(Path file, int level) throws IOException {
+        Path codecFile = file.resolveSibling(file.getFileName().toString() + fileExtension);
+        OutputStream output = Files.newOutputStream(codecFile);
+        try {
+            return wrap(output, level);
+        } catch (IOException ex) {
+            output.close();
+            throw ex;
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package bilokhado;
+
+import javax.sql.DataSource;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+/**
+ * DataSource backed by the bounded connection pool. Closing a connection got from it returns the
+ * connection to the pool instead of closing it, so the callers may use try-with-resources as with
+ * any other DataSource. Connections are returned as they are, callers changing auto-commit or
+ * read-only mode should restore it. Pooled connections are closed with the data source.
+ */
+public class PooledDataSource implements DataSource, AutoCloseable {
+
+    private final ConnectionPool pool;
+    private volatile PrintWriter logWriter;
+    private volatile int loginTimeout;
+
+    public PooledDataSource(ConnectionSettings settings, int size) {
+        this.pool = new ConnectionPool(size, settings::openConnection);
+    }
+
+    /**
+     * Returns the underlying pool for the code borrowing and releasing connections explicitly.
+     */
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns idle connection or opens a new one, waiting for a connection to be released if the pool is full.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection;
+        try {
+            connection = pool.borrow();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for connection", ex);
+        }
+        if (connection == null) {
+            throw new SQLException("Unable to open connection to the database");
+        }
+        return (Connection) Proxy.newProxyInstance(PooledDataSource.class.getClassLoader()
+                , new Class<?>[] {Connection.class}, new PooledConnectionHandler(connection));
+    }
+
+    @Override
+    public Connection getConnection(String user, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials are set in the connection settings of the pool");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("DataSource logs with SLF4J");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        throw new SQLException("Not a wrapper of " + type.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) {
+        return type.isInstance(this);
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    /**
+     * Delegates everything to the pooled connection except close, which releases it to the pool.
+     * The handle can't be used after it is closed, while the pooled connection can be borrowed again.
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+
+        private final Connection connection;
+        private volatile boolean closed = false;
+
+        PooledConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (!closed) {
+                            closed = true;
+                            pool.release(connection);
+                        }
+                    }
+                    return null;
+
+                case "isClosed":
+                    return closed || connection.isClosed();
+
+                case "equals":
+                    return proxy == args[0];
+
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+
+                case "toString":
+                    return "Pooled " + connection;
+
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection is closed");
+                    }
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+}
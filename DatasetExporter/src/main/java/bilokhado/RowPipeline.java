@@ -0,0 +1,237 @@
+package bilokhado;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes INSERT statements for the rows of the result set in three stages running concurrently:
+ * the calling thread fetches rows and copies column values into row blocks, the format stage turns
+ * the blocks into statement text and the write stage appends the text to the output. Stages pass
+ * blocks through queues and return them for reuse, so the number of blocks in flight, and memory
+ * with it, is bounded: a stage running ahead waits for a free block from the slower one. Block is
+ * a range of rows of the column buffers, which are read on the fetch stage and formatted on the
+ * format stage.
+ */
+class RowPipeline {
+
+    private static final int BLOCKS_IN_FLIGHT = 4;
+    private static final long POLL_MILLIS = 100;
+    private static final ExecutorService STAGE_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "export-pipeline-stage");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ColumnBuffer[] columnBuffers;
+    private final String insertTemplate;
+    private final int batchSize;
+    private final int blockRows;
+    private final BlockingQueue<RowBlock> freeRowBlocks = new ArrayBlockingQueue<>(BLOCKS_IN_FLIGHT);
+    private final BlockingQueue<RowBlock> filledRowBlocks = new ArrayBlockingQueue<>(BLOCKS_IN_FLIGHT + 1);
+    private final BlockingQueue<StringBuilder> freeTextBlocks = new ArrayBlockingQueue<>(BLOCKS_IN_FLIGHT);
+    private final BlockingQueue<StringBuilder> filledTextBlocks = new ArrayBlockingQueue<>(BLOCKS_IN_FLIGHT + 1);
+    private final RowBlock endOfRows = new RowBlock(0);
+    private final StringBuilder endOfText = new StringBuilder(0);
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private volatile boolean aborted = false;
+
+    /**
+     * Creates buffers of the columns for all the blocks in flight. Large value is formatted on the
+     * fetch stage, while its stream is open, and kept as the literal, so its size is bounded the same
+     * way as in the single threaded export.
+     */
+    RowPipeline(List<ColumnDescriptor> columns, TableSettings table, String insertTemplate) {
+        this.insertTemplate = insertTemplate;
+        this.batchSize = table.batchSize;
+        this.blockRows = table.pipelineRows;
+        int bufferRows = BLOCKS_IN_FLIGHT * blockRows;
+        this.columnBuffers = new ColumnBuffer[columns.size()];
+        for (int i = 0; i < columnBuffers.length; i++) {
+            ColumnDescriptor column = columns.get(i);
+            columnBuffers[i] = table.largeValues.isLargeColumn(column)
+                    ? ColumnBuffer.ofLiterals(LargeValueWriter.forColumn(table, column), bufferRows)
+                    : ColumnBuffer.forType(column.sqlType, table.dialect, bufferRows);
+        }
+        for (int i = 0; i < BLOCKS_IN_FLIGHT; i++) {
+            freeRowBlocks.add(new RowBlock(i * blockRows));
+            freeTextBlocks.add(new StringBuilder());
+        }
+    }
+
+    /**
+     * Writes the rows the same way as the single threaded export does. Rows are filtered with
+     * the Bernoulli sampler, if any, on the fetch stage. Busy time of every stage is added to
+     * the table metrics, while time spent waiting for the other stages is not. If any stage
+     * fails, the others stop and the first failure is thrown once all of them have finished.
+     */
+    void writeData(ResultSet resultSet, Writer output, RowSampler rowSampler, ExportMetrics.TableMetrics tableMetrics)
+            throws SQLException, IOException {
+        Future<Long> formatStage = STAGE_EXECUTOR.submit(() -> {
+            try {
+                return formatRows(tableMetrics);
+            } catch (Exception ex) {
+                abort(ex);
+                return 0L;
+            }
+        });
+        Future<?> writeStage = STAGE_EXECUTOR.submit(() -> {
+            try {
+                writeText(output, tableMetrics);
+            } catch (Exception ex) {
+                abort(ex);
+            }
+        });
+        try {
+            fetchRows(resultSet, rowSampler, tableMetrics);
+        } catch (Exception ex) {
+            abort(ex);
+        }
+        long rows = 0;
+        try {
+            rows = formatStage.get();
+            writeStage.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            abort(ex);
+        } catch (ExecutionException ex) {
+            abort(ex);
+        }
+        Exception failure = this.failure.get();
+        if (failure instanceof SQLException) {
+            throw (SQLException) failure;
+        } else if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IOException("Export pipeline has failed", failure);
+        }
+        tableMetrics.rows = rows;
+        if (rows % batchSize != 0) {
+            output.write(";");
+            output.write(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Records the failure, unless another stage has failed earlier, and makes all the stages stop.
+     */
+    private void abort(Exception ex) {
+        failure.compareAndSet(null, ex);
+        aborted = true;
+    }
+
+    private void fetchRows(ResultSet resultSet, RowSampler rowSampler, ExportMetrics.TableMetrics tableMetrics)
+            throws SQLException, InterruptedException, AbortedException {
+        RowBlock block = take(freeRowBlocks);
+        long time = System.nanoTime();
+        while (resultSet.next()) {
+            tableMetrics.rowFetched(System.nanoTime());
+            if (rowSampler != null && !rowSampler.accept()) {
+                continue;
+            }
+            int row = block.start + block.size++;
+            for (int i = 0; i < columnBuffers.length; i++) {
+                columnBuffers[i].read(resultSet, i + 1, row);
+            }
+            if (block.size == blockRows) {
+                filledRowBlocks.add(block);
+                tableMetrics.fetchNanos += System.nanoTime() - time;
+                block = take(freeRowBlocks);
+                time = System.nanoTime();
+            }
+        }
+        tableMetrics.fetchNanos += System.nanoTime() - time;
+        if (block.size > 0) {
+            filledRowBlocks.add(block);
+        }
+        filledRowBlocks.add(endOfRows);
+    }
+
+    private long formatRows(ExportMetrics.TableMetrics tableMetrics) throws InterruptedException, AbortedException {
+        long rows = 0;
+        RowBlock block;
+        while ((block = take(filledRowBlocks)) != endOfRows) {
+            StringBuilder text = take(freeTextBlocks);
+            long time = System.nanoTime();
+            text.setLength(0);
+            for (int row = block.start; row < block.start + block.size; row++) {
+                DatasetExporter.appendRowStart(text, insertTemplate, rows, batchSize);
+                for (int i = 0; i < columnBuffers.length; i++) {
+                    if (i > 0) {
+                        text.append(", ");
+                    }
+                    columnBuffers[i].format(row, text);
+                }
+                rows++;
+                DatasetExporter.appendRowEnd(text, rows, batchSize);
+            }
+            block.size = 0;
+            tableMetrics.formatNanos += System.nanoTime() - time;
+            freeRowBlocks.add(block);
+            filledTextBlocks.add(text);
+        }
+        filledTextBlocks.add(endOfText);
+        return rows;
+    }
+
+    private void writeText(Writer output, ExportMetrics.TableMetrics tableMetrics)
+            throws IOException, InterruptedException, AbortedException {
+        StringBuilder text;
+        while ((text = take(filledTextBlocks)) != endOfText) {
+            long time = System.nanoTime();
+            output.append(text);
+            tableMetrics.writeNanos += System.nanoTime() - time;
+            freeTextBlocks.add(text);
+        }
+    }
+
+    /**
+     * Takes the next block, giving up when the pipeline is aborted, so a stage never waits
+     * for the block from the failed one.
+     */
+    private <T> T take(BlockingQueue<T> queue) throws InterruptedException, AbortedException {
+        while (true) {
+            T block = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (block != null) {
+                return block;
+            }
+            if (aborted) {
+                throw new AbortedException();
+            }
+        }
+    }
+
+    /**
+     * Thrown to the stage waiting for a block when another stage has failed.
+     */
+    private static class AbortedException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    /**
+     * Range of rows of the column buffers starting at the fixed row.
+     */
+    private static class RowBlock {
+        final int start;
+        int size;
+
+        RowBlock(int start) {
+            this.start = start;
+        }
+    }
+
+}
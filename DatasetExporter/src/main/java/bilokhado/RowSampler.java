@@ -0,0 +1,52 @@
+package bilokhado;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Client side row sampling. Every row is accepted with the sample probability. If the limit is
+ * set, accepted rows are offered to the reservoir, which keeps a uniform sample of the limit size
+ * with Algorithm R, so memory use is bounded by the limit whatever the size of the table.
+ */
+class RowSampler {
+
+    private final double probability;
+    private final int reservoirSize;
+    private final Random random;
+    private final List<String> reservoir;
+    private long offeredRows;
+
+    RowSampler(TableSample sample) {
+        probability = sample.isSampled() ? sample.samplePercent / 100 : 1;
+        reservoirSize = (int) Math.min(sample.limit, Integer.MAX_VALUE - 8);
+        random = sample.seed == null ? new Random() : new Random(sample.seed);
+        reservoir = reservoirSize > 0 ? new ArrayList<>(Math.min(reservoirSize, 1 << 16)) : null;
+    }
+
+    boolean accept() {
+        return probability >= 1 || random.nextDouble() < probability;
+    }
+
+    boolean hasReservoir() {
+        return reservoir != null;
+    }
+
+    void offer(String row) {
+        offeredRows++;
+        if (reservoir.size() < reservoirSize) {
+            reservoir.add(row);
+            return;
+        }
+        long index = (long) (random.nextDouble() * offeredRows);
+        if (index < reservoirSize) {
+            reservoir.set((int) index, row);
+        }
+    }
+
+    List<String> getReservoir() {
+        return Collections.unmodifiableList(reservoir);
+    }
+
+}
@@ -0,0 +1,187 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Describes columns of the query result without running the query. Metadata is taken from the
+ * prepared statement or, if the driver doesn't provide it before execution, from the query
+ * wrapped with LIMIT 0. Descriptors are cached by the normalized query text and, if the cache
+ * file is set, kept on disk between runs until their time to live expires.
+ */
+public class SchemaIntrospector {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaIntrospector.class);
+    private static final String TIME_SUFFIX = ".time";
+    private static final String COLUMNS_SUFFIX = ".columns";
+    private static final String FIELD_SEPARATOR = "\t";
+
+    private final Path cacheFile;
+    private final long timeToLiveMillis;
+    private final Properties cache = new Properties();
+    private boolean modified;
+
+    /**
+     * Creates introspector with the cache file, which may be null to keep the cache in memory only.
+     */
+    public SchemaIntrospector(Path cacheFile, long timeToLiveMillis) {
+        this.cacheFile = cacheFile;
+        this.timeToLiveMillis = timeToLiveMillis;
+        if (cacheFile != null && Files.exists(cacheFile)) {
+            try (InputStream input = Files.newInputStream(cacheFile)) {
+                cache.load(input);
+            } catch (IOException ex) {
+                logger.error("Unable to read metadata cache {}. Starting with empty cache", cacheFile, ex);
+                cache.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns columns of the query result, from the cache if possible.
+     */
+    public List<ColumnDescriptor> describe(Connection connection, String query) throws SQLException {
+        List<ColumnDescriptor> columns = getCached(query);
+        if (columns != null) {
+            return columns;
+        }
+        columns = readMetadata(connection, query);
+        putCached(query, columns);
+        return columns;
+    }
+
+    /**
+     * Returns cached columns of the query result or null if they are not cached or expired.
+     */
+    public synchronized List<ColumnDescriptor> getCached(String query) {
+        String key = getCacheKey(query);
+        String time = cache.getProperty(key + TIME_SUFFIX);
+        if (time == null || System.currentTimeMillis() - Long.parseLong(time) > timeToLiveMillis) {
+            return null;
+        }
+        int columnCount = Integer.parseInt(cache.getProperty(key + COLUMNS_SUFFIX));
+        List<ColumnDescriptor> columns = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            String[] fields = cache.getProperty(key + "." + i).split(FIELD_SEPARATOR, -1);
+            columns.add(new ColumnDescriptor(fields[0], fields[1], Integer.parseInt(fields[2]), fields[3]
+                    , Integer.parseInt(fields[4]), Integer.parseInt(fields[5]), Boolean.parseBoolean(fields[6])));
+        }
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Reads every column attribute from the metadata once.
+     */
+    public static List<ColumnDescriptor> describe(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        List<ColumnDescriptor> columns = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            columns.add(new ColumnDescriptor(metaData.getColumnName(i), metaData.getColumnLabel(i)
+                    , metaData.getColumnType(i), metaData.getColumnTypeName(i), metaData.getPrecision(i)
+                    , metaData.getScale(i), metaData.isNullable(i) != ResultSetMetaData.columnNoNulls));
+        }
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Writes the cache file if the cache has been changed. Expired entries are not written.
+     */
+    public synchronized void save() {
+        if (cacheFile == null || !modified) {
+            return;
+        }
+        Properties liveCache = new Properties();
+        long now = System.currentTimeMillis();
+        for (String name : cache.stringPropertyNames()) {
+            if (!name.endsWith(TIME_SUFFIX) || now - Long.parseLong(cache.getProperty(name)) > timeToLiveMillis) {
+                continue;
+            }
+            String key = name.substring(0, name.length() - TIME_SUFFIX.length());
+            for (String entryName : cache.stringPropertyNames()) {
+                if (entryName.startsWith(key + ".")) {
+                    liveCache.setProperty(entryName, cache.getProperty(entryName));
+                }
+            }
+        }
+        Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tempFile)) {
+                liveCache.store(output, "Query result metadata cache");
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (IOException ex) {
+            logger.error("Unable to write metadata cache {}", cacheFile, ex);
+        }
+    }
+
+    private synchronized void putCached(String query, List<ColumnDescriptor> columns) {
+        String key = getCacheKey(query);
+        cache.setProperty(key + TIME_SUFFIX, Long.toString(System.currentTimeMillis()));
+        cache.setProperty(key + COLUMNS_SUFFIX, Integer.toString(columns.size()));
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnDescriptor column = columns.get(i);
+            cache.setProperty(key + "." + (i + 1), String.join(FIELD_SEPARATOR, column.name, column.label
+                    , Integer.toString(column.sqlType), column.typeName, Integer.toString(column.precision)
+                    , Integer.toString(column.scale), Boolean.toString(column.nullable)));
+        }
+        modified = true;
+    }
+
+    private static List<ColumnDescriptor> readMetadata(Connection connection, String query) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            ResultSetMetaData metaData = statement.getMetaData();
+            if (metaData != null) {
+                return describe(metaData);
+            }
+        } catch (SQLFeatureNotSupportedException ex) {
+            logger.debug("Driver doesn't describe prepared statements, using LIMIT 0 query", ex);
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM (" + query + ") metadata_source LIMIT 0")) {
+            return describe(resultSet.getMetaData());
+        }
+    }
+
+    /**
+     * Returns SHA-256 of the query with whitespace collapsed and the trailing semicolon removed.
+     */
+    private static String getCacheKey(String query) {
+        String normalizedQuery = query.trim().replaceAll("\\s+", " ");
+        if (normalizedQuery.endsWith(";")) {
+            normalizedQuery = normalizedQuery.substring(0, normalizedQuery.length() - 1).trim();
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalizedQuery.getBytes(StandardCharsets.UTF_8));
+            StringBuilder keyBuilder = new StringBuilder(digest.length * 2);
+            for (byte digestByte : digest) {
+                keyBuilder.append(ColumnWriter.HEX_DIGITS[(digestByte >> 4) & 0xF]).append(ColumnWriter.HEX_DIGITS[digestByte & 0xF]);
+            }
+            return keyBuilder.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package bilokhado;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Locale;
+
+/**
+ * Database specific parts of the generated SQL. Source dialect shapes the export queries: row
+ * limit and sampling. Target dialect shapes the output scripts: DDL column types, identifiers,
+ * literals and INSERT statements. Built-in dialects are listed in StandardDialect, others are
+ * plugged in by the class name, which should have a public no-argument constructor.
+ */
+public interface SqlDialect {
+
+    /**
+     * Returns DDL type of the column in the target database.
+     */
+    String getColumnType(ColumnDescriptor column);
+
+    /**
+     * Returns the identifier, possibly qualified, with the parts which are not regular identifiers
+     * quoted, so the plain names are written as they are and keep the case folding of the database.
+     */
+    default String quoteIdentifier(String identifier) {
+        StringBuilder quotedBuilder = new StringBuilder(identifier.length() + 2);
+        for (String part : identifier.split("\\.", -1)) {
+            if (quotedBuilder.length() > 0) {
+                quotedBuilder.append('.');
+            }
+            if (part.matches("[A-Za-z_][A-Za-z0-9_$]*")) {
+                quotedBuilder.append(part);
+            } else {
+                quotedBuilder.append('"').append(part.replace("\"", "\"\"")).append('"');
+            }
+        }
+        return quotedBuilder.toString();
+    }
+
+    /**
+     * Appends literal of the binary value, X'hex' by default.
+     */
+    default void appendBinaryLiteral(byte[] value, StringBuilder output) {
+        ColumnWriter.appendBinary(value, output);
+    }
+
+    /**
+     * Appends literal of the date value, standard DATE literal by default.
+     */
+    default void appendDateLiteral(LocalDate value, StringBuilder output) {
+        ColumnWriter.appendDate(value, output);
+    }
+
+    /**
+     * Appends literal of the time value, standard TIME literal by default.
+     */
+    default void appendTimeLiteral(LocalTime value, StringBuilder output) {
+        ColumnWriter.appendTime(value, output);
+    }
+
+    /**
+     * Appends literal of the timestamp value, standard TIMESTAMP literal by default.
+     */
+    default void appendTimestampLiteral(LocalDateTime value, StringBuilder output) {
+        ColumnWriter.appendTimestamp(value, output);
+    }
+
+    /**
+     * Returns expression decoding base64 text into the binary value with {} in place of the text
+     * literal, or null if the database can't decode base64.
+     */
+    default String getBase64Template() {
+        return null;
+    }
+
+    /**
+     * Returns expression reading the whole file into the column value with {} in place of the file
+     * path literal, or null if the database can't read files. Text files are in UTF-8.
+     */
+    default String getFileReadTemplate(boolean binary) {
+        return null;
+    }
+
+    /**
+     * Returns the greatest number of rows in the VALUES list of a single INSERT statement.
+     */
+    default int getMaxInsertRows() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns clause appended to the query limiting number of its rows.
+     */
+    default String getLimitClause(long limit) {
+        return " LIMIT " + limit;
+    }
+
+    /**
+     * Returns clause sampling the rows of the derived table, appended after its alias, or null if
+     * the database samples with the condition only. Method is either bernoulli or system.
+     */
+    default String getSampleClause(String method, double percent) {
+        return " TABLESAMPLE " + method.toUpperCase(Locale.ROOT) + " (" + percent + ")";
+    }
+
+    /**
+     * Returns condition accepting the given percent of rows at random, used when the sample clause is null.
+     */
+    default String getSampleCondition(double percent) {
+        return null;
+    }
+
+    /**
+     * Returns expression of the hash bucket of the column value, from 0 to buckets - 1, used to split
+     * the table into slices, or null if the database has no hash function. Bucket of null may be null.
+     */
+    default String getHashBucketExpression(String column, int buckets) {
+        return null;
+    }
+
+}
@@ -0,0 +1,383 @@
+package bilokhado;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Streaming reader of the SQL scripts produced by the exporter. Splits DDL scripts into
+ * statements and parses INSERT statements into column names and typed literal values without
+ * holding more than a single row in memory. Date and time literals are parsed into the java.time
+ * values, as they are in the proleptic Gregorian calendar, the same as in SQL, while java.sql.Date
+ * switches to the Julian calendar before 1582. Binary literals are parsed in both X'hex' and the
+ * PostgreSQL '\xhex'::bytea form. Function calls and constructors, such as the base64 decoding,
+ * FILE_READ of the spilled values, ARRAY[...], MAP(...) and ROW(...), are returned as Expression,
+ * which the loader inserts as it is.
+ */
+class SqlScriptReader implements AutoCloseable {
+
+    private static final int END_OF_INPUT = -1;
+
+    private final Reader reader;
+    private int lookahead;
+    private String[] lastColumns = new String[0];
+
+    SqlScriptReader(Reader reader) throws IOException {
+        this.reader = reader;
+        this.lookahead = reader.read();
+    }
+
+    /**
+     * SQL expression of the value the loader can't bind, kept as it is written in the script.
+     */
+    static final class Expression {
+
+        final String sql;
+
+        Expression(String sql) {
+            this.sql = sql;
+        }
+
+        @Override
+        public String toString() {
+            return sql;
+        }
+
+    }
+
+    /**
+     * Receives rows of the INSERT statements.
+     */
+    interface RowHandler {
+
+        void row(String tableName, String[] columns, Object[] values) throws IOException;
+
+    }
+
+    /**
+     * Returns the next statement text without the terminating semicolon or null at the end
+     * of the script.
+     */
+    String nextStatement() throws IOException {
+        StringBuilder statementBuilder = new StringBuilder();
+        boolean inString = false;
+        while (lookahead != END_OF_INPUT) {
+            char symbol = (char) read();
+            if (symbol == '\'') {
+                inString = !inString;
+            } else if (symbol == ';' && !inString) {
+                String statement = statementBuilder.toString().trim();
+                if (!statement.isEmpty()) {
+                    return statement;
+                }
+                statementBuilder.setLength(0);
+                continue;
+            }
+            statementBuilder.append(symbol);
+        }
+        String statement = statementBuilder.toString().trim();
+        return statement.isEmpty() ? null : statement;
+    }
+
+    /**
+     * Parses the next INSERT statement passing all its rows to the handler. Returns false at
+     * the end of the script.
+     */
+    boolean nextInsert(RowHandler handler) throws IOException {
+        skipWhitespace();
+        if (lookahead == END_OF_INPUT) {
+            return false;
+        }
+        expectWord("INSERT");
+        expectWord("INTO");
+        String tableName = readIdentifier();
+        String[] columns = readColumns();
+        expectWord("VALUES");
+        while (true) {
+            expect('(');
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    expect(',');
+                }
+                values[i] = readLiteral();
+            }
+            expect(')');
+            handler.row(tableName, columns, values);
+            skipWhitespace();
+            int separator = read();
+            if (separator == ';') {
+                return true;
+            }
+            if (separator != ',') {
+                throw syntaxError("',' or ';'", separator);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads the column list. The same array is returned while the list doesn't change, so the
+     * consumers can detect new column list by reference comparison.
+     */
+    private String[] readColumns() throws IOException {
+        List<String> columns = new ArrayList<>();
+        expect('(');
+        do {
+            columns.add(readIdentifier());
+            skipWhitespace();
+        } while (lookahead == ',' && read() == ',');
+        expect(')');
+        String[] columnArray = columns.toArray(new String[columns.size()]);
+        if (!Arrays.equals(columnArray, lastColumns)) {
+            lastColumns = columnArray;
+        }
+        return lastColumns;
+    }
+
+    private Object readLiteral() throws IOException {
+        skipWhitespace();
+        if (lookahead == '\'') {
+            String value = readString();
+            return lookahead == ':' ? readCast(value) : value;
+        }
+        if (Character.isLetter(lookahead)) {
+            String word = readWord();
+            switch (word.toUpperCase(Locale.ROOT)) {
+                case "NULL":
+                    return null;
+
+                case "TRUE":
+                    return Boolean.TRUE;
+
+                case "FALSE":
+                    return Boolean.FALSE;
+
+                case "X":
+                    return parseHex(readString());
+
+                case "DATE":
+                    return parseTemporal("DATE", readTypedString());
+
+                case "TIME":
+                case "TIMESTAMP":
+                    return isNextWord() ? readZonedString()
+                            : parseTemporal(word.toUpperCase(Locale.ROOT), readTypedString());
+
+                default:
+                    return readExpression(word);
+            }
+        }
+        StringBuilder numberBuilder = new StringBuilder();
+        while (lookahead != END_OF_INPUT && lookahead != ',' && lookahead != ')'
+                && !Character.isWhitespace(lookahead)) {
+            numberBuilder.append((char) read());
+        }
+        try {
+            return new BigDecimal(numberBuilder.toString());
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid numeric literal " + numberBuilder, ex);
+        }
+    }
+
+    /**
+     * Reads the PostgreSQL cast after the string literal. Binary literal '\xhex'::bytea is parsed,
+     * other casts are returned as the expression.
+     */
+    private Object readCast(String value) throws IOException {
+        expect(':');
+        expect(':');
+        String type = readWord();
+        if ("BYTEA".equalsIgnoreCase(type) && value.startsWith("\\x")) {
+            return parseHex(value.substring(2));
+        }
+        return new Expression("'" + value.replace("'", "''") + "'::" + type);
+    }
+
+    /**
+     * Reads the function call or the constructor, e.g. from_base64('...') or ARRAY[...], starting
+     * with the word already read, up to its closing bracket.
+     */
+    private Expression readExpression(String word) throws IOException {
+        StringBuilder expressionBuilder = new StringBuilder(word);
+        while (Character.isLetterOrDigit(lookahead) || lookahead == '_' || lookahead == '.') {
+            expressionBuilder.append((char) read());
+        }
+        skipWhitespace();
+        if (lookahead != '(' && lookahead != '[') {
+            throw new IOException("Unsupported SQL literal " + expressionBuilder);
+        }
+        int depth = 0;
+        do {
+            int symbol = read();
+            if (symbol == END_OF_INPUT) {
+                throw new IOException("Unterminated expression " + expressionBuilder);
+            }
+            if (symbol == '\'') {
+                expressionBuilder.append('\'').append(readStringRest().replace("'", "''")).append('\'');
+                continue;
+            }
+            if (symbol == '(' || symbol == '[') {
+                depth++;
+            } else if (symbol == ')' || symbol == ']') {
+                depth--;
+            }
+            expressionBuilder.append((char) symbol);
+        } while (depth > 0);
+        return new Expression(expressionBuilder.toString());
+    }
+
+    private boolean isNextWord() throws IOException {
+        skipWhitespace();
+        return Character.isLetter(lookahead);
+    }
+
+    /**
+     * Reads time zone aware literal, e.g. TIMESTAMP WITH TIME ZONE '...', which is passed to the
+     * driver as a string.
+     */
+    private String readZonedString() throws IOException {
+        expectWord("WITH");
+        expectWord("TIME");
+        expectWord("ZONE");
+        return readTypedString();
+    }
+
+    private static Object parseTemporal(String type, String value) throws IOException {
+        try {
+            switch (type) {
+                case "DATE":
+                    return LocalDate.parse(value);
+
+                case "TIME":
+                    return LocalTime.parse(value);
+
+                default:
+                    return LocalDateTime.parse(value.replace(' ', 'T'));
+            }
+        } catch (DateTimeParseException ex) {
+            throw new IOException("Invalid " + type + " literal '" + value + "'", ex);
+        }
+    }
+
+    private String readTypedString() throws IOException {
+        skipWhitespace();
+        return readString();
+    }
+
+    private String readString() throws IOException {
+        expect('\'');
+        return readStringRest();
+    }
+
+    /**
+     * Reads the string literal after its opening quote.
+     */
+    private String readStringRest() throws IOException {
+        StringBuilder valueBuilder = new StringBuilder();
+        while (true) {
+            int symbol = read();
+            if (symbol == END_OF_INPUT) {
+                throw new IOException("Unterminated string literal");
+            }
+            if (symbol == '\'') {
+                if (lookahead != '\'') {
+                    return valueBuilder.toString();
+                }
+                read();
+            }
+            valueBuilder.append((char) symbol);
+        }
+    }
+
+    private static byte[] parseHex(String hex) throws IOException {
+        if (hex.length() % 2 != 0) {
+            throw new IOException("Invalid binary literal X'" + hex + "'");
+        }
+        byte[] value = new byte[hex.length() / 2];
+        for (int i = 0; i < value.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IOException("Invalid binary literal X'" + hex + "'");
+            }
+            value[i] = (byte) ((high << 4) | low);
+        }
+        return value;
+    }
+
+    private String readIdentifier() throws IOException {
+        skipWhitespace();
+        StringBuilder identifierBuilder = new StringBuilder();
+        boolean quoted = false;
+        while (lookahead != END_OF_INPUT) {
+            if (lookahead == '"') {
+                quoted = !quoted;
+            } else if (!quoted && (Character.isWhitespace(lookahead) || lookahead == '(' || lookahead == ')'
+                    || lookahead == ',')) {
+                break;
+            }
+            identifierBuilder.append((char) read());
+        }
+        if (identifierBuilder.length() == 0) {
+            throw syntaxError("identifier", lookahead);
+        }
+        return identifierBuilder.toString();
+    }
+
+    private String readWord() throws IOException {
+        StringBuilder wordBuilder = new StringBuilder();
+        while (Character.isLetter(lookahead)) {
+            wordBuilder.append((char) read());
+        }
+        return wordBuilder.toString();
+    }
+
+    private void expectWord(String expected) throws IOException {
+        skipWhitespace();
+        String word = readWord();
+        if (!expected.equalsIgnoreCase(word)) {
+            throw new IOException("Expected " + expected + ", but got '" + word + "'");
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        skipWhitespace();
+        int symbol = read();
+        if (symbol != expected) {
+            throw syntaxError("'" + expected + "'", symbol);
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (lookahead != END_OF_INPUT && Character.isWhitespace(lookahead)) {
+            read();
+        }
+    }
+
+    private int read() throws IOException {
+        int current = lookahead;
+        if (current != END_OF_INPUT) {
+            lookahead = reader.read();
+        }
+        return current;
+    }
+
+    private static IOException syntaxError(String expected, int actual) {
+        return new IOException("Expected " + expected + ", but got "
+                + (actual == END_OF_INPUT ? "end of script" : "'" + (char) actual + "'"));
+    }
+
+}
@@ -0,0 +1,235 @@
+package bilokhado;
+
+import java.sql.Types;
+
+/**
+ * Built-in SQL dialects. Presto one keeps the type name and precision reported by the driver
+ * as the DDL type, the others map the JDBC type to the types of the target database.
+ */
+enum StandardDialect implements SqlDialect {
+
+    PRESTO {
+        @Override
+        public String getColumnType(ColumnDescriptor column) {
+            return column.typeName + '(' + Math.min(column.precision, MAX_PRESTO_PRECISION) + ')';
+        }
+
+        /**
+         * Returns the identifier as it is, as the scripts for Presto always had it.
+         */
+        @Override
+        public String quoteIdentifier(String identifier) {
+            return identifier;
+        }
+
+        @Override
+        public String getBase64Template() {
+            return "from_base64({})";
+        }
+
+        @Override
+        public String getHashBucketExpression(String column, int buckets) {
+            return "mod(bitwise_and(from_big_endian_64(xxhash64(to_utf8(CAST(" + column + " AS VARCHAR))))"
+                    + ", 9223372036854775807), " + buckets + ")";
+        }
+    },
+
+    H2 {
+        @Override
+        public String getColumnType(ColumnDescriptor column) {
+            switch (column.sqlType) {
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    return "BOOLEAN";
+
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return "DOUBLE";
+
+                case Types.LONGVARCHAR:
+                case Types.LONGNVARCHAR:
+                case Types.CLOB:
+                case Types.NCLOB:
+                    return "CLOB";
+
+                case Types.BINARY:
+                case Types.VARBINARY:
+                    return withLength("VARBINARY", column.precision);
+
+                case Types.LONGVARBINARY:
+                case Types.BLOB:
+                    return "BLOB";
+
+                default:
+                    return getCommonColumnType(column);
+            }
+        }
+
+        @Override
+        public String getSampleClause(String method, double percent) {
+            return null;
+        }
+
+        @Override
+        public String getSampleCondition(double percent) {
+            return "RAND() < " + percent / 100;
+        }
+
+        @Override
+        public String getFileReadTemplate(boolean binary) {
+            return binary ? "FILE_READ({})" : "FILE_READ({}, 'UTF-8')";
+        }
+
+        @Override
+        public String getHashBucketExpression(String column, int buckets) {
+            return "ORA_HASH(CAST(" + column + " AS VARCHAR), " + (buckets - 1) + ")";
+        }
+    },
+
+    POSTGRESQL {
+        @Override
+        public String getColumnType(ColumnDescriptor column) {
+            switch (column.sqlType) {
+                case Types.TINYINT:
+                    return "SMALLINT";
+
+                case Types.BIT:
+                case Types.BOOLEAN:
+                    return "BOOLEAN";
+
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return "DOUBLE PRECISION";
+
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    return column.precision > 0 ? "NUMERIC(" + column.precision + ", " + column.scale + ')' : "NUMERIC";
+
+                case Types.LONGVARCHAR:
+                case Types.LONGNVARCHAR:
+                case Types.CLOB:
+                case Types.NCLOB:
+                    return "TEXT";
+
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                case Types.BLOB:
+                    return "BYTEA";
+
+                default:
+                    return getCommonColumnType(column);
+            }
+        }
+
+        @Override
+        public void appendBinaryLiteral(byte[] value, StringBuilder output) {
+            output.ensureCapacity(output.length() + 2 * value.length + 11);
+            output.append("'\\x");
+            for (byte octet : value) {
+                output.append(ColumnWriter.HEX_DIGITS[(octet >> 4) & 0x0F]);
+                output.append(ColumnWriter.HEX_DIGITS[octet & 0x0F]);
+            }
+            output.append("'::bytea");
+        }
+
+        @Override
+        public String getSampleClause(String method, double percent) {
+            return null;
+        }
+
+        @Override
+        public String getSampleCondition(double percent) {
+            return "random() < " + percent / 100;
+        }
+
+        @Override
+        public String getBase64Template() {
+            return "decode({}, 'base64')";
+        }
+
+        @Override
+        public String getFileReadTemplate(boolean binary) {
+            return binary ? "pg_read_binary_file({})" : "convert_from(pg_read_binary_file({}), 'UTF8')";
+        }
+
+        @Override
+        public String getHashBucketExpression(String column, int buckets) {
+            return "mod(abs(hashtext(CAST(" + column + " AS TEXT))::bigint), " + buckets + ")";
+        }
+    };
+
+    private static final int MAX_PRESTO_PRECISION = 2048;
+
+    /**
+     * Returns the built-in dialect by its case insensitive name or null if there is no such dialect.
+     */
+    static StandardDialect forName(String name) {
+        for (StandardDialect dialect : values()) {
+            if (dialect.name().equalsIgnoreCase(name)) {
+                return dialect;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns standard SQL type of the column, the database specific type name if there is none.
+     */
+    private static String getCommonColumnType(ColumnDescriptor column) {
+        switch (column.sqlType) {
+            case Types.TINYINT:
+                return "TINYINT";
+
+            case Types.SMALLINT:
+                return "SMALLINT";
+
+            case Types.INTEGER:
+                return "INTEGER";
+
+            case Types.BIGINT:
+                return "BIGINT";
+
+            case Types.REAL:
+                return "REAL";
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return column.precision > 0 ? "DECIMAL(" + column.precision + ", " + column.scale + ')' : "DECIMAL";
+
+            case Types.CHAR:
+            case Types.NCHAR:
+                return withLength("CHAR", column.precision);
+
+            case Types.VARCHAR:
+            case Types.NVARCHAR:
+                return withLength("VARCHAR", column.precision);
+
+            case Types.DATE:
+                return "DATE";
+
+            case Types.TIME:
+                return "TIME";
+
+            case Types.TIMESTAMP:
+                return "TIMESTAMP";
+
+            case Types.TIME_WITH_TIMEZONE:
+                return "TIME WITH TIME ZONE";
+
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return "TIMESTAMP WITH TIME ZONE";
+
+            default:
+                return column.typeName;
+        }
+    }
+
+    /**
+     * Returns the type with the length, or without it if the driver reports no length or the unbounded one.
+     */
+    private static String withLength(String typeName, int length) {
+        return length > 0 && length < Integer.MAX_VALUE ? typeName + '(' + length + ')' : typeName;
+    }
+
+}
@@ -0,0 +1,314 @@
+package bilokhado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the keys of the referentially consistent subset. Rows of every exported table are passed
+ * to the collector, which takes their foreign key values and queues the ones not seen yet for
+ * lookup in the parent table. Own key values of the rows are recorded as exported, so rows already
+ * in the dataset are never fetched again. Every parent table is referenced by the single key column,
+ * whose values are kept in the primitive sets for the integral keys and as SQL literals otherwise.
+ * The literals go into the lookup queries, so they are written in the source dialect.
+ */
+class SubsetExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubsetExtractor.class);
+
+    private final Map<String, List<ForeignKey>> foreignKeysByChild = new HashMap<>();
+    private final Map<String, ParentKeys> parentKeysByTable = new HashMap<>();
+    private final SqlDialect sourceDialect;
+
+    /**
+     * Foreign key declared as CHILD_COLUMN:PARENT_TABLE.PARENT_COLUMN in the properties.
+     */
+    static class ForeignKey {
+
+        final String childTable;
+        final String childColumn;
+        final String parentTable;
+        final String parentColumn;
+
+        ForeignKey(String childTable, String childColumn, String parentTable, String parentColumn) {
+            this.childTable = childTable;
+            this.childColumn = childColumn;
+            this.parentTable = parentTable;
+            this.parentColumn = parentColumn;
+        }
+
+        /**
+         * Parses the foreign key declaration, returns null if it is malformed.
+         */
+        static ForeignKey parse(String childTable, String declaration) {
+            int columnEnd = declaration.indexOf(':');
+            int tableEnd = declaration.lastIndexOf('.');
+            if (columnEnd < 1 || tableEnd <= columnEnd + 1 || tableEnd == declaration.length() - 1) {
+                return null;
+            }
+            return new ForeignKey(childTable, declaration.substring(0, columnEnd).trim()
+                    , declaration.substring(columnEnd + 1, tableEnd).trim(), declaration.substring(tableEnd + 1).trim());
+        }
+
+    }
+
+    /**
+     * Queued and exported key values of the parent table. Queued keys are checked against the
+     * exported ones when taken for lookup, as the row may be exported after its key is queued.
+     */
+    private static class ParentKeys {
+
+        private final String keyColumn;
+        private final LongHashSet queuedLongs = new LongHashSet();
+        private final LongHashSet exportedLongs = new LongHashSet();
+        private final Set<String> queuedLiterals = new HashSet<>();
+        private final Set<String> exportedLiterals = new HashSet<>();
+        private long[] pendingLongs = new long[64];
+        private int pendingLongCount;
+        private final List<String> pendingLiterals = new ArrayList<>();
+
+        ParentKeys(String keyColumn) {
+            this.keyColumn = keyColumn;
+        }
+
+        void addLong(long key, boolean exported) {
+            if (exported) {
+                exportedLongs.add(key);
+                return;
+            }
+            if (exportedLongs.contains(key) || !queuedLongs.add(key)) {
+                return;
+            }
+            if (pendingLongCount == pendingLongs.length) {
+                pendingLongs = Arrays.copyOf(pendingLongs, pendingLongs.length * 2);
+            }
+            pendingLongs[pendingLongCount++] = key;
+        }
+
+        void addLiteral(String literal, boolean exported) {
+            Long key = parseLong(literal);
+            if (key != null) {
+                addLong(key, exported);
+            } else if (exported) {
+                exportedLiterals.add(literal);
+            } else if (!exportedLiterals.contains(literal) && queuedLiterals.add(literal)) {
+                pendingLiterals.add(literal);
+            }
+        }
+
+        /**
+         * Drops queued keys exported since they have been queued and returns true if any key is left.
+         */
+        boolean hasPending() {
+            while (pendingLongCount > 0 && exportedLongs.contains(pendingLongs[pendingLongCount - 1])) {
+                pendingLongCount--;
+            }
+            while (!pendingLiterals.isEmpty()
+                    && exportedLiterals.contains(pendingLiterals.get(pendingLiterals.size() - 1))) {
+                pendingLiterals.remove(pendingLiterals.size() - 1);
+            }
+            return pendingLongCount > 0 || !pendingLiterals.isEmpty();
+        }
+
+    }
+
+    SubsetExtractor(List<ForeignKey> foreignKeys, SqlDialect sourceDialect) {
+        this.sourceDialect = sourceDialect;
+        for (ForeignKey foreignKey : foreignKeys) {
+            ParentKeys parentKeys = parentKeysByTable.get(foreignKey.parentTable);
+            if (parentKeys == null) {
+                parentKeys = new ParentKeys(foreignKey.parentColumn);
+                parentKeysByTable.put(foreignKey.parentTable, parentKeys);
+            } else if (!parentKeys.keyColumn.equalsIgnoreCase(foreignKey.parentColumn)) {
+                logger.error("Table {} is already referenced by the column {}. Ignoring foreign key {}.{} -> {}.{}"
+                        , foreignKey.parentTable, parentKeys.keyColumn, foreignKey.childTable, foreignKey.childColumn
+                        , foreignKey.parentTable, foreignKey.parentColumn);
+                continue;
+            }
+            foreignKeysByChild.computeIfAbsent(foreignKey.childTable, table -> new ArrayList<>()).add(foreignKey);
+        }
+    }
+
+    /**
+     * Collects keys from the rows of the table. Own key values are marked as visited, so the rows
+     * are not fetched again, and the foreign key values are queued for the parent tables.
+     */
+    class RowKeyCollector {
+
+        private final ParentKeys ownKeys;
+        private final int ownKeyColumn;
+        private final ColumnWriter ownKeyWriter;
+        private final boolean ownKeyIntegral;
+        private final ParentKeys[] parentKeys;
+        private final int[] foreignKeyColumns;
+        private final ColumnWriter[] foreignKeyWriters;
+        private final boolean[] foreignKeysIntegral;
+        private final StringBuilder literalBuilder = new StringBuilder();
+
+        private RowKeyCollector(String tableName, ResultSetMetaData metaData) throws SQLException {
+            ParentKeys keys = parentKeysByTable.get(tableName);
+            int keyColumn = keys == null ? -1 : findColumn(metaData, keys.keyColumn);
+            if (keys != null && keyColumn < 0) {
+                logger.error("Key column {} is not found in the table {}", keys.keyColumn, tableName);
+                keys = null;
+            }
+            ownKeys = keys;
+            ownKeyColumn = keyColumn;
+            ownKeyWriter = keys == null ? null : ColumnWriter.forColumn(metaData, keyColumn, sourceDialect);
+            ownKeyIntegral = keys != null && isIntegral(metaData.getColumnType(keyColumn));
+            List<ForeignKey> foreignKeys = new ArrayList<>();
+            List<Integer> columns = new ArrayList<>();
+            for (ForeignKey foreignKey : foreignKeysByChild.getOrDefault(tableName, new ArrayList<>())) {
+                int column = findColumn(metaData, foreignKey.childColumn);
+                if (column < 0) {
+                    logger.error("Foreign key column {} is not found in the table {}", foreignKey.childColumn, tableName);
+                    continue;
+                }
+                foreignKeys.add(foreignKey);
+                columns.add(column);
+            }
+            parentKeys = new ParentKeys[foreignKeys.size()];
+            foreignKeyColumns = new int[foreignKeys.size()];
+            foreignKeyWriters = new ColumnWriter[foreignKeys.size()];
+            foreignKeysIntegral = new boolean[foreignKeys.size()];
+            for (int i = 0; i < foreignKeys.size(); i++) {
+                parentKeys[i] = parentKeysByTable.get(foreignKeys.get(i).parentTable);
+                foreignKeyColumns[i] = columns.get(i);
+                foreignKeyWriters[i] = ColumnWriter.forColumn(metaData, columns.get(i), sourceDialect);
+                foreignKeysIntegral[i] = isIntegral(metaData.getColumnType(columns.get(i)));
+            }
+        }
+
+        void collect(ResultSet resultSet) throws SQLException {
+            if (ownKeys != null) {
+                addKey(resultSet, ownKeyColumn, ownKeyIntegral, ownKeyWriter, ownKeys, true);
+            }
+            for (int i = 0; i < parentKeys.length; i++) {
+                addKey(resultSet, foreignKeyColumns[i], foreignKeysIntegral[i], foreignKeyWriters[i], parentKeys[i]
+                        , false);
+            }
+        }
+
+        private void addKey(ResultSet resultSet, int column, boolean integral, ColumnWriter writer, ParentKeys keys
+                , boolean exported) throws SQLException {
+            if (integral) {
+                long key = resultSet.getLong(column);
+                if (!resultSet.wasNull()) {
+                    keys.addLong(key, exported);
+                }
+                return;
+            }
+            if (resultSet.getObject(column) == null) {
+                return;
+            }
+            literalBuilder.setLength(0);
+            writer.write(resultSet, column, literalBuilder);
+            keys.addLiteral(literalBuilder.toString(), exported);
+        }
+
+    }
+
+    RowKeyCollector newRowKeyCollector(String tableName, ResultSetMetaData metaData) throws SQLException {
+        return new RowKeyCollector(tableName, metaData);
+    }
+
+    /**
+     * Takes up to batchSize queued keys of the table and returns condition selecting their rows,
+     * e.g. ID IN (1, 2, 3), or null if there are no queued keys.
+     */
+    String nextLookupCondition(String tableName, int batchSize) {
+        ParentKeys keys = parentKeysByTable.get(tableName);
+        while (keys != null && keys.hasPending()) {
+            String condition = takeLookupCondition(keys, batchSize);
+            if (condition != null) {
+                return condition;
+            }
+        }
+        return null;
+    }
+
+    private static String takeLookupCondition(ParentKeys keys, int batchSize) {
+        StringBuilder conditionBuilder = new StringBuilder(keys.keyColumn).append(" IN (");
+        int taken = 0;
+        while (taken < batchSize && keys.pendingLongCount > 0) {
+            long key = keys.pendingLongs[--keys.pendingLongCount];
+            if (!keys.exportedLongs.contains(key)) {
+                conditionBuilder.append(taken++ > 0 ? ", " : "").append(key);
+            }
+        }
+        while (taken < batchSize && !keys.pendingLiterals.isEmpty()) {
+            String literal = keys.pendingLiterals.remove(keys.pendingLiterals.size() - 1);
+            if (!keys.exportedLiterals.contains(literal)) {
+                conditionBuilder.append(taken++ > 0 ? ", " : "").append(literal);
+            }
+        }
+        return taken == 0 ? null : conditionBuilder.append(')').toString();
+    }
+
+    /**
+     * Returns tables ordered so that parents go before their children, which lets the dataset be
+     * loaded with the foreign key constraints enabled. Tables in the cycle keep the given order.
+     */
+    List<String> getLoadOrder(List<String> tableNames) {
+        Set<String> ordered = new LinkedHashSet<>();
+        Set<String> visiting = new HashSet<>();
+        for (String tableName : tableNames) {
+            addWithParents(tableName, tableNames, ordered, visiting);
+        }
+        return new ArrayList<>(ordered);
+    }
+
+    private void addWithParents(String tableName, List<String> tableNames, Set<String> ordered, Set<String> visiting) {
+        if (ordered.contains(tableName) || !visiting.add(tableName)) {
+            return;
+        }
+        for (ForeignKey foreignKey : foreignKeysByChild.getOrDefault(tableName, new ArrayList<>())) {
+            if (!foreignKey.parentTable.equals(tableName) && tableNames.contains(foreignKey.parentTable)) {
+                addWithParents(foreignKey.parentTable, tableNames, ordered, visiting);
+            }
+        }
+        visiting.remove(tableName);
+        ordered.add(tableName);
+    }
+
+    private static int findColumn(ResultSetMetaData metaData, String columnName) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (metaData.getColumnName(i).equalsIgnoreCase(columnName)
+                    || metaData.getColumnLabel(i).equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean isIntegral(int sqlType) {
+        return sqlType == Types.TINYINT || sqlType == Types.SMALLINT || sqlType == Types.INTEGER
+                || sqlType == Types.BIGINT;
+    }
+
+    private static Long parseLong(String literal) {
+        if (literal.isEmpty() || literal.length() > 18) {
+            return null;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if ((c < '0' || c > '9') && !(i == 0 && c == '-' && literal.length() > 1)) {
+                return null;
+            }
+        }
+        return Long.parseLong(literal);
+    }
+
+}
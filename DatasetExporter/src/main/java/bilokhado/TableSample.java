@@ -0,0 +1,116 @@
+package bilokhado;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Slice of the table to export: key range, sampling and row limit. As much as possible is pushed
+ * down to the query, so only the slice is sent over the network. Server side sampling uses
+ * TABLESAMPLE or the random condition of the source dialect. Client side sampling reads the whole
+ * key range and samples rows with RowSampler.
+ */
+class TableSample {
+
+    static final String METHOD_BERNOULLI = "bernoulli";
+    static final String METHOD_SYSTEM = "system";
+    static final String METHOD_CLIENT = "client";
+
+    static final TableSample NONE = new TableSample(0, 0, METHOD_BERNOULLI, null, null, null, null);
+
+    final long limit;
+    final double samplePercent;
+    final String sampleMethod;
+    final String rangeKey;
+    final String rangeFrom;
+    final String rangeTo;
+    final Long seed;
+
+    TableSample(long limit, double samplePercent, String sampleMethod, String rangeKey, String rangeFrom
+            , String rangeTo, Long seed) {
+        this.limit = limit;
+        this.samplePercent = samplePercent;
+        this.sampleMethod = sampleMethod;
+        this.rangeKey = rangeKey;
+        this.rangeFrom = rangeFrom;
+        this.rangeTo = rangeTo;
+        this.seed = seed;
+    }
+
+    boolean isSampled() {
+        return samplePercent > 0 && samplePercent < 100;
+    }
+
+    boolean hasKeyRange() {
+        return rangeKey != null && !rangeKey.isEmpty() && (rangeFrom != null || rangeTo != null);
+    }
+
+    /**
+     * Returns true if rows should be sampled by the exporter instead of the database. Limit with
+     * the client side sampling selects rows uniformly from the whole range with reservoir sampling.
+     */
+    boolean isClientSampling() {
+        return METHOD_CLIENT.equals(sampleMethod) && (isSampled() || limit > 0);
+    }
+
+    /**
+     * Returns the query wrapped to select only the slice. Range bounds are SQL literals, the lower
+     * one is inclusive and the upper one is exclusive. Sampling and limit syntax is the dialect's:
+     * either the TABLESAMPLE clause or the random condition for the databases sampling with it.
+     */
+    String apply(String query, SqlDialect dialect) {
+        boolean serverSampling = isSampled() && !METHOD_CLIENT.equals(sampleMethod);
+        boolean serverLimit = limit > 0 && !isClientSampling();
+        if (!serverSampling && !serverLimit && !hasKeyRange()) {
+            return query;
+        }
+        return wrap(query, dialect, null, null, serverLimit ? limit : -1);
+    }
+
+    /**
+     * Returns the slice query with the rows ordered by the key, continuing after the rows exported
+     * before if the resume condition is set. Limit is applied after the ordering and reduced by the
+     * number of the rows exported before, so the resumed query returns the rest of the same rows.
+     * Sampling is applied to the source rows as usual, so the rows after the resume point are
+     * sampled with the same percent as those before it.
+     */
+    String applyOrdered(String query, SqlDialect dialect, String orderKey, String resumeCondition, long exportedRows) {
+        long remainingRows = limit > 0 && !isClientSampling() ? Math.max(0, limit - exportedRows) : -1;
+        return wrap(query, dialect, resumeCondition, orderKey, remainingRows);
+    }
+
+    private String wrap(String query, SqlDialect dialect, String extraCondition, String orderKey, long limitRows) {
+        StringBuilder queryBuilder = new StringBuilder("SELECT * FROM (");
+        queryBuilder.append(query).append(") sample_source");
+        List<String> conditions = new ArrayList<>(4);
+        if (isSampled() && !METHOD_CLIENT.equals(sampleMethod)) {
+            String sampleClause = dialect.getSampleClause(sampleMethod, samplePercent);
+            if (sampleClause != null) {
+                queryBuilder.append(sampleClause);
+            } else if (dialect.getSampleCondition(samplePercent) != null) {
+                conditions.add(dialect.getSampleCondition(samplePercent));
+            }
+        }
+        if (hasKeyRange()) {
+            if (rangeFrom != null) {
+                conditions.add(rangeKey + " >= " + rangeFrom);
+            }
+            if (rangeTo != null) {
+                conditions.add(rangeKey + " < " + rangeTo);
+            }
+        }
+        if (extraCondition != null) {
+            conditions.add(extraCondition);
+        }
+        if (!conditions.isEmpty()) {
+            queryBuilder.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        if (orderKey != null) {
+            queryBuilder.append(" ORDER BY ").append(orderKey);
+        }
+        if (limitRows >= 0) {
+            queryBuilder.append(dialect.getLimitClause(limitRows));
+        }
+        return queryBuilder.toString();
+    }
+
+}
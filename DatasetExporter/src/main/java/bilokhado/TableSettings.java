@@ -0,0 +1,86 @@
+package bilokhado;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query and export settings of a single table. Source dialect shapes the queries of the table,
+ * dialect is the target one of the output scripts.
+ */
+class TableSettings {
+
+    private static final Pattern ORDER_KEY_PATTERN
+            = Pattern.compile("\\s*([A-Za-z_][A-Za-z0-9_$]*|\"(?:[^\"]|\"\")+\")(?:\\s+(ASC|DESC))?\\s*", Pattern.CASE_INSENSITIVE);
+
+    final String name;
+    final String query;
+    final int batchSize;
+    final String orderKey;
+    final int checkpointRows;
+    final int fetchSize;
+    final int queryTimeout;
+    final int maxRows;
+    final int pipelineRows;
+    final TableSample sample;
+    final SqlDialect sourceDialect;
+    final SqlDialect dialect;
+    final LargeValueSettings largeValues;
+
+    TableSettings(String name, String query, int batchSize, String orderKey, int checkpointRows
+            , int fetchSize, int queryTimeout, int maxRows, int pipelineRows, TableSample sample
+            , SqlDialect sourceDialect, SqlDialect dialect, LargeValueSettings largeValues) {
+        this.name = name;
+        this.query = query;
+        this.batchSize = batchSize;
+        this.orderKey = orderKey;
+        this.checkpointRows = checkpointRows;
+        this.fetchSize = fetchSize;
+        this.queryTimeout = queryTimeout;
+        this.maxRows = maxRows;
+        this.pipelineRows = pipelineRows;
+        this.sample = sample;
+        this.sourceDialect = sourceDialect;
+        this.dialect = dialect;
+        this.largeValues = largeValues;
+    }
+
+    /**
+     * Returns copy of the settings with the query replaced.
+     */
+    TableSettings withQuery(String newQuery) {
+        return new TableSettings(name, newQuery, batchSize, orderKey, checkpointRows, fetchSize, queryTimeout, maxRows
+                , pipelineRows, sample, sourceDialect, dialect, largeValues);
+    }
+
+    /**
+     * Returns copy of the settings with the fetch size replaced.
+     */
+    TableSettings withFetchSize(int newFetchSize) {
+        return new TableSettings(name, query, batchSize, orderKey, checkpointRows, newFetchSize, queryTimeout, maxRows
+                , pipelineRows, sample, sourceDialect, dialect, largeValues);
+    }
+
+    /**
+     * Returns true if the table export progress should be checkpointed every checkpointRows rows.
+     * Only possible when the rows are ordered by a unique key, so the query can be resumed after
+     * the last checkpointed row.
+     */
+    boolean isRowCheckpointEnabled() {
+        return orderKey != null && !orderKey.isEmpty() && checkpointRows > 0;
+    }
+
+    /**
+     * Returns the column of the ordering key without its direction or null if the key is not
+     * a single column, optionally quoted and followed by ASC or DESC.
+     */
+    String getOrderColumn() {
+        Matcher matcher = orderKey == null ? null : ORDER_KEY_PATTERN.matcher(orderKey);
+        return matcher != null && matcher.matches() ? matcher.group(1) : null;
+    }
+
+    boolean isOrderDescending() {
+        Matcher matcher = orderKey == null ? null : ORDER_KEY_PATTERN.matcher(orderKey);
+        return matcher != null && matcher.matches() && "DESC".equalsIgnoreCase(matcher.group(2));
+    }
+
+}
@@ -0,0 +1,95 @@
+package bilokhado;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Reads date and time values as java.time local values, so their literals don't depend on the
+ * time zone of the JVM. Values are got with the JDBC 4.2 conversion, drivers which don't have it
+ * are read through the UTC calendar instead, proleptic Gregorian as java.time is. The fallback is
+ * noticed on the first value and kept for the rest of them. Not thread safe, every column has its
+ * own reader.
+ */
+abstract class TemporalReader<T> {
+
+    private final Class<T> type;
+    private final GregorianCalendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+    private boolean readWithCalendar = false;
+
+    private TemporalReader(Class<T> type) {
+        this.type = type;
+        calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+    }
+
+    static TemporalReader<LocalDate> forDate() {
+        return new TemporalReader<LocalDate>(LocalDate.class) {
+            @Override
+            LocalDate readWithCalendar(ResultSet resultSet, int column, Calendar calendar) throws SQLException {
+                Date value = resultSet.getDate(column, calendar);
+                if (value == null) {
+                    return null;
+                }
+                calendar.setTime(value);
+                return LocalDate.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1
+                        , calendar.get(Calendar.DAY_OF_MONTH));
+            }
+        };
+    }
+
+    static TemporalReader<LocalTime> forTime() {
+        return new TemporalReader<LocalTime>(LocalTime.class) {
+            @Override
+            LocalTime readWithCalendar(ResultSet resultSet, int column, Calendar calendar) throws SQLException {
+                Date value = resultSet.getTime(column, calendar);
+                if (value == null) {
+                    return null;
+                }
+                calendar.setTime(value);
+                return LocalTime.of(calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE)
+                        , calendar.get(Calendar.SECOND), calendar.get(Calendar.MILLISECOND) * 1_000_000);
+            }
+        };
+    }
+
+    static TemporalReader<LocalDateTime> forTimestamp() {
+        return new TemporalReader<LocalDateTime>(LocalDateTime.class) {
+            @Override
+            LocalDateTime readWithCalendar(ResultSet resultSet, int column, Calendar calendar) throws SQLException {
+                Timestamp value = resultSet.getTimestamp(column, calendar);
+                if (value == null) {
+                    return null;
+                }
+                calendar.setTime(value);
+                return LocalDateTime.of(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1
+                        , calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.HOUR_OF_DAY)
+                        , calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND), value.getNanos());
+            }
+        };
+    }
+
+    /**
+     * Returns value of the current row or null if it is SQL NULL.
+     */
+    T read(ResultSet resultSet, int column) throws SQLException {
+        if (!readWithCalendar) {
+            try {
+                return resultSet.getObject(column, type);
+            } catch (SQLException | AbstractMethodError ex) {
+                readWithCalendar = true;
+            }
+        }
+        return readWithCalendar(resultSet, column, calendar);
+    }
+
+    abstract T readWithCalendar(ResultSet resultSet, int column, Calendar calendar) throws SQLException;
+
+}
@@ -1,39 +1,155 @@
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class EntityCorrector {
 
+    private static final String CACHE_FILE = ".entity-corrector-cache";
+    private static final String CACHE_FILE_PROPERTY = "entityCorrector.cacheFile";
+
     private List<String> filePaths;
+    private final FileHashCache cache;
+    private final AtomicInteger failedFiles = new AtomicInteger();
+    private final AtomicInteger skippedFiles = new AtomicInteger();
 
     private EntityCorrector(String[] args) {
         filePaths = Arrays.asList(args);
+        String cacheFile = System.getProperty(CACHE_FILE_PROPERTY);
+        cache = new FileHashCache(cacheFile == null ? getDefaultCacheFile() : Paths.get(cacheFile)
+                , JavaFile.LOGIC_VERSION);
+    }
+
+    /*
+     * Cache is kept in the closest directory containing all the processed paths, so it belongs to the
+     * processed tree rather than to the working directory. It can be set with the system property too.
+     */
+    private Path getDefaultCacheFile() {
+        Path commonDirectory = null;
+        for (String filePathString : filePaths) {
+            Path filePath = Paths.get(filePathString).toAbsolutePath().normalize();
+            Path directory = Files.isDirectory(filePath) ? filePath : filePath.getParent();
+            if (commonDirectory == null) {
+                commonDirectory = directory;
+                continue;
+            }
+            while (!directory.startsWith(commonDirectory))
+                commonDirectory = commonDirectory.getParent();
+        }
+        return commonDirectory.resolve(CACHE_FILE);
     }
 
+    /*
+     * Directories are walked recursively for *.java files. Files are independent from each other,
+     * so they are processed in parallel on the fork-join pool.
+     */
     public void correct() {
+        List<Path> sourceFiles = findSourceFiles();
+        if (sourceFiles == null)
+            return;
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.submit(() -> sourceFiles.parallelStream().forEach(this::processFile)).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while processing files");
+        } catch (ExecutionException ex) {
+            System.err.println("Failed to process files");
+            System.err.println(ex.getCause().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        cache.save();
+        System.out.println("Processed " + sourceFiles.size() + " files, skipped unchanged " + skippedFiles.get()
+                + ", failed " + failedFiles.get());
+    }
+
+    private List<Path> findSourceFiles() {
+        List<Path> sourceFiles = new ArrayList<>();
         for (String filePathString : filePaths) {
-            System.out.println("Processing file " + filePathString);
             Path filePath = Paths.get(filePathString);
-            processFile(filePath);
+            if (!Files.isDirectory(filePath)) {
+                sourceFiles.add(filePath);
+                continue;
+            }
+            try (Stream<Path> files = Files.walk(filePath)) {
+                sourceFiles.addAll(files
+                        .filter(file -> file.getFileName().toString().endsWith(".java") && Files.isRegularFile(file))
+                        .sorted()
+                        .collect(Collectors.toList()));
+            } catch (IOException | UncheckedIOException ex) {
+                System.err.println("Failed to walk directory=" + filePath);
+                System.err.println(ex.getMessage());
+                return null;
+            }
         }
+        return sourceFiles;
     }
 
+    /*
+     * Files unchanged since the previous run are skipped without parsing, using the cached result.
+     * Unchanged files rejected by the previous run are rejected again and counted as failed.
+     */
     private void processFile(Path filePath) {
         try {
-            JavaFile javaFile = new JavaFile(filePath);
+            FileHashCache.Result cachedResult = cache.getUnchangedResult(filePath);
+            if (cachedResult == FileHashCache.Result.CORRECTED) {
+                skippedFiles.incrementAndGet();
+                return;
+            }
+            if (cachedResult == FileHashCache.Result.REJECTED) {
+                failedFiles.incrementAndGet();
+                System.err.println("Failed to process file=" + filePath + System.lineSeparator()
+                        + "Rejected by the previous run and unchanged since");
+                return;
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to check cache for file=" + filePath + System.lineSeparator() + ex.getMessage());
+        }
+        System.out.println("Processing file " + filePath);
+        FileHashCache.Result result;
+        byte[] content = null;
+        JavaFile javaFile = null;
+        try {
+            content = JavaFile.readContent(filePath);
+            javaFile = new JavaFile(filePath, content);
             javaFile.process();
             javaFile.save();
-        } catch (IOException | IllegalStateException | IllegalArgumentException ex) {
-            System.err.println("Failed to process file=" + filePath);
-            System.err.println(ex.getMessage());
+            result = FileHashCache.Result.CORRECTED;
+        } catch (IOException ex) {
+            failedFiles.incrementAndGet();
+            System.err.println("Failed to process file=" + filePath + System.lineSeparator() + ex.getMessage());
+            return;
+        } catch (IllegalStateException | IllegalArgumentException ex) {
+            failedFiles.incrementAndGet();
+            System.err.println("Failed to process file=" + filePath + System.lineSeparator() + ex.getMessage());
+            result = FileHashCache.Result.REJECTED;
+        }
+        try {
+            if (result == FileHashCache.Result.CORRECTED)
+                cache.update(filePath, result, javaFile.getContentHash());
+            else if (content != null)
+                cache.update(filePath, result, FileHashCache.getContentHash(ByteBuffer.wrap(content)));
+            else
+                cache.update(filePath, result);
+        } catch (IOException ex) {
+            System.err.println("Failed to update cache for file=" + filePath + System.lineSeparator() + ex.getMessage());
         }
     }
 
     public static void main(String[] args) {
         if (args.length < 1) {
-            System.out.println("Pass list of source filePaths as arguments!");
+            System.out.println("Pass list of source filePaths or directories as arguments!");
             return;
         }
         EntityCorrector entityCorrector = new EntityCorrector(args);
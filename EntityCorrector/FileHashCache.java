@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Remembers size, modification time and content hash of every processed file together with the result.
+ * File with the same size and modification time is considered unchanged without reading it, otherwise
+ * its content hash is compared, so touched, but not edited files are not parsed again either.
+ * The cache is versioned by its format and by the version of the correction logic, so the results
+ * are dropped when the corrections change.
+ */
+public class FileHashCache {
+
+    private static final String VERSION_KEY = "version";
+    private static final String FORMAT_VERSION = "1";
+    private static final char SEPARATOR = ',';
+
+    public enum Result { CORRECTED, REJECTED }
+
+    private final Path cacheFile;
+    private final String version;
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified = false;
+
+    public FileHashCache(Path cacheFile, String logicVersion) {
+        this.cacheFile = cacheFile;
+        this.version = FORMAT_VERSION + '.' + logicVersion;
+        if (!Files.exists(cacheFile))
+            return;
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(cacheFile)) {
+            properties.load(input);
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Failed to read cache file=" + cacheFile + ", processing all files");
+            return;
+        }
+        if (!version.equals(properties.getProperty(VERSION_KEY)))
+            return;
+        properties.remove(VERSION_KEY);
+        for (String filePath : properties.stringPropertyNames()) {
+            entries.put(filePath, properties.getProperty(filePath));
+        }
+    }
+
+    /*
+     * Returns the result of the last run if the file hasn't changed since it, otherwise null.
+     */
+    public Result getUnchangedResult(Path filePath) throws IOException {
+        String key = getKey(filePath);
+        String entry = entries.get(key);
+        if (entry == null)
+            return null;
+        String[] fields = entry.split(String.valueOf(SEPARATOR));
+        if (fields.length != 4 || !isResult(fields[3]))
+            return null;
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        String size = Long.toString(attributes.size());
+        String modificationTime = Long.toString(attributes.lastModifiedTime().toMillis());
+        if (!fields[0].equals(size))
+            return null;
+        Result result = Result.valueOf(fields[3]);
+        if (fields[1].equals(modificationTime))
+            return result;
+        if (!fields[2].equals(getContentHash(filePath)))
+            return null;
+        entries.put(key, size + SEPARATOR + modificationTime + SEPARATOR + fields[2] + SEPARATOR + result);
+        modified = true;
+        return result;
+    }
+
+    public void update(Path filePath, Result result) throws IOException {
+        update(filePath, result, getContentHash(filePath));
+    }
+
+    /*
+     * Takes the content hash of the file from the caller, which has just read or written the content,
+     * so the file isn't read again.
+     */
+    public void update(Path filePath, Result result, String contentHash) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        entries.put(getKey(filePath), Long.toString(attributes.size()) + SEPARATOR
+                + attributes.lastModifiedTime().toMillis() + SEPARATOR + contentHash + SEPARATOR + result);
+        modified = true;
+    }
+
+    public void save() {
+        if (!modified)
+            return;
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        properties.setProperty(VERSION_KEY, version);
+        Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(tempFile)) {
+                properties.store(output, "Entity corrector processed files");
+            }
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+        } catch (IOException ex) {
+            System.err.println("Failed to write cache file=" + cacheFile);
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    private static boolean isResult(String name) {
+        for (Result result : Result.values()) {
+            if (result.name().equals(name))
+                return true;
+        }
+        return false;
+    }
+
+    private static String getKey(Path filePath) {
+        return filePath.toAbsolutePath().normalize().toString();
+    }
+
+    private static String getContentHash(Path filePath) throws IOException {
+        return getContentHash(ByteBuffer.wrap(Files.readAllBytes(filePath)));
+    }
+
+    /*
+     * Returns the SHA-256 hash of the parts joined in order, the parts are left unread.
+     */
+    public static String getContentHash(ByteBuffer... parts) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+        StringBuilder hashBuilder = new StringBuilder();
+        for (ByteBuffer part : parts) {
+            digest.update(part.duplicate());
+        }
+        for (byte hashByte : digest.digest()) {
+            hashBuilder.append(Character.forDigit((hashByte >> 4) & 0xF, 16));
+            hashBuilder.append(Character.forDigit(hashByte & 0xF, 16));
+        }
+        return hashBuilder.toString();
+    }
+
+}
@@ -1,33 +1,40 @@
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/*
+ * Source file is scanned as bytes, without decoding it into lines. Lines to add are recorded together
+ * with offsets where they should be inserted and the result is written as the original byte spans
+ * interleaved with the added lines.
+ */
 public class JavaFile {
 
-    private static final Pattern IMPORT_PATTERN = Pattern.compile("^\\h*import .*");
-    private static final Pattern IMPORT_TABLE_PATTERN = Pattern.compile("^\\h*import\\h+javax\\.persistence\\.Table.*");
-    private static final Pattern IMPORT_COLUMN_PATTERN = Pattern.compile("^\\h*import\\h+javax\\.persistence\\.Column.*");
-    private static final Pattern CLASS_PATTERN = Pattern.compile("^\\h*public\\h+(abstract\\h+)?class.*");
-    private static final Pattern ENTITY_PATTERN = Pattern.compile("^\\h*@Entity.*");
-    private static final Pattern MAPPED_SUPERCLASS_PATTERN = Pattern.compile("^\\h*@MappedSuperclass.*");
-    private static final Pattern TABLE_PATTERN = Pattern.compile("^\\h*@Table\\(\\h*name.*");
-    private static final Pattern GENERAL_FIELD_PATTERN = Pattern.compile("^\\h*(private|protected)\\h+[0-9a-zA-Z<>]+\\h+.*;.*");
-    private static final Pattern FIELD_PATTERN
-            = Pattern.compile("^(?<spaces>\\h*)(private|protected)\\h+(String|DateTime|Date|int|Integer|[Ll]ong|[Bb]oolean"
-            + "|[Bb]yte|[Ss]hort)\\h+(?<name>\\w+).*;.*");
-    private static final Pattern STOPPER
-            = Pattern.compile("^\\h*@(JoinTable|Transient|JoinColumn|Column\\(.*name\\h*=\\h*\").*");
-    private List<String> content;
+    /*
+     * Version of the corrections, should be changed whenever they change, so cached results are dropped.
+     */
+    public static final String LOGIC_VERSION = "1";
+
+    private final byte[] content;
+    private final List<Integer> insertionOffsets = new ArrayList<>();
+    private final List<ByteBuffer> insertedLines = new ArrayList<>();
     private Path filePath;
     private String className;
-    private Integer firstImportLine;
-    private Integer lastImportLine;
-    private Integer classLine;
+    private String lineSeparator;
+    private Integer firstImportLineStart;
+    private Integer lastImportLineStart;
+    private Integer classLineStart;
+    private int bodyStart;
     private boolean entityPresent = false;
     private boolean mappedSuperclassPresent = false;
     private boolean entityTablePresent = false;
@@ -35,80 +42,101 @@ public class JavaFile {
     private boolean importColumnPresent = false;
 
     public JavaFile(Path filePath) throws IOException {
+        this(filePath, readContent(filePath));
+    }
+
+    /*
+     * Takes the content already read with readContent, so the caller keeps it for the file hash cache
+     * even when the file is rejected.
+     */
+    public JavaFile(Path filePath, byte[] content) {
         this.filePath = filePath;
         String fileName = filePath.getName(filePath.getNameCount()-1).toString();
         className = fileName.replaceFirst("\\.java$", "");
-        content = Files.readAllLines(filePath);
-        for (int lineNumber = 0; lineNumber < content.size(); lineNumber++) {
-            String fileLine = content.get(lineNumber);
-            checkClassLine(lineNumber, fileLine);
-            checkEntity(fileLine);
-            checkMappedSuperclass(fileLine);
-            updateImportLinesRange(lineNumber, fileLine);
-            checkImportTable(fileLine);
-            checkImportColumn(fileLine);
-            checkEntityTable(fileLine);
+        this.content = content;
+        lineSeparator = detectLineSeparator();
+        ByteLine line = new ByteLine(content);
+        int lineStart = 0;
+        while (lineStart < content.length && classLineStart == null) {
+            int nextLineStart = line.read(lineStart);
+            checkHeaderLine(lineStart, nextLineStart, LineType.classify(line));
+            lineStart = nextLineStart;
         }
         validate();
     }
 
-    private void checkClassLine(int lineNumber, String fileLine) {
-        if (classLine != null)
-            return;
-        if (CLASS_PATTERN.matcher(fileLine).matches())
-            classLine = lineNumber;
+    /*
+     * File is read into the byte array rather than mapped, because the mapped file can't be replaced
+     * on Windows while the mapping is alive, and the mapping is released only by the garbage collector.
+     */
+    public static byte[] readContent(Path filePath) throws IOException {
+        if (Files.size(filePath) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("File is too large");
+        return Files.readAllBytes(filePath);
     }
 
-    private void checkEntity(String fileLine) {
-        if (classLine != null || entityPresent)
-            return;
-        if (ENTITY_PATTERN.matcher(fileLine).matches())
-            entityPresent = true;
+    private String detectLineSeparator() {
+        for (int position = 0; position < content.length; position++) {
+            byte symbol = content[position];
+            if (symbol == '\n')
+                return "\n";
+            if (symbol == '\r')
+                return position + 1 < content.length && content[position + 1] == '\n' ? "\r\n" : "\r";
+        }
+        return System.lineSeparator();
     }
 
-    private void checkMappedSuperclass(String fileLine) {
-        if (classLine != null || mappedSuperclassPresent)
-            return;
-        if (MAPPED_SUPERCLASS_PATTERN.matcher(fileLine).matches())
-            mappedSuperclassPresent = true;
-    }
+    private void checkHeaderLine(int lineStart, int nextLineStart, LineType lineType) {
+        switch (lineType) {
+            case CLASS:
+                classLineStart = lineStart;
+                bodyStart = nextLineStart;
+                break;
 
-    private void updateImportLinesRange(int lineNumber, String fileLine) {
-        if (classLine != null)
-            return;
-        if (!IMPORT_PATTERN.matcher(fileLine).matches())
-            return;
-        if (firstImportLine == null)
-            firstImportLine = lineNumber;
-        lastImportLine = lineNumber;
-    }
+            case ENTITY:
+                entityPresent = true;
+                break;
 
-    private void checkImportTable(String fileLine) {
-        if (classLine != null || importTablePresent)
-            return;
-        if (IMPORT_TABLE_PATTERN.matcher(fileLine).matches())
-            importTablePresent = true;
-    }
+            case MAPPED_SUPERCLASS:
+                mappedSuperclassPresent = true;
+                break;
+
+            case TABLE:
+                entityTablePresent = true;
+                break;
+
+            case IMPORT_TABLE:
+                importTablePresent = true;
+                updateImportLinesRange(lineStart);
+                break;
 
-    private void checkImportColumn(String fileLine) {
-        if (classLine != null || importColumnPresent)
-            return;
-        if (IMPORT_COLUMN_PATTERN.matcher(fileLine).matches())
-            importColumnPresent = true;
+            case IMPORT_COLUMN:
+                importColumnPresent = true;
+                updateImportLinesRange(lineStart);
+                break;
+
+            case IMPORT:
+                updateImportLinesRange(lineStart);
+                break;
+
+            default:
+                break;
+        }
     }
 
-    private void checkEntityTable(String fileLine) {
-        if (classLine != null || entityTablePresent)
-            return;
-        if (TABLE_PATTERN.matcher(fileLine).matches())
-            entityTablePresent = true;
+    private void updateImportLinesRange(int lineStart) {
+        if (firstImportLineStart == null)
+            firstImportLineStart = lineStart;
+        lastImportLineStart = lineStart;
     }
 
     private void validate() {
-        if (classLine == null)
+        if (classLineStart == null)
             throw new IllegalStateException("Class line not found");
         if (!entityPresent && !mappedSuperclassPresent)
             throw new IllegalStateException("Neither @Entity, nor @MappedSuperclass line found");
+        if (lastImportLineStart == null)
+            throw new IllegalStateException("Import lines not found");
     }
 
     private String convertToDbFormat(String name) {
@@ -137,20 +165,18 @@ public class JavaFile {
         addColumnAnnotations();
     }
 
-    private void addImportTable() {
-        content.add(lastImportLine, "import javax.persistence.Table;");
-        incrementLineNumbersAfterNewImport();
-        importTablePresent = true;
+    private void insertLine(int offset, String line) {
+        insertionOffsets.add(offset);
+        insertedLines.add(ByteBuffer.wrap((line + lineSeparator).getBytes(StandardCharsets.UTF_8)));
     }
 
-    private void incrementLineNumbersAfterNewImport() {
-        lastImportLine++;
-        classLine++;
+    private void addImportTable() {
+        insertLine(lastImportLineStart, "import javax.persistence.Table;");
+        importTablePresent = true;
     }
 
     private void addImportColumn() {
-        content.add(lastImportLine, "import javax.persistence.Column;");
-        incrementLineNumbersAfterNewImport();
+        insertLine(lastImportLineStart, "import javax.persistence.Column;");
         importColumnPresent = true;
     }
 
@@ -158,41 +184,174 @@ public class JavaFile {
         StringBuilder tableAnnotationBuilder = new StringBuilder("@Table(name = \"");
         tableAnnotationBuilder.append(convertToDbFormat(className));
         tableAnnotationBuilder.append("\")");
-        content.add(classLine, tableAnnotationBuilder.toString());
-        classLine++;
+        insertLine(classLineStart, tableAnnotationBuilder.toString());
     }
 
+    /*
+     * Field gets @Column annotation only if there is no stopper annotation between it and the previous field.
+     * Stopper seen after the previous field is tracked while scanning, so every line is classified once.
+     */
     private void addColumnAnnotations() {
-        List<String> resultList = new ArrayList<>(content.subList(0, classLine + 1));
-        int lastFieldLineNumber = classLine +1;
-        for (int lineNumber = classLine + 1; lineNumber < content.size(); lineNumber++) {
-            String line = content.get(lineNumber);
-            Matcher matcher = FIELD_PATTERN.matcher(line);
-            if (matcher.matches() && shouldInsertColumnAnnotation(lastFieldLineNumber, lineNumber)) {
-                String spaces = matcher.group("spaces");
-                String fieldName = matcher.group("name");
-                StringBuilder columnAnnotationBuilder = new StringBuilder(spaces);
+        ByteLine line = new ByteLine(content);
+        int lastFieldLineStart = bodyStart;
+        boolean stopperAfterLastField = false;
+        int lineStart = bodyStart;
+        while (lineStart < content.length) {
+            int nextLineStart = line.read(lineStart);
+            LineType lineType = LineType.classify(line);
+            if (lineType == LineType.FIELD && !stopperAfterLastField) {
+                StringBuilder columnAnnotationBuilder = new StringBuilder(LineType.getIndent(line));
                 columnAnnotationBuilder.append("@Column(name = \"");
-                columnAnnotationBuilder.append(convertToDbFormat(fieldName));
+                columnAnnotationBuilder.append(convertToDbFormat(LineType.getFieldName(line)));
                 columnAnnotationBuilder.append("\")");
-                resultList.add(columnAnnotationBuilder.toString());
+                insertLine(lineStart, columnAnnotationBuilder.toString());
+            }
+            if (lineType == LineType.FIELD || lineType == LineType.GENERAL_FIELD) {
+                lastFieldLineStart = lineStart;
+                stopperAfterLastField = false;
+            } else if (lineType == LineType.STOPPER && lineStart > lastFieldLineStart) {
+                stopperAfterLastField = true;
             }
-            if (GENERAL_FIELD_PATTERN.matcher(line).matches())
-                lastFieldLineNumber = lineNumber;
-            resultList.add(line);
+            lineStart = nextLineStart;
         }
-        content = resultList;
     }
 
-    private boolean shouldInsertColumnAnnotation(int lastFieldLineNumber, int currentLineNumber) {
-        for (int lineNumber = lastFieldLineNumber + 1; lineNumber < currentLineNumber; lineNumber++) {
-            if(STOPPER.matcher(content.get(lineNumber)).matches())
-                return false;
+    /*
+     * Writes the file only if processing has changed it, so modification time of correct files is kept.
+     * The content is gathered into the temporary file, which then atomically replaces the original one,
+     * so the source file is never left partially written. Permissions, owner and DOS attributes of the
+     * original file are copied to the temporary one before the replacement.
+     */
+    public boolean save() throws IOException {
+        if (insertedLines.isEmpty())
+            return false;
+        ByteBuffer[] parts = getParts();
+        long size = content.length;
+        for (ByteBuffer insertedLine : insertedLines) {
+            size += insertedLine.limit();
+        }
+        Path tempFile = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE
+                    , StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (long written = 0; written < size; ) {
+                    written += channel.write(parts);
+                }
+            }
+            copyAttributes(filePath, tempFile);
+            Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Files.deleteIfExists(tempFile);
+            throw ex;
         }
         return true;
     }
 
-    public void save() throws IOException {
-        Files.write(filePath, content, StandardOpenOption.WRITE);
+    /*
+     * Returns the content hash of the file as saved, computed from the buffers rather than read back.
+     */
+    public String getContentHash() {
+        return FileHashCache.getContentHash(getParts());
+    }
+
+    /*
+     * Returns the spans of the original content with the inserted lines between them.
+     */
+    private ByteBuffer[] getParts() {
+        ByteBuffer[] parts = new ByteBuffer[insertedLines.size() * 2 + 1];
+        int partIndex = 0;
+        int spanStart = 0;
+        for (int i = 0; i < insertedLines.size(); i++) {
+            int insertionOffset = insertionOffsets.get(i);
+            parts[partIndex++] = getSpan(spanStart, insertionOffset);
+            parts[partIndex++] = insertedLines.get(i).duplicate();
+            spanStart = insertionOffset;
+        }
+        parts[partIndex] = getSpan(spanStart, content.length);
+        return parts;
+    }
+
+    private static void copyAttributes(Path source, Path target) throws IOException {
+        PosixFileAttributeView sourcePosixView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        if (sourcePosixView != null) {
+            PosixFileAttributes attributes = sourcePosixView.readAttributes();
+            PosixFileAttributeView targetPosixView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+            targetPosixView.setPermissions(attributes.permissions());
+            try {
+                targetPosixView.setGroup(attributes.group());
+                targetPosixView.setOwner(attributes.owner());
+            } catch (IOException ex) {
+                // only privileged users can give the file away, the user running the correction owns it then
+            }
+        }
+        DosFileAttributeView sourceDosView = Files.getFileAttributeView(source, DosFileAttributeView.class);
+        if (sourcePosixView == null && sourceDosView != null) {
+            DosFileAttributes attributes = sourceDosView.readAttributes();
+            DosFileAttributeView targetDosView = Files.getFileAttributeView(target, DosFileAttributeView.class);
+            targetDosView.setArchive(attributes.isArchive());
+            targetDosView.setHidden(attributes.isHidden());
+            targetDosView.setSystem(attributes.isSystem());
+        }
+    }
+
+    private ByteBuffer getSpan(int start, int end) {
+        return ByteBuffer.wrap(content, start, end - start);
+    }
+
+    /*
+     * Reusable view of one line of the content as a character sequence. Bytes are mapped to characters
+     * one to one, which is enough to classify lines, because all the tokens looked for are ASCII.
+     */
+    private static class ByteLine implements CharSequence {
+        private final byte[] content;
+        private int start;
+        private int end;
+
+        ByteLine(byte[] content) {
+            this.content = content;
+        }
+
+        private ByteLine(byte[] content, int start, int end) {
+            this.content = content;
+            this.start = start;
+            this.end = end;
+        }
+
+        /*
+         * Points the view to the line starting at the offset and returns the offset of the next line.
+         * Line terminators are the same as of BufferedReader: LF, CR or CR LF.
+         */
+        int read(int lineStart) {
+            int position = lineStart;
+            while (position < content.length && content[position] != '\n' && content[position] != '\r')
+                position++;
+            start = lineStart;
+            end = position;
+            if (position == content.length)
+                return position;
+            if (content[position] == '\r' && position + 1 < content.length && content[position + 1] == '\n')
+                return position + 2;
+            return position + 1;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (content[start + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new ByteLine(content, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(content, start, end - start, StandardCharsets.UTF_8);
+        }
     }
 }
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public enum LineType {
+
+    IMPORT,
+    IMPORT_TABLE,
+    IMPORT_COLUMN,
+    CLASS,
+    ENTITY,
+    MAPPED_SUPERCLASS,
+    TABLE,
+    FIELD,
+    GENERAL_FIELD,
+    STOPPER,
+    OTHER;
+
+    private static final Set<String> COLUMN_FIELD_TYPES = new HashSet<>(Arrays.asList("String", "DateTime", "Date"
+            , "int", "Integer", "Long", "long", "Boolean", "boolean", "Byte", "byte", "Short", "short"));
+
+    /*
+     * Classifies the line by its leading tokens in one scan. FIELD is the field of the simple type, which
+     * gets @Column annotation, GENERAL_FIELD is any other field and STOPPER is the annotation, which means
+     * the following field is already mapped or should not be mapped.
+     */
+    public static LineType classify(CharSequence line) {
+        int start = skipSpaces(line, 0);
+        if (startsWith(line, "@", start))
+            return classifyAnnotation(line, start + 1);
+        if (startsWith(line, "import", start))
+            return classifyImport(line, start + "import".length());
+        if (startsWith(line, "public", start))
+            return classifyClass(line, start + "public".length());
+        if (startsWith(line, "private", start))
+            return classifyField(line, start + "private".length());
+        if (startsWith(line, "protected", start))
+            return classifyField(line, start + "protected".length());
+        return OTHER;
+    }
+
+    public static String getIndent(CharSequence line) {
+        return line.subSequence(0, skipSpaces(line, 0)).toString();
+    }
+
+    public static String getFieldName(CharSequence line) {
+        int modifierEnd = skipWord(line, skipSpaces(line, 0));
+        int typeEnd = skipTypeName(line, skipSpaces(line, modifierEnd));
+        int nameStart = skipSpaces(line, typeEnd);
+        return line.subSequence(nameStart, skipWord(line, nameStart)).toString();
+    }
+
+    private static LineType classifyAnnotation(CharSequence line, int nameStart) {
+        if (startsWith(line, "Entity", nameStart))
+            return ENTITY;
+        if (startsWith(line, "MappedSuperclass", nameStart))
+            return MAPPED_SUPERCLASS;
+        if (startsWith(line, "Table(", nameStart))
+            return startsWith(line, "name", skipSpaces(line, nameStart + "Table(".length())) ? TABLE : OTHER;
+        if (startsWith(line, "JoinTable", nameStart) || startsWith(line, "Transient", nameStart)
+                || startsWith(line, "JoinColumn", nameStart))
+            return STOPPER;
+        if (startsWith(line, "Column(", nameStart) && hasNameAttribute(line, nameStart + "Column(".length()))
+            return STOPPER;
+        return OTHER;
+    }
+
+    private static boolean hasNameAttribute(CharSequence line, int from) {
+        for (int nameIndex = indexOf(line, "name", from); nameIndex >= 0; nameIndex = indexOf(line, "name", nameIndex + 1)) {
+            int position = skipSpaces(line, nameIndex + "name".length());
+            if (!startsWith(line, "=", position))
+                continue;
+            if (startsWith(line, "\"", skipSpaces(line, position + 1)))
+                return true;
+        }
+        return false;
+    }
+
+    private static LineType classifyImport(CharSequence line, int keywordEnd) {
+        int nameStart = skipSpaces(line, keywordEnd);
+        if (nameStart == keywordEnd)
+            return OTHER;
+        if (startsWith(line, "javax.persistence.Table", nameStart))
+            return IMPORT_TABLE;
+        if (startsWith(line, "javax.persistence.Column", nameStart))
+            return IMPORT_COLUMN;
+        return IMPORT;
+    }
+
+    private static LineType classifyClass(CharSequence line, int keywordEnd) {
+        int position = skipSpaces(line, keywordEnd);
+        if (position == keywordEnd)
+            return OTHER;
+        if (startsWith(line, "class", position))
+            return CLASS;
+        if (startsWith(line, "abstract", position)) {
+            int abstractEnd = position + "abstract".length();
+            position = skipSpaces(line, abstractEnd);
+            if (position > abstractEnd && startsWith(line, "class", position))
+                return CLASS;
+        }
+        return OTHER;
+    }
+
+    private static LineType classifyField(CharSequence line, int keywordEnd) {
+        int typeStart = skipSpaces(line, keywordEnd);
+        if (typeStart == keywordEnd)
+            return OTHER;
+        int typeEnd = skipTypeName(line, typeStart);
+        if (typeEnd == typeStart)
+            return OTHER;
+        int nameStart = skipSpaces(line, typeEnd);
+        if (nameStart == typeEnd || indexOf(line, ';', nameStart) < 0)
+            return OTHER;
+        if (isWordChar(line.charAt(nameStart))
+                && COLUMN_FIELD_TYPES.contains(line.subSequence(typeStart, typeEnd).toString()))
+            return FIELD;
+        return GENERAL_FIELD;
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix, int position) {
+        if (position < 0 || position + prefix.length() > line.length())
+            return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(position + i) != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(CharSequence line, char symbol, int from) {
+        for (int position = from; position < line.length(); position++) {
+            if (line.charAt(position) == symbol)
+                return position;
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence line, String text, int from) {
+        for (int position = from; position + text.length() <= line.length(); position++) {
+            if (startsWith(line, text, position))
+                return position;
+        }
+        return -1;
+    }
+
+    private static int skipSpaces(CharSequence line, int position) {
+        while (position < line.length() && isHorizontalSpace(line.charAt(position)))
+            position++;
+        return position;
+    }
+
+    private static int skipWord(CharSequence line, int position) {
+        while (position < line.length() && isWordChar(line.charAt(position)))
+            position++;
+        return position;
+    }
+
+    private static int skipTypeName(CharSequence line, int position) {
+        while (position < line.length() && isTypeNameChar(line.charAt(position)))
+            position++;
+        return position;
+    }
+
+    private static boolean isTypeNameChar(char symbol) {
+        return symbol < 128 && (Character.isLetterOrDigit(symbol) || symbol == '<' || symbol == '>');
+    }
+
+    private static boolean isWordChar(char symbol) {
+        return symbol < 128 && (Character.isLetterOrDigit(symbol) || symbol == '_');
+    }
+
+    private static boolean isHorizontalSpace(char symbol) {
+        return symbol == ' ' || symbol == '\t';
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * Generates entity sources for comparing outputs of two EntityCorrector versions. Files are built from
+ * random header, class and body lines, including the tricky ones: tabs and extra spaces, CR line ends,
+ * annotations with and without name attribute, fields without semicolon and non-entity classes.
+ * The same seed always gives the same corpus.
+ */
+public class CorpusGenerator {
+
+    private static final int DEFAULT_FILES = 400;
+    private static final long DEFAULT_SEED = 42;
+
+    private static final String[] IMPORT_LINES = {"import java.util.Date;", "import javax.persistence.Entity;"
+            , "import javax.persistence.Column;", "import javax.persistence.Table;", "  import java.util.List;"};
+    private static final String[] HEADER_LINES = {"@Entity", "@MappedSuperclass", "@Table(name = \"X\")"
+            , "@Table( name=\"Y\")", "@EntityListeners(A.class)", "// comment"};
+    private static final String[] CLASS_LINES = {"public class %s {", "public abstract class %s extends B {"
+            , "public  abstract\tclass %s {", "public classic %s {", "class %s {"};
+    private static final String[] BODY_LINES = {"    private String name;", "\tprotected Integer countValue ;"
+            , "    private int x = 1;", "    private List<String> items;", "    private Map<String, Long> m;"
+            , "    @Column(name = \"Q\")", "    @Column(length = 5, name=\"R\")", "    @Column(length = 5)"
+            , "    @JoinColumn(name=\"z\")", "    @Transient", "    @JoinTable(name=\"j\")", "    @Id"
+            , "    private DateTime createdAt; // c", "    private Date d", "    private long idValue;"
+            , "    private Long", "    private String[] arr;", "    public String getName() { return name; }", ""
+            , "    private byte b;", "    private Short s_v;", "\tprivate Boolean flag;\r", "    private Integer; "
+            , "    @Column(nameX = \"q\")"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Pass output directory, optionally number of files and seed as arguments!");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_FILES;
+        Random random = new Random(args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED);
+        Files.createDirectories(directory);
+        for (int fileIndex = 0; fileIndex < files; fileIndex++) {
+            String className = "MyEntity" + fileIndex;
+            Files.write(directory.resolve(className + ".java"), generateLines(className, random));
+        }
+        System.out.println("Generated " + files + " files in " + directory);
+    }
+
+    private static List<String> generateLines(String className, Random random) {
+        List<String> lines = new ArrayList<>();
+        lines.add("package p;");
+        lines.add("");
+        int imports = 1 + random.nextInt(IMPORT_LINES.length);
+        for (int i = 0; i < imports; i++)
+            lines.add(IMPORT_LINES[random.nextInt(IMPORT_LINES.length)]);
+        lines.add("");
+        int headers = random.nextInt(4);
+        for (int i = 0; i < headers; i++)
+            lines.add(HEADER_LINES[random.nextInt(HEADER_LINES.length)]);
+        lines.add(String.format(CLASS_LINES[random.nextInt(CLASS_LINES.length)], className));
+        int bodyLines = random.nextInt(60);
+        for (int i = 0; i < bodyLines; i++)
+            lines.add(BODY_LINES[random.nextInt(BODY_LINES.length)]);
+        lines.add("}");
+        return lines;
+    }
+
+}
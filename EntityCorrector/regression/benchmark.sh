@@ -0,0 +1,86 @@
+#!/bin/sh
+# Times the reference and the current EntityCorrector on fresh copies of the generated corpus and
+# prints the best wall time of every version. JMH can't be used here: the classes are in the default
+# package, which JMH benchmarks can't import, and there is no build to generate the harness with.
+# Every run starts a new JVM, so the times include the startup, the same as for the real runs. Every
+# run gets its own copy of the corpus, so the current version never hits its file hash cache.
+# One more run of every version measures the bytes it allocates: the young generation is made large
+# enough for the run to need no collection, so the eden used at exit is everything allocated.
+#
+# Usage: regression/benchmark.sh [reference-revision] [files] [repeats] [seed]
+# The reference revision defaults to the last sequential version, before the parallel rewrite.
+set -e
+
+reference=${1:-a3e82d7^}
+files=${2:-4000}
+repeats=${3:-5}
+seed=${4:-42}
+project=$(cd "$(dirname "$0")/.." && pwd)
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+mkdir -p "$work/reference-src" "$work/reference" "$work/current" "$work/generator"
+for file in $(cd "$project" && git ls-tree --name-only "$reference" | grep '\.java$'); do
+    (cd "$project" && git show "$reference:./$file") > "$work/reference-src/$file"
+done
+javac -d "$work/reference" "$work"/reference-src/*.java
+javac -d "$work/current" "$project"/*.java
+javac -d "$work/generator" "$project/regression/CorpusGenerator.java"
+java -cp "$work/generator" CorpusGenerator "$work/corpus" "$files" "$seed"
+
+ALLOCATION_OPTIONS="-XX:+UseSerialGC -Xms2g -Xmn1800m"
+
+now_millis() {
+    echo $(($(date +%s%N) / 1000000))
+}
+
+# Runs the version on a fresh copy of the corpus with the extra JVM options
+run_version() {
+    version=$1
+    options=$2
+    rm -rf "$work/out"
+    cp -R "$work/corpus" "$work/out"
+    if [ "$version" = reference ]; then
+        (cd "$work/out" && find . -name '*.java' | sort | xargs java $options -cp "$work/reference" EntityCorrector \
+                > "$work/reference.log" 2>&1) || true
+    else
+        (cd "$work/out" && java $options -cp "$work/current" EntityCorrector . > "$work/current.log" 2>&1) || true
+    fi
+}
+
+# Prints the best time of the version in milliseconds
+best_time() {
+    version=$1
+    best=
+    run=1
+    while [ "$run" -le "$repeats" ]; do
+        start=$(now_millis)
+        run_version "$version" ""
+        elapsed=$(($(now_millis) - start))
+        if [ -z "$best" ] || [ "$elapsed" -lt "$best" ]; then
+            best=$elapsed
+        fi
+        run=$((run + 1))
+    done
+    echo "$best"
+}
+
+# Prints kilobytes allocated by the version, summed over the JVMs xargs may start for the reference
+allocated_kilobytes() {
+    version=$1
+    rm -f "$work"/gc-*.log
+    run_version "$version" "$ALLOCATION_OPTIONS -Xlog:gc,gc+heap+exit:file=$work/gc-%p.log"
+    if grep -q Pause "$work"/gc-*.log; then
+        echo "Warning: $version has collected garbage, its allocation is underestimated" >&2
+    fi
+    total=0
+    for eden in $(sed -n 's/.*eden space .*\[\(0x[0-9a-f]*\), \(0x[0-9a-f]*\),.*/\1,\2/p' "$work"/gc-*.log); do
+        total=$((total + ${eden#*,} - ${eden%,*}))
+    done
+    echo $((total / 1024))
+}
+
+reference_millis=$(best_time reference)
+current_millis=$(best_time current)
+echo "Best of $repeats runs on $files files: reference $reference_millis ms, current $current_millis ms"
+echo "Allocated on $files files: reference $(allocated_kilobytes reference) KB, current $(allocated_kilobytes current) KB"
@@ -0,0 +1,44 @@
+#!/bin/sh
+# Runs the reference and the current EntityCorrector on copies of the generated corpus and compares
+# the corrected files byte by byte. If they differ in line terminators only, the files are listed.
+# The reference version rewrites every line with the first line separator of the file, while the
+# current one keeps the terminators of the original lines, so files with mixed line ends differ.
+#
+# Usage: regression/compare.sh [reference-revision] [files] [seed]
+# The reference revision defaults to the last sequential version, before the parallel rewrite.
+set -e
+
+reference=${1:-a3e82d7^}
+files=${2:-400}
+seed=${3:-42}
+project=$(cd "$(dirname "$0")/.." && pwd)
+work=$(mktemp -d)
+trap 'rm -rf "$work"' EXIT
+
+mkdir -p "$work/reference-src" "$work/reference" "$work/current" "$work/generator"
+for file in $(cd "$project" && git ls-tree --name-only "$reference" | grep '\.java$'); do
+    (cd "$project" && git show "$reference:./$file") > "$work/reference-src/$file"
+done
+javac -d "$work/reference" "$work"/reference-src/*.java
+javac -d "$work/current" "$project"/*.java
+javac -d "$work/generator" "$project/regression/CorpusGenerator.java"
+
+java -cp "$work/generator" CorpusGenerator "$work/corpus" "$files" "$seed"
+cp -R "$work/corpus" "$work/reference-out"
+cp -R "$work/corpus" "$work/current-out"
+
+(cd "$work/reference-out" && find . -name '*.java' | sort | xargs java -cp "$work/reference" EntityCorrector \
+        > "$work/reference.log" 2>&1) || true
+(cd "$work/current-out" && java -cp "$work/current" EntityCorrector . > "$work/current.log" 2>&1) || true
+
+exclude='.entity-corrector-cache*'
+if diff -r -q -x "$exclude" "$work/reference-out" "$work/current-out" > /dev/null; then
+    echo "Outputs are byte-identical for $files files"
+elif diff -r -q --strip-trailing-cr -x "$exclude" "$work/reference-out" "$work/current-out" > /dev/null; then
+    echo "Outputs differ in line terminators only:"
+    diff -r -q -x "$exclude" "$work/reference-out" "$work/current-out" | sed 's/^Files .*-out\/\(.*\) and .*$/  \1/'
+    exit 1
+else
+    diff -r -x "$exclude" "$work/reference-out" "$work/current-out"
+    exit 1
+fi
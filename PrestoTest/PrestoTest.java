@@ -1,139 +1,349 @@
-import com.teradata.presto.jdbc4.DataSource;
+import bilokhado.ColumnDescriptor;
+import bilokhado.ConnectionSettings;
+import bilokhado.PooledDataSource;
+import bilokhado.SchemaIntrospector;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.*;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class PrestoTest {
     private static final String DRIVER_CLASS = "com.teradata.presto.jdbc4.Driver";
     private static final String PRESTO_PROPERTY_STRING = ";User=dmytro;LogLevel=6;LogPath=C:\\\\Dev";
     private static final String CONNECTION_URL = "jdbc:presto://bigdata04.host:9000/hive/grx" + PRESTO_PROPERTY_STRING;
+    private static final String CONNECTION_PROPERTY_PREFIX = "prestotest.";
     private static final String RESULT_TEMPLATE = "<result column=\"%s\" jdbcType=\"%s\" property=\"%s\" />";
     private static final String OBJ_FIELD_TEMPLATE = "private %s %s;";
+    private static final String METADATA_CACHE_FILE = "metadata-cache.properties";
+    private static final long METADATA_CACHE_TTL = TimeUnit.DAYS.toMillis(1);
+    private static final String DEFAULT_QUERY_GLOB = "*.sql";
+    private static final int POOL_SIZE = 4;
+    private static final String NEW_LINE = System.lineSeparator();
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Please, provide filename with query!");
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Please, provide filename with query or directory/glob with queries"
+                    + " and optionally the output directory!");
             return;
         }
-        String sqlQuery = null;
-        try {
-            sqlQuery = new String(Files.readAllBytes(Paths.get(args[0])), "UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            System.out.println("Got unsupported encoding exception!");
-            return;
-        } catch (IOException ex) {
-            System.out.println("Unable to read file: " + args[0]);
+        SchemaIntrospector introspector = new SchemaIntrospector(Paths.get(METADATA_CACHE_FILE), METADATA_CACHE_TTL);
+        /* Connection is set with -Dprestotest.url, .driver, .user and .password, the Presto one by default */
+        ConnectionSettings connectionSettings = ConnectionSettings.fromProperties(System.getProperties()
+                , CONNECTION_PROPERTY_PREFIX, CONNECTION_URL, DRIVER_CLASS);
+        try (PooledDataSource dataSource = new PooledDataSource(connectionSettings, POOL_SIZE)) {
+            if (args.length == 1 && Files.isRegularFile(Paths.get(args[0]))) {
+                printMapping(introspector, dataSource, Paths.get(args[0]));
+            } else {
+                generateMappings(introspector, dataSource, args[0], Paths.get(args.length > 1 ? args[1] : "."));
+            }
+        }
+        introspector.save();
+    }
+
+    private static void printMapping(SchemaIntrospector introspector, PooledDataSource dataSource, Path queryFile) {
+        String sqlQuery = readQuery(queryFile);
+        if (sqlQuery == null) {
             return;
         }
-        Connection connection = getConnection(CONNECTION_URL);
-        if (connection == null) {
-            System.out.println("Connection is null, exiting");
+        List<ColumnDescriptor> columns = introspector.getCached(sqlQuery);
+        if (columns == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                columns = introspector.describe(connection, sqlQuery);
+            } catch (SQLException ex) {
+                System.out.println("Failed to get result set metadata!");
+                ex.printStackTrace();
+                return;
+            }
+        }
+        StringBuilder xmlMapping = new StringBuilder();
+        StringBuilder objectFields = new StringBuilder();
+        for (ColumnDescriptor column : columns) {
+            String fieldName = toCamelCase(column.name);
+            xmlMapping.append(String.format(RESULT_TEMPLATE, column.name, getJdbcType(column), fieldName));
+            xmlMapping.append(NEW_LINE);
+            objectFields.append(String.format(OBJ_FIELD_TEMPLATE, getSimpleName(getJavaType(column)), fieldName));
+            objectFields.append(NEW_LINE);
+        }
+        System.out.println(xmlMapping.toString());
+        System.out.println(objectFields.toString());
+    }
+
+    /*
+     * Batch mode: metadata of all the queries is read concurrently over a small pool of connections
+     * and for every query the mapper XML and the DTO class are written to the output directory.
+     * Connections are opened lazily, so the batch with all the queries cached doesn't connect at all.
+     */
+    private static void generateMappings(SchemaIntrospector introspector, PooledDataSource dataSource
+            , String querySource, Path outputDirectory) {
+        List<Path> queryFiles = findQueryFiles(querySource);
+        if (queryFiles == null) {
             return;
         }
-        Statement statement = getStatement(connection);
-        if (statement == null) {
-            System.out.println("Statement is null, exiting");
+        if (queryFiles.isEmpty()) {
+            System.out.println("No query files found: " + querySource);
             return;
         }
-        ResultSet resultSet = executeQuery(statement, sqlQuery);
-        if (resultSet == null) {
-            System.out.println("ResultSet is null, exiting");
+        try {
+            Files.createDirectories(outputDirectory);
+        } catch (IOException ex) {
+            System.out.println("Unable to create output directory: " + outputDirectory);
             return;
         }
-        StringBuilder xmlMapping = new StringBuilder();
-        StringBuilder objectFields = new StringBuilder();
+        int threads = Math.min(POOL_SIZE, queryFiles.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int generated = 0;
         try {
-            ResultSetMetaData metaData = resultSet.getMetaData();
-            int columns = metaData.getColumnCount();
-            for (int i = 1; i <= columns; i++) {
-                String fieldName = toCamelCase(metaData.getColumnName(i));
-                xmlMapping.append(String.format(RESULT_TEMPLATE
-                        , metaData.getColumnName(i), metaData.getColumnTypeName(i), fieldName));
-                xmlMapping.append(System.lineSeparator());
-                String fieldType = null;
-                switch (metaData.getColumnTypeName(i)) {
-                    case "INTEGER":
-                        fieldType = "Integer";
-                        break;
-
-                    case "BIGINT":
-                        fieldType = "Long";
-                        break;
-
-                    case "VARCHAR":
-                        fieldType = "String";
-                        break;
-
-                    default:
-                        fieldType = "UKNOWN";
+            List<Future<Boolean>> results = new ArrayList<>(queryFiles.size());
+            for (Path queryFile : queryFiles) {
+                results.add(executor.submit(() -> generateMapping(introspector, dataSource, queryFile, outputDirectory)));
+            }
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    generated++;
                 }
-                objectFields.append(String.format(OBJ_FIELD_TEMPLATE, fieldType, fieldName));
-                objectFields.append(System.lineSeparator());
             }
-        } catch (SQLException ex) {
-            System.out.println("Failed to get result set metadata!");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted while generating mappings!");
+        } catch (ExecutionException ex) {
+            System.out.println("Failed to generate mapping!");
             ex.printStackTrace();
         } finally {
-            closeAll(Arrays.asList(resultSet, statement, connection));
+            executor.shutdownNow();
         }
-        System.out.println(xmlMapping.toString());
-        System.out.println(objectFields.toString());
+        System.out.println("Generated mappings for " + generated + " of " + queryFiles.size() + " queries");
     }
 
-    private static Connection getConnection(String connectionUrl) {
-        Connection connection = null;
+    private static boolean generateMapping(SchemaIntrospector introspector, PooledDataSource dataSource
+            , Path queryFile, Path outputDirectory) {
+        String sqlQuery = readQuery(queryFile);
+        if (sqlQuery == null) {
+            return false;
+        }
+        List<ColumnDescriptor> columns = introspector.getCached(sqlQuery);
+        if (columns == null) {
+            try (Connection connection = dataSource.getConnection()) {
+                columns = introspector.describe(connection, sqlQuery);
+            } catch (SQLException ex) {
+                System.out.println("Failed to get result set metadata for " + queryFile);
+                ex.printStackTrace();
+                return false;
+            }
+        }
+        String fileName = queryFile.getFileName().toString();
+        int extensionIndex = fileName.lastIndexOf('.');
+        String className = toClassName(extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName);
         try {
-            Class.forName(DRIVER_CLASS);
-            DataSource ds = new com.teradata.presto.jdbc4.DataSource();
-            ds.setURL(connectionUrl);
-            connection = ds.getConnection();
-        } catch (ClassNotFoundException ex) {
-            System.out.println("Failed to load driver class!");
-            ex.printStackTrace();
-        } catch (SQLException ex) {
-            System.out.println("Failed to get connection from the datasource!");
+            writeFile(outputDirectory.resolve(className + "Mapper.xml"), getMapperXml(className, sqlQuery, columns));
+            writeFile(outputDirectory.resolve(className + ".java"), getEntityClass(className, columns));
+        } catch (IOException ex) {
+            System.out.println("Unable to write mapping for " + queryFile);
             ex.printStackTrace();
+            return false;
         }
-        return connection;
+        return true;
     }
 
-    private static Statement getStatement(Connection connection) {
-        Statement statement = null;
+    private static List<Path> findQueryFiles(String querySource) {
+        Path directory;
+        String glob;
+        int separatorIndex = Math.max(querySource.lastIndexOf('/'), querySource.lastIndexOf('\\'));
+        String fileNamePart = querySource.substring(separatorIndex + 1);
+        if (fileNamePart.matches(".*[*?\\[{].*")) {
+            directory = Paths.get(separatorIndex < 0 ? "." : querySource.substring(0, separatorIndex + 1));
+            glob = fileNamePart;
+        } else {
+            directory = Paths.get(querySource);
+            glob = DEFAULT_QUERY_GLOB;
+        }
+        List<Path> queryFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    queryFiles.add(file);
+                }
+            }
+        } catch (IOException ex) {
+            System.out.println("Unable to list query files: " + querySource);
+            return null;
+        }
+        queryFiles.sort(null);
+        return queryFiles;
+    }
+
+    private static String getMapperXml(String className, String sqlQuery, List<ColumnDescriptor> columns) {
+        String resultMapId = Character.toLowerCase(className.charAt(0)) + className.substring(1) + "Result";
+        StringBuilder xmlBuilder = new StringBuilder();
+        xmlBuilder.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>").append(NEW_LINE);
+        xmlBuilder.append("<!DOCTYPE mapper PUBLIC \"-//mybatis.org//DTD Mapper 3.0//EN\"")
+                .append(" \"http://mybatis.org/dtd/mybatis-3-mapper.dtd\">").append(NEW_LINE);
+        xmlBuilder.append("<mapper namespace=\"").append(className).append("Mapper\">").append(NEW_LINE);
+        xmlBuilder.append("    <resultMap id=\"").append(resultMapId)
+                .append("\" type=\"").append(className).append("\">").append(NEW_LINE);
+        for (ColumnDescriptor column : columns) {
+            xmlBuilder.append("        ")
+                    .append(String.format(RESULT_TEMPLATE, column.name, getJdbcType(column), toCamelCase(column.name)))
+                    .append(NEW_LINE);
+        }
+        xmlBuilder.append("    </resultMap>").append(NEW_LINE);
+        xmlBuilder.append("    <select id=\"select").append(className)
+                .append("\" resultMap=\"").append(resultMapId).append("\">").append(NEW_LINE);
+        String query = sqlQuery.trim();
+        if (query.endsWith(";")) {
+            query = query.substring(0, query.length() - 1);
+        }
+        xmlBuilder.append("        <![CDATA[").append(NEW_LINE)
+                .append(query.replace("]]>", "]]]]><![CDATA[>")).append(NEW_LINE)
+                .append("        ]]>").append(NEW_LINE);
+        xmlBuilder.append("    </select>").append(NEW_LINE);
+        xmlBuilder.append("</mapper>").append(NEW_LINE);
+        return xmlBuilder.toString();
+    }
+
+    private static String getEntityClass(String className, List<ColumnDescriptor> columns) {
+        TreeSet<String> imports = new TreeSet<>();
+        StringBuilder fieldsBuilder = new StringBuilder();
+        StringBuilder accessorsBuilder = new StringBuilder();
+        for (ColumnDescriptor column : columns) {
+            String javaType = getJavaType(column);
+            if (javaType.indexOf('.') > 0 && !javaType.startsWith("java.lang.")) {
+                imports.add(javaType);
+            }
+            String type = getSimpleName(javaType);
+            String fieldName = toCamelCase(column.name);
+            String propertyName = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            fieldsBuilder.append("    ").append(String.format(OBJ_FIELD_TEMPLATE, type, fieldName)).append(NEW_LINE);
+            accessorsBuilder.append(NEW_LINE)
+                    .append("    public ").append(type).append(" get").append(propertyName).append("() {").append(NEW_LINE)
+                    .append("        return ").append(fieldName).append(';').append(NEW_LINE)
+                    .append("    }").append(NEW_LINE)
+                    .append(NEW_LINE)
+                    .append("    public void set").append(propertyName)
+                    .append('(').append(type).append(' ').append(fieldName).append(") {").append(NEW_LINE)
+                    .append("        this.").append(fieldName).append(" = ").append(fieldName).append(';').append(NEW_LINE)
+                    .append("    }").append(NEW_LINE);
+        }
+        StringBuilder classBuilder = new StringBuilder();
+        for (String importedClass : imports) {
+            classBuilder.append("import ").append(importedClass).append(';').append(NEW_LINE);
+        }
+        if (!imports.isEmpty()) {
+            classBuilder.append(NEW_LINE);
+        }
+        classBuilder.append("public class ").append(className).append(" {").append(NEW_LINE);
+        classBuilder.append(NEW_LINE).append(fieldsBuilder).append(accessorsBuilder);
+        classBuilder.append(NEW_LINE).append('}').append(NEW_LINE);
+        return classBuilder.toString();
+    }
+
+    /*
+     * MyBatis JdbcType constant names match java.sql.JDBCType names for all the standard types.
+     */
+    private static String getJdbcType(ColumnDescriptor column) {
         try {
-            statement = connection.createStatement();
-        } catch (SQLException ex) {
-            System.out.println("Failed to createStatement!");
-            ex.printStackTrace();
+            return JDBCType.valueOf(column.sqlType).getName();
+        } catch (IllegalArgumentException ex) {
+            return JDBCType.OTHER.getName();
         }
-        return statement;
     }
 
-    private static ResultSet executeQuery(Statement statement, String query) {
-        ResultSet resultSet = null;
+    private static String getJavaType(ColumnDescriptor column) {
+        switch (column.sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return "Boolean";
+
+            case Types.TINYINT:
+                return "Byte";
+
+            case Types.SMALLINT:
+                return "Short";
+
+            case Types.INTEGER:
+                return "Integer";
+
+            case Types.BIGINT:
+                return "Long";
+
+            case Types.REAL:
+                return "Float";
+
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return "Double";
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return "java.math.BigDecimal";
+
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.SQLXML:
+                return "String";
+
+            case Types.DATE:
+                return "java.sql.Date";
+
+            case Types.TIME:
+            case Types.TIME_WITH_TIMEZONE:
+                return "java.sql.Time";
+
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return "java.sql.Timestamp";
+
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return "byte[]";
+
+            case Types.ARRAY:
+                return "Object[]";
+
+            default:
+                return "json".equalsIgnoreCase(column.typeName) ? "String" : "Object";
+        }
+    }
+
+    private static String getSimpleName(String javaType) {
+        return javaType.substring(javaType.lastIndexOf('.') + 1);
+    }
+
+    private static String readQuery(Path queryFile) {
         try {
-            resultSet = statement.executeQuery(query);
-        } catch (SQLException ex) {
-            System.out.println("Failed to execute query!");
-            ex.printStackTrace();
+            return new String(Files.readAllBytes(queryFile), "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            System.out.println("Got unsupported encoding exception!");
+        } catch (IOException ex) {
+            System.out.println("Unable to read file: " + queryFile);
         }
-        return resultSet;
+        return null;
     }
 
-    private static void closeAll(List<AutoCloseable> closeables) {
-        for (AutoCloseable cl : closeables) {
-            if (cl != null) {
-                try {
-                    cl.close();
-                } catch (Exception ex) {
-                    System.out.println("Exception during closing resource: " + cl);
-                    ex.printStackTrace();
-                }
-            }
+    private static void writeFile(Path file, String content) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(content);
         }
     }
 
@@ -153,4 +363,10 @@ public class PrestoTest {
         return resultBuilder.toString();
     }
 
+    private static String toClassName(String fileName) {
+        String camelCaseName = toCamelCase(fileName.replaceAll("[^A-Za-z0-9_]", "_"));
+        String className = Character.toUpperCase(camelCaseName.charAt(0)) + camelCaseName.substring(1);
+        return Character.isJavaIdentifierStart(className.charAt(0)) ? className : "Query" + className;
+    }
+
 }